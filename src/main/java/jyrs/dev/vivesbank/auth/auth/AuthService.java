@@ -1,6 +1,7 @@
 package jyrs.dev.vivesbank.auth.auth;
 
 import jyrs.dev.vivesbank.auth.dto.JwtAuthResponse;
+import jyrs.dev.vivesbank.auth.dto.RefreshTokenRequest;
 import jyrs.dev.vivesbank.auth.dto.UserSignInRequest;
 import jyrs.dev.vivesbank.auth.dto.UserSignUpRequest;
 import jyrs.dev.vivesbank.auth.exception.AuthSignUpInvalid;
@@ -23,11 +24,37 @@ public interface AuthService {
     JwtAuthResponse singUp(UserSignUpRequest request) throws UserAuthNameOrEmailExisten, AuthSignUpInvalid;
 
     /**
-     * Inicia sesión de un usuario. Verifica las credenciales del usuario y genera un token JWT.
+     * Inicia sesión de un usuario. Verifica las credenciales del usuario y genera un token JWT y uno de refresco.
      *
      * @param request Objeto que contiene el nombre de usuario y la contraseña para el inicio de sesión.
+     * @param clientIp La IP desde la que se inicia sesión, para limitar los intentos.
      * @return JwtAuthResponse Objeto que contiene el token JWT generado para el usuario autenticado.
      * @throws AuthSignUpInvalid Si las credenciales del usuario no son válidas o están incorrectas.
+     * @throws jyrs.dev.vivesbank.auth.exception.AuthTooManyAttempts Si la IP o el usuario han superado el límite de intentos.
      */
-    JwtAuthResponse signIn(UserSignInRequest request) throws AuthSignUpInvalid;
+    JwtAuthResponse signIn(UserSignInRequest request, String clientIp) throws AuthSignUpInvalid;
+
+    /**
+     * Renueva la sesión con un token de refresco, sin volver a comprobar la contraseña.
+     * El token de refresco usado queda revocado y se devuelve uno nuevo junto al token de acceso.
+     *
+     * @param request Objeto que contiene el token de refresco.
+     * @return JwtAuthResponse Objeto con el nuevo token JWT y el nuevo token de refresco.
+     * @throws jyrs.dev.vivesbank.auth.exception.AuthRefreshInvalid Si el token de refresco no es válido, ha caducado o ya se ha usado.
+     */
+    JwtAuthResponse refresh(RefreshTokenRequest request);
+
+    /**
+     * Cierra la sesión del token indicado revocándolo hasta su expiración.
+     *
+     * @param token El token JWT de la sesión.
+     */
+    void logout(String token);
+
+    /**
+     * Cierra todas las sesiones abiertas de un usuario revocando los tokens emitidos hasta ahora.
+     *
+     * @param guuid El identificador único del usuario.
+     */
+    void revokeSessions(String guuid);
 }
@@ -1,23 +1,30 @@
 package jyrs.dev.vivesbank.auth.auth;
 
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.auth0.jwt.interfaces.DecodedJWT;
 import jyrs.dev.vivesbank.auth.dto.JwtAuthResponse;
+import jyrs.dev.vivesbank.auth.dto.RefreshTokenRequest;
 import jyrs.dev.vivesbank.auth.dto.UserSignInRequest;
 import jyrs.dev.vivesbank.auth.dto.UserSignUpRequest;
+import jyrs.dev.vivesbank.auth.exception.AuthRefreshInvalid;
 import jyrs.dev.vivesbank.auth.exception.AuthSignUpInvalid;
 import jyrs.dev.vivesbank.auth.exception.UserAuthNameOrEmailExisten;
 import jyrs.dev.vivesbank.auth.exception.UserDiferentePasswords;
 import jyrs.dev.vivesbank.auth.exception.UserPasswordBadRequest;
 import jyrs.dev.vivesbank.auth.jwt.JwtService;
+import jyrs.dev.vivesbank.auth.jwt.JwtServiceImpl;
+import jyrs.dev.vivesbank.auth.password.PasswordHashingService;
+import jyrs.dev.vivesbank.auth.revocation.TokenRevocationService;
+import jyrs.dev.vivesbank.auth.throttle.LoginThrottle;
 import jyrs.dev.vivesbank.auth.users.repositories.AuthUserRepository;
+import jyrs.dev.vivesbank.auth.users.service.AuthUserService;
 import jyrs.dev.vivesbank.auth.validator.UserValidator;
 import jyrs.dev.vivesbank.users.models.Role;
 import jyrs.dev.vivesbank.users.models.User;
+import jyrs.dev.vivesbank.users.users.exceptions.UserExceptions;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataIntegrityViolationException;
-import org.springframework.security.authentication.AuthenticationManager;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
 import java.util.stream.Collectors;
@@ -30,18 +37,22 @@ import java.util.stream.Stream;
 public class AuthServiceImpl implements AuthService {
 
     private final AuthUserRepository authUserRepository;
-    private final PasswordEncoder passwordEncoder;
+    private final PasswordHashingService passwordHashingService;
     private final JwtService jwtService;
-    private final AuthenticationManager authenticationManager;
     private final UserValidator userValidator;
+    private final TokenRevocationService revocationService;
+    private final LoginThrottle loginThrottle;
+    private final AuthUserService authUserService;
 
     @Autowired
-    public AuthServiceImpl(AuthUserRepository authUserRepository, PasswordEncoder passwordEncoder, JwtService jwtService, AuthenticationManager authenticationManager, UserValidator userValidator) {
+    public AuthServiceImpl(AuthUserRepository authUserRepository, PasswordHashingService passwordHashingService, JwtService jwtService, UserValidator userValidator, TokenRevocationService revocationService, LoginThrottle loginThrottle, AuthUserService authUserService) {
         this.authUserRepository = authUserRepository;
-        this.passwordEncoder = passwordEncoder;
+        this.passwordHashingService = passwordHashingService;
         this.jwtService = jwtService;
-        this.authenticationManager = authenticationManager;
         this.userValidator = userValidator;
+        this.revocationService = revocationService;
+        this.loginThrottle = loginThrottle;
+        this.authUserService = authUserService;
     }
 
     @Override
@@ -56,13 +67,13 @@ public class AuthServiceImpl implements AuthService {
         if(request.getPassword().contentEquals(request.getCheckPassword())){
             User user = User.builder()
                     .username(request.getUsername())
-                    .password(passwordEncoder.encode(request.getPassword()))
+                    .password(passwordHashingService.encode(request.getPassword()))
                     .fotoPerfil(request.getFotoPerfil())
                     .roles(Stream.of(Role.USER).collect(Collectors.toSet()))
                     .build();
             try {
                 var userStored = authUserRepository.save(user);
-                return JwtAuthResponse.builder().token(jwtService.generateToken(userStored)).build();
+                return tokensFor(userStored);
             }catch (DataIntegrityViolationException ex){
                 throw new UserAuthNameOrEmailExisten("El usuario con username " + request.getUsername() + " ya existe.");
             }
@@ -74,17 +85,69 @@ public class AuthServiceImpl implements AuthService {
 
 
     @Override
-    public JwtAuthResponse signIn(UserSignInRequest request) throws AuthSignUpInvalid {
-        log.info("Autenticando usuario: {}", request);
+    public JwtAuthResponse signIn(UserSignInRequest request, String clientIp) throws AuthSignUpInvalid {
+        log.info("Autenticando usuario: {}", request.getUsername());
+        loginThrottle.acquire(request.getUsername(), clientIp);
+
         var user = authUserRepository.findByUsername(request.getUsername())
                 .orElseThrow(() -> new AuthSignUpInvalid("Usuario o contraseña incorrectos"));
-        log.info("Autenticando usuario: {}", request);
+        if (!passwordHashingService.matches(request.getPassword(), user.getPassword())) {
+            loginThrottle.onFailure(request.getUsername());
+            throw new AuthSignUpInvalid("Usuario o contraseña incorrectos");
+        }
+        loginThrottle.onSuccess(request.getUsername());
+
+        return tokensFor(user);
+    }
+
+    @Override
+    public JwtAuthResponse refresh(RefreshTokenRequest request) {
+        DecodedJWT jwt;
+        try {
+            jwt = jwtService.verifyToken(request.getRefreshToken());
+        } catch (JWTVerificationException e) {
+            throw new AuthRefreshInvalid("Token de refresco no válido o caducado");
+        }
+        if (!JwtServiceImpl.REFRESH_TYPE.equals(jwt.getClaim(JwtServiceImpl.TYPE_CLAIM).asString())
+                || jwt.getId() == null || revocationService.isRevoked(jwt)) {
+            throw new AuthRefreshInvalid("Token de refresco no válido o caducado");
+        }
+
+        User user;
+        try {
+            user = authUserService.loadUserByGuuid(jwt.getSubject());
+        } catch (UserExceptions.UserNotFound e) {
+            throw new AuthRefreshInvalid("Token de refresco no válido o caducado");
+        }
+        // Cada token de refresco se usa una sola vez, aunque lleguen dos peticiones a la vez con el mismo
+        if (!revocationService.revokeOnce(jwt.getId(), jwt.getExpiresAtAsInstant())) {
+            throw new AuthRefreshInvalid("Token de refresco no válido o caducado");
+        }
+        log.info("Renovando sesión del usuario: {}", user.getGuuid());
+        return tokensFor(user);
+    }
 
-        authenticationManager.authenticate(
-                new UsernamePasswordAuthenticationToken(request.getUsername(), request.getPassword()));
-        log.info("Autenticando usuario: {}", request);
+    @Override
+    public void logout(String token) {
+        var jwt = jwtService.verifyToken(token);
+        log.info("Cerrando sesión del usuario: {}", jwt.getSubject());
+        if (jwt.getId() != null) {
+            revocationService.revoke(jwt.getId(), jwt.getExpiresAtAsInstant());
+        }
+    }
+
+    @Override
+    public void revokeSessions(String guuid) {
+        log.info("Cerrando todas las sesiones del usuario: {}", guuid);
+        authUserRepository.findByGuuid(guuid)
+                .orElseThrow(() -> new UserExceptions.UserNotFound("No se ha encontrado usuario con guuid: " + guuid));
+        revocationService.revokeAll(guuid);
+    }
 
-        var jwt = jwtService.generateToken(user);
-        return JwtAuthResponse.builder().token(jwt).build();
+    private JwtAuthResponse tokensFor(User user) {
+        return JwtAuthResponse.builder()
+                .token(jwtService.generateToken(user))
+                .refreshToken(jwtService.generateRefreshToken(user))
+                .build();
     }
 }
@@ -2,16 +2,20 @@ package jyrs.dev.vivesbank.auth.controller;
 
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import jyrs.dev.vivesbank.auth.auth.AuthService;
 import jyrs.dev.vivesbank.auth.dto.JwtAuthResponse;
+import jyrs.dev.vivesbank.auth.dto.RefreshTokenRequest;
 import jyrs.dev.vivesbank.auth.dto.UserSignInRequest;
 import jyrs.dev.vivesbank.auth.dto.UserSignUpRequest;
 import jyrs.dev.vivesbank.auth.exception.AuthSignUpInvalid;
 import jyrs.dev.vivesbank.auth.exception.UserAuthNameOrEmailExisten;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -88,13 +92,79 @@ public class AuthenticationRestController {
                     content = @Content),
             @ApiResponse(responseCode = "401", description = "Credenciales inválidas.",
                     content = @Content),
+            @ApiResponse(responseCode = "429", description = "Demasiados intentos de inicio de sesión.",
+                    content = @Content),
+            @ApiResponse(responseCode = "503", description = "Demasiadas peticiones de autenticación en curso.",
+                    content = @Content),
             @ApiResponse(responseCode = "500", description = "Error interno del servidor.", content = @Content)
     })
     @PostMapping("/signin")
     public ResponseEntity<JwtAuthResponse> signIn(
-            @Valid @RequestBody UserSignInRequest request) throws AuthSignUpInvalid {
-        log.info("Iniciando sesión de usuario: {}", request);
-        return ResponseEntity.ok(authService.signIn(request));
+            @Valid @RequestBody UserSignInRequest request, HttpServletRequest httpRequest) throws AuthSignUpInvalid {
+        log.info("Iniciando sesión de usuario: {}", request.getUsername());
+        return ResponseEntity.ok(authService.signIn(request, httpRequest.getRemoteAddr()));
+    }
+
+    /**
+     * Endpoint para renovar el token de acceso con un token de refresco, sin volver a enviar la contraseña.
+     *
+     * @param request El objeto que contiene el token de refresco.
+     * @return ResponseEntity con el nuevo token JWT y el nuevo token de refresco.
+     */
+    @Operation(
+            summary = "Renueva el token de acceso",
+            description = "Este endpoint devuelve un nuevo token JWT a partir de un token de refresco válido. El token de refresco usado deja de ser válido."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Renovación correcta, se devuelven los nuevos tokens.",
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = JwtAuthResponse.class))),
+            @ApiResponse(responseCode = "401", description = "Token de refresco no válido, caducado o ya usado.",
+                    content = @Content)
+    })
+    @PostMapping("/refresh")
+    public ResponseEntity<JwtAuthResponse> refresh(@Valid @RequestBody RefreshTokenRequest request) {
+        return ResponseEntity.ok(authService.refresh(request));
     }
-}
 
+    /**
+     * Endpoint para cerrar la sesión actual. El token usado en la petición queda revocado hasta su expiración.
+     *
+     * @param authorization La cabecera de autorización con el token JWT.
+     * @return ResponseEntity sin contenido.
+     */
+    @Operation(
+            summary = "Cierra la sesión actual",
+            description = "Revoca el token JWT con el que se hace la petición."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "204", description = "Sesión cerrada.", content = @Content),
+            @ApiResponse(responseCode = "401", description = "Token no válido.", content = @Content)
+    })
+    @DeleteMapping("/session")
+    public ResponseEntity<Void> logout(@RequestHeader(HttpHeaders.AUTHORIZATION) String authorization) {
+        authService.logout(authorization.substring(7));
+        return ResponseEntity.noContent().build();
+    }
+
+    /**
+     * Endpoint para cerrar todas las sesiones de un usuario. Solo para administradores.
+     *
+     * @param guuid El identificador único del usuario.
+     * @return ResponseEntity sin contenido.
+     */
+    @Operation(
+            summary = "Cierra todas las sesiones de un usuario",
+            description = "Revoca todos los tokens JWT emitidos hasta ahora para el usuario indicado."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "204", description = "Sesiones cerradas.", content = @Content),
+            @ApiResponse(responseCode = "403", description = "No tiene permisos de administrador.", content = @Content),
+            @ApiResponse(responseCode = "404", description = "Usuario no encontrado.", content = @Content)
+    })
+    @PreAuthorize("hasRole('ADMIN')")
+    @DeleteMapping("/sessions/{guuid}")
+    public ResponseEntity<Void> revokeSessions(@Parameter(description = "Guuid del usuario") @PathVariable String guuid) {
+        authService.revokeSessions(guuid);
+        return ResponseEntity.noContent().build();
+    }
+}
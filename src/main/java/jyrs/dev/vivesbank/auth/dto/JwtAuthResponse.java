@@ -20,5 +20,14 @@ public class JwtAuthResponse {
      * Este token es utilizado para autenticar al usuario en solicitudes posteriores.
      */
     private String token;
+
+    /**
+     * Token de refresco, de mayor duración, que permite obtener un nuevo token sin volver a enviar la contraseña.
+     */
+    private String refreshToken;
+
+    public JwtAuthResponse(String token) {
+        this.token = token;
+    }
 }
 
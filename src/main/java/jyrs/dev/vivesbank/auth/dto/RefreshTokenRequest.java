@@ -0,0 +1,23 @@
+package jyrs.dev.vivesbank.auth.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Clase que representa la solicitud para renovar el token de acceso con un token de refresco.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RefreshTokenRequest {
+
+    /**
+     * El token de refresco obtenido al iniciar sesión o en la última renovación.
+     */
+    @NotBlank(message = "El token de refresco no puede estar vacío")
+    String refreshToken;
+}
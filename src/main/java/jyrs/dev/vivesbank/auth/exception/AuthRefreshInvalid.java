@@ -0,0 +1,14 @@
+package jyrs.dev.vivesbank.auth.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Excepcion que indica que el token de refresco no es válido, ha caducado o ya se ha usado.
+ */
+@ResponseStatus(HttpStatus.UNAUTHORIZED)
+public class AuthRefreshInvalid extends RuntimeException {
+    public AuthRefreshInvalid(String message) {
+        super(message);
+    }
+}
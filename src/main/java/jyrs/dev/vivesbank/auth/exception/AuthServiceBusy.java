@@ -0,0 +1,14 @@
+package jyrs.dev.vivesbank.auth.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Excepcion que indica que no hay capacidad para comprobar contraseñas en este momento.
+ */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class AuthServiceBusy extends RuntimeException {
+    public AuthServiceBusy(String message) {
+        super(message);
+    }
+}
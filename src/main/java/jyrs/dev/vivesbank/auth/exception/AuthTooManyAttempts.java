@@ -0,0 +1,14 @@
+package jyrs.dev.vivesbank.auth.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Excepcion que indica que se han hecho demasiados intentos de inicio de sesión desde una IP o para un usuario.
+ */
+@ResponseStatus(HttpStatus.TOO_MANY_REQUESTS)
+public class AuthTooManyAttempts extends RuntimeException {
+    public AuthTooManyAttempts(String message) {
+        super(message);
+    }
+}
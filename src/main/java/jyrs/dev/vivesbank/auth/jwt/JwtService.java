@@ -1,5 +1,6 @@
 package jyrs.dev.vivesbank.auth.jwt;
 
+import com.auth0.jwt.interfaces.DecodedJWT;
 import org.springframework.security.core.userdetails.UserDetails;
 
 /**
@@ -25,6 +26,14 @@ public interface JwtService {
      */
     String generateToken(UserDetails userDetails);
 
+    /**
+     * Genera un token de refresco, de mayor duración, que solo sirve para obtener un nuevo token de acceso.
+     *
+     * @param userDetails los detalles del usuario que se utilizarán para generar el token.
+     * @return el token de refresco generado.
+     */
+    String generateRefreshToken(UserDetails userDetails);
+
     /**
      * Verifica si el token JWT es válido para el usuario especificado.
      *
@@ -33,4 +42,13 @@ public interface JwtService {
      * @return {@code true} si el token es válido, {@code false} si el token no es válido.
      */
     boolean isTokenValid(String token, UserDetails userDetails);
+
+    /**
+     * Decodifica el token una sola vez comprobando su firma y su fecha de expiración.
+     *
+     * @param token el token JWT que se debe verificar.
+     * @return el token decodificado, con el guuid del usuario como subject y sus roles en la reclamación {@code roles}.
+     * @throws com.auth0.jwt.exceptions.JWTVerificationException si la firma no es válida o el token ha expirado.
+     */
+    DecodedJWT verifyToken(String token);
 }
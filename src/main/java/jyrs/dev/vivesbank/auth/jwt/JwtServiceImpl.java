@@ -1,11 +1,14 @@
 package jyrs.dev.vivesbank.auth.jwt;
 
 import com.auth0.jwt.JWT;
+import com.auth0.jwt.JWTVerifier;
 import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.exceptions.JWTVerificationException;
 import com.auth0.jwt.interfaces.DecodedJWT;
 import jyrs.dev.vivesbank.users.models.User;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
 
@@ -13,6 +16,7 @@ import java.util.Base64;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.UUID;
 import java.util.function.Function;
 
 /**
@@ -24,12 +28,33 @@ import java.util.function.Function;
 @Slf4j
 public class JwtServiceImpl implements JwtService {
 
+    /**
+     * Reclamación con las autoridades del usuario en el momento de generar el token.
+     */
+    public static final String ROLES_CLAIM = "roles";
+
+    /**
+     * Reclamación que distingue los tokens de acceso de los de refresco.
+     */
+    public static final String TYPE_CLAIM = "type";
+    public static final String ACCESS_TYPE = "access";
+    public static final String REFRESH_TYPE = "refresh";
+
     @Value("${jwt.secret}")
     private String jwtSignInKey;
 
     @Value("${jwt.expiration}")
     private Long jwtExpiration;
 
+    @Value("${jwt.refresh-expiration:28800}")
+    private Long jwtRefreshExpiration = 28800L;
+
+    /**
+     * Algoritmo y verificador de firma, creados una sola vez porque son seguros entre hilos.
+     */
+    private volatile Algorithm algorithm;
+    private volatile JWTVerifier verifier;
+
     /**
      * Extrae el nombre de usuario del token JWT.
      *
@@ -38,7 +63,6 @@ public class JwtServiceImpl implements JwtService {
      */
     @Override
     public String extractUserName(String token) {
-        log.info("Extracting user name from token " + token);
         return extractClaim(token, DecodedJWT::getSubject);
     }
 
@@ -54,6 +78,25 @@ public class JwtServiceImpl implements JwtService {
         return generateToken(new HashMap<>(), userDetails);
     }
 
+    /**
+     * Genera un token de refresco para un usuario dado. Solo lleva el guuid, no los roles.
+     *
+     * @param userDetails los detalles del usuario que se utilizarán para generar el token.
+     * @return el token de refresco generado.
+     */
+    @Override
+    public String generateRefreshToken(UserDetails userDetails) {
+        Date now = new Date();
+        return JWT.create()
+                .withHeader(createHeader())
+                .withSubject(((User) userDetails).getGuuid())
+                .withJWTId(UUID.randomUUID().toString())
+                .withIssuedAt(now)
+                .withExpiresAt(new Date(now.getTime() + (1000 * jwtRefreshExpiration)))
+                .withClaim(TYPE_CLAIM, REFRESH_TYPE)
+                .sign(algorithm());
+    }
+
     /**
      * Verifica si un token JWT es válido para un usuario dado.
      *
@@ -63,22 +106,24 @@ public class JwtServiceImpl implements JwtService {
      */
     @Override
     public boolean isTokenValid(String token, UserDetails userDetails) {
-        log.info("Exctracting claim from token: " + token);
-        final String username = extractUserName(token);
-        log.info("extrayendo username para comprobar validez: " + username);
-        log.info("username userDetails: " + userDetails.getUsername());
-        return (username.equals(((User) userDetails).getGuuid())) && !isTokenExpired(token);
+        try {
+            return verifyToken(token).getSubject().equals(((User) userDetails).getGuuid());
+        } catch (JWTVerificationException e) {
+            log.debug("Token no válido: {}", e.getMessage());
+            return false;
+        }
     }
 
     /**
-     * Verifica si un token JWT ha expirado.
+     * Decodifica el token una sola vez comprobando la firma HMAC y la fecha de expiración.
      *
      * @param token el token JWT que se debe verificar.
-     * @return {@code true} si el token ha expirado, {@code false} si el token no ha expirado.
+     * @return el token decodificado.
+     * @throws JWTVerificationException si la firma no es válida o el token ha expirado.
      */
-    private boolean isTokenExpired(String token) {
-        Date expirationDate = extractExpiration(token);
-        return expirationDate.before(new Date());
+    @Override
+    public DecodedJWT verifyToken(String token) {
+        return verifier().verify(token);
     }
 
     /**
@@ -92,7 +137,7 @@ public class JwtServiceImpl implements JwtService {
     }
 
     /**
-     * Extrae una reclamación específica del token JWT.
+     * Extrae una reclamación específica del token JWT, verificándolo antes.
      *
      * @param token el token JWT del cual se extraerá la reclamación.
      * @param claimsResolvers una función que resuelve la reclamación.
@@ -100,9 +145,7 @@ public class JwtServiceImpl implements JwtService {
      * @return el valor de la reclamación extraída.
      */
     private <T> T extractClaim(String token, Function<DecodedJWT, T> claimsResolvers) {
-        log.info("Extracting claim from token " + token);
-        final DecodedJWT decodedJWT = JWT.decode(token);
-        return claimsResolvers.apply(decodedJWT);
+        return claimsResolvers.apply(verifyToken(token));
     }
 
     /**
@@ -113,17 +156,19 @@ public class JwtServiceImpl implements JwtService {
      * @return el token JWT generado.
      */
     private String generateToken(Map<String, Object> extraClaims, UserDetails userDetails){
-        Algorithm algorithm = Algorithm.HMAC512(getSignInKey());
         Date now = new Date();
         Date expirationDate = new Date(now.getTime() + (1000 *  jwtExpiration));
         String guuid = ((User) userDetails).getGuuid();
         return JWT.create()
                 .withHeader(createHeader())
                 .withSubject(guuid)
+                .withJWTId(UUID.randomUUID().toString())
                 .withIssuedAt(now)
                 .withExpiresAt(expirationDate)
+                .withClaim(TYPE_CLAIM, ACCESS_TYPE)
+                .withClaim(ROLES_CLAIM, userDetails.getAuthorities().stream().map(GrantedAuthority::getAuthority).toList())
                 .withClaim("extraClaims", extraClaims)
-                .sign(algorithm);
+                .sign(algorithm());
     }
 
     /**
@@ -145,4 +190,18 @@ public class JwtServiceImpl implements JwtService {
     private byte[] getSignInKey() {
         return Base64.getEncoder().encode(jwtSignInKey.getBytes());
     }
+
+    private Algorithm algorithm() {
+        if (algorithm == null) {
+            algorithm = Algorithm.HMAC512(getSignInKey());
+        }
+        return algorithm;
+    }
+
+    private JWTVerifier verifier() {
+        if (verifier == null) {
+            verifier = JWT.require(algorithm()).build();
+        }
+        return verifier;
+    }
 }
@@ -0,0 +1,137 @@
+package jyrs.dev.vivesbank.auth.password;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import jyrs.dev.vivesbank.auth.exception.AuthServiceBusy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cálculo y comprobación de contraseñas en un grupo de hilos propio y acotado.
+ * BCrypt consume CPU a propósito: ejecutándolo aparte, un pico de inicios de sesión solo ocupa unos pocos núcleos
+ * y una cola limitada, en lugar de todos los hilos de Tomcat. Si la cola está llena o la espera es demasiado larga
+ * se rechaza la petición con {@link AuthServiceBusy}.
+ * @author Raul Fernandez, Yahya El Hadri, Javier Ruiz, Javier Hernandez, Samuel Cortes
+ * @since 1.0
+ */
+
+@Service
+@Slf4j
+public class PasswordHashingService {
+
+    private final PasswordEncoder passwordEncoder;
+    private final ThreadPoolExecutor executor;
+    private final long timeoutMs;
+    private final Timer encodeTimer;
+    private final Timer matchesTimer;
+    private final Timer waitTimer;
+    private final Counter rejected;
+
+    @Autowired
+    public PasswordHashingService(PasswordEncoder passwordEncoder, MeterRegistry registry,
+                                  @Value("${auth.password.threads:0}") int threads,
+                                  @Value("${auth.password.queue-size:64}") int queueSize,
+                                  @Value("${auth.password.timeout-ms:5000}") long timeoutMs) {
+        this.passwordEncoder = passwordEncoder;
+        this.timeoutMs = timeoutMs;
+
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        var counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueSize)),
+                runnable -> {
+                    var thread = new Thread(runnable, "password-hash-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+
+        this.encodeTimer = Timer.builder("auth.password.duration").tag("operation", "encode").register(registry);
+        this.matchesTimer = Timer.builder("auth.password.duration").tag("operation", "matches").register(registry);
+        this.waitTimer = Timer.builder("auth.password.queue.wait").register(registry);
+        this.rejected = Counter.builder("auth.password.rejected").register(registry);
+        Gauge.builder("auth.password.queue.size", executor, e -> e.getQueue().size()).register(registry);
+        Gauge.builder("auth.password.active", executor, ThreadPoolExecutor::getActiveCount).register(registry);
+    }
+
+    /**
+     * Calcula el hash de una contraseña.
+     * @param rawPassword La contraseña en claro.
+     * @return El hash.
+     * @throws AuthServiceBusy Si no hay capacidad para calcularlo a tiempo.
+     * @since 1.0
+     */
+
+    public String encode(CharSequence rawPassword) {
+        return run(() -> passwordEncoder.encode(rawPassword), encodeTimer);
+    }
+
+    /**
+     * Comprueba una contraseña contra su hash.
+     * @param rawPassword La contraseña en claro.
+     * @param encodedPassword El hash guardado.
+     * @return {@code true} si coinciden.
+     * @throws AuthServiceBusy Si no hay capacidad para comprobarla a tiempo.
+     * @since 1.0
+     */
+
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        if (encodedPassword == null) {
+            return false;
+        }
+        return run(() -> passwordEncoder.matches(rawPassword, encodedPassword), matchesTimer);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private <T> T run(Callable<T> task, Timer timer) {
+        long submitted = System.nanoTime();
+        Future<T> future;
+        try {
+            future = executor.submit(() -> {
+                waitTimer.record(System.nanoTime() - submitted, TimeUnit.NANOSECONDS);
+                return timer.recordCallable(task);
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            log.warn("Cola de contraseñas llena, se rechaza la petición");
+            throw new AuthServiceBusy("Demasiadas peticiones de autenticación, inténtelo de nuevo en unos segundos");
+        }
+
+        try {
+            return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            rejected.increment();
+            throw new AuthServiceBusy("Demasiadas peticiones de autenticación, inténtelo de nuevo en unos segundos");
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new AuthServiceBusy("Autenticación interrumpida");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package jyrs.dev.vivesbank.auth.revocation;
+
+import com.auth0.jwt.interfaces.DecodedJWT;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+
+/**
+ * Lista de revocación de tokens JWT.
+ * Guarda los identificadores (jti) de los tokens revocados hasta que caducan y, para cerrar todas las sesiones
+ * de un usuario, la fecha a partir de la cual sus tokens anteriores dejan de valer. La comprobación de cada
+ * petición pasa primero por un filtro de Bloom, así que un token no revocado casi nunca consulta el conjunto exacto.
+ * Las revocaciones se comparten entre nodos mediante un conjunto ordenado de Redis que cada nodo lee periódicamente.
+ * Todo se conserva durante la vida del token más largo (el de refresco), porque una fecha de corte o un token
+ * revocado que se olvide antes volvería a dar por válidos los tokens de refresco afectados.
+ * @author Raul Fernandez, Yahya El Hadri, Javier Ruiz, Javier Hernandez, Samuel Cortes
+ * @since 1.0
+ */
+
+@Service
+@Slf4j
+public class TokenRevocationService {
+
+    static final String REDIS_KEY = "auth:revoked";
+    static final String USED_KEY_PREFIX = "auth:used:";
+    private static final String TOKEN_PREFIX = "jti:";
+    private static final String USER_PREFIX = "user:";
+    private static final long SYNC_OVERLAP_MS = 30_000;
+
+    private final StringRedisTemplate redis;
+    private final Map<String, Long> revokedTokens = new ConcurrentHashMap<>();
+    private final Map<String, Long> userCutoffs = new ConcurrentHashMap<>();
+    private final Queue<String> unpublished = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean redisAvailable = new AtomicBoolean(true);
+    private final int expectedRevocations;
+    private final double falsePositiveRate;
+    private final long retentionMs;
+    private final LongSupplier clock;
+    private volatile BloomFilter filter;
+    private int capacity;
+    private long lastSync;
+
+    @Autowired
+    public TokenRevocationService(StringRedisTemplate redis,
+                                  @Value("${jwt.expiration}") long jwtExpirationSeconds,
+                                  @Value("${jwt.refresh-expiration}") long refreshExpirationSeconds,
+                                  @Value("${jwt.revocation.expected-revocations:100000}") int expectedRevocations,
+                                  @Value("${jwt.revocation.false-positive-rate:0.01}") double falsePositiveRate) {
+        this(redis, jwtExpirationSeconds, refreshExpirationSeconds, expectedRevocations, falsePositiveRate,
+                System::currentTimeMillis);
+    }
+
+    TokenRevocationService(StringRedisTemplate redis, long jwtExpirationSeconds, long refreshExpirationSeconds,
+                           int expectedRevocations, double falsePositiveRate, LongSupplier clock) {
+        this.redis = redis;
+        this.retentionMs = Math.max(jwtExpirationSeconds, refreshExpirationSeconds) * 1000;
+        this.expectedRevocations = Math.max(16, expectedRevocations);
+        this.falsePositiveRate = falsePositiveRate;
+        this.clock = clock;
+        this.capacity = this.expectedRevocations;
+        this.filter = new BloomFilter(capacity, falsePositiveRate);
+    }
+
+    /**
+     * Revoca un token hasta su fecha de expiración.
+     * @param jti El identificador del token.
+     * @param expiresAt La fecha de expiración del token.
+     * @since 1.0
+     */
+
+    public void revoke(String jti, Instant expiresAt) {
+        long expiry = expiresAt.toEpochMilli();
+        if (expiry <= clock.getAsLong()) {
+            return;
+        }
+        addToken(jti, expiry);
+        publish(TOKEN_PREFIX + jti + ":" + expiry);
+        log.info("Token {} revocado", jti);
+    }
+
+    /**
+     * Revoca un token solo si no lo estaba ya. La comprobación y la revocación son atómicas en este nodo y, mediante
+     * un {@code SET NX} en Redis, también entre nodos, así que de dos peticiones que usen a la vez el mismo token de
+     * refresco solo una lo consigue. Si Redis no responde la garantía queda limitada a este nodo.
+     * @param jti El identificador del token.
+     * @param expiresAt La fecha de expiración del token.
+     * @return {@code true} si esta llamada ha revocado el token, {@code false} si ya estaba revocado o caducado.
+     * @since 1.0
+     */
+
+    public boolean revokeOnce(String jti, Instant expiresAt) {
+        long expiry = expiresAt.toEpochMilli();
+        long ttl = expiry - clock.getAsLong();
+        if (ttl <= 0) {
+            return false;
+        }
+        synchronized (this) {
+            if (revokedTokens.containsKey(jti)) {
+                return false;
+            }
+            addToken(jti, expiry);
+        }
+        try {
+            if (Boolean.FALSE.equals(redis.opsForValue().setIfAbsent(USED_KEY_PREFIX + jti, "1", Duration.ofMillis(ttl)))) {
+                log.warn("Token {} ya usado en otro nodo", jti);
+                return false;
+            }
+        } catch (RuntimeException e) {
+            redisUnavailable(e);
+        }
+        publish(TOKEN_PREFIX + jti + ":" + expiry);
+        log.info("Token {} revocado", jti);
+        return true;
+    }
+
+    /**
+     * Revoca todos los tokens emitidos hasta ahora para un usuario.
+     * La fecha de corte se redondea al segundo siguiente porque la fecha de emisión del token no guarda milisegundos.
+     * @param guuid El guuid del usuario.
+     * @since 1.0
+     */
+
+    public void revokeAll(String guuid) {
+        long cutoff = (clock.getAsLong() / 1000 + 1) * 1000;
+        userCutoffs.merge(guuid, cutoff, Math::max);
+        publish(USER_PREFIX + guuid + ":" + cutoff);
+        log.info("Sesiones del usuario {} revocadas", guuid);
+    }
+
+    /**
+     * Comprueba si un token verificado ha sido revocado.
+     * @param jwt El token ya verificado.
+     * @return {@code true} si se ha revocado el token o todas las sesiones de su usuario.
+     * @since 1.0
+     */
+
+    public boolean isRevoked(DecodedJWT jwt) {
+        String jti = jwt.getId();
+        if (jti != null && filter.mightContain(jti) && revokedTokens.containsKey(jti)) {
+            return true;
+        }
+        if (userCutoffs.isEmpty()) {
+            return false;
+        }
+        Long cutoff = userCutoffs.get(jwt.getSubject());
+        return cutoff != null && jwt.getIssuedAt() != null && jwt.getIssuedAt().getTime() < cutoff;
+    }
+
+    /**
+     * Purga las revocaciones caducadas, publica las que no se pudieron enviar a Redis y trae las que han hecho
+     * otros nodos.
+     * @since 1.0
+     */
+
+    @Scheduled(fixedDelayString = "${jwt.revocation.sync-interval:5000}")
+    public void sync() {
+        purgeExpired();
+
+        long now = clock.getAsLong();
+        try {
+            for (String member; (member = unpublished.peek()) != null; unpublished.poll()) {
+                redis.opsForZSet().add(REDIS_KEY, member, now);
+            }
+            var members = redis.opsForZSet().rangeByScore(REDIS_KEY, Math.max(0, lastSync - SYNC_OVERLAP_MS), Double.POSITIVE_INFINITY);
+            if (members != null) {
+                members.forEach(this::apply);
+            }
+            redis.opsForZSet().removeRangeByScore(REDIS_KEY, 0, now - retentionMs);
+            lastSync = now;
+            if (redisAvailable.compareAndSet(false, true)) {
+                log.info("Sincronización de tokens revocados con Redis restablecida");
+            }
+        } catch (RuntimeException e) {
+            redisUnavailable(e);
+        }
+    }
+
+    public int revokedTokens() {
+        return revokedTokens.size();
+    }
+
+    synchronized void purgeExpired() {
+        long now = clock.getAsLong();
+        boolean removed = revokedTokens.values().removeIf(expiry -> expiry <= now);
+        userCutoffs.values().removeIf(cutoff -> cutoff + retentionMs <= now);
+        if (removed) {
+            rebuildFilter();
+        }
+    }
+
+    private synchronized void addToken(String jti, long expiry) {
+        if (revokedTokens.put(jti, expiry) != null) {
+            return;
+        }
+        if (revokedTokens.size() > capacity) {
+            rebuildFilter();
+        } else {
+            filter.put(jti);
+        }
+    }
+
+    private void rebuildFilter() {
+        capacity = Math.max(expectedRevocations, revokedTokens.size() * 2);
+        var rebuilt = new BloomFilter(capacity, falsePositiveRate);
+        revokedTokens.keySet().forEach(rebuilt::put);
+        filter = rebuilt;
+    }
+
+    private void apply(String member) {
+        int separator = member.lastIndexOf(':');
+        long value;
+        try {
+            value = Long.parseLong(member.substring(separator + 1));
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            log.warn("Entrada de revocación no válida: {}", member);
+            return;
+        }
+        if (member.startsWith(TOKEN_PREFIX) && value > clock.getAsLong()) {
+            addToken(member.substring(TOKEN_PREFIX.length(), separator), value);
+        } else if (member.startsWith(USER_PREFIX)) {
+            userCutoffs.merge(member.substring(USER_PREFIX.length(), separator), value, Math::max);
+        }
+    }
+
+    private void publish(String member) {
+        try {
+            redis.opsForZSet().add(REDIS_KEY, member, clock.getAsLong());
+        } catch (RuntimeException e) {
+            unpublished.add(member);
+            redisUnavailable(e);
+        }
+    }
+
+    private void redisUnavailable(RuntimeException e) {
+        if (redisAvailable.compareAndSet(true, false)) {
+            log.warn("No se pueden sincronizar los tokens revocados con Redis, se aplican solo en este nodo: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package jyrs.dev.vivesbank.auth.throttle;
+
+import jyrs.dev.vivesbank.auth.exception.AuthTooManyAttempts;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Limita los intentos de inicio de sesión por IP y por usuario con cubos de fichas.
+ * Cada intento consume una ficha del cubo de su IP, y cada contraseña incorrecta una del cubo del usuario; un
+ * inicio de sesión correcto vacía el historial del usuario. Así un ataque con muchas credenciales se frena antes
+ * de llegar a BCrypt y no quita capacidad a los usuarios legítimos.
+ * @author Raul Fernandez, Yahya El Hadri, Javier Ruiz, Javier Hernandez, Samuel Cortes
+ * @since 1.0
+ */
+
+@Component
+@Slf4j
+public class LoginThrottle {
+
+    private final Map<String, Bucket> ipBuckets = new ConcurrentHashMap<>();
+    private final Map<String, Bucket> userBuckets = new ConcurrentHashMap<>();
+    private final int ipCapacity;
+    private final double ipRefillPerNano;
+    private final int userCapacity;
+    private final double userRefillPerNano;
+    private final LongSupplier clock;
+
+    @Autowired
+    public LoginThrottle(@Value("${auth.throttle.ip-capacity:30}") int ipCapacity,
+                         @Value("${auth.throttle.ip-refill-per-minute:30}") int ipRefillPerMinute,
+                         @Value("${auth.throttle.user-capacity:5}") int userCapacity,
+                         @Value("${auth.throttle.user-refill-per-minute:2}") int userRefillPerMinute) {
+        this(ipCapacity, ipRefillPerMinute, userCapacity, userRefillPerMinute, System::nanoTime);
+    }
+
+    LoginThrottle(int ipCapacity, int ipRefillPerMinute, int userCapacity, int userRefillPerMinute, LongSupplier clock) {
+        this.ipCapacity = Math.max(1, ipCapacity);
+        this.ipRefillPerNano = (double) ipRefillPerMinute / TimeUnit.MINUTES.toNanos(1);
+        this.userCapacity = Math.max(1, userCapacity);
+        this.userRefillPerNano = (double) userRefillPerMinute / TimeUnit.MINUTES.toNanos(1);
+        this.clock = clock;
+    }
+
+    /**
+     * Registra un intento de inicio de sesión, antes de comprobar la contraseña.
+     * @param username El nombre de usuario.
+     * @param ip La IP de origen.
+     * @throws AuthTooManyAttempts Si la IP o el usuario han superado su límite.
+     * @since 1.0
+     */
+
+    public void acquire(String username, String ip) {
+        long now = clock.getAsLong();
+        var user = userBuckets.get(key(username));
+        if (user != null && !user.hasToken(now)) {
+            log.warn("Demasiados intentos fallidos para el usuario {}", username);
+            throw new AuthTooManyAttempts("Demasiados intentos fallidos, inténtelo de nuevo más tarde");
+        }
+        if (ip != null && !ipBuckets.computeIfAbsent(ip, k -> new Bucket(ipCapacity, ipRefillPerNano, now)).tryConsume(now)) {
+            log.warn("Demasiados intentos de inicio de sesión desde {}", ip);
+            throw new AuthTooManyAttempts("Demasiados intentos de inicio de sesión, inténtelo de nuevo más tarde");
+        }
+    }
+
+    public void onFailure(String username) {
+        long now = clock.getAsLong();
+        userBuckets.computeIfAbsent(key(username), k -> new Bucket(userCapacity, userRefillPerNano, now)).tryConsume(now);
+    }
+
+    public void onSuccess(String username) {
+        userBuckets.remove(key(username));
+    }
+
+    /**
+     * Elimina los cubos que ya se han rellenado por completo, que equivalen a no tener cubo.
+     * @since 1.0
+     */
+
+    @Scheduled(fixedDelayString = "${auth.throttle.cleanup-interval:60000}")
+    public void evictIdle() {
+        long now = clock.getAsLong();
+        ipBuckets.values().removeIf(bucket -> bucket.isFull(now));
+        userBuckets.values().removeIf(bucket -> bucket.isFull(now));
+    }
+
+    private static String key(String username) {
+        return username == null ? "" : username.toLowerCase(Locale.ROOT);
+    }
+
+    private static final class Bucket {
+        private final int capacity;
+        private final double refillPerNano;
+        private double tokens;
+        private long updatedAt;
+
+        Bucket(int capacity, double refillPerNano, long now) {
+            this.capacity = capacity;
+            this.refillPerNano = refillPerNano;
+            this.tokens = capacity;
+            this.updatedAt = now;
+        }
+
+        synchronized boolean tryConsume(long now) {
+            refill(now);
+            if (tokens < 1) {
+                return false;
+            }
+            tokens -= 1;
+            return true;
+        }
+
+        synchronized boolean hasToken(long now) {
+            refill(now);
+            return tokens >= 1;
+        }
+
+        synchronized boolean isFull(long now) {
+            refill(now);
+            return tokens >= capacity;
+        }
+
+        private void refill(long now) {
+            tokens = Math.min(capacity, tokens + (now - updatedAt) * refillPerNano);
+            updatedAt = now;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package jyrs.dev.vivesbank.auth.users.cache;
+
+import jakarta.annotation.PreDestroy;
+import jyrs.dev.vivesbank.config.cache.BoundedCache;
+import jyrs.dev.vivesbank.config.redis.RedisChannelSubscription;
+import jyrs.dev.vivesbank.users.models.User;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Caché acotada de usuarios autenticados indexada por guuid.
+ * Evita consultar la base de datos en cada petición con JWT: cada entrada caduca pasado su tiempo de vida y
+ * los servicios que cambian roles o borran usuarios la invalidan. La invalidación se aplica en este nodo de inmediato
+ * y se publica en un canal de Redis para que los demás nodos la apliquen al recibirla. Si Redis no está disponible,
+ * los demás nodos siguen aceptando el usuario con sus datos anteriores como mucho hasta que caduca su entrada,
+ * {@code jwt.principal-cache.ttl-seconds}.
+ * @author Raul Fernandez, Yahya El Hadri, Javier Ruiz, Javier Hernandez, Samuel Cortes
+ * @since 1.0
+ */
+
+@Component
+@Slf4j
+public class PrincipalCache implements MessageListener {
+
+    public static final String CHANNEL = "auth:principals:invalidate";
+    private static final char SEPARATOR = '|';
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final BoundedCache<String, User> entries;
+    private final StringRedisTemplate redis;
+    private final RedisChannelSubscription subscription;
+
+    @Autowired
+    public PrincipalCache(StringRedisTemplate redis, RedisConnectionFactory connectionFactory,
+                          @Value("${jwt.principal-cache.ttl-seconds:60}") long ttlSeconds,
+                          @Value("${jwt.principal-cache.max-size:10000}") int maxSize) {
+        this(redis, connectionFactory, ttlSeconds, maxSize, System::nanoTime);
+    }
+
+    PrincipalCache(StringRedisTemplate redis, RedisConnectionFactory connectionFactory, long ttlSeconds, int maxSize,
+                   LongSupplier clock) {
+        this.redis = redis;
+        this.subscription = new RedisChannelSubscription(connectionFactory, CHANNEL, this, "invalidar la caché de autenticación");
+        this.entries = new BoundedCache<>(maxSize, TimeUnit.SECONDS.toNanos(ttlSeconds), clock);
+    }
+
+    /**
+     * Obtiene el usuario de la caché o lo carga si no está o ha caducado.
+     * Los usuarios borrados no se guardan, así que cada petición suya vuelve a consultar su estado. Tampoco se guarda
+     * lo cargado si mientras tanto se ha invalidado alguna entrada, porque podría ser anterior al cambio.
+     * @param guuid El guuid del usuario.
+     * @param loader Carga el usuario cuando no está en caché.
+     * @return El usuario, o vacío si el cargador no lo encuentra.
+     * @since 1.0
+     */
+
+    public Optional<User> get(String guuid, Function<String, Optional<User>> loader) {
+        var cached = entries.get(guuid);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+
+        long startedAt = entries.generation();
+        var loaded = loader.apply(guuid);
+        loaded.filter(user -> !Boolean.TRUE.equals(user.getIsDeleted()))
+                .ifPresent(user -> entries.putIfCurrent(guuid, user, startedAt));
+        return loaded;
+    }
+
+    /**
+     * Elimina un usuario de la caché de este nodo y avisa al resto. Se debe llamar siempre que cambien sus roles
+     * o se borre.
+     * @param guuid El guuid del usuario.
+     * @since 1.0
+     */
+
+    public void invalidate(String guuid) {
+        if (guuid == null) {
+            return;
+        }
+        invalidateLocal(guuid);
+        try {
+            redis.convertAndSend(CHANNEL, encode(nodeId, guuid));
+        } catch (RuntimeException e) {
+            log.warn("No se ha podido avisar a los demás nodos de la invalidación del usuario {}: {}", guuid, e.getMessage());
+        }
+    }
+
+    public void invalidateAll() {
+        entries.invalidateAll();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Se suscribe al canal de invalidaciones si aún no lo está. Una vez suscrito, el contenedor de Redis se encarga
+     * de reconectar.
+     * @since 1.0
+     */
+
+    @Scheduled(fixedDelayString = "${jwt.principal-cache.retry-interval-ms:5000}")
+    public void subscribe() {
+        if (subscription.subscribe()) {
+            // Mientras no estaba suscrito se han podido perder invalidaciones de otros nodos
+            invalidateAll();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        subscription.shutdown();
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int separator = body.indexOf(SEPARATOR);
+        if (separator < 0) {
+            log.warn("Invalidación de la caché de autenticación no válida recibida de Redis");
+            return;
+        }
+        if (!nodeId.equals(body.substring(0, separator))) {
+            invalidateLocal(body.substring(separator + 1));
+        }
+    }
+
+    static String encode(String nodeId, String guuid) {
+        return nodeId + SEPARATOR + guuid;
+    }
+
+    private void invalidateLocal(String guuid) {
+        if (entries.invalidate(guuid)) {
+            log.debug("Usuario {} eliminado de la caché de autenticación", guuid);
+        }
+    }
+}
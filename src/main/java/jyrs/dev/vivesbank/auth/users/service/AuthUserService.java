@@ -1,5 +1,6 @@
 package jyrs.dev.vivesbank.auth.users.service;
 
+import jyrs.dev.vivesbank.users.models.User;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 
@@ -18,4 +19,12 @@ public interface AuthUserService extends UserDetailsService {
      */
     @Override
     UserDetails loadUserByUsername(String username);
+
+    /**
+     * Carga el usuario autenticado a partir del guuid del token, usando la caché de usuarios autenticados.
+     *
+     * @param guuid el identificador único del usuario.
+     * @return el usuario, si existe y no está borrado.
+     */
+    User loadUserByGuuid(String guuid);
 }
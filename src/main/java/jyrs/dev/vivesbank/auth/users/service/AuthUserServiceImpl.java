@@ -1,12 +1,16 @@
 package jyrs.dev.vivesbank.auth.users.service;
 
+import jyrs.dev.vivesbank.auth.users.cache.PrincipalCache;
 import jyrs.dev.vivesbank.auth.users.repositories.AuthUserRepository;
+import jyrs.dev.vivesbank.users.models.User;
 import jyrs.dev.vivesbank.users.users.exceptions.UserExceptions;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
 
+import java.util.regex.Pattern;
+
 /**
  * Implementación del servicio de autenticación para cargar usuarios desde el repositorio.
  * Esta clase se encarga de proporcionar los detalles del usuario necesarios para la autenticación.
@@ -16,19 +20,28 @@ import org.springframework.stereotype.Service;
 @Slf4j
 public class AuthUserServiceImpl implements AuthUserService {
 
+    private static final Pattern GUUID = Pattern.compile("^[A-Za-z0-9-_]{11}$");
+
     /**
      * Repositorio para acceder a los datos de autenticación de los usuarios.
      */
     private final AuthUserRepository userRepository;
 
+    /**
+     * Caché de usuarios autenticados por guuid.
+     */
+    private final PrincipalCache principalCache;
+
     /**
      * Constructor que inyecta el repositorio de usuarios.
      *
      * @param userRepository el repositorio de usuarios utilizado para acceder a los datos de autenticación.
+     * @param principalCache la caché de usuarios autenticados.
      */
     @Autowired
-    public AuthUserServiceImpl(AuthUserRepository userRepository) {
+    public AuthUserServiceImpl(AuthUserRepository userRepository, PrincipalCache principalCache) {
         this.userRepository = userRepository;
+        this.principalCache = principalCache;
     }
 
     /**
@@ -51,6 +64,21 @@ public class AuthUserServiceImpl implements AuthUserService {
         }
     }
 
+    /**
+     * Carga el usuario autenticado a partir del guuid del token. Solo consulta la base de datos si el usuario
+     * no está en la caché o su entrada ha caducado.
+     *
+     * @param guuid el identificador único del usuario.
+     * @return el usuario encontrado.
+     * @throws UserExceptions.UserNotFound si no existe o está borrado.
+     */
+    @Override
+    public User loadUserByGuuid(String guuid) throws UserExceptions.UserNotFound {
+        return principalCache.get(guuid, userRepository::findByGuuid)
+                .filter(user -> !Boolean.TRUE.equals(user.getIsDeleted()))
+                .orElseThrow(() -> new UserExceptions.UserNotFound("No se ha encontrado usuario con guuid: " + guuid));
+    }
+
     /**
      * Verifica si una cadena de texto corresponde a un identificador único (guuid).
      *
@@ -58,6 +86,6 @@ public class AuthUserServiceImpl implements AuthUserService {
      * @return {@code true} si el valor corresponde a un guuid, {@code false} en caso contrario.
      */
     private boolean isGuuid(String guuid) {
-        return guuid.matches("^[A-Za-z0-9-_]{11}$");
+        return GUUID.matcher(guuid).matches();
     }
 }
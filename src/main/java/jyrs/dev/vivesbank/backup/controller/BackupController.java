@@ -12,7 +12,8 @@ import org.springframework.web.multipart.MultipartFile;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Objects;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
 
 @Slf4j
 @RestController
@@ -30,7 +31,8 @@ public class BackupController {
 
 
     @PostMapping("/export")
-    public ResponseEntity<String> exportBackup(@RequestParam(required = false) String fileName) {
+    public ResponseEntity<String> exportBackup(@RequestParam(required = false) String fileName,
+                                               @RequestParam(defaultValue = "false") boolean incremental) {
         if (fileName == null || fileName.isBlank()) {
             fileName = "backup_" + System.currentTimeMillis() + ".zip";
         }
@@ -43,11 +45,15 @@ public class BackupController {
             }
         }
 
-        File zipFile = new File(backupDir, fileName);
+        File zipFile = resolveBackup(fileName);
+        if (zipFile == null) {
+            return ResponseEntity.badRequest().body("Nombre de backup no válido: " + fileName);
+        }
         try {
-            service.exportToZip(zipFile);
+            File previous = incremental ? service.findLatestBackup(backupDir) : null;
+            var stats = previous == null ? service.exportToZip(zipFile) : service.exportIncrementalZip(zipFile, previous);
 
-            return ResponseEntity.ok("Backup creado: " + zipFile.getAbsolutePath());
+            return ResponseEntity.ok("Backup creado: " + zipFile.getAbsolutePath() + " (" + stats + ")");
         } catch (Exception e) {
             log.error("Error creando backup", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -55,24 +61,59 @@ public class BackupController {
         }
     }
 
+    @PostMapping("/restore")
+    public ResponseEntity<String> restoreBackup(@RequestParam String fileName) {
+        File zipFile = resolveBackup(fileName);
+        if (zipFile == null) {
+            return ResponseEntity.badRequest().body("Nombre de backup no válido: " + fileName);
+        }
+        if (!zipFile.exists()) {
+            return ResponseEntity.badRequest().body("No existe el backup " + fileName);
+        }
+
+        var stats = service.restoreChain(zipFile);
+
+        return ResponseEntity.ok("Backup restaurado: " + zipFile.getName() + " (" + stats + ")");
+    }
+
     @PostMapping("/import")
     public ResponseEntity<String> importBackup(@RequestParam("file") MultipartFile multipartFile) {
         if (multipartFile.isEmpty()) {
             return ResponseEntity.badRequest().body("No existe ningun file.");
         }
 
+        File zipFile = null;
         try {
-            File zipFile = new File(Objects.requireNonNull(multipartFile.getOriginalFilename()));
+            // El nombre original lo elige el cliente: se guarda en un temporal para no escribir fuera de donde toca
+            zipFile = File.createTempFile("import_", ".zip");
             multipartFile.transferTo(zipFile);
 
-            service.importFromZip(zipFile);
+            var stats = service.importFromZip(zipFile);
 
-            return ResponseEntity.ok("Zip leido correctamente: " + zipFile.getName());
-        } catch (IOException e) {
+            return ResponseEntity.ok("Zip leido correctamente: " + multipartFile.getOriginalFilename() + " (" + stats + ")");
+        } catch (IOException | RuntimeException e) {
             log.error("Error importando Zip", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body("Error importando ZIP: " + e.getMessage());
+        } finally {
+            if (zipFile != null) {
+                zipFile.delete();
+            }
         }
     }
 
+    /**
+     * Resuelve un nombre de backup dentro del directorio de backups.
+     * @return El fichero, o null si el nombre sale del directorio (rutas absolutas, "..", subdirectorios).
+     */
+    private File resolveBackup(String fileName) {
+        Path directory = Path.of(BACKUP_DIRECTORY).toAbsolutePath().normalize();
+        Path file;
+        try {
+            file = directory.resolve(fileName).normalize();
+        } catch (InvalidPathException e) {
+            return null;
+        }
+        return directory.equals(file.getParent()) ? file.toFile() : null;
+    }
 }
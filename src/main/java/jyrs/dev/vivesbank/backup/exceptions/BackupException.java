@@ -0,0 +1,7 @@
+package jyrs.dev.vivesbank.backup.exceptions;
+
+public abstract class BackupException extends RuntimeException {
+    public BackupException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,9 @@
+package jyrs.dev.vivesbank.backup.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class BackupManifestInvalid extends BackupException {
+    public BackupManifestInvalid(String message) { super(message); }
+}
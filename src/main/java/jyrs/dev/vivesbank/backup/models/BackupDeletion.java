@@ -0,0 +1,55 @@
+package jyrs.dev.vivesbank.backup.models;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Registro del borrado físico de un cliente, cuenta, tarjeta, producto o movimiento.
+ * Los backups incrementales solo recogen filas con cambios, así que las filas borradas se exportan a partir de estos
+ * registros para poder borrarlas también al restaurar la cadena.
+ * @author Raul Fernandez, Yahya El Hadri, Javier Ruiz, Javier Hernandez, Samuel Cortes
+ * @since 1.0
+ */
+
+@Entity
+@Table(name = "BACKUP_DELETIONS", indexes = @Index(columnList = "deletedAt"))
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class BackupDeletion {
+
+    public static final String CLIENTS = "clients";
+    public static final String BANK_ACCOUNTS = "bankAccounts";
+    public static final String CREDIT_CARDS = "creditCards";
+    public static final String PRODUCTS = "products";
+    public static final String MOVEMENTS = "movements";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    /**
+     * La entidad borrada, con el mismo nombre que su fichero en el backup.
+     * @since 1.0
+     */
+
+    @Column(nullable = false)
+    private String entityName;
+
+    /**
+     * El ID de la fila o documento borrado.
+     * @since 1.0
+     */
+
+    @Column(nullable = false)
+    private String recordId;
+
+    @Column(nullable = false)
+    private LocalDateTime deletedAt;
+}
@@ -0,0 +1,31 @@
+package jyrs.dev.vivesbank.backup.models;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Manifiesto que se guarda dentro de cada backup como {@code manifest.json}.
+ * @param type Si el backup es completo o incremental.
+ * @param since Marca de agua del backup anterior; solo se han exportado los cambios posteriores. Null en los completos.
+ * @param watermark Instante a partir del cual el siguiente backup incremental debe buscar cambios.
+ * @param chain Los ficheros que hay que restaurar en orden, empezando por el backup completo y terminando en este.
+ */
+public record BackupManifest(Type type, LocalDateTime since, LocalDateTime watermark, List<String> chain) {
+
+    public static final String ENTRY_NAME = "manifest.json";
+
+    public enum Type {
+        FULL, INCREMENTAL
+    }
+
+    public static BackupManifest full(String fileName, LocalDateTime watermark) {
+        return new BackupManifest(Type.FULL, null, watermark, List.of(fileName));
+    }
+
+    public BackupManifest next(String fileName, LocalDateTime newWatermark) {
+        var newChain = new ArrayList<>(chain);
+        newChain.add(fileName);
+        return new BackupManifest(Type.INCREMENTAL, watermark, newWatermark, List.copyOf(newChain));
+    }
+}
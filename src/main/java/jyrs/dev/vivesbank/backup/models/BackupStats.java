@@ -0,0 +1,32 @@
+package jyrs.dev.vivesbank.backup.models;
+
+import java.time.Duration;
+
+/**
+ * Estadísticas de una exportación de backup.
+ * @param records Número de registros escritos.
+ * @param bytes Bytes de JSON escritos, antes de comprimir.
+ * @param zipBytes Tamaño final del fichero ZIP.
+ * @param elapsed Tiempo total de la exportación.
+ */
+public record BackupStats(long records, long bytes, long zipBytes, Duration elapsed) {
+
+    public double recordsPerSecond() {
+        return perSecond(records);
+    }
+
+    public double bytesPerSecond() {
+        return perSecond(bytes);
+    }
+
+    private double perSecond(long value) {
+        long millis = Math.max(1, elapsed.toMillis());
+        return value * 1000.0 / millis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d registros, %d bytes (%d comprimidos) en %d ms: %.0f registros/s, %.0f bytes/s",
+                records, bytes, zipBytes, elapsed.toMillis(), recordsPerSecond(), bytesPerSecond());
+    }
+}
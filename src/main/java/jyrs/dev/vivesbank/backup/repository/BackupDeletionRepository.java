@@ -0,0 +1,33 @@
+package jyrs.dev.vivesbank.backup.repository;
+
+import jyrs.dev.vivesbank.backup.models.BackupDeletion;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+/**
+ * Repositorio JPA de los borrados pendientes de exportar en los backups incrementales.
+ * @author Raul Fernandez, Yahya El Hadri, Javier Ruiz, Javier Hernandez, Samuel Cortes
+ * @since 1.0
+ */
+
+@Repository
+public interface BackupDeletionRepository extends JpaRepository<BackupDeletion, Long>, JpaSpecificationExecutor<BackupDeletion> {
+
+    /**
+     * Elimina los borrados ya reflejados en un backup completo.
+     * @param date La marca de agua del backup completo.
+     * @return El número de registros eliminados.
+     * @since 1.0
+     */
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM BackupDeletion d WHERE d.deletedAt < ?1")
+    int deleteByDeletedAtBefore(LocalDateTime date);
+}
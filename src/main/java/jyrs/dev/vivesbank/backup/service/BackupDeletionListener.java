@@ -0,0 +1,54 @@
+package jyrs.dev.vivesbank.backup.service;
+
+import jakarta.persistence.PreRemove;
+import jyrs.dev.vivesbank.backup.models.BackupDeletion;
+import jyrs.dev.vivesbank.products.bankAccounts.models.BankAccount;
+import jyrs.dev.vivesbank.products.base.models.Product;
+import jyrs.dev.vivesbank.products.creditCards.models.CreditCard;
+import jyrs.dev.vivesbank.users.clients.models.Client;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+
+/**
+ * Listener JPA que registra cada borrado físico de clientes, cuentas, tarjetas y productos para los backups incrementales.
+ * El registro se inserta con JDBC en la misma transacción que el borrado, ya que durante los callbacks de JPA no se
+ * puede usar el EntityManager: si el borrado se deshace, el registro también.
+ * @author Raul Fernandez, Yahya El Hadri, Javier Ruiz, Javier Hernandez, Samuel Cortes
+ * @since 1.0
+ */
+
+public class BackupDeletionListener {
+
+    private static final String INSERT =
+            "INSERT INTO BACKUP_DELETIONS (ENTITY_NAME, RECORD_ID, DELETED_AT) VALUES (?, ?, ?)";
+
+    private final ObjectProvider<JdbcTemplate> jdbcTemplate;
+
+    public BackupDeletionListener(ObjectProvider<JdbcTemplate> jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PreRemove
+    public void onRemove(Object entity) {
+        var jdbc = jdbcTemplate.getIfAvailable();
+        if (jdbc == null) {
+            return;
+        }
+        switch (entity) {
+            case Client client -> record(jdbc, BackupDeletion.CLIENTS, client.getId());
+            case BankAccount account -> record(jdbc, BackupDeletion.BANK_ACCOUNTS, account.getId());
+            case CreditCard card -> record(jdbc, BackupDeletion.CREDIT_CARDS, card.getId());
+            case Product product -> record(jdbc, BackupDeletion.PRODUCTS, product.getId());
+            default -> { }
+        }
+    }
+
+    private static void record(JdbcTemplate jdbc, String entityName, Long id) {
+        if (id != null) {
+            jdbc.update(INSERT, entityName, id.toString(), Timestamp.valueOf(LocalDateTime.now()));
+        }
+    }
+}
@@ -1,8 +1,13 @@
 package jyrs.dev.vivesbank.backup.service;
 
+import jyrs.dev.vivesbank.backup.models.BackupStats;
+
 import java.io.File;
 
 public interface BackupService {
-    public void importFromZip(File zipFile);
-    public void exportToZip(File zipFile);
+    public BackupStats importFromZip(File zipFile);
+    public BackupStats exportToZip(File zipFile);
+    public BackupStats exportIncrementalZip(File zipFile, File previousZip);
+    public BackupStats restoreChain(File zipFile);
+    public File findLatestBackup(File directory);
 }
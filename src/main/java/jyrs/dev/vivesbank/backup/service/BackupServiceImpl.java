@@ -1,34 +1,83 @@
 package jyrs.dev.vivesbank.backup.service;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import jyrs.dev.vivesbank.backup.exceptions.BackupManifestInvalid;
+import jyrs.dev.vivesbank.backup.models.BackupDeletion;
+import jyrs.dev.vivesbank.backup.models.BackupManifest;
+import jyrs.dev.vivesbank.backup.models.BackupStats;
+import jyrs.dev.vivesbank.backup.repository.BackupDeletionRepository;
+import jyrs.dev.vivesbank.movements.models.Movement;
 import jyrs.dev.vivesbank.movements.repository.MovementsRepository;
 import jyrs.dev.vivesbank.movements.services.MovementsService;
+import jyrs.dev.vivesbank.products.bankAccounts.models.BankAccount;
 import jyrs.dev.vivesbank.products.bankAccounts.repositories.BankAccountRepository;
 import jyrs.dev.vivesbank.products.bankAccounts.services.BankAccountService;
+import jyrs.dev.vivesbank.products.base.models.Product;
 import jyrs.dev.vivesbank.products.base.repositories.ProductRepository;
 import jyrs.dev.vivesbank.products.base.services.ProductServices;
+import jyrs.dev.vivesbank.products.creditCards.models.CreditCard;
 import jyrs.dev.vivesbank.products.creditCards.repository.CreditCardRepository;
 import jyrs.dev.vivesbank.products.creditCards.service.CreditCardService;
+import jyrs.dev.vivesbank.users.clients.models.Client;
 import jyrs.dev.vivesbank.users.clients.repository.ClientsRepository;
 import jyrs.dev.vivesbank.users.clients.service.ClientsService;
+import jyrs.dev.vivesbank.users.models.User;
 import jyrs.dev.vivesbank.users.users.repositories.UsersRepository;
 import jyrs.dev.vivesbank.users.users.services.UsersService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.nio.file.*;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipOutputStream;
 
+import static java.util.concurrent.CompletableFuture.supplyAsync;
+
 @Slf4j
 @Service
 public class BackupServiceImpl implements BackupService {
 
-    private static final String TEMP_DIR_NAME = "StorageServiceTemp";
-
     private final ClientsService clientService;
     private final UsersService userService;
     private final BankAccountService bankAccountService;
@@ -42,9 +91,22 @@ public class BackupServiceImpl implements BackupService {
     private final ProductRepository productRepository;
     private final CreditCardRepository creditCardRepository;
     private final MovementsRepository movementsRepository;
+    private final BackupDeletionRepository deletionRepository;
+
+    private final ObjectMapper objectMapper;
+    private final EntityManager entityManager;
+    private final MongoTemplate mongoTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int pageSize;
+    private final int batchSize;
+    private final long overlapSeconds;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
 
     private static final File DEFAULT_BACKUP_FILE = new File("backup.zip");
 
+    private static final String DELETIONS_ENTRY = "deletions.json";
+
     public BackupServiceImpl(ClientsService clientService,
                              UsersService userService,
                              BankAccountService bankAccountService,
@@ -54,7 +116,15 @@ public class BackupServiceImpl implements BackupService {
                              UsersRepository userRepository,
                              BankAccountRepository bankAccountRepository,
                              ProductRepository productRepository,
-                             CreditCardRepository creditCardRepository, MovementsRepository movementsRepository) {
+                             CreditCardRepository creditCardRepository, MovementsRepository movementsRepository,
+                             BackupDeletionRepository deletionRepository,
+                             ObjectMapper objectMapper,
+                             EntityManager entityManager,
+                             MongoTemplate mongoTemplate,
+                             PlatformTransactionManager transactionManager,
+                             @Value("${backup.export.page-size:1000}") int pageSize,
+                             @Value("${backup.import.batch-size:500}") int batchSize,
+                             @Value("${backup.incremental.overlap-seconds:60}") long overlapSeconds) {
         this.clientService = clientService;
         this.userService = userService;
         this.bankAccountService = bankAccountService;
@@ -67,78 +137,432 @@ public class BackupServiceImpl implements BackupService {
         this.productRepository = productRepository;
         this.creditCardRepository = creditCardRepository;
         this.movementsRepository = movementsRepository;
+        this.deletionRepository = deletionRepository;
+        this.objectMapper = objectMapper;
+        this.entityManager = entityManager;
+        this.mongoTemplate = mongoTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.pageSize = Math.max(1, pageSize);
+        this.batchSize = Math.max(1, batchSize);
+        this.overlapSeconds = Math.max(0, overlapSeconds);
+    }
+
+    /**
+     * Exporta todas las tablas y la colección de movimientos a un ZIP, un fichero JSON por entidad.
+     * Los registros se leen por bloques (o con un cursor en MongoDB) y se escriben uno a uno directamente
+     * en la entrada del ZIP, así que la memoria usada no depende del tamaño de la base de datos y no se usan ficheros temporales.
+     * @param zipFile El fichero ZIP de destino.
+     * @return Las estadísticas de la exportación.
+     */
+    @Override
+    public BackupStats exportToZip(File zipFile) {
+        return export(zipFile, BackupManifest.full(zipFile.getName(), LocalDateTime.now()));
+    }
+
+    /**
+     * Exporta solo los registros creados o modificados desde la marca de agua del backup anterior, junto con los
+     * clientes, cuentas, tarjetas, productos y movimientos borrados desde entonces. El manifiesto del nuevo backup encadena el del anterior para poder restaurarlos en orden.
+     * @param zipFile El fichero ZIP de destino, en el mismo directorio que el backup anterior.
+     * @param previousZip El último backup correcto, completo o incremental.
+     * @return Las estadísticas de la exportación.
+     */
+    @Override
+    public BackupStats exportIncrementalZip(File zipFile, File previousZip) {
+        var previous = readManifest(previousZip);
+        return export(zipFile, previous.next(zipFile.getName(), LocalDateTime.now()));
+    }
+
+    /**
+     * Restaura un backup y todos los anteriores de su cadena: primero el completo y después cada incremental en orden.
+     * Como la importación reemplaza los registros por ID, los registros que cambian en varios incrementales acaban con su última versión,
+     * y los borrados que recoge cada incremental se aplican después de importar sus registros.
+     * @param zipFile El último backup de la cadena.
+     * @return Las estadísticas acumuladas de la restauración.
+     */
+    @Override
+    public BackupStats restoreChain(File zipFile) {
+        var manifest = readManifest(zipFile);
+        var directory = zipFile.getAbsoluteFile().toPath().normalize().getParent();
+
+        var files = new ArrayList<File>();
+        for (String name : manifest.chain()) {
+            // Los nombres vienen del propio ZIP: solo se aceptan ficheros del mismo directorio
+            var file = resolveInDirectory(directory, name);
+            if (file == null) {
+                throw new BackupManifestInvalid("La cadena de " + zipFile.getName() + " contiene un fichero no válido: " + name);
+            }
+            files.add(file.toFile());
+        }
+        if (files.isEmpty()) {
+            throw new BackupManifestInvalid("La cadena de " + zipFile.getName() + " está vacía");
+        }
+        for (File file : files) {
+            if (!file.exists()) {
+                throw new BackupManifestInvalid("Falta el backup " + file.getName() + " de la cadena de " + zipFile.getName());
+            }
+        }
+        if (readManifest(files.get(0)).type() != BackupManifest.Type.FULL) {
+            throw new BackupManifestInvalid("La cadena de " + zipFile.getName() + " no empieza por un backup completo");
+        }
+
+        long start = System.nanoTime();
+        long records = 0;
+        long bytes = 0;
+        long zipBytes = 0;
+        for (File file : files) {
+            var stats = importFromZip(file);
+            records += stats.records();
+            bytes += stats.bytes();
+            zipBytes += stats.zipBytes();
+        }
+
+        var stats = new BackupStats(records, bytes, zipBytes, Duration.ofNanos(System.nanoTime() - start));
+        log.info("Restaurada la cadena de {} backups hasta {}: {}", files.size(), zipFile.getName(), stats);
+        return stats;
     }
 
+    /**
+     * Busca el backup más reciente del directorio que pueda servir de base para un incremental.
+     * Los ZIP sin manifiesto (backups a medias o ficheros ajenos) se ignoran.
+     * @param directory El directorio de backups.
+     * @return El backup, o null si no hay ninguno válido y hay que hacer uno completo.
+     */
     @Override
-    public void exportToZip(File zipFile) {
-        log.debug("Exporting data to ZIP: {}", zipFile.getName());
-        Path tempDir;
+    public File findLatestBackup(File directory) {
+        File[] backups = directory.listFiles((dir, name) -> name.endsWith(".zip"));
+        if (backups == null) {
+            return null;
+        }
+        return Arrays.stream(backups)
+                .sorted(Comparator.comparingLong(File::lastModified).reversed())
+                .filter(this::hasManifest)
+                .findFirst()
+                .orElse(null);
+    }
+
+    private static Path resolveInDirectory(Path directory, String name) {
+        if (name == null) {
+            return null;
+        }
         try {
-            tempDir = Files.createTempDirectory(TEMP_DIR_NAME);
-
-            clientService.exportJson(tempDir.resolve("clients.json").toFile(), clientRepository.findAll());
-            userService.exportJson(tempDir.resolve("users.json").toFile(), userRepository.findAll());
-            creditCardService.exportJson(tempDir.resolve("creditCards.json").toFile(), creditCardRepository.findAll());
-            bankAccountService.exportJson(tempDir.resolve("bankAccounts.json").toFile(), bankAccountRepository.findAll());
-            productService.exportJson(tempDir.resolve("products.json").toFile(), productRepository.findAll());
-            movementsService.exportJson(tempDir.resolve("movements.json").toFile(),movementsRepository.findAll());
-
-            try (ZipOutputStream zipOutputStream = new ZipOutputStream(Files.newOutputStream(zipFile.toPath()))) {
-                Files.walk(tempDir)
-                        .filter(Files::isRegularFile)
-                        .forEach(path -> addToZip(zipOutputStream, tempDir, path));
+            var file = directory.resolve(name).normalize();
+            return directory.equals(file.getParent()) ? file : null;
+        } catch (InvalidPathException e) {
+            return null;
+        }
+    }
+
+    private boolean hasManifest(File zipFile) {
+        try {
+            readManifest(zipFile);
+            return true;
+        } catch (BackupManifestInvalid e) {
+            log.warn("Se ignora {} como base del backup incremental: {}", zipFile.getName(), e.getMessage());
+            return false;
+        }
+    }
+
+    private BackupStats export(File zipFile, BackupManifest manifest) {
+        log.debug("Exporting {} data to ZIP: {}", manifest.type(), zipFile.getName());
+        long start = System.nanoTime();
+        long records = 0;
+        long bytes;
+
+        // Margen para no perder cambios de transacciones que seguían abiertas al tomar la marca de agua anterior
+        var since = manifest.since() == null ? null : manifest.since().minusSeconds(overlapSeconds);
+
+        try (var fileOut = Files.newOutputStream(zipFile.toPath());
+             var zipOutputStream = new ZipOutputStream(new BufferedOutputStream(fileOut, BUFFER_SIZE));
+             var counter = new CountingOutputStream(zipOutputStream)) {
+
+            records += writeTable(zipOutputStream, counter, "clients.json", clientRepository, changedSince(since), Client::getId);
+            records += writeTable(zipOutputStream, counter, "users.json", userRepository, changedSince(since), User::getId);
+            records += writeTable(zipOutputStream, counter, "creditCards.json", creditCardRepository, changedSince(since), CreditCard::getId);
+            records += writeTable(zipOutputStream, counter, "bankAccounts.json", bankAccountRepository, changedSince(since), BankAccount::getId);
+            records += writeTable(zipOutputStream, counter, "products.json", productRepository, changedSince(since), Product::getId);
+
+            try (Stream<Movement> movements = since == null ? movementsRepository.streamAll() : movementsRepository.streamByDateAfter(since)) {
+                records += writeEntry(zipOutputStream, counter, "movements.json", movements.iterator());
             }
 
-            log.debug("Data exported successfully to ZIP: {}", zipFile.getName());
-        } catch (IOException e) {
+            // Las filas borradas no aparecen como cambios: el incremental lleva la lista de borrados para aplicarlos al restaurar
+            if (since != null) {
+                Specification<BackupDeletion> deletedSince = (root, query, cb) -> cb.greaterThan(root.get("deletedAt"), since);
+                records += writeTable(zipOutputStream, counter, DELETIONS_ENTRY, deletionRepository, deletedSince, BackupDeletion::getId);
+            }
+
+            // El manifiesto va al final: un ZIP a medias no tiene manifiesto y no puede usarse como base de otro incremental
+            zipOutputStream.putNextEntry(new ZipEntry(BackupManifest.ENTRY_NAME));
+            objectMapper.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET).writeValue(counter, manifest);
+            zipOutputStream.closeEntry();
+            bytes = counter.getCount();
+        } catch (IOException | RuntimeException e) {
             log.error("Error exporting data to ZIP", e);
+            // Un backup a medias no debe tomarse como el último correcto
+            zipFile.delete();
+            throw e instanceof IOException io ? new UncheckedIOException(io) : (RuntimeException) e;
+        }
+
+        if (manifest.type() == BackupManifest.Type.FULL) {
+            // Los borrados anteriores al backup completo ya están reflejados en él y los incrementales parten de su marca de agua
+            int pruned = deletionRepository.deleteByDeletedAtBefore(manifest.watermark().minusSeconds(overlapSeconds));
+            log.debug("Eliminados {} registros de borrados ya incluidos en {}", pruned, zipFile.getName());
+        }
+
+        var stats = new BackupStats(records, bytes, zipFile.length(), Duration.ofNanos(System.nanoTime() - start));
+        log.info("Backup {} exportado a {}: {}", manifest.type(), zipFile.getName(), stats);
+        return stats;
+    }
+
+    private BackupManifest readManifest(File zipFile) {
+        try (ZipFile zip = new ZipFile(zipFile)) {
+            var entry = zip.getEntry(BackupManifest.ENTRY_NAME);
+            if (entry == null) {
+                throw new BackupManifestInvalid("El backup " + zipFile.getName() + " no tiene manifiesto");
+            }
+            try (var input = zip.getInputStream(entry)) {
+                return objectMapper.readValue(input, BackupManifest.class);
+            }
+        } catch (IOException e) {
+            throw new BackupManifestInvalid("No se puede leer el manifiesto de " + zipFile.getName() + ": " + e.getMessage());
         }
     }
 
+    /**
+     * Filtra los registros creados o modificados después de la fecha indicada. Los registros sin fecha de
+     * modificación (anteriores a que existiera la columna) se incluyen siempre. Sin fecha, no filtra.
+     */
+    private static <T> Specification<T> changedSince(LocalDateTime since) {
+        return (root, query, cb) -> since == null
+                ? cb.conjunction()
+                : cb.or(cb.isNull(root.get("updatedAt")), cb.greaterThan(root.<LocalDateTime>get("updatedAt"), since));
+    }
+
+    /**
+     * Importa un backup leyendo cada entrada del ZIP como un flujo, sin extraerla a disco.
+     * Los registros se guardan por lotes: en JPA cada lote es una transacción con inserciones JDBC por lotes y en MongoDB
+     * una única escritura bulk. Las entidades independientes se cargan en paralelo, respetando el orden de las claves ajenas:
+     * usuarios antes que clientes, y clientes, tarjetas y productos antes que cuentas. Si es un backup incremental,
+     * al final se borran las filas y movimientos borrados que recoge.
+     * @param zipFile El fichero ZIP con el backup.
+     * @return Las estadísticas de la importación.
+     */
     @Override
-    public void importFromZip(File zipFile) {
+    public BackupStats importFromZip(File zipFile) {
         log.debug("Importing data from ZIP: {}", zipFile.getName());
-        Path tempDir;
-        try {
-            tempDir = Files.createTempDirectory(TEMP_DIR_NAME);
+        long start = System.nanoTime();
 
-            try (ZipFile zip = new ZipFile(zipFile)) {
-                zip.stream().forEach(entry -> extractFromZip(zip, entry, tempDir));
-            }
+        try (ZipFile zip = new ZipFile(zipFile);
+             ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+
+            var users = supplyAsync(() -> importEntry(zip, "users.json", User.class, jpaBatch(userRepository)), executor);
+            var cards = supplyAsync(() -> importEntry(zip, "creditCards.json", CreditCard.class, jpaBatch(creditCardRepository)), executor);
+            var products = supplyAsync(() -> importEntry(zip, "products.json", Product.class, jpaBatch(productRepository)), executor);
+            var movements = supplyAsync(() -> importEntry(zip, "movements.json", Movement.class, this::mongoBatch), executor);
+
+            var clients = users.thenApplyAsync(count ->
+                    importEntry(zip, "clients.json", Client.class, jpaBatch(clientRepository)), executor);
+            var accounts = CompletableFuture.allOf(clients, cards, products).thenApplyAsync(ignored ->
+                    importEntry(zip, "bankAccounts.json", BankAccount.class, jpaBatch(bankAccountRepository)), executor);
 
-            clientService.importJson(tempDir.resolve("clients.json").toFile());
-            userService.importJson(tempDir.resolve("users.json").toFile());
-            creditCardService.importJson(tempDir.resolve("creditCards.json").toFile());
-            bankAccountService.importJson(tempDir.resolve("bankAccounts.json").toFile());
-            productService.importJson(tempDir.resolve("products.json").toFile());
-            movementsService.importJson(tempDir.resolve("movements.json").toFile());
+            CompletableFuture.allOf(accounts, movements).join();
 
-            log.debug("Data imported successfully from ZIP: {}", zipFile.getName());
+            if (zip.getEntry(DELETIONS_ENTRY) != null) {
+                importEntry(zip, DELETIONS_ENTRY, BackupDeletion.class, this::deleteBatch);
+            }
+
+            long records = users.join() + cards.join() + products.join() + movements.join() + clients.join() + accounts.join();
+            long bytes = zip.stream().mapToLong(entry -> Math.max(0, entry.getSize())).sum();
+            var stats = new BackupStats(records, bytes, zipFile.length(), Duration.ofNanos(System.nanoTime() - start));
+            log.info("Backup importado desde {}: {}", zipFile.getName(), stats);
+            return stats;
         } catch (IOException e) {
             log.error("Error importing data from ZIP", e);
+            throw new UncheckedIOException(e);
+        } catch (CompletionException e) {
+            log.error("Error importing data from ZIP", e.getCause());
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
         }
     }
 
-    private void addToZip(ZipOutputStream zipOutputStream, Path tempDir, Path file) {
-        try {
-            ZipEntry zipEntry = new ZipEntry(tempDir.relativize(file).toString());
-            zipOutputStream.putNextEntry(zipEntry);
-            Files.copy(file, zipOutputStream);
-            zipOutputStream.closeEntry();
+    /**
+     * Lee una entrada del ZIP registro a registro y la guarda en lotes de {@code batchSize}.
+     */
+    private <T> long importEntry(ZipFile zip, String entryName, Class<T> type, Consumer<List<T>> saveBatch) {
+        ZipEntry entry = zip.getEntry(entryName);
+        if (entry == null) {
+            log.warn("El backup no contiene {}", entryName);
+            return 0;
+        }
+
+        long records = 0;
+        try (var input = zip.getInputStream(entry);
+             MappingIterator<T> rows = objectMapper.readerFor(type).readValues(input)) {
+            List<T> batch = new ArrayList<>(batchSize);
+            while (rows.hasNextValue()) {
+                batch.add(rows.nextValue());
+                if (batch.size() == batchSize) {
+                    saveBatch.accept(batch);
+                    records += batch.size();
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty()) {
+                saveBatch.accept(batch);
+                records += batch.size();
+            }
         } catch (IOException e) {
-            log.error("Error adding file to ZIP: {}", file.getFileName(), e);
+            throw new UncheckedIOException("Error leyendo " + entryName, e);
         }
+
+        log.debug("Importados {} registros de {}", records, entryName);
+        return records;
     }
 
-    private void extractFromZip(ZipFile zip, ZipEntry entry, Path tempDir) {
-        try {
-            Path filePath = tempDir.resolve(entry.getName());
-            Files.createDirectories(filePath.getParent());
-            Files.copy(zip.getInputStream(entry), filePath, StandardCopyOption.REPLACE_EXISTING);
-            log.debug("Extracted file from ZIP: {}", filePath.getFileName());
-        } catch (IOException e) {
-            log.error("Error extracting file from ZIP: {}", entry.getName(), e);
+    /**
+     * Guarda cada lote en su propia transacción y vacía el contexto de persistencia al terminar,
+     * de modo que Hibernate agrupa las sentencias en lotes JDBC y no retiene las entidades ya guardadas.
+     */
+    private <T> Consumer<List<T>> jpaBatch(JpaRepository<T, Long> repository) {
+        return batch -> transactionTemplate.executeWithoutResult(status -> {
+            repository.saveAll(batch);
+            entityManager.flush();
+            entityManager.clear();
+        });
+    }
+
+    /**
+     * Borra las filas y movimientos de un lote de borrados. Las cuentas se borran antes que las tarjetas, clientes y
+     * productos a los que apuntan. Las filas que ya no existen se ignoran, así que repetir la restauración no falla.
+     */
+    private void deleteBatch(List<BackupDeletion> batch) {
+        Map<String, List<String>> ids = batch.stream().collect(Collectors.groupingBy(BackupDeletion::getEntityName,
+                Collectors.mapping(BackupDeletion::getRecordId, Collectors.toList())));
+
+        var movementIds = ids.getOrDefault(BackupDeletion.MOVEMENTS, List.of());
+        if (!movementIds.isEmpty()) {
+            mongoTemplate.remove(Query.query(Criteria.where("_id").in(movementIds)), Movement.class);
         }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            bankAccountRepository.deleteAllById(longIds(ids, BackupDeletion.BANK_ACCOUNTS));
+            creditCardRepository.deleteAllById(longIds(ids, BackupDeletion.CREDIT_CARDS));
+            clientRepository.deleteAllById(longIds(ids, BackupDeletion.CLIENTS));
+            productRepository.deleteAllById(longIds(ids, BackupDeletion.PRODUCTS));
+            entityManager.flush();
+            entityManager.clear();
+        });
     }
-}
 
+    private static List<Long> longIds(Map<String, List<String>> ids, String entityName) {
+        return ids.getOrDefault(entityName, List.of()).stream().map(Long::valueOf).toList();
+    }
+
+    /**
+     * Escribe un lote de movimientos con una sola operación bulk no ordenada. Los movimientos con ID se reemplazan
+     * si ya existen, así que repetir la importación no duplica documentos.
+     */
+    private void mongoBatch(List<Movement> batch) {
+        var bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Movement.class);
+        for (Movement movement : batch) {
+            if (movement.getId() == null) {
+                bulk.insert(movement);
+            } else {
+                bulk.replaceOne(Query.query(Criteria.where("_id").is(movement.getId())), movement, FindAndReplaceOptions.options().upsert());
+            }
+        }
+        bulk.execute();
+    }
+
+    /**
+     * Escribe una tabla completa recorriéndola por bloques ordenados por ID (paginación por clave, sin OFFSET).
+     * Tras cada bloque se vacía el contexto de persistencia para no acumular entidades en memoria.
+     */
+    private <T> long writeTable(ZipOutputStream zip, CountingOutputStream counter, String entryName,
+                                JpaSpecificationExecutor<T> repository, Specification<T> filter, Function<T, Long> idOf) throws IOException {
+        Iterator<T> rows = new Iterator<>() {
+            private Iterator<T> page = Collections.emptyIterator();
+            private Long lastId = null;
+            private boolean exhausted = false;
+
+            @Override
+            public boolean hasNext() {
+                if (!page.hasNext() && !exhausted) {
+                    entityManager.clear();
+                    var ids = lastId;
+                    Specification<T> afterLastId = (root, query, cb) ->
+                            ids == null ? cb.conjunction() : cb.greaterThan(root.<Long>get("id"), ids);
+                    List<T> next = repository.findBy(filter.and(afterLastId),
+                            q -> q.sortBy(Sort.by("id")).limit(pageSize).all());
+                    exhausted = next.size() < pageSize;
+                    if (!next.isEmpty()) {
+                        lastId = idOf.apply(next.get(next.size() - 1));
+                    }
+                    page = next.iterator();
+                }
+                return page.hasNext();
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return page.next();
+            }
+        };
+        return writeEntry(zip, counter, entryName, rows);
+    }
+
+    /**
+     * Escribe los registros como un array JSON en una nueva entrada del ZIP, serializándolos uno a uno.
+     */
+    private long writeEntry(ZipOutputStream zip, CountingOutputStream counter, String entryName, Iterator<?> rows) throws IOException {
+        long start = System.nanoTime();
+        long bytesBefore = counter.getCount();
+        long records = 0;
+
+        zip.putNextEntry(new ZipEntry(entryName));
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(counter)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.writeStartArray();
+            while (rows.hasNext()) {
+                objectMapper.writeValue(generator, rows.next());
+                records++;
+            }
+            generator.writeEndArray();
+        }
+        zip.closeEntry();
+
+        var stats = new BackupStats(records, counter.getCount() - bytesBefore, 0, Duration.ofNanos(System.nanoTime() - start));
+        log.debug("Exportado {}: {}", entryName, stats);
+        return records;
+    }
+
+    /**
+     * Cuenta los bytes escritos sin cerrar el flujo subyacente hasta el final.
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        long getCount() {
+            return count;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package jyrs.dev.vivesbank.backup.service;
+
+import jyrs.dev.vivesbank.backup.models.BackupDeletion;
+import jyrs.dev.vivesbank.backup.repository.BackupDeletionRepository;
+import jyrs.dev.vivesbank.movements.models.Movement;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+
+/**
+ * Registra cada movimiento borrado de MongoDB para los backups incrementales.
+ * Solo se registran los borrados de un movimiento concreto por su ID, que son los que hace la aplicación.
+ * @author Raul Fernandez, Yahya El Hadri, Javier Ruiz, Javier Hernandez, Samuel Cortes
+ * @since 1.0
+ */
+
+@Component
+public class MovementDeletionListener extends AbstractMongoEventListener<Movement> {
+
+    private final BackupDeletionRepository deletionRepository;
+
+    public MovementDeletionListener(BackupDeletionRepository deletionRepository) {
+        this.deletionRepository = deletionRepository;
+    }
+
+    @Override
+    public void onAfterDelete(AfterDeleteEvent<Movement> event) {
+        var id = event.getSource().get("_id");
+        if (id instanceof ObjectId || id instanceof String) {
+            deletionRepository.save(BackupDeletion.builder()
+                    .entityName(BackupDeletion.MOVEMENTS)
+                    .recordId(id.toString())
+                    .deletedAt(LocalDateTime.now())
+                    .build());
+        }
+    }
+}
@@ -1,18 +1,21 @@
 package jyrs.dev.vivesbank.config.auth;
 
+import com.auth0.jwt.interfaces.DecodedJWT;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import jyrs.dev.vivesbank.auth.jwt.JwtService;
+import jyrs.dev.vivesbank.auth.jwt.JwtServiceImpl;
+import jyrs.dev.vivesbank.auth.revocation.TokenRevocationService;
 import jyrs.dev.vivesbank.auth.users.service.AuthUserService;
+import jyrs.dev.vivesbank.users.models.User;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
@@ -29,20 +32,24 @@ import java.io.IOException;
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
     private final JwtService jwtService;
     private final AuthUserService authUserService;
+    private final TokenRevocationService revocationService;
     /**
      * Constructor que inicializa el filtro con los servicios necesarios para la validación del JWT y carga del usuario.
      *
      * @param jwtService Servicio que maneja la validación y extracción de información del token JWT.
      * @param authUserService Servicio que carga los detalles del usuario a partir de su nombre de usuario.
+     * @param revocationService Lista de tokens revocados.
      */
     @Autowired
-    public JwtAuthenticationFilter(JwtService jwtService, AuthUserService authUserService) {
+    public JwtAuthenticationFilter(JwtService jwtService, AuthUserService authUserService, TokenRevocationService revocationService) {
         this.jwtService = jwtService;
         this.authUserService = authUserService;
+        this.revocationService = revocationService;
     }
     /**
      * Método que se ejecuta para filtrar las solicitudes HTTP. Extrae el token JWT de la cabecera de autorización
-     * y valida su autenticidad. Si el token es válido, se autentica al usuario y se establece el contexto de seguridad.
+     * y lo verifica una sola vez (firma, expiración y lista de revocación). Si es válido, obtiene el usuario de la caché de usuarios
+     * autenticados, de modo que solo se consulta la base de datos cuando la entrada no existe o ha caducado.
      *
      * @param request La solicitud HTTP que contiene la cabecera de autorización con el token JWT.
      * @param response La respuesta HTTP que se envía al cliente.
@@ -52,51 +59,49 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
      */
     @Override
     protected void doFilterInternal(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response, @NonNull FilterChain filterChain) throws ServletException, IOException {
-        log.info("Iniciando el filtro de autenticación");
         final String authHeader = request.getHeader("Authorization");
-        final String jwt;
-        UserDetails userDetails = null;
-        String userName = null;
 
         if (!StringUtils.hasText(authHeader) || !StringUtils.startsWithIgnoreCase(authHeader, "Bearer")) {
-            log.info("No hay cabecera de autorización, continuando con la petición");
             filterChain.doFilter(request, response);
             return;
         }
 
-        log.info("Se ha encontrado cabecera de autenticación, procesando...");
-        jwt = authHeader.substring(7);
+        final DecodedJWT jwt;
         try {
-            userName = jwtService.extractUserName(jwt);
+            jwt = jwtService.verifyToken(authHeader.substring(7));
         } catch (Exception e) {
-            log.error("Token no válido");
+            log.debug("Token no válido: {}", e.getMessage());
             response.sendError(HttpServletResponse.SC_UNAUTHORIZED, "Token no autorizado o inválido");
             return;
         }
+        if (JwtServiceImpl.REFRESH_TYPE.equals(jwt.getClaim(JwtServiceImpl.TYPE_CLAIM).asString())) {
+            response.sendError(HttpServletResponse.SC_UNAUTHORIZED, "Token no autorizado o inválido");
+            return;
+        }
+        if (revocationService.isRevoked(jwt)) {
+            response.sendError(HttpServletResponse.SC_UNAUTHORIZED, "Token revocado");
+            return;
+        }
 
-        if (StringUtils.hasText(userName) && SecurityContextHolder.getContext().getAuthentication() == null) {
-            log.info("Comprobando usuario y token");
+        String guuid = jwt.getSubject();
+        if (StringUtils.hasText(guuid) && SecurityContextHolder.getContext().getAuthentication() == null) {
+            final User user;
             try {
-                userDetails = authUserService.loadUserByUsername(userName);
+                user = authUserService.loadUserByGuuid(guuid);
             } catch (Exception e) {
-                log.info("Usuario no encontrado: {}", userName);
+                log.info("Usuario no encontrado: {}", guuid);
                 response.sendError(HttpServletResponse.SC_UNAUTHORIZED, "Usuario no autorizado");
                 return;
             }
-            log.info("user encontrado : " + userDetails);
-            if (jwtService.isTokenValid(jwt, userDetails)) {
-                log.info("JWT válido");
-                SecurityContext context = SecurityContextHolder.createEmptyContext();
-                UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
-                        userDetails, null, userDetails.getAuthorities());
-                authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
-                context.setAuthentication(authToken);
-                SecurityContextHolder.setContext(context);
-            }
+            SecurityContext context = SecurityContextHolder.createEmptyContext();
+            UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
+                    user, null, user.getAuthorities());
+            authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+            context.setAuthentication(authToken);
+            SecurityContextHolder.setContext(context);
         }
 
         filterChain.doFilter(request, response);
     }
 
 }
-
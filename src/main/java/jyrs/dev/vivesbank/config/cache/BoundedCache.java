@@ -0,0 +1,175 @@
+package jyrs.dev.vivesbank.config.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Caché local acotada por número de entradas y, opcionalmente, por tiempo de vida.
+ * Las entradas se guardan en orden de inserción y todas tienen el mismo tiempo de vida, así que la más antigua es
+ * siempre la primera en caducar: al llenarse se descarta esa, sin recorrer el resto. Las lecturas no se bloquean
+ * entre sí.
+ * Cada invalidación incrementa una generación. Quien carga un valor toma la generación antes de ir a la base de
+ * datos y lo guarda con {@link #putIfCurrent}, que lo descarta si entretanto se ha invalidado algo: así un valor
+ * leído antes de un cambio no sustituye a la invalidación.
+ * @param <K> El tipo de la clave.
+ * @param <V> El tipo del valor.
+ * @author Raul Fernandez, Yahya El Hadri, Javier Ruiz, Javier Hernandez, Samuel Cortes
+ * @since 1.0
+ */
+
+public class BoundedCache<K, V> {
+
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicLong generation = new AtomicLong();
+    private final int maxSize;
+    private final long ttlNanos;
+    private final LongSupplier clock;
+    private final Runnable onSizeEviction;
+
+    /**
+     * @param maxSize El número máximo de entradas.
+     * @param ttlNanos El tiempo de vida de cada entrada en nanosegundos, o 0 si no caducan.
+     * @param clock El reloj en nanosegundos.
+     * @param onSizeEviction Se ejecuta cada vez que se descarta una entrada vigente por falta de espacio.
+     */
+    public BoundedCache(int maxSize, long ttlNanos, LongSupplier clock, Runnable onSizeEviction) {
+        this.maxSize = Math.max(1, maxSize);
+        this.ttlNanos = Math.max(0, ttlNanos);
+        this.clock = clock;
+        this.onSizeEviction = onSizeEviction;
+    }
+
+    public BoundedCache(int maxSize, long ttlNanos, LongSupplier clock) {
+        this(maxSize, ttlNanos, clock, () -> { });
+    }
+
+    /**
+     * @param key La clave.
+     * @return El valor, o null si no está o ha caducado.
+     * @since 1.0
+     */
+
+    public V get(K key) {
+        lock.readLock().lock();
+        try {
+            var entry = entries.get(key);
+            return entry != null && !expired(entry, clock.getAsLong()) ? entry.value() : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return La generación actual, que se pasa a {@link #putIfCurrent} tras cargar un valor.
+     * @since 1.0
+     */
+
+    public long generation() {
+        return generation.get();
+    }
+
+    /**
+     * Guarda un valor solo si no se ha invalidado nada desde que se tomó la generación.
+     * @param key La clave.
+     * @param value El valor.
+     * @param startedAt La generación tomada antes de cargar el valor.
+     * @return Si se ha guardado.
+     * @since 1.0
+     */
+
+    public boolean putIfCurrent(K key, V value, long startedAt) {
+        lock.writeLock().lock();
+        try {
+            if (generation.get() != startedAt) {
+                return false;
+            }
+            store(key, value);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Guarda o reemplaza un valor.
+     * @param key La clave.
+     * @param value El valor.
+     * @since 1.0
+     */
+
+    public void put(K key, V value) {
+        lock.writeLock().lock();
+        try {
+            store(key, value);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Elimina una entrada y hace que se descarten los valores que se estén cargando.
+     * @param key La clave.
+     * @return Si la entrada estaba en la caché.
+     * @since 1.0
+     */
+
+    public boolean invalidate(K key) {
+        lock.writeLock().lock();
+        try {
+            generation.incrementAndGet();
+            return key != null && entries.remove(key) != null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void invalidateAll() {
+        lock.writeLock().lock();
+        try {
+            generation.incrementAndGet();
+            entries.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void store(K key, V value) {
+        long now = clock.getAsLong();
+        // Al reemplazar se vuelve a insertar para que el orden siga siendo el de caducidad
+        entries.remove(key);
+        Iterator<Map.Entry<K, Entry<V>>> oldest = entries.entrySet().iterator();
+        while (oldest.hasNext()) {
+            var eldest = oldest.next().getValue();
+            if (expired(eldest, now)) {
+                oldest.remove();
+            } else if (entries.size() >= maxSize) {
+                oldest.remove();
+                onSizeEviction.run();
+            } else {
+                break;
+            }
+        }
+        entries.put(key, new Entry<>(value, now));
+    }
+
+    private boolean expired(Entry<V> entry, long now) {
+        return ttlNanos > 0 && now - entry.storedAt() >= ttlNanos;
+    }
+
+    private record Entry<V>(V value, long storedAt) {
+    }
+}
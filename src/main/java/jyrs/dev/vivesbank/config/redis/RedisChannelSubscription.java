@@ -0,0 +1,91 @@
+package jyrs.dev.vivesbank.config.redis;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+/**
+ * Suscripción a un canal pub/sub de Redis que se puede reintentar hasta que Redis responde, de modo que el nodo
+ * arranca aunque Redis aún no esté levantado. Quien la usa llama a {@link #subscribe()} periódicamente; una vez
+ * suscrito, el contenedor de Redis se encarga de reconectar. Solo se avisa en el log del primer fallo seguido.
+ * @author Raul Fernandez, Yahya El Hadri, Javier Ruiz, Javier Hernandez, Samuel Cortes
+ * @since 1.0
+ */
+
+@Slf4j
+public class RedisChannelSubscription {
+
+    private final RedisConnectionFactory connectionFactory;
+    private final String channel;
+    private final MessageListener listener;
+    private final String purpose;
+    private volatile boolean subscribed;
+    private RedisMessageListenerContainer container;
+    private int failures;
+
+    /**
+     * @param connectionFactory La conexión a Redis.
+     * @param channel El canal.
+     * @param listener Recibe los mensajes del canal.
+     * @param purpose Para qué se usa el canal, para los mensajes del log.
+     */
+    public RedisChannelSubscription(RedisConnectionFactory connectionFactory, String channel,
+                                    MessageListener listener, String purpose) {
+        this.connectionFactory = connectionFactory;
+        this.channel = channel;
+        this.listener = listener;
+        this.purpose = purpose;
+    }
+
+    /**
+     * Se suscribe al canal si aún no lo está.
+     * @return true solo si la suscripción se acaba de establecer en esta llamada.
+     * @since 1.0
+     */
+
+    public synchronized boolean subscribe() {
+        if (subscribed) {
+            return false;
+        }
+        var candidate = new RedisMessageListenerContainer();
+        candidate.setConnectionFactory(connectionFactory);
+        candidate.addMessageListener(listener, new ChannelTopic(channel));
+        try {
+            candidate.afterPropertiesSet();
+            candidate.start();
+            container = candidate;
+            subscribed = true;
+            failures = 0;
+            log.info("Suscrito al canal {} de Redis para {}", channel, purpose);
+            return true;
+        } catch (RuntimeException e) {
+            destroy(candidate);
+            if (failures++ == 0) {
+                log.warn("No se puede suscribir al canal {} de Redis, se reintentará: {}", channel, e.getMessage());
+            }
+            return false;
+        }
+    }
+
+    public boolean isSubscribed() {
+        return subscribed;
+    }
+
+    public synchronized void shutdown() {
+        subscribed = false;
+        if (container != null) {
+            destroy(container);
+            container = null;
+        }
+    }
+
+    private static void destroy(RedisMessageListenerContainer container) {
+        try {
+            container.destroy();
+        } catch (Exception e) {
+            log.debug("Error al detener el contenedor de Redis: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package jyrs.dev.vivesbank.config.websockets;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Búfer con las últimas notificaciones de un manejador WebSocket, ya numeradas con su campo {@code seq}, para que el
+ * cliente que reconecta con {@code since=<último seq recibido>} reciba solo las que se ha perdido.
+ * Cada cliente tiene su propia cola, más una común para las notificaciones a todos, de modo que un cliente con mucho
+ * tráfico no hace olvidar las notificaciones de los demás. Cada cola guarda como mucho la capacidad indicada y olvida
+ * las que superan la antigüedad máxima; si el hueco de un cliente incluye alguna olvidada de sus colas, tiene que
+ * resincronizar. Un número fuera del rango visto por este nodo (de antes de que arrancara, o de antes de vaciar Redis)
+ * también la provoca.
+ * @author Raul Fernandez, Yahya El Hadri, Javier Ruiz, Javier Hernandez, Samuel Cortes
+ * @since 1.0
+ */
+
+public class NotificationReplayBuffer {
+
+    private final Map<String, Ring> rings = new HashMap<>();
+    private final Ring broadcast;
+    private final int capacity;
+    private final long maxAgeNanos;
+    private long firstSeq;
+    private long lastSeq;
+    private long removedUpTo;
+
+    public NotificationReplayBuffer(int capacity, long maxAgeMs) {
+        this.capacity = Math.max(1, capacity);
+        this.maxAgeNanos = TimeUnit.MILLISECONDS.toNanos(maxAgeMs);
+        this.broadcast = new Ring(0);
+    }
+
+    /**
+     * Guarda una notificación, descartando la más antigua de su cola si está llena.
+     * @param seq El número de secuencia de la notificación.
+     * @param clientGuuid El cliente destino, o {@code null} si es para todos.
+     * @param message La notificación con su campo {@code seq}.
+     * @param now El instante actual en nanosegundos.
+     * @since 1.0
+     */
+
+    public synchronized void append(long seq, String clientGuuid, String message, long now) {
+        var ring = clientGuuid == null ? broadcast : rings.computeIfAbsent(clientGuuid, k -> new Ring(removedUpTo));
+        ring.add(new Entry(seq, message, now), capacity);
+        firstSeq = firstSeq == 0 ? seq : Math.min(firstSeq, seq);
+        lastSeq = Math.max(lastSeq, seq);
+    }
+
+    /**
+     * Devuelve las notificaciones de un cliente posteriores a una secuencia.
+     * @param since El último número de secuencia que recibió el cliente.
+     * @param clientGuuid El cliente.
+     * @param now El instante actual en nanosegundos.
+     * @return Las notificaciones perdidas en orden, o vacío si alguna ya se ha olvidado y hay que resincronizar.
+     * @since 1.0
+     */
+
+    public synchronized Optional<List<String>> since(long since, String clientGuuid, long now) {
+        // Posterior a lo último visto, o anterior a lo primero: el hueco incluye notificaciones que este nodo no tiene
+        if (since > lastSeq || since < firstSeq - 1) {
+            return Optional.empty();
+        }
+        var own = rings.get(clientGuuid);
+        broadcast.expire(now, maxAgeNanos);
+        if (own != null) {
+            own.expire(now, maxAgeNanos);
+        }
+        long ownForgotten = own != null ? own.forgottenUpTo : removedUpTo;
+        if (broadcast.forgottenUpTo > since || ownForgotten > since) {
+            return Optional.empty();
+        }
+
+        List<Entry> missed = new ArrayList<>();
+        broadcast.collectAfter(since, missed);
+        if (own != null) {
+            own.collectAfter(since, missed);
+        }
+        missed.sort(Comparator.comparingLong(Entry::seq));
+        return Optional.of(missed.stream().map(Entry::message).toList());
+    }
+
+    /**
+     * Olvida las notificaciones caducadas y las colas de los clientes que se quedan vacías. Lo olvidado de las colas
+     * eliminadas se sigue teniendo en cuenta, así que un cliente sin cola no puede saltarse un hueco.
+     * @param now El instante actual en nanosegundos.
+     * @since 1.0
+     */
+
+    public synchronized void prune(long now) {
+        broadcast.expire(now, maxAgeNanos);
+        rings.values().removeIf(ring -> {
+            ring.expire(now, maxAgeNanos);
+            if (!ring.entries.isEmpty()) {
+                return false;
+            }
+            removedUpTo = Math.max(removedUpTo, ring.forgottenUpTo);
+            return true;
+        });
+    }
+
+    /**
+     * @return El número de la última notificación guardada.
+     * @since 1.0
+     */
+
+    public synchronized long lastSeq() {
+        return lastSeq;
+    }
+
+    /**
+     * @return El número de clientes con cola propia.
+     * @since 1.0
+     */
+
+    public synchronized int clientCount() {
+        return rings.size();
+    }
+
+    static String stamp(long seq, String message) {
+        if (!message.startsWith("{")) {
+            return message;
+        }
+        String rest = message.substring(1).stripLeading();
+        return "{\"seq\":" + seq + (rest.startsWith("}") ? "" : ",") + rest;
+    }
+
+    private static final class Ring {
+        private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+        private long forgottenUpTo;
+
+        Ring(long forgottenUpTo) {
+            this.forgottenUpTo = forgottenUpTo;
+        }
+
+        void add(Entry entry, int capacity) {
+            if (entries.size() >= capacity) {
+                forget(entries.pollFirst());
+            }
+            entries.addLast(entry);
+        }
+
+        void expire(long now, long maxAgeNanos) {
+            while (!entries.isEmpty() && now - entries.peekFirst().storedAt() >= maxAgeNanos) {
+                forget(entries.pollFirst());
+            }
+        }
+
+        void collectAfter(long since, List<Entry> into) {
+            for (Entry entry : entries) {
+                if (entry.seq() > since) {
+                    into.add(entry);
+                }
+            }
+        }
+
+        private void forget(Entry entry) {
+            forgottenUpTo = Math.max(forgottenUpTo, entry.seq());
+        }
+    }
+
+    private record Entry(long seq, String message, long storedAt) {
+    }
+}
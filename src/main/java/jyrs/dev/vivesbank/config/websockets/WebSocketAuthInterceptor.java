@@ -0,0 +1,87 @@
+package jyrs.dev.vivesbank.config.websockets;
+
+import com.auth0.jwt.interfaces.DecodedJWT;
+import jyrs.dev.vivesbank.auth.jwt.JwtService;
+import jyrs.dev.vivesbank.auth.jwt.JwtServiceImpl;
+import jyrs.dev.vivesbank.auth.revocation.TokenRevocationService;
+import jyrs.dev.vivesbank.auth.users.service.AuthUserService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.util.Map;
+
+/**
+ * Autentica la apertura de una conexión WebSocket con el mismo JWT que el resto de la API.
+ * El token se lee de la cabecera {@code Authorization} o, como los navegadores no permiten cabeceras propias en
+ * WebSocket, del parámetro {@code token}. Si es válido, el guuid del usuario se guarda en los atributos de la
+ * sesión para que el manejador le envíe solo sus propios eventos.
+ * @author Raul Fernandez, Yahya El Hadri, Javier Ruiz, Javier Hernandez, Samuel Cortes
+ * @since 1.0
+ */
+
+@Component
+@Slf4j
+public class WebSocketAuthInterceptor implements HandshakeInterceptor {
+
+    public static final String GUUID_ATTRIBUTE = "guuid";
+    private static final String TOKEN_PARAM = "token";
+
+    private final JwtService jwtService;
+    private final AuthUserService authUserService;
+    private final TokenRevocationService revocationService;
+
+    @Autowired
+    public WebSocketAuthInterceptor(JwtService jwtService, AuthUserService authUserService, TokenRevocationService revocationService) {
+        this.jwtService = jwtService;
+        this.authUserService = authUserService;
+        this.revocationService = revocationService;
+    }
+
+    @Override
+    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                   WebSocketHandler wsHandler, Map<String, Object> attributes) {
+        String token = extractToken(request);
+        if (!StringUtils.hasText(token)) {
+            response.setStatusCode(HttpStatus.UNAUTHORIZED);
+            return false;
+        }
+
+        try {
+            DecodedJWT jwt = jwtService.verifyToken(token);
+            if (JwtServiceImpl.REFRESH_TYPE.equals(jwt.getClaim(JwtServiceImpl.TYPE_CLAIM).asString())
+                    || revocationService.isRevoked(jwt)) {
+                response.setStatusCode(HttpStatus.UNAUTHORIZED);
+                return false;
+            }
+            var user = authUserService.loadUserByGuuid(jwt.getSubject());
+            attributes.put(GUUID_ATTRIBUTE, user.getGuuid());
+            return true;
+        } catch (Exception e) {
+            log.debug("Conexión WebSocket rechazada: {}", e.getMessage());
+            response.setStatusCode(HttpStatus.UNAUTHORIZED);
+            return false;
+        }
+    }
+
+    @Override
+    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                               WebSocketHandler wsHandler, Exception exception) {
+    }
+
+    private String extractToken(ServerHttpRequest request) {
+        String header = request.getHeaders().getFirst(HttpHeaders.AUTHORIZATION);
+        if (StringUtils.hasText(header) && StringUtils.startsWithIgnoreCase(header, "Bearer ")) {
+            return header.substring(7);
+        }
+        return UriComponentsBuilder.fromUri(request.getURI()).build().getQueryParams().getFirst(TOKEN_PARAM);
+    }
+}
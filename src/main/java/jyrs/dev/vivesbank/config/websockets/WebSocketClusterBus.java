@@ -0,0 +1,205 @@
+package jyrs.dev.vivesbank.config.websockets;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import jyrs.dev.vivesbank.config.redis.RedisChannelSubscription;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Reparte las notificaciones WebSocket entre todos los nodos mediante un canal pub/sub de Redis.
+ * Cada notificación se publica una sola vez, ya serializada, y cada nodo (también el que la publica) la recibe
+ * por su suscripción y la entrega únicamente a sus sesiones locales. Si Redis no está disponible la notificación
+ * se entrega solo en este nodo y no se vuelve a intentar publicar hasta pasado el intervalo de reintento, para no
+ * bloquear a los servicios esperando la conexión. La suscripción se intenta periódicamente hasta que Redis
+ * responde, de modo que el nodo arranca aunque Redis aún no esté levantado.
+ * Los números de secuencia de las notificaciones salen de un contador de Redis por entidad, así que son los mismos en
+ * todos los nodos y el cliente puede reconectar a cualquiera con su último {@code seq}. Sin Redis, el nodo sigue
+ * numerando a partir del último número que ha visto y, al volver Redis, adelanta el contador compartido si hace falta.
+ * @author Raul Fernandez, Yahya El Hadri, Javier Ruiz, Javier Hernandez, Samuel Cortes
+ * @since 1.0
+ */
+
+@Component
+@Slf4j
+public class WebSocketClusterBus implements MessageListener {
+
+    public static final String CHANNEL = "ws:notifications";
+    private static final char SEPARATOR = '|';
+    private static final String ALL_CLIENTS = "*";
+    private static final String SEQUENCE_PREFIX = "ws:seq:";
+
+    private final StringRedisTemplate redis;
+    private final RedisChannelSubscription subscription;
+    private final Map<String, WebSocketHandler> handlers = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> sequences = new ConcurrentHashMap<>();
+    private final long retryIntervalMs;
+    private final LongSupplier clock;
+    private final Counter published;
+    private final Counter received;
+    private final Counter localFallback;
+    private volatile long retryAt;
+
+    @Autowired
+    public WebSocketClusterBus(StringRedisTemplate redis, RedisConnectionFactory connectionFactory, MeterRegistry registry,
+                               @Value("${websocket.cluster.retry-interval-ms:5000}") long retryIntervalMs) {
+        this(redis, connectionFactory, registry, retryIntervalMs, System::currentTimeMillis);
+    }
+
+    WebSocketClusterBus(StringRedisTemplate redis, RedisConnectionFactory connectionFactory, MeterRegistry registry,
+                        long retryIntervalMs, LongSupplier clock) {
+        this.redis = redis;
+        this.subscription = new RedisChannelSubscription(connectionFactory, CHANNEL, this, "las notificaciones WebSocket");
+        this.retryIntervalMs = retryIntervalMs;
+        this.clock = clock;
+        this.published = registry.counter("websocket.cluster.published");
+        this.received = registry.counter("websocket.cluster.received");
+        this.localFallback = registry.counter("websocket.cluster.local_fallback");
+    }
+
+    /**
+     * Registra el manejador local de una entidad para recibir las notificaciones del canal.
+     * @param handler El manejador.
+     * @since 1.0
+     */
+
+    public void register(WebSocketHandler handler) {
+        handlers.put(handler.getEntity(), handler);
+    }
+
+    /**
+     * Publica una notificación para todos los nodos.
+     * @param entity La entidad del manejador destino.
+     * @param clientGuuid El cliente destino, o {@code null} para todas las sesiones.
+     * @param seq El número de secuencia de la notificación, o 0 si no se numera.
+     * @param message La notificación ya serializada.
+     * @since 1.0
+     */
+
+    public void publish(String entity, String clientGuuid, long seq, String message) {
+        // Sin suscripción la notificación no vuelve por Redis, así que se entrega aquí directamente
+        if (!tryPublish(encode(entity, clientGuuid, seq, message)) || !subscription.isSubscribed()) {
+            localFallback.increment();
+            deliver(entity, clientGuuid, seq, message);
+        }
+    }
+
+    /**
+     * Obtiene el siguiente número de secuencia de una entidad, compartido por todos los nodos.
+     * @param entity La entidad.
+     * @return El número, siempre mayor que cualquiera que este nodo haya visto para la entidad.
+     * @since 1.0
+     */
+
+    public long nextSequence(String entity) {
+        var local = sequences.computeIfAbsent(entity, k -> new AtomicLong());
+        if (clock.getAsLong() >= retryAt) {
+            try {
+                String key = SEQUENCE_PREFIX + entity;
+                Long seq = redis.opsForValue().increment(key);
+                if (seq != null) {
+                    long last = local.get();
+                    if (seq <= last) {
+                        // Durante una caída de Redis este nodo siguió numerando por su cuenta
+                        seq = redis.opsForValue().increment(key, last - seq + 1);
+                    }
+                    local.accumulateAndGet(seq, Math::max);
+                    return seq;
+                }
+            } catch (RuntimeException e) {
+                unavailable(e);
+            }
+        }
+        return local.incrementAndGet();
+    }
+
+    /**
+     * Se suscribe al canal si aún no lo está. Una vez suscrito, el contenedor de Redis se encarga de reconectar.
+     * @since 1.0
+     */
+
+    @Scheduled(fixedDelayString = "${websocket.cluster.retry-interval-ms:5000}")
+    public void subscribe() {
+        subscription.subscribe();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        subscription.shutdown();
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int first = body.indexOf(SEPARATOR);
+        int second = first < 0 ? -1 : body.indexOf(SEPARATOR, first + 1);
+        int third = second < 0 ? -1 : body.indexOf(SEPARATOR, second + 1);
+        long seq;
+        try {
+            seq = third < 0 ? -1 : Long.parseLong(body.substring(second + 1, third));
+        } catch (NumberFormatException e) {
+            seq = -1;
+        }
+        if (seq < 0) {
+            log.warn("Notificación WebSocket no válida recibida de Redis");
+            return;
+        }
+        received.increment();
+        String entity = body.substring(0, first);
+        String guuid = body.substring(first + 1, second);
+        if (seq > 0) {
+            sequences.computeIfAbsent(entity, k -> new AtomicLong()).accumulateAndGet(seq, Math::max);
+        }
+        deliver(entity, ALL_CLIENTS.equals(guuid) ? null : guuid, seq, body.substring(third + 1));
+    }
+
+    static String encode(String entity, String clientGuuid, long seq, String message) {
+        return entity + SEPARATOR + (clientGuuid == null ? ALL_CLIENTS : clientGuuid) + SEPARATOR + seq + SEPARATOR + message;
+    }
+
+    private boolean tryPublish(String payload) {
+        if (clock.getAsLong() < retryAt) {
+            return false;
+        }
+        try {
+            redis.convertAndSend(CHANNEL, payload);
+            published.increment();
+            if (retryAt != 0) {
+                retryAt = 0;
+                log.info("Publicación de notificaciones WebSocket en Redis restablecida");
+            }
+            return true;
+        } catch (RuntimeException e) {
+            unavailable(e);
+            return false;
+        }
+    }
+
+    private void unavailable(RuntimeException e) {
+        if (retryAt == 0) {
+            log.warn("No se pueden publicar las notificaciones WebSocket en Redis, se entregan solo en este nodo: {}", e.getMessage());
+        }
+        retryAt = clock.getAsLong() + retryIntervalMs;
+    }
+
+    private void deliver(String entity, String clientGuuid, long seq, String message) {
+        var handler = handlers.get(entity);
+        if (handler != null) {
+            handler.deliverLocal(clientGuuid, seq, message);
+        }
+    }
+}
@@ -1,6 +1,5 @@
 package jyrs.dev.vivesbank.config.websockets;
 
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -16,24 +15,37 @@ public class WebSocketConfig implements WebSocketConfigurer {
     @Value("${api.version}")
     private String apiVersion;
 
+    private final WebSocketDispatcher dispatcher;
+    private final WebSocketAuthInterceptor authInterceptor;
+    private final WebSocketClusterBus clusterBus;
+
+    public WebSocketConfig(WebSocketDispatcher dispatcher, WebSocketAuthInterceptor authInterceptor, WebSocketClusterBus clusterBus) {
+        this.dispatcher = dispatcher;
+        this.authInterceptor = authInterceptor;
+        this.clusterBus = clusterBus;
+    }
+
     @Override
     public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
-        registry.addHandler(webSocketBankAccountHandler(), "/ws/" + apiVersion + "/cuentas");
+        registry.addHandler(webSocketBankAccountHandler(), "/ws/" + apiVersion + "/cuentas")
+                .addInterceptors(authInterceptor);
+        registry.addHandler(webSocketMovementsHandler(), "/ws/" + apiVersion + "/movimientos")
+                .addInterceptors(authInterceptor);
     }
 
     @Bean
     public WebSocketHandler webSocketBankAccountHandler() {
-        return new WebSocketHandler("cuentas");
+        return new WebSocketHandler("cuentas", dispatcher, clusterBus);
     }
 
     @Bean
     public WebSocketHandler webSocketUserHandler() {
-        return new WebSocketHandler("users");
+        return new WebSocketHandler("users", dispatcher, clusterBus);
     }
 
     @Bean
     public WebSocketHandler webSocketMovementsHandler() {
-        return new WebSocketHandler("movements");
+        return new WebSocketHandler("movements", dispatcher, clusterBus);
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,147 @@
+package jyrs.dev.vivesbank.config.websockets;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hilos compartidos por todos los manejadores WebSocket para enviar notificaciones.
+ * Los envíos se hacen en un grupo fijo de hilos con una cola acotada, de modo que los servicios que generan
+ * notificaciones nunca esperan a la red. Cada sesión se envuelve en un {@link ConcurrentWebSocketSessionDecorator}
+ * con límite de tiempo y de memoria: un cliente lento acumula mensajes en su propio búfer y, si supera los límites,
+ * se desconecta sin frenar al resto. También reúne la configuración común del latido, del límite de conexiones y
+ * del búfer de reenvío de notificaciones.
+ * @author Raul Fernandez, Yahya El Hadri, Javier Ruiz, Javier Hernandez, Samuel Cortes
+ * @since 1.0
+ */
+
+@Component
+@Slf4j
+public class WebSocketDispatcher {
+
+    private final ThreadPoolExecutor senders;
+    private final ScheduledExecutorService scheduler;
+    @Getter
+    private final MeterRegistry registry;
+    @Getter
+    private final long coalesceWindowMs;
+    @Getter
+    private final int maxPending;
+    @Getter
+    private final long heartbeatIntervalMs;
+    @Getter
+    private final long idleTimeoutMs;
+    @Getter
+    private final int maxSessionsPerUser;
+    @Getter
+    private final int replayBufferSize;
+    @Getter
+    private final long replayMaxAgeMs;
+    private final int sendTimeLimitMs;
+    private final int bufferSizeLimit;
+
+    @Autowired
+    public WebSocketDispatcher(MeterRegistry registry,
+                               @Value("${websocket.dispatcher.threads:4}") int threads,
+                               @Value("${websocket.dispatcher.queue-size:1024}") int queueSize,
+                               @Value("${websocket.coalesce-window-ms:50}") long coalesceWindowMs,
+                               @Value("${websocket.max-pending:500}") int maxPending,
+                               @Value("${websocket.session.send-time-limit-ms:5000}") int sendTimeLimitMs,
+                               @Value("${websocket.session.buffer-size-limit:524288}") int bufferSizeLimit,
+                               @Value("${websocket.heartbeat.interval-ms:25000}") long heartbeatIntervalMs,
+                               @Value("${websocket.heartbeat.idle-timeout-ms:75000}") long idleTimeoutMs,
+                               @Value("${websocket.session.max-per-user:5}") int maxSessionsPerUser,
+                               @Value("${websocket.replay.buffer-size:1024}") int replayBufferSize,
+                               @Value("${websocket.replay.max-age-ms:300000}") long replayMaxAgeMs) {
+        this.registry = registry;
+        this.coalesceWindowMs = Math.max(0, coalesceWindowMs);
+        this.maxPending = Math.max(1, maxPending);
+        this.sendTimeLimitMs = sendTimeLimitMs;
+        this.bufferSizeLimit = bufferSizeLimit;
+        this.heartbeatIntervalMs = heartbeatIntervalMs;
+        this.idleTimeoutMs = Math.max(heartbeatIntervalMs, idleTimeoutMs);
+        this.maxSessionsPerUser = Math.max(1, maxSessionsPerUser);
+        this.replayBufferSize = Math.max(0, replayBufferSize);
+        this.replayMaxAgeMs = replayMaxAgeMs;
+
+        int poolSize = Math.max(1, threads);
+        var counter = new AtomicInteger();
+        this.senders = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueSize)),
+                runnable -> daemon(runnable, "ws-sender-" + counter.incrementAndGet()),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> daemon(runnable, "ws-coalesce"));
+
+        Gauge.builder("websocket.dispatcher.queue.size", senders, e -> e.getQueue().size()).register(registry);
+        Gauge.builder("websocket.dispatcher.active", senders, ThreadPoolExecutor::getActiveCount).register(registry);
+    }
+
+    /**
+     * Envuelve una sesión para que admita envíos concurrentes con los límites configurados.
+     * @param session La sesión recién abierta.
+     * @return La sesión decorada.
+     * @since 1.0
+     */
+
+    public WebSocketSession decorate(WebSocketSession session) {
+        return new ConcurrentWebSocketSessionDecorator(session, sendTimeLimitMs, bufferSizeLimit,
+                ConcurrentWebSocketSessionDecorator.OverflowStrategy.TERMINATE);
+    }
+
+    /**
+     * Encola un envío en el grupo de hilos.
+     * @param task El envío.
+     * @return {@code false} si la cola está llena y se ha descartado.
+     * @since 1.0
+     */
+
+    public boolean submit(Runnable task) {
+        try {
+            senders.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Ejecuta una tarea cuando termina la ventana de agrupación.
+     * @param task La tarea.
+     * @since 1.0
+     */
+
+    public void schedule(Runnable task) {
+        try {
+            scheduler.schedule(task, coalesceWindowMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            log.warn("No se puede programar el envío de notificaciones, el servicio se está deteniendo");
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        senders.shutdownNow();
+    }
+
+    private static Thread daemon(Runnable runnable, String name) {
+        var thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+}
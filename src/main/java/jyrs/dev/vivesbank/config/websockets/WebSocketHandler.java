@@ -1,78 +1,464 @@
 package jyrs.dev.vivesbank.config.websockets;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PingMessage;
+import org.springframework.web.socket.PongMessage;
 import org.springframework.web.socket.SubProtocolCapable;
 import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
 import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
+import org.springframework.web.util.UriComponentsBuilder;
 
 import java.io.IOException;
-import java.time.LocalTime;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Set;
-import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Manejador WebSocket de una entidad.
+ * Las sesiones se indexan por el guuid del cliente autenticado en el {@link WebSocketAuthInterceptor}, de modo que
+ * cada evento se entrega solo a las sesiones de su cliente sin recorrer las demás.
+ * Las notificaciones no se envían en el hilo que las genera: se acumulan en una cola acotada y, al terminar la
+ * ventana de agrupación, se mandan juntas en un único mensaje por cliente (un array JSON si hay más de una) desde
+ * el {@link WebSocketDispatcher}. Si la cola se llena se descartan las notificaciones más antiguas.
+ * Con varios nodos, las notificaciones pasan antes por el {@link WebSocketClusterBus} para que cada nodo las entregue
+ * a las sesiones que tiene abiertas.
+ * La salud de las conexiones se comprueba con pings del protocolo solo a las sesiones sin actividad reciente; las que
+ * no responden dentro del tiempo máximo de inactividad se cierran.
+ * Cada notificación lleva un número de secuencia y se guarda en un {@link NotificationReplayBuffer}: el cliente que
+ * reconecta con {@code since=<seq>} recibe las que se ha perdido o, si ya se han olvidado, un aviso
+ * {@code RESYNC} para que vuelva a cargar los datos. Puede recibir alguna repetida, que descarta por su {@code seq}.
+ * Con varios nodos el número lo da el {@link WebSocketClusterBus} al publicar, así que es el mismo en todos y el
+ * cliente puede reconectar a cualquiera; con un solo nodo la secuencia empieza en el instante de arranque (en
+ * microsegundos), de modo que un número de un arranque anterior queda fuera del rango y provoca la resincronización.
+ * @author Raul Fernandez, Yahya El Hadri, Javier Ruiz, Javier Hernandez, Samuel Cortes
+ * @since 1.0
+ */
 
 @Slf4j
 public class WebSocketHandler extends TextWebSocketHandler implements SubProtocolCapable, WebSocketSender {
+    private static final PingMessage PING = new PingMessage();
+    private static final String SINCE_PARAM = "since";
+
+    @Getter
     private final String entity;
 
-    private final Set<WebSocketSession> sessions = new CopyOnWriteArraySet<>();
+    private final Map<String, Map<String, Connection>> clients = new ConcurrentHashMap<>();
+    private final AtomicInteger sessionCount = new AtomicInteger();
+    private final WebSocketDispatcher dispatcher;
+    private final WebSocketClusterBus bus;
+    private final LongSupplier clock;
+    private final NotificationReplayBuffer replay;
+    private final AtomicLong localSeq = new AtomicLong(TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis()));
+    private final BlockingQueue<Pending> pending;
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final Counter sent;
+    private final Counter coalesced;
+    private final Counter droppedOverflow;
+    private final Counter droppedQueueFull;
+    private final Counter droppedSlowConsumer;
+    private final Counter pings;
+    private final Counter evictedIdle;
+    private final Counter rejectedLimit;
+    private final Counter replayed;
+    private final Counter resyncs;
+    private final Timer lag;
+
+    public WebSocketHandler(String entity, WebSocketDispatcher dispatcher, WebSocketClusterBus bus) {
+        this(entity, dispatcher, bus, System::nanoTime);
+    }
 
-    public WebSocketHandler(String entity) {
+    WebSocketHandler(String entity, WebSocketDispatcher dispatcher, WebSocketClusterBus bus, LongSupplier clock) {
         this.entity = entity;
+        this.dispatcher = dispatcher;
+        this.bus = bus;
+        this.clock = clock;
+        this.pending = new ArrayBlockingQueue<>(dispatcher.getMaxPending());
+        this.replay = dispatcher.getReplayBufferSize() > 0
+                ? new NotificationReplayBuffer(dispatcher.getReplayBufferSize(), dispatcher.getReplayMaxAgeMs())
+                : null;
+
+        MeterRegistry registry = dispatcher.getRegistry();
+        this.sent = registry.counter("websocket.messages.sent", "entity", entity);
+        this.coalesced = registry.counter("websocket.notifications.coalesced", "entity", entity);
+        this.droppedOverflow = registry.counter("websocket.notifications.dropped", "entity", entity, "reason", "overflow");
+        this.droppedQueueFull = registry.counter("websocket.messages.dropped", "entity", entity, "reason", "queue_full");
+        this.droppedSlowConsumer = registry.counter("websocket.messages.dropped", "entity", entity, "reason", "slow_consumer");
+        this.pings = registry.counter("websocket.pings.sent", "entity", entity);
+        this.evictedIdle = registry.counter("websocket.sessions.evicted", "entity", entity, "reason", "idle");
+        this.rejectedLimit = registry.counter("websocket.sessions.rejected", "entity", entity, "reason", "user_limit");
+        this.replayed = registry.counter("websocket.notifications.replayed", "entity", entity);
+        this.resyncs = registry.counter("websocket.replay.resync", "entity", entity);
+        this.lag = Timer.builder("websocket.notifications.lag").tag("entity", entity).register(registry);
+        Gauge.builder("websocket.sessions", sessionCount, AtomicInteger::get).tag("entity", entity).register(registry);
+        Gauge.builder("websocket.clients", clients, Map::size).tag("entity", entity).register(registry);
+        if (replay != null) {
+            Gauge.builder("websocket.replay.clients", replay, NotificationReplayBuffer::clientCount).tag("entity", entity).register(registry);
+        }
+
+        if (bus != null) {
+            bus.register(this);
+        }
     }
 
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
-        log.info("Conexión establecida con el servidor");
-        log.info("Sesión: " + session);
-        sessions.add(session);
-        TextMessage message = new TextMessage("Updates Web socket: " + entity + " - Tienda API Spring Boot");
-        log.info("Servidor envía: {}", message);
-        session.sendMessage(message);
+        String guuid = guuidOf(session);
+        if (guuid == null) {
+            log.warn("Sesión {} sin cliente autenticado, se cierra", session.getId());
+            session.close(CloseStatus.POLICY_VIOLATION);
+            return;
+        }
+
+        var connection = new Connection(dispatcher.decorate(session), clock.getAsLong());
+        var accepted = new AtomicBoolean();
+        clients.compute(guuid, (k, sessions) -> {
+            var current = sessions != null ? sessions : new ConcurrentHashMap<String, Connection>();
+            if (current.size() < dispatcher.getMaxSessionsPerUser()) {
+                current.put(session.getId(), connection);
+                accepted.set(true);
+            }
+            return current.isEmpty() ? null : current;
+        });
+        if (!accepted.get()) {
+            rejectedLimit.increment();
+            log.warn("El cliente {} ha superado el máximo de {} conexiones a {}", guuid, dispatcher.getMaxSessionsPerUser(), entity);
+            session.close(CloseStatus.POLICY_VIOLATION.withReason("Demasiadas conexiones abiertas"));
+            return;
+        }
+
+        sessionCount.incrementAndGet();
+        log.info("Conexión establecida con el servidor: {} ({})", session.getId(), guuid);
+        connection.session().sendMessage(new TextMessage("Updates Web socket: " + entity + " - Tienda API Spring Boot"));
+        replay(connection.session(), guuid);
     }
 
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
         log.info("Conexión cerrada con el servidor: " + status);
-        sessions.remove(session);
+        remove(session);
     }
 
     @Override
-    public void sendMessage(String message) throws IOException {
-        log.info("Enviar mensaje de cambios en la entidad: " + entity + " : " + message);
-        for (WebSocketSession session : sessions) {
-            if (session.isOpen()) {
-                log.info("Servidor WS envía: " + message);
-                session.sendMessage(new TextMessage(message));
-            }
-        }
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) {
+        touch(session);
+    }
+
+    @Override
+    protected void handlePongMessage(WebSocketSession session, PongMessage message) {
+        touch(session);
     }
 
+    /**
+     * Envía una notificación a todas las sesiones abiertas en cualquier nodo. No bloquea ni lanza excepciones.
+     * @param message La notificación en JSON.
+     * @since 1.0
+     */
 
-    @Scheduled(fixedRate = 1000) // Cada segundo
     @Override
-    public void sendPeriodicMessages() throws IOException {
-        for (WebSocketSession session : sessions) {
-            if (session.isOpen()) {
-                String broadcast = "server periodic message " + LocalTime.now();
-                log.info("Server sends: " + broadcast);
-                session.sendMessage(new TextMessage(broadcast));
-            }
+    public void sendMessage(String message) {
+        publish(null, message);
+    }
+
+    /**
+     * Envía una notificación solo a las sesiones de un cliente, esté conectado al nodo que esté.
+     * @param clientGuuid El guuid del usuario del cliente.
+     * @param message La notificación en JSON.
+     * @since 1.0
+     */
+
+    @Override
+    public void sendMessage(String clientGuuid, String message) {
+        if (clientGuuid != null) {
+            publish(clientGuuid, message);
         }
     }
 
+    /**
+     * Numera una notificación con la secuencia de este nodo y la encola para sus sesiones.
+     * @param clientGuuid El guuid del usuario del cliente, o {@code null} para todas las sesiones.
+     * @param message La notificación en JSON.
+     * @since 1.0
+     */
+
+    public void deliverLocal(String clientGuuid, String message) {
+        long seq = replay != null ? localSeq.incrementAndGet() : 0;
+        deliverLocal(clientGuuid, seq, seq > 0 ? NotificationReplayBuffer.stamp(seq, message) : message);
+    }
+
+    /**
+     * Encola una notificación ya numerada para las sesiones de este nodo. Si el cliente no tiene ninguna abierta aquí
+     * solo se guarda para reenviarla cuando reconecte.
+     * @param clientGuuid El guuid del usuario del cliente, o {@code null} para todas las sesiones.
+     * @param seq El número de secuencia, o 0 si no está numerada y no se guarda.
+     * @param message La notificación en JSON, que se envía tal cual a todas las sesiones destino.
+     * @since 1.0
+     */
+
+    public void deliverLocal(String clientGuuid, long seq, String message) {
+        if (replay != null && seq > 0) {
+            replay.append(seq, clientGuuid, message, clock.getAsLong());
+        }
+        if (clientGuuid == null || clients.containsKey(clientGuuid)) {
+            enqueue(new Pending(clientGuuid, message, System.nanoTime()));
+        }
+    }
+
+    /**
+     * Comprueba la salud de las conexiones. Las sesiones con actividad reciente no se tocan, las que llevan un
+     * intervalo sin actividad reciben un ping y las que superan el tiempo máximo de inactividad se cierran.
+     * @since 1.0
+     */
+
+    @Scheduled(fixedDelayString = "${websocket.heartbeat.interval-ms:25000}")
+    public void heartbeat() {
+        if (replay != null) {
+            replay.prune(clock.getAsLong());
+        }
+        if (sessionCount.get() == 0) {
+            return;
+        }
+        long now = clock.getAsLong();
+        long pingAfter = TimeUnit.MILLISECONDS.toNanos(dispatcher.getHeartbeatIntervalMs());
+        long evictAfter = TimeUnit.MILLISECONDS.toNanos(dispatcher.getIdleTimeoutMs());
+
+        for (Map<String, Connection> sessions : clients.values()) {
+            for (Connection connection : sessions.values()) {
+                long idle = now - connection.lastSeen();
+                if (idle >= evictAfter) {
+                    evictedIdle.increment();
+                    log.info("Sesión {} de {} cerrada por inactividad", connection.session().getId(), entity);
+                    close(connection.session(), CloseStatus.SESSION_NOT_RELIABLE);
+                } else if (idle >= pingAfter) {
+                    deliver(connection.session(), PING, now);
+                }
+            }
+        }
+    }
 
     @Override
     public void handleTransportError(WebSocketSession session, Throwable exception) throws Exception {
         log.info("Error de transporte con el servidor: " + exception.getMessage());
     }
 
-
     @Override
     public List<String> getSubProtocols() {
         return List.of("subprotocol.demo.websocket");
     }
-}
\ No newline at end of file
+
+    public int getSessionCount() {
+        return sessionCount.get();
+    }
+
+    public boolean isConnected(String clientGuuid) {
+        return clients.containsKey(clientGuuid);
+    }
+
+    void flush() {
+        flushScheduled.set(false);
+        List<Pending> drained = new ArrayList<>();
+        pending.drainTo(drained);
+        if (drained.isEmpty()) {
+            return;
+        }
+
+        // Las notificaciones para todos usan la clave null
+        Map<String, List<Pending>> byClient = new LinkedHashMap<>();
+        for (Pending notification : drained) {
+            byClient.computeIfAbsent(notification.clientGuuid(), k -> new ArrayList<>()).add(notification);
+        }
+        log.debug("Enviar {} notificaciones de la entidad {} a {} clientes", drained.size(), entity, byClient.size());
+
+        byClient.forEach((guuid, batch) -> {
+            var message = new TextMessage(frame(batch));
+            long enqueuedAt = batch.get(0).enqueuedAt();
+            if (guuid == null) {
+                clients.values().forEach(sessions -> deliverAll(sessions.values(), message, enqueuedAt));
+            } else {
+                var sessions = clients.get(guuid);
+                if (sessions != null) {
+                    deliverAll(sessions.values(), message, enqueuedAt);
+                }
+            }
+        });
+    }
+
+    private void replay(WebSocketSession session, String guuid) throws IOException {
+        String since = session.getUri() != null
+                ? UriComponentsBuilder.fromUri(session.getUri()).build().getQueryParams().getFirst(SINCE_PARAM)
+                : null;
+        if (replay == null || since == null) {
+            return;
+        }
+
+        Optional<List<String>> missed;
+        try {
+            missed = replay.since(Long.parseLong(since), guuid, clock.getAsLong());
+        } catch (NumberFormatException e) {
+            missed = Optional.empty();
+        }
+        if (missed.isEmpty()) {
+            resyncs.increment();
+            log.info("La sesión {} de {} no puede recuperar desde {}, debe resincronizar", session.getId(), entity, since);
+            session.sendMessage(new TextMessage(NotificationReplayBuffer.stamp(replay.lastSeq(),
+                    "{\"entity\":\"" + entity + "\",\"type\":\"RESYNC\",\"data\":null,\"createdAt\":\"" + LocalDateTime.now() + "\"}")));
+        } else if (!missed.get().isEmpty()) {
+            replayed.increment(missed.get().size());
+            session.sendMessage(new TextMessage(join(missed.get())));
+        }
+    }
+
+    private void publish(String clientGuuid, String message) {
+        if (bus == null) {
+            deliverLocal(clientGuuid, message);
+        } else if (replay == null) {
+            bus.publish(entity, clientGuuid, 0, message);
+        } else {
+            long seq = bus.nextSequence(entity);
+            bus.publish(entity, clientGuuid, seq, NotificationReplayBuffer.stamp(seq, message));
+        }
+    }
+
+    private void enqueue(Pending notification) {
+        while (!pending.offer(notification)) {
+            if (pending.poll() != null) {
+                droppedOverflow.increment();
+            }
+        }
+        if (flushScheduled.compareAndSet(false, true)) {
+            dispatcher.schedule(this::flush);
+        }
+    }
+
+    private String frame(List<Pending> batch) {
+        coalesced.increment(batch.size() - 1);
+        return join(batch.stream().map(Pending::message).toList());
+    }
+
+    private static String join(List<String> messages) {
+        if (messages.size() == 1) {
+            return messages.get(0);
+        }
+        var joined = new StringBuilder("[");
+        for (int i = 0; i < messages.size(); i++) {
+            joined.append(i == 0 ? "" : ",").append(messages.get(i));
+        }
+        return joined.append(']').toString();
+    }
+
+    private void deliverAll(Collection<Connection> connections, TextMessage message, long enqueuedAt) {
+        for (Connection connection : connections) {
+            deliver(connection.session(), message, enqueuedAt);
+        }
+    }
+
+    private void deliver(WebSocketSession session, WebSocketMessage<?> message, long enqueuedAt) {
+        if (!dispatcher.submit(() -> send(session, message, enqueuedAt))) {
+            droppedQueueFull.increment();
+        }
+    }
+
+    private void send(WebSocketSession session, WebSocketMessage<?> message, long enqueuedAt) {
+        if (!session.isOpen()) {
+            remove(session);
+            return;
+        }
+        try {
+            session.sendMessage(message);
+            if (message instanceof PingMessage) {
+                pings.increment();
+            } else {
+                lag.record(System.nanoTime() - enqueuedAt, TimeUnit.NANOSECONDS);
+                sent.increment();
+            }
+        } catch (SessionLimitExceededException e) {
+            droppedSlowConsumer.increment();
+            log.warn("Sesión {} de {} desconectada por no consumir los mensajes: {}", session.getId(), entity, e.getMessage());
+            close(session, e.getStatus());
+        } catch (IOException | RuntimeException e) {
+            log.warn("Error al enviar a la sesión {} de {}: {}", session.getId(), entity, e.getMessage());
+            close(session, CloseStatus.SERVER_ERROR);
+        }
+    }
+
+    private void touch(WebSocketSession session) {
+        String guuid = guuidOf(session);
+        var sessions = guuid != null ? clients.get(guuid) : null;
+        var connection = sessions != null ? sessions.get(session.getId()) : null;
+        if (connection != null) {
+            connection.touch(clock.getAsLong());
+        }
+    }
+
+    private void remove(WebSocketSession session) {
+        String guuid = guuidOf(session);
+        if (guuid == null) {
+            return;
+        }
+        clients.computeIfPresent(guuid, (k, sessions) -> {
+            if (sessions.remove(session.getId()) != null) {
+                sessionCount.decrementAndGet();
+            }
+            return sessions.isEmpty() ? null : sessions;
+        });
+    }
+
+    private void close(WebSocketSession session, CloseStatus status) {
+        remove(session);
+        try {
+            session.close(status);
+        } catch (IOException e) {
+            log.debug("Error al cerrar la sesión {}: {}", session.getId(), e.getMessage());
+        }
+    }
+
+    private static String guuidOf(WebSocketSession session) {
+        return (String) session.getAttributes().get(WebSocketAuthInterceptor.GUUID_ATTRIBUTE);
+    }
+
+    private record Pending(String clientGuuid, String message, long enqueuedAt) {
+    }
+
+    private static final class Connection {
+        private final WebSocketSession session;
+        private volatile long lastSeen;
+
+        Connection(WebSocketSession session, long now) {
+            this.session = session;
+            this.lastSeen = now;
+        }
+
+        WebSocketSession session() {
+            return session;
+        }
+
+        long lastSeen() {
+            return lastSeen;
+        }
+
+        void touch(long now) {
+            lastSeen = now;
+        }
+    }
+}
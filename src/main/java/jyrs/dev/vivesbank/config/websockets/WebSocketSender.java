@@ -1,9 +1,8 @@
 package jyrs.dev.vivesbank.config.websockets;
 
-import java.io.IOException;
 public interface WebSocketSender {
 
-    void sendMessage(String message) throws IOException;
+    void sendMessage(String message);
 
-    void sendPeriodicMessages() throws IOException;
+    void sendMessage(String clientGuuid, String message);
 }
\ No newline at end of file
@@ -0,0 +1,134 @@
+package jyrs.dev.vivesbank.currency.cache;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Tabla inmutable de tasas de cambio respecto a una única divisa base.
+ * Cada divisa tiene un ordinal fijo dentro de la tabla y su tasa se guarda en un array de doubles en esa posición,
+ * así que una tasa cruzada es una división entre dos posiciones del array y una conversión a varias divisas
+ * se resuelve con una sola pasada, sin llamadas a la API.
+ * @author Raul Fernandez, Yahya El Hadri, Javier Ruiz, Javier Hernandez, Samuel Cortes
+ * @since 1.0
+ */
+
+public final class CrossRateTable {
+
+    public static final int UNKNOWN = -1;
+
+    private final String[] codes;
+    private final double[] rates;
+    private final Map<String, Integer> ordinals;
+    private final Map<String, Double> view;
+
+    private CrossRateTable(String[] codes, double[] rates) {
+        this.codes = codes;
+        this.rates = rates;
+        Map<String, Integer> ordinals = new HashMap<>(codes.length * 2);
+        Map<String, Double> view = new LinkedHashMap<>(codes.length * 2);
+        for (int i = 0; i < codes.length; i++) {
+            ordinals.put(codes[i], i);
+            view.put(codes[i], rates[i]);
+        }
+        this.ordinals = Collections.unmodifiableMap(ordinals);
+        this.view = Collections.unmodifiableMap(view);
+    }
+
+    /**
+     * Crea la tabla a partir de las tasas respecto a la base. Los ordinales siguen el orden alfabético de los códigos.
+     * @param rates Las tasas respecto a la base, incluida la propia base con valor 1.
+     * @return La tabla.
+     * @since 1.0
+     */
+
+    public static CrossRateTable of(Map<String, Double> rates) {
+        String[] codes = rates.keySet().toArray(String[]::new);
+        Arrays.sort(codes);
+        double[] values = new double[codes.length];
+        for (int i = 0; i < codes.length; i++) {
+            values[i] = rates.get(codes[i]);
+        }
+        return new CrossRateTable(codes, values);
+    }
+
+    /**
+     * Obtiene el ordinal de una divisa dentro de la tabla.
+     * @param code El código de la divisa.
+     * @return El ordinal, o {@link #UNKNOWN} si la divisa no está en la tabla.
+     * @since 1.0
+     */
+
+    public int ordinal(String code) {
+        Integer ordinal = ordinals.get(code);
+        return ordinal != null ? ordinal : UNKNOWN;
+    }
+
+    public String code(int ordinal) {
+        return codes[ordinal];
+    }
+
+    public int size() {
+        return codes.length;
+    }
+
+    /**
+     * Calcula la tasa cruzada entre dos divisas de la tabla.
+     * @param from El ordinal de la divisa de origen.
+     * @param to El ordinal de la divisa de destino.
+     * @return Las unidades de destino que vale una unidad de origen.
+     * @since 1.0
+     */
+
+    public double rate(int from, int to) {
+        return rates[to] / rates[from];
+    }
+
+    /**
+     * Convierte una cantidad a varias divisas en una sola pasada.
+     * @param amount La cantidad en la divisa de origen.
+     * @param from El ordinal de la divisa de origen.
+     * @param targets Los ordinales de las divisas de destino.
+     * @return Las cantidades convertidas, en el mismo orden que los destinos.
+     * @since 1.0
+     */
+
+    public double[] convert(double amount, int from, int[] targets) {
+        double inBase = amount / rates[from];
+        double[] result = new double[targets.length];
+        for (int i = 0; i < targets.length; i++) {
+            result[i] = inBase * rates[targets[i]];
+        }
+        return result;
+    }
+
+    /**
+     * Convierte varias cantidades, cada una en su divisa, a una misma divisa de destino en una sola pasada.
+     * @param amounts Las cantidades.
+     * @param from Los ordinales de la divisa de cada cantidad.
+     * @param to El ordinal de la divisa de destino.
+     * @return Las cantidades convertidas, en el mismo orden.
+     * @since 1.0
+     */
+
+    public double[] convertAll(double[] amounts, int[] from, int to) {
+        double target = rates[to];
+        double[] result = new double[amounts.length];
+        for (int i = 0; i < amounts.length; i++) {
+            result[i] = amounts[i] * target / rates[from[i]];
+        }
+        return result;
+    }
+
+    /**
+     * Devuelve las tasas como un mapa de solo lectura, ordenado por código.
+     * @return Las tasas respecto a la base.
+     * @since 1.0
+     */
+
+    public Map<String, Double> asMap() {
+        return view;
+    }
+}
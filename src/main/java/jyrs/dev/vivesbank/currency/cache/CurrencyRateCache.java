@@ -0,0 +1,218 @@
+package jyrs.dev.vivesbank.currency.cache;
+
+import jyrs.dev.vivesbank.currency.exceptions.ApiCommunicationException;
+import jyrs.dev.vivesbank.currency.rest.CurrencyApiClient;
+import jyrs.dev.vivesbank.currency.rest.CurrencyApiReactiveRest;
+import jyrs.dev.vivesbank.currency.rest.CurrencyApiRest;
+import jyrs.dev.vivesbank.currency.rest.responses.CurrencyResponse;
+import jyrs.dev.vivesbank.currency.storage.HistoricalRateStore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import retrofit2.Call;
+import retrofit2.HttpException;
+import retrofit2.Response;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Caché local de tasas de cambio.
+ * La tabla completa de tasas más recientes se descarga periódicamente y se guarda como una instantánea inmutable,
+ * de modo que las conversiones se resuelven en memoria sin llamar a la API. Si la API no responde se sigue usando
+ * la última instantánea descargada. Las tablas de fechas pasadas no cambian nunca, así que se guardan para siempre
+ * en el {@link HistoricalRateStore} la primera vez que se piden.
+ * @author Raul Fernandez, Yahya El Hadri, Javier Ruiz, Javier Hernandez, Samuel Cortes
+ * @since 1.0
+ */
+
+@Component
+@Slf4j
+public class CurrencyRateCache {
+
+    public static final String BASE = "EUR";
+    public static final ZoneOffset ZONE = ZoneOffset.UTC;
+    // Primer día con tasas publicadas por el BCE: antes no hay nada que pedir a la API
+    public static final LocalDate FIRST_DAY = LocalDate.of(1999, 1, 4);
+
+    private final CurrencyApiRest currencyApiRest;
+    private final CurrencyApiReactiveRest reactiveApi;
+    private final CurrencyApiClient apiClient;
+    private final HistoricalRateStore historyStore;
+    private final AtomicReference<RateSnapshot> latest = new AtomicReference<>();
+
+    @Autowired
+    public CurrencyRateCache(CurrencyApiRest currencyApiRest, CurrencyApiReactiveRest reactiveApi,
+                             CurrencyApiClient apiClient, HistoricalRateStore historyStore) {
+        this.currencyApiRest = currencyApiRest;
+        this.reactiveApi = reactiveApi;
+        this.apiClient = apiClient;
+        this.historyStore = historyStore;
+    }
+
+    /**
+     * Descarga la tabla de tasas más recientes y sustituye la instantánea actual.
+     * Si la descarga falla se conserva la instantánea anterior.
+     * @since 1.0
+     */
+
+    @Scheduled(fixedDelayString = "${currency.rates.refresh-interval:3600000}")
+    public void refresh() {
+        try {
+            var snapshot = fetch("latest", () -> currencyApiRest.getLatestRates(BASE, null));
+            latest.set(snapshot);
+            log.info("Tasas de cambio actualizadas: {} divisas del {}", snapshot.rates().size(), snapshot.date());
+        } catch (ApiCommunicationException e) {
+            var current = latest.get();
+            if (current != null) {
+                log.warn("No se han podido actualizar las tasas ({}), se mantienen las del {}", e.getMessage(), current.date());
+            } else {
+                log.warn("No se han podido descargar las tasas de cambio: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Obtiene la instantánea de tasas más recientes, descargándola si todavía no se ha cargado ninguna.
+     * @return La instantánea actual.
+     * @throws ApiCommunicationException Si no hay instantánea y la API no responde.
+     * @since 1.0
+     */
+
+    public RateSnapshot latest() {
+        var snapshot = latest.get();
+        if (snapshot != null) {
+            return snapshot;
+        }
+        synchronized (latest) {
+            snapshot = latest.get();
+            if (snapshot == null) {
+                snapshot = fetch("latest", () -> currencyApiRest.getLatestRates(BASE, null));
+                latest.set(snapshot);
+            }
+            return snapshot;
+        }
+    }
+
+    /**
+     * Variante no bloqueante de {@link #latest()}: si ya hay instantánea se devuelve al momento y, si no, se descarga
+     * sin ocupar ningún hilo mientras se espera a la API.
+     * @return La instantánea actual.
+     * @since 1.0
+     */
+
+    public Mono<RateSnapshot> latestAsync() {
+        var snapshot = latest.get();
+        if (snapshot != null) {
+            return Mono.just(snapshot);
+        }
+        return fetchAsync("latest", () -> reactiveApi.getLatestRates(BASE, null))
+                .map(loaded -> latest.compareAndSet(null, loaded) ? loaded : latest.get());
+    }
+
+    /**
+     * Obtiene la tabla de tasas vigente en una fecha.
+     * Las fechas anteriores a hoy se sirven desde el almacén histórico y, si no están, se descargan y se guardan
+     * para siempre; la de hoy puede cambiar y siempre se pide a la API.
+     * @param date La fecha en formato YYYY-MM-DD.
+     * @return La instantánea de esa fecha.
+     * @throws ApiCommunicationException Si la fecha no es válida, o no está en el almacén y la API no responde.
+     * @since 1.0
+     */
+
+    public RateSnapshot historical(String date) {
+        LocalDate day;
+        try {
+            day = LocalDate.parse(date);
+        } catch (DateTimeParseException e) {
+            throw new ApiCommunicationException("La fecha '" + date + "' no es válida.");
+        }
+        if (!day.isBefore(LocalDate.now(ZONE))) {
+            return fetch("historical:" + date, () -> currencyApiRest.getHistoricalRates(date, null));
+        }
+
+        var stored = historyStore.effective(day);
+        if (stored.isPresent()) {
+            return stored.get();
+        }
+
+        return store(day, fetch("historical:" + date, () -> currencyApiRest.getHistoricalRates(date, null)));
+    }
+
+    /**
+     * Variante no bloqueante de {@link #historical(String)}.
+     * @param date La fecha en formato YYYY-MM-DD.
+     * @return La instantánea de esa fecha.
+     * @since 1.0
+     */
+
+    public Mono<RateSnapshot> historicalAsync(String date) {
+        LocalDate day;
+        try {
+            day = LocalDate.parse(date);
+        } catch (DateTimeParseException e) {
+            return Mono.error(new ApiCommunicationException("La fecha '" + date + "' no es válida."));
+        }
+        if (!day.isBefore(LocalDate.now(ZONE))) {
+            return fetchAsync("historical:" + date, () -> reactiveApi.getHistoricalRates(date, null));
+        }
+
+        var stored = historyStore.effective(day);
+        if (stored.isPresent()) {
+            return Mono.just(stored.get());
+        }
+        return fetchAsync("historical:" + date, () -> reactiveApi.getHistoricalRates(date, null))
+                .map(snapshot -> store(day, snapshot));
+    }
+
+    /**
+     * Guarda en el almacén las tasas descargadas de un día pasado.
+     * La API devuelve la última publicación anterior si ese día no la hubo: los días intermedios quedan sin tasas.
+     */
+
+    private RateSnapshot store(LocalDate day, RateSnapshot snapshot) {
+        LocalDate published = snapshot.date() != null ? LocalDate.parse(snapshot.date()) : day;
+        historyStore.append(published.isAfter(day) ? day : published, day, Map.of(published, snapshot.rates()));
+        return snapshot;
+    }
+
+    private Mono<RateSnapshot> fetchAsync(String key, Supplier<Mono<CurrencyResponse>> call) {
+        return apiClient.executeAsync(key, call)
+                .map(CurrencyRateCache::toSnapshot)
+                .onErrorMap(HttpException.class,
+                        e -> new ApiCommunicationException("Error al obtener las tasas de cambio. Código de error: " + e.code()))
+                .onErrorMap(IOException.class, e -> new ApiCommunicationException(e.getMessage()));
+    }
+
+    private RateSnapshot fetch(String key, Supplier<Call<CurrencyResponse>> call) {
+        Response<CurrencyResponse> response;
+        try {
+            response = apiClient.execute(key, call);
+        } catch (IOException e) {
+            throw new ApiCommunicationException(e.getMessage());
+        }
+
+        if (!response.isSuccessful()) {
+            throw new ApiCommunicationException("Error al obtener las tasas de cambio. Código de error: " + response.code());
+        }
+        return toSnapshot(response.body());
+    }
+
+    private static RateSnapshot toSnapshot(CurrencyResponse body) {
+        if (body == null || body.getRates() == null) {
+            throw new ApiCommunicationException("El cuerpo de la respuesta es nulo.");
+        }
+        if (body.getBase() == null) {
+            body.setBase(BASE);
+        }
+        return RateSnapshot.of(body, Instant.now());
+    }
+}
@@ -0,0 +1,103 @@
+package jyrs.dev.vivesbank.currency.cache;
+
+import jyrs.dev.vivesbank.currency.exceptions.CurrencyNotFoundException;
+import jyrs.dev.vivesbank.currency.rest.responses.CurrencyResponse;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Instantánea inmutable de la tabla de tasas de cambio de un día.
+ * Todas las tasas están expresadas respecto a la misma divisa base (la propia base vale 1), así que cualquier
+ * tasa cruzada se calcula en memoria con la {@link CrossRateTable}.
+ * @param base La divisa base de la tabla.
+ * @param date La fecha de publicación de las tasas.
+ * @param table Las tasas respecto a la base, incluida la propia base.
+ * @param fetchedAt El momento en el que se descargó la tabla.
+ * @author Raul Fernandez, Yahya El Hadri, Javier Ruiz, Javier Hernandez, Samuel Cortes
+ * @since 1.0
+ */
+
+public record RateSnapshot(String base, String date, CrossRateTable table, Instant fetchedAt) {
+
+    /**
+     * Crea una instantánea a partir de la respuesta de la API, añadiendo la propia base a la tabla.
+     * @param response La respuesta con la tabla completa de tasas.
+     * @param fetchedAt El momento de la descarga.
+     * @return La instantánea.
+     * @since 1.0
+     */
+
+    public static RateSnapshot of(CurrencyResponse response, Instant fetchedAt) {
+        Map<String, Double> rates = new HashMap<>(response.getRates());
+        rates.put(response.getBase(), 1.0);
+        return new RateSnapshot(response.getBase(), response.getDate(), CrossRateTable.of(rates), fetchedAt);
+    }
+
+    /**
+     * Devuelve las tasas respecto a la base como un mapa de solo lectura.
+     * @return Las tasas, incluida la propia base.
+     * @since 1.0
+     */
+
+    public Map<String, Double> rates() {
+        return table.asMap();
+    }
+
+    /**
+     * Calcula la tasa de cambio entre dos divisas.
+     * @param from La divisa de origen.
+     * @param to La divisa de destino.
+     * @return Las unidades de destino que vale una unidad de origen, o null si alguna de las dos no está en la tabla.
+     * @since 1.0
+     */
+
+    public Double rate(String from, String to) {
+        int fromOrdinal = table.ordinal(from);
+        int toOrdinal = table.ordinal(to);
+        if (fromOrdinal == CrossRateTable.UNKNOWN || toOrdinal == CrossRateTable.UNKNOWN) {
+            return null;
+        }
+        return table.rate(fromOrdinal, toOrdinal);
+    }
+
+    /**
+     * Devuelve la tabla expresada respecto a otra divisa base, con el mismo formato que la API.
+     * @param newBase La nueva divisa base.
+     * @param symbols Las divisas separadas por comas, o null para devolver todas.
+     * @return La respuesta con las tasas respecto a la nueva base.
+     * @throws CurrencyNotFoundException Si la nueva base no está en la tabla.
+     * @since 1.0
+     */
+
+    public CurrencyResponse rebase(String newBase, String symbols) {
+        int baseOrdinal = table.ordinal(newBase);
+        if (baseOrdinal == CrossRateTable.UNKNOWN) {
+            throw new CurrencyNotFoundException("La divisa base '" + newBase + "' no existe en las tasas.");
+        }
+
+        Map<String, Double> rebased = new TreeMap<>();
+        if (symbols == null || symbols.isBlank()) {
+            for (int i = 0; i < table.size(); i++) {
+                if (i != baseOrdinal) {
+                    rebased.put(table.code(i), table.rate(baseOrdinal, i));
+                }
+            }
+        } else {
+            for (String symbol : symbols.split(",")) {
+                Double rate = rate(newBase, symbol.trim());
+                if (rate != null) {
+                    rebased.put(symbol.trim(), rate);
+                }
+            }
+        }
+
+        CurrencyResponse response = new CurrencyResponse();
+        response.setBase(newBase);
+        response.setDate(date);
+        response.setRates(rebased);
+        return response;
+    }
+}
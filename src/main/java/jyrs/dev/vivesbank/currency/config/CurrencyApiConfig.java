@@ -1,11 +1,18 @@
 package jyrs.dev.vivesbank.currency.config;
 
 
+import jyrs.dev.vivesbank.currency.rest.CurrencyApiReactiveRest;
 import jyrs.dev.vivesbank.currency.rest.CurrencyApiRest;
 import jyrs.dev.vivesbank.currency.rest.RetrofitCurrency;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * Clase de configuracion para la API de divisas.
  * Esta clase se encarga de proporcionar la configuracion necesaria para el acceso a los servicios de la API de divisas.
@@ -15,15 +22,60 @@ import org.springframework.context.annotation.Configuration;
 @Configuration
 public class CurrencyApiConfig {
 
+    /**
+     * Metodo que crea el cliente HTTP usado para llamar a la API de divisas.
+     * Las conexiones se reutilizan entre peticiones y los tiempos de espera son cortos, para que una API lenta
+     * no bloquee los hilos de la aplicacion.
+     * @param connectTimeoutMs Tiempo maximo para establecer la conexion.
+     * @param readTimeoutMs Tiempo maximo de espera de la respuesta.
+     * @param maxIdleConnections Conexiones abiertas que se mantienen en el pool.
+     * @param keepAliveSeconds Tiempo que se mantiene abierta una conexion sin usar.
+     * @param maxRequests Peticiones simultaneas maximas a la API.
+     * @return El cliente HTTP configurado.
+     */
+    @Bean
+    public OkHttpClient currencyHttpClient(@Value("${currency.api.connect-timeout-ms:2000}") long connectTimeoutMs,
+                                           @Value("${currency.api.read-timeout-ms:5000}") long readTimeoutMs,
+                                           @Value("${currency.api.max-idle-connections:16}") int maxIdleConnections,
+                                           @Value("${currency.api.keep-alive-seconds:300}") long keepAliveSeconds,
+                                           @Value("${currency.client.max-concurrent:16}") int maxRequests) {
+        var dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(maxRequests * 2);
+        dispatcher.setMaxRequestsPerHost(maxRequests * 2);
+
+        return new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(maxIdleConnections, keepAliveSeconds, TimeUnit.SECONDS))
+                .dispatcher(dispatcher)
+                .connectTimeout(connectTimeoutMs, TimeUnit.MILLISECONDS)
+                .readTimeout(readTimeoutMs, TimeUnit.MILLISECONDS)
+                .callTimeout(connectTimeoutMs + readTimeoutMs, TimeUnit.MILLISECONDS)
+                .retryOnConnectionFailure(true)
+                .build();
+    }
+
     /**
      * Metodo que crea y devuelve una instancia de CurrencyApiRest.
      * Esta instancia se utiliza para realizar peticiones a la API de divisas.
+     * @param baseUrl La URL base de la API de divisas.
+     * @param currencyHttpClient El cliente HTTP configurado.
      * @return Una instancia de CurrencyApiRest configurada para interactuar con la API de divisas.
      */
     @Bean
-    public CurrencyApiRest currencyApiRest() {
-        return RetrofitCurrency.getCurrencyApi();
+    public CurrencyApiRest currencyApiRest(@Value("${currency.api.base-url:https://api.frankfurter.app}") String baseUrl,
+                                           OkHttpClient currencyHttpClient) {
+        return RetrofitCurrency.getCurrencyApi(baseUrl, currencyHttpClient);
     }
-}
-
 
+    /**
+     * Metodo que crea y devuelve una instancia de CurrencyApiReactiveRest, que comparte el cliente HTTP con la
+     * version bloqueante pero devuelve las respuestas en un Mono.
+     * @param baseUrl La URL base de la API de divisas.
+     * @param currencyHttpClient El cliente HTTP configurado.
+     * @return Una instancia de CurrencyApiReactiveRest configurada para interactuar con la API de divisas.
+     */
+    @Bean
+    public CurrencyApiReactiveRest currencyApiReactiveRest(@Value("${currency.api.base-url:https://api.frankfurter.app}") String baseUrl,
+                                                           OkHttpClient currencyHttpClient) {
+        return RetrofitCurrency.getReactiveCurrencyApi(baseUrl, currencyHttpClient);
+    }
+}
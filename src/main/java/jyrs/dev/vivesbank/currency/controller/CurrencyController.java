@@ -1,13 +1,15 @@
 package jyrs.dev.vivesbank.currency.controller;
 
 
-import jyrs.dev.vivesbank.currency.rest.responses.CurrencyResponse;
-import jyrs.dev.vivesbank.currency.rest.responses.TimeSeriesResponse;
-import jyrs.dev.vivesbank.currency.rest.responses.getById.getCurrencyById;
+import jakarta.validation.Valid;
+import jyrs.dev.vivesbank.currency.dto.BulkConversionRequest;
+import jyrs.dev.vivesbank.currency.exceptions.CurrencyNotFoundException;
+import jyrs.dev.vivesbank.currency.exceptions.InvalidDateRangeException;
 import jyrs.dev.vivesbank.currency.services.CurrencyService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
 
 import java.util.Map;
 
@@ -15,6 +17,8 @@ import java.util.Map;
  * Controlador REST que proporciona varios endpoints para interactuar con el servicio de divisas.
  * Este controlador maneja las solicitudes HTTP relacionadas con las divisas, incluyendo la obtención de todas las divisas, detalles de una divisa específica,
  * detalles históricos, conversiones de divisas y más.
+ * Los endpoints de tasas y conversiones son asíncronos: devuelven un {@link Mono} y no ocupan un hilo de Tomcat
+ * mientras se espera a la API de divisas.
  *
  * @author Raul Fernandez, Yahya El Hadri, Javier Ruiz, Javier Hernandez, Samuel Cortes
  * @since 1.0
@@ -55,14 +59,8 @@ public class CurrencyController {
      * @return ResponseEntity con los detalles de la divisa o un error si ocurre una excepción.
      */
     @GetMapping("/{symbol}")
-    public ResponseEntity<?> getCurrencyDetails(@PathVariable("symbol") String symbol) {
-        try {
-            getCurrencyById currencyDetails = currencyService.getCurrencyDetails(symbol);
-            return ResponseEntity.ok(currencyDetails);
-        } catch (Exception e) {
-            e.printStackTrace();
-            return ResponseEntity.status(500).body(Map.of("error", "Error al comunicarse con la API: " + e.getMessage()));
-        }
+    public Mono<ResponseEntity<?>> getCurrencyDetails(@PathVariable("symbol") String symbol) {
+        return respond(currencyService.getCurrencyDetailsAsync(symbol));
     }
 
     /**
@@ -72,15 +70,9 @@ public class CurrencyController {
      * @return ResponseEntity con los detalles históricos de la divisa o un error si ocurre una excepción.
      */
     @GetMapping("/history/{date}")
-    public ResponseEntity<?> getHistoricalCurrencyDetails(@PathVariable("date") String date,
-                                                          @RequestParam("symbols") String symbols) {
-        try {
-            getCurrencyById currencyDetails = currencyService.getHistoricalCurrencyDetails(date, symbols);
-            return ResponseEntity.ok(currencyDetails);
-        } catch (Exception e) {
-            e.printStackTrace();
-            return ResponseEntity.status(500).body(Map.of("error", "Error al comunicarse con la API: " + e.getMessage()));
-        }
+    public Mono<ResponseEntity<?>> getHistoricalCurrencyDetails(@PathVariable("date") String date,
+                                                                @RequestParam("symbols") String symbols) {
+        return respond(currencyService.getHistoricalCurrencyDetailsAsync(date, symbols));
     }
 
     /**
@@ -91,14 +83,25 @@ public class CurrencyController {
      * @return ResponseEntity con las tasas de conversión o un error si ocurre una excepción.
      */
     @GetMapping("/convert")
-    public ResponseEntity<?> convertCurrency(@RequestParam("base") String base,
-                                             @RequestParam("symbols") String symbols,
-                                             @RequestParam("amount") double amount) {
+    public Mono<ResponseEntity<?>> convertCurrency(@RequestParam("base") String base,
+                                                   @RequestParam("symbols") String symbols,
+                                                   @RequestParam("amount") double amount) {
+        return respond(currencyService.convertCurrencyAsync(base, symbols, amount));
+    }
+
+    /**
+     * Endpoint para convertir muchas cantidades, cada una en su divisa, a una misma divisa de destino.
+     * Pensado para informes que convierten todos los saldos de las cuentas de una vez.
+     * @param request Las cantidades y la divisa de destino.
+     * @return ResponseEntity con las cantidades convertidas y su suma, o un error si ocurre una excepción.
+     */
+    @PostMapping("/convert/bulk")
+    public ResponseEntity<?> convertBulk(@Valid @RequestBody BulkConversionRequest request) {
         try {
-            Map<String, Double> convertedRates = currencyService.convertCurrency(base, symbols, amount);
-            return ResponseEntity.ok(convertedRates);
+            return ResponseEntity.ok(currencyService.convertBulk(request));
+        } catch (CurrencyNotFoundException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         } catch (Exception e) {
-            e.printStackTrace();
             return ResponseEntity.status(500).body(Map.of("error", "Error al comunicarse con la API: " + e.getMessage()));
         }
     }
@@ -112,17 +115,12 @@ public class CurrencyController {
      * @return ResponseEntity con las tasas de cambio en el rango de fechas o un error si ocurre una excepción.
      */
     @GetMapping("/timeseries")
-    public ResponseEntity<?> getTimeSeriesRates(
+    public Mono<ResponseEntity<?>> getTimeSeriesRates(
             @RequestParam("start_date") String startDate,
             @RequestParam("end_date") String endDate,
             @RequestParam("base") String base,
             @RequestParam("symbols") String symbols) {
-        try {
-            TimeSeriesResponse timeSeriesRates = currencyService.getTimeSeriesRates(startDate, endDate, base, symbols);
-            return ResponseEntity.ok(timeSeriesRates);
-        } catch (Exception e) {
-            return ResponseEntity.status(500).body(Map.of("error", "Error al comunicarse con la API: " + e.getMessage()));
-        }
+        return respond(currencyService.getTimeSeriesRatesAsync(startDate, endDate, base, symbols));
     }
 
     /**
@@ -132,15 +130,10 @@ public class CurrencyController {
      * @return ResponseEntity con las últimas tasas de cambio o un error si ocurre una excepción.
      */
     @GetMapping("/latest")
-    public ResponseEntity<?> getLatestRates(
+    public Mono<ResponseEntity<?>> getLatestRates(
             @RequestParam("base") String base,
             @RequestParam(value = "symbols", required = false) String symbols) {
-        try {
-            CurrencyResponse latestRates = currencyService.getLatestRates(base, symbols);
-            return ResponseEntity.ok(latestRates);
-        } catch (Exception e) {
-            return ResponseEntity.status(500).body(Map.of("error", "Error al comunicarse con la API: " + e.getMessage()));
-        }
+        return respond(currencyService.getLatestRatesAsync(base, symbols));
     }
 
     /**
@@ -156,8 +149,19 @@ public class CurrencyController {
             return ResponseEntity.status(500).body(Map.of("error", "Error al comunicarse con la API: " + e.getMessage()));
         }
     }
-}
-
-
-
 
+    /**
+     * Convierte el resultado asíncrono del servicio en la respuesta HTTP: el hilo de la petición queda libre
+     * mientras se espera a la API y la respuesta se escribe cuando llega el resultado.
+     * @param result El resultado del servicio.
+     * @return ResponseEntity con el resultado, 400 si el rango de fechas no es válido o 500 si la operación falla.
+     */
+    private static Mono<ResponseEntity<?>> respond(Mono<?> result) {
+        return result
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .onErrorResume(InvalidDateRangeException.class,
+                        e -> Mono.just(ResponseEntity.badRequest().body(Map.of("error", e.getMessage()))))
+                .onErrorResume(e -> Mono.just(ResponseEntity.status(500)
+                        .body(Map.of("error", "Error al comunicarse con la API: " + e.getMessage()))));
+    }
+}
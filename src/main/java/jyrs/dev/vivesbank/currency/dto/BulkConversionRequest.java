@@ -0,0 +1,24 @@
+package jyrs.dev.vivesbank.currency.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+
+import java.util.List;
+
+/**
+ * Petición de conversión masiva: varias cantidades, cada una en su divisa, a una misma divisa de destino.
+ * @param target La divisa de destino.
+ * @param items Las cantidades a convertir.
+ * @author Raul Fernandez, Yahya El Hadri, Javier Ruiz, Javier Hernandez, Samuel Cortes
+ * @since 1.0
+ */
+
+public record BulkConversionRequest(@NotBlank(message = "La divisa de destino no puede estar vacía") String target,
+                                    @NotEmpty(message = "Debe indicar al menos una cantidad") List<@Valid Item> items) {
+
+    public record Item(@NotBlank(message = "La divisa no puede estar vacía") String currency,
+                       @NotNull(message = "La cantidad no puede ser nula") Double amount) {
+    }
+}
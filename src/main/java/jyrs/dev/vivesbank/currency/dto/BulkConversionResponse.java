@@ -0,0 +1,16 @@
+package jyrs.dev.vivesbank.currency.dto;
+
+import java.util.List;
+
+/**
+ * Resultado de una conversión masiva.
+ * @param target La divisa de destino.
+ * @param date La fecha de las tasas usadas.
+ * @param amounts Las cantidades convertidas, en el mismo orden que la petición.
+ * @param total La suma de todas las cantidades convertidas.
+ * @author Raul Fernandez, Yahya El Hadri, Javier Ruiz, Javier Hernandez, Samuel Cortes
+ * @since 1.0
+ */
+
+public record BulkConversionResponse(String target, String date, List<Double> amounts, double total) {
+}
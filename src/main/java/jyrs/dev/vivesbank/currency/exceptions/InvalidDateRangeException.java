@@ -0,0 +1,8 @@
+package jyrs.dev.vivesbank.currency.exceptions;
+
+
+public class InvalidDateRangeException extends RuntimeException {
+    public InvalidDateRangeException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,376 @@
+package jyrs.dev.vivesbank.currency.rest;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import jyrs.dev.vivesbank.currency.exceptions.ApiCommunicationException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.util.retry.Retry;
+import retrofit2.Call;
+import retrofit2.HttpException;
+import retrofit2.Response;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Capa de acceso a la API de divisas que protege al servicio de los fallos y de los picos de peticiones.
+ * <ul>
+ *     <li>Las peticiones idénticas que llegan mientras otra está en curso esperan su respuesta en lugar de repetirla.</li>
+ *     <li>Un límite de peticiones simultáneas impide que la API lenta acapare todos los hilos.</li>
+ *     <li>Si una petición tarda más de lo normal se lanza otra igual y se usa la primera que responda; si falla por
+ *     un error de red o del servidor se reintenta.</li>
+ *     <li>Tras varios fallos seguidos el circuito se abre y las peticiones fallan al momento durante un tiempo.</li>
+ * </ul>
+ * Las peticiones no bloqueantes ({@link #executeAsync}) comparten la agrupación, el límite y el circuito, y se
+ * reintentan ante errores de red o del servidor.
+ * Las métricas {@code currency.client.calls} y {@code currency.upstream.latency} muestran cuántas peticiones se han
+ * agrupado y cuánto tarda la API.
+ * @author Raul Fernandez, Yahya El Hadri, Javier Ruiz, Javier Hernandez, Samuel Cortes
+ * @since 1.0
+ */
+
+@Component
+@Slf4j
+public class CurrencyApiClient {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final Map<String, CompletableFuture<Response<?>>> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, Mono<?>> inFlightAsync = new ConcurrentHashMap<>();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Semaphore bulkhead;
+    private final long bulkheadWaitMs;
+    private final long hedgeDelayMs;
+    private final int maxAttempts;
+    private final int failureThreshold;
+    private final long openMs;
+
+    private final Counter leaderCalls;
+    private final Counter coalescedCalls;
+    private final Counter rejectedCalls;
+    private final Timer upstreamSuccess;
+    private final Timer upstreamFailure;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+
+    @Autowired
+    public CurrencyApiClient(MeterRegistry registry,
+                             @Value("${currency.client.max-concurrent:16}") int maxConcurrent,
+                             @Value("${currency.client.bulkhead-wait-ms:500}") long bulkheadWaitMs,
+                             @Value("${currency.client.hedge-delay-ms:300}") long hedgeDelayMs,
+                             @Value("${currency.client.max-attempts:2}") int maxAttempts,
+                             @Value("${currency.client.failure-threshold:5}") int failureThreshold,
+                             @Value("${currency.client.open-ms:30000}") long openMs) {
+        this.bulkhead = new Semaphore(Math.max(1, maxConcurrent));
+        this.bulkheadWaitMs = bulkheadWaitMs;
+        this.hedgeDelayMs = hedgeDelayMs;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMs = openMs;
+
+        this.leaderCalls = Counter.builder("currency.client.calls").tag("type", "upstream").register(registry);
+        this.coalescedCalls = Counter.builder("currency.client.calls").tag("type", "coalesced").register(registry);
+        this.rejectedCalls = Counter.builder("currency.client.calls").tag("type", "rejected").register(registry);
+        this.upstreamSuccess = Timer.builder("currency.upstream.latency").tag("outcome", "success").register(registry);
+        this.upstreamFailure = Timer.builder("currency.upstream.latency").tag("outcome", "failure").register(registry);
+        Gauge.builder("currency.client.coalescing.ratio", this, CurrencyApiClient::coalescingRatio).register(registry);
+        Gauge.builder("currency.client.bulkhead.available", bulkhead, Semaphore::availablePermits).register(registry);
+        Gauge.builder("currency.client.circuit.open", this, client -> client.state() == State.CLOSED ? 0 : 1).register(registry);
+    }
+
+    /**
+     * Ejecuta una petición a la API.
+     * @param key Identifica la petición: las peticiones con la misma clave que coinciden en el tiempo se agrupan.
+     * @param call Crea la llamada de Retrofit; se invoca una vez por intento.
+     * @return La respuesta de la API, que puede ser un error HTTP si los reintentos no lo han resuelto.
+     * @throws IOException Si todos los intentos fallan por un error de red.
+     * @throws ApiCommunicationException Si el circuito está abierto o hay demasiadas peticiones en curso.
+     * @since 1.0
+     */
+
+    @SuppressWarnings("unchecked")
+    public <T> Response<T> execute(String key, Supplier<Call<T>> call) throws IOException {
+        var future = new CompletableFuture<Response<?>>();
+        var existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            coalescedCalls.increment();
+            return (Response<T>) await(existing);
+        }
+
+        leaderCalls.increment();
+        try {
+            Response<T> response = guarded(call);
+            future.complete(response);
+            return response;
+        } catch (IOException | RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    /**
+     * Ejecuta una petición no bloqueante a la API.
+     * @param key Identifica la petición: las peticiones con la misma clave que coinciden en el tiempo se agrupan.
+     * @param call Crea la petición; se invoca una vez por intento.
+     * @return El resultado de la petición. Termina con {@link ApiCommunicationException} si el circuito está abierto
+     * o hay demasiadas peticiones en curso, y con el error de la API si los reintentos no lo resuelven.
+     * @since 1.0
+     */
+
+    @SuppressWarnings("unchecked")
+    public <T> Mono<T> executeAsync(String key, Supplier<Mono<T>> call) {
+        return Mono.defer(() -> {
+            var created = new Mono<?>[1];
+            var shared = inFlightAsync.computeIfAbsent(key, k -> {
+                Mono<?>[] self = new Mono<?>[1];
+                self[0] = guardedAsync(call)
+                        .doFinally(signal -> inFlightAsync.remove(k, self[0]))
+                        .cache();
+                created[0] = self[0];
+                return self[0];
+            });
+            (created[0] != null ? leaderCalls : coalescedCalls).increment();
+            return (Mono<T>) shared;
+        });
+    }
+
+    /**
+     * Proporción de peticiones que se han resuelto esperando a otra idéntica.
+     * @return Un valor entre 0 y 1.
+     * @since 1.0
+     */
+
+    public double coalescingRatio() {
+        double coalesced = coalescedCalls.count();
+        double total = coalesced + leaderCalls.count();
+        return total == 0 ? 0 : coalesced / total;
+    }
+
+    public synchronized State state() {
+        return state;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private <T> Response<T> guarded(Supplier<Call<T>> call) throws IOException {
+        State admitted = admit();
+        if (admitted == null) {
+            rejectedCalls.increment();
+            throw new ApiCommunicationException("La API de divisas no está disponible, se volverá a intentar más tarde.");
+        }
+
+        boolean acquired;
+        try {
+            acquired = bulkhead.tryAcquire(bulkheadWaitMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            abandonTrial(admitted);
+            Thread.currentThread().interrupt();
+            throw new ApiCommunicationException("Petición a la API de divisas interrumpida.");
+        }
+        if (!acquired) {
+            abandonTrial(admitted);
+            rejectedCalls.increment();
+            throw new ApiCommunicationException("Demasiadas peticiones simultáneas a la API de divisas.");
+        }
+
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            Response<T> response = hedged(call);
+            success = response.isSuccessful() || response.code() < 500;
+            return response;
+        } finally {
+            bulkhead.release();
+            (success ? upstreamSuccess : upstreamFailure).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            recordResult(success);
+        }
+    }
+
+    private <T> Mono<T> guardedAsync(Supplier<Mono<T>> call) {
+        return Mono.defer(() -> {
+            State admitted = admit();
+            if (admitted == null) {
+                rejectedCalls.increment();
+                return Mono.error(new ApiCommunicationException("La API de divisas no está disponible, se volverá a intentar más tarde."));
+            }
+            if (!bulkhead.tryAcquire()) {
+                abandonTrial(admitted);
+                rejectedCalls.increment();
+                return Mono.error(new ApiCommunicationException("Demasiadas peticiones simultáneas a la API de divisas."));
+            }
+
+            long start = System.nanoTime();
+            return Mono.defer(call::get)
+                    .retryWhen(Retry.fixedDelay(maxAttempts - 1, Duration.ofMillis(hedgeDelayMs))
+                            .filter(CurrencyApiClient::isRetryable)
+                            .onRetryExhaustedThrow((spec, signal) -> signal.failure()))
+                    .doOnSuccess(value -> {
+                        upstreamSuccess.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                        recordResult(true);
+                    })
+                    .doOnError(e -> {
+                        boolean failure = isRetryable(e);
+                        (failure ? upstreamFailure : upstreamSuccess).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                        recordResult(!failure);
+                    })
+                    .doFinally(signal -> {
+                        bulkhead.release();
+                        if (signal == SignalType.CANCEL) {
+                            abandonTrial(admitted);
+                        }
+                    });
+        });
+    }
+
+    private static boolean isRetryable(Throwable e) {
+        return e instanceof IOException || (e instanceof HttpException http && http.code() >= 500);
+    }
+
+    private <T> Response<T> hedged(Supplier<Call<T>> supplier) throws IOException {
+        var completion = new ExecutorCompletionService<Response<T>>(executor);
+        List<Call<T>> calls = new ArrayList<>();
+        Response<T> lastResponse = null;
+        IOException lastError = null;
+        int finished = 0;
+
+        launch(supplier, completion, calls);
+        try {
+            while (finished < calls.size()) {
+                Future<Response<T>> done = calls.size() < maxAttempts
+                        ? completion.poll(hedgeDelayMs, TimeUnit.MILLISECONDS)
+                        : completion.take();
+                if (done == null) {
+                    log.debug("La API de divisas tarda más de {} ms, se lanza una petición de respaldo", hedgeDelayMs);
+                    launch(supplier, completion, calls);
+                    continue;
+                }
+
+                finished++;
+                try {
+                    Response<T> response = done.get();
+                    if (response.isSuccessful() || response.code() < 500) {
+                        return response;
+                    }
+                    lastResponse = response;
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof RuntimeException runtime) {
+                        throw runtime;
+                    }
+                    lastError = e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+                }
+
+                if (finished == calls.size() && calls.size() < maxAttempts) {
+                    launch(supplier, completion, calls);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Petición a la API de divisas interrumpida", e);
+        } finally {
+            calls.forEach(Call::cancel);
+        }
+
+        if (lastResponse != null) {
+            return lastResponse;
+        }
+        throw lastError;
+    }
+
+    private <T> void launch(Supplier<Call<T>> supplier, ExecutorCompletionService<Response<T>> completion, List<Call<T>> calls) {
+        Call<T> call = supplier.get();
+        if (call == null) {
+            throw new ApiCommunicationException("El cuerpo de la respuesta es nulo.");
+        }
+        calls.add(call);
+        completion.submit(call::execute);
+    }
+
+    /**
+     * Decide si una petición puede llegar a la API.
+     * @return {@link State#CLOSED} si el circuito está cerrado, {@link State#HALF_OPEN} si la petición es la prueba
+     * que decide si el circuito se cierra, o {@code null} si se rechaza.
+     */
+
+    private synchronized State admit() {
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openMs) {
+            state = State.HALF_OPEN;
+            return State.HALF_OPEN;
+        }
+        return state == State.CLOSED ? State.CLOSED : null;
+    }
+
+    /**
+     * Vuelve a abrir el circuito cuando la petición de prueba termina sin resultado (rechazada por el límite,
+     * interrumpida o cancelada), para que otra petición pueda hacer la prueba cuando pase el tiempo de espera.
+     */
+
+    private synchronized void abandonTrial(State admitted) {
+        if (admitted == State.HALF_OPEN && state == State.HALF_OPEN) {
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+        }
+    }
+
+    private synchronized void recordResult(boolean success) {
+        if (success) {
+            if (state != State.CLOSED) {
+                log.info("La API de divisas vuelve a responder, se cierra el circuito");
+            }
+            state = State.CLOSED;
+            consecutiveFailures = 0;
+            return;
+        }
+
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            if (state != State.OPEN) {
+                log.warn("La API de divisas ha fallado {} veces seguidas, se abre el circuito durante {} ms", consecutiveFailures, openMs);
+            }
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+        }
+    }
+
+    private static Response<?> await(CompletableFuture<Response<?>> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package jyrs.dev.vivesbank.currency.rest;
+
+import jyrs.dev.vivesbank.currency.rest.responses.CurrencyResponse;
+import jyrs.dev.vivesbank.currency.rest.responses.TimeSeriesResponse;
+import reactor.core.publisher.Mono;
+import retrofit2.http.GET;
+import retrofit2.http.Path;
+import retrofit2.http.Query;
+
+import java.util.Map;
+
+/**
+ * Variante no bloqueante de {@link CurrencyApiRest}.
+ * Las peticiones se lanzan de forma asíncrona con OkHttp y el resultado llega en un {@link Mono}, así que ningún
+ * hilo queda esperando a la API. Si la API responde con un código de error el {@code Mono} termina con una
+ * {@link retrofit2.HttpException}.
+ * @author Raul Fernandez, Yahya El Hadri, Javier Ruiz, Javier Hernandez, Samuel Cortes
+ * @since 1.0
+ */
+
+public interface CurrencyApiReactiveRest {
+
+    /**
+     * Obtiene las tasas históricas de cambio de una fecha.
+     * @param date La fecha de la cual obtener las tasas históricas (formato: "YYYY-MM-DD").
+     * @param symbol El símbolo de la divisa, o null para obtener todas.
+     * @return Un `Mono` con la respuesta de la API.
+     */
+
+    @GET("/{date}")
+    Mono<CurrencyResponse> getHistoricalRates(
+            @Path("date") String date,
+            @Query("symbols") String symbol
+    );
+
+    /**
+     * Obtiene las tasas de cambio en un rango de fechas.
+     * @param startDate La fecha de inicio del rango (formato: "YYYY-MM-DD").
+     * @param endDate La fecha de fin del rango (formato: "YYYY-MM-DD").
+     * @param base La divisa base.
+     * @param symbols Las divisas de destino, o null para obtener todas.
+     * @return Un `Mono` con las tasas de cada día del rango.
+     */
+
+    @GET("/{start_date}..{end_date}")
+    Mono<TimeSeriesResponse> getTimeSeriesRates(
+            @Path("start_date") String startDate,
+            @Path("end_date") String endDate,
+            @Query("from") String base,
+            @Query("to") String symbols
+    );
+
+    /**
+     * Obtiene las tasas de cambio más recientes.
+     * @param base La divisa base.
+     * @param symbols Las divisas de destino, o null para obtener todas.
+     * @return Un `Mono` con las tasas más recientes.
+     */
+
+    @GET("/latest")
+    Mono<CurrencyResponse> getLatestRates(
+            @Query("base") String base,
+            @Query("symbols") String symbols
+    );
+
+    /**
+     * Obtiene la lista de divisas disponibles y sus nombres.
+     * @return Un `Mono` con el mapa de divisas disponibles.
+     */
+
+    @GET("/currencies")
+    Mono<Map<String, String>> getAvailableCurrencies();
+}
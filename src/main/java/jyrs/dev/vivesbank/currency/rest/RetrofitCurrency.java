@@ -1,5 +1,7 @@
 package jyrs.dev.vivesbank.currency.rest;
 
+import com.jakewharton.retrofit2.adapter.reactor.ReactorCallAdapterFactory;
+import okhttp3.OkHttpClient;
 import retrofit2.Retrofit;
 import retrofit2.converter.gson.GsonConverterFactory;
 
@@ -43,4 +45,39 @@ public class RetrofitCurrency {
     public static CurrencyApiRest getCurrencyApi() {
         return getRetrofitInstance().create(CurrencyApiRest.class);
     }
+
+    /**
+     * Obtiene una instancia de `CurrencyApiRest` con un cliente HTTP propio, para ajustar el pool de conexiones
+     * y los tiempos de espera.
+     * @param baseUrl La URL base de la API.
+     * @param httpClient El cliente HTTP que usará Retrofit.
+     * @return La instancia de `CurrencyApiRest` que permite interactuar con la API
+     */
+
+    public static CurrencyApiRest getCurrencyApi(String baseUrl, OkHttpClient httpClient) {
+        return new Retrofit.Builder()
+                .baseUrl(baseUrl)
+                .client(httpClient)
+                .addConverterFactory(GsonConverterFactory.create())
+                .build()
+                .create(CurrencyApiRest.class);
+    }
+
+    /**
+     * Obtiene una instancia de `CurrencyApiReactiveRest`, cuyas peticiones se ejecutan de forma asíncrona
+     * y devuelven un `Mono`.
+     * @param baseUrl La URL base de la API.
+     * @param httpClient El cliente HTTP que usará Retrofit.
+     * @return La instancia de `CurrencyApiReactiveRest` que permite interactuar con la API sin bloquear hilos
+     */
+
+    public static CurrencyApiReactiveRest getReactiveCurrencyApi(String baseUrl, OkHttpClient httpClient) {
+        return new Retrofit.Builder()
+                .baseUrl(baseUrl)
+                .client(httpClient)
+                .addConverterFactory(GsonConverterFactory.create())
+                .addCallAdapterFactory(ReactorCallAdapterFactory.createAsync())
+                .build()
+                .create(CurrencyApiReactiveRest.class);
+    }
 }
@@ -2,9 +2,13 @@ package jyrs.dev.vivesbank.currency.services;
 
 
 
+import jyrs.dev.vivesbank.currency.dto.BulkConversionRequest;
+import jyrs.dev.vivesbank.currency.dto.BulkConversionResponse;
 import jyrs.dev.vivesbank.currency.rest.responses.CurrencyResponse;
 import jyrs.dev.vivesbank.currency.rest.responses.TimeSeriesResponse;
 import jyrs.dev.vivesbank.currency.rest.responses.getById.getCurrencyById;
+import reactor.core.publisher.Mono;
+
 import java.util.Map;
 
 /**
@@ -51,6 +55,14 @@ public interface CurrencyService {
 
     Map<String, Double> convertCurrency(String base, String symbols, double amount);
 
+    /**
+     * Convierte varias cantidades, cada una en su divisa, a una misma divisa de destino en una sola pasada.
+     * @param request Las cantidades y la divisa de destino.
+     * @return Las cantidades convertidas y su suma.
+     */
+
+    BulkConversionResponse convertBulk(BulkConversionRequest request);
+
     /**
      * Obtiene las tasas de cambio de un rango de fechas especifico.
      * @param startDate La fecha de inicio en formato YYYY-MM-DD.
@@ -77,5 +89,51 @@ public interface CurrencyService {
      */
 
     Map<String, String> getAvailableCurrencies();
-}
 
+    /**
+     * Variante no bloqueante de {@link #getCurrencyDetails(String)}.
+     * @param symbol El simbolo de la moneda.
+     * @return Un `Mono` con los detalles de la moneda.
+     */
+
+    Mono<getCurrencyById> getCurrencyDetailsAsync(String symbol);
+
+    /**
+     * Variante no bloqueante de {@link #getHistoricalCurrencyDetails(String, String)}.
+     * @param date La fecha de la tasa historica.
+     * @param symbol El simbolo de la moneda.
+     * @return Un `Mono` con los detalles historicos de la moneda.
+     */
+
+    Mono<getCurrencyById> getHistoricalCurrencyDetailsAsync(String date, String symbol);
+
+    /**
+     * Variante no bloqueante de {@link #convertCurrency(String, String, double)}.
+     * @param base La moneda base.
+     * @param symbols Las monedas a las que se desea convertir.
+     * @param amount La cantidad a convertir.
+     * @return Un `Mono` con las monedas convertidas.
+     */
+
+    Mono<Map<String, Double>> convertCurrencyAsync(String base, String symbols, double amount);
+
+    /**
+     * Variante no bloqueante de {@link #getTimeSeriesRates(String, String, String, String)}.
+     * @param startDate La fecha de inicio del rango.
+     * @param endDate La fecha final del rango.
+     * @param base La moneda base.
+     * @param symbols Las monedas a obtener tasas.
+     * @return Un `Mono` con las tasas de cambio en el rango de fechas.
+     */
+
+    Mono<TimeSeriesResponse> getTimeSeriesRatesAsync(String startDate, String endDate, String base, String symbols);
+
+    /**
+     * Variante no bloqueante de {@link #getLatestRates(String, String)}.
+     * @param base La moneda base.
+     * @param symbols Las monedas a obtener tasas.
+     * @return Un `Mono` con las tasas de cambio mas recientes.
+     */
+
+    Mono<CurrencyResponse> getLatestRatesAsync(String base, String symbols);
+}
@@ -1,23 +1,41 @@
 package jyrs.dev.vivesbank.currency.services;
 
+import jyrs.dev.vivesbank.currency.cache.CrossRateTable;
+import jyrs.dev.vivesbank.currency.cache.CurrencyRateCache;
+import jyrs.dev.vivesbank.currency.cache.RateSnapshot;
+import jyrs.dev.vivesbank.currency.dto.BulkConversionRequest;
+import jyrs.dev.vivesbank.currency.dto.BulkConversionResponse;
 import jyrs.dev.vivesbank.currency.exceptions.ApiCommunicationException;
 import jyrs.dev.vivesbank.currency.exceptions.CurrencyNotFoundException;
+import jyrs.dev.vivesbank.currency.exceptions.InvalidDateRangeException;
+import jyrs.dev.vivesbank.currency.rest.CurrencyApiClient;
 import jyrs.dev.vivesbank.currency.rest.CurrencyApiRest;
 import jyrs.dev.vivesbank.currency.rest.responses.CurrencyResponse;
 import jyrs.dev.vivesbank.currency.rest.responses.TimeSeriesResponse;
 import jyrs.dev.vivesbank.currency.rest.responses.getById.getCurrencyById;
+import jyrs.dev.vivesbank.currency.storage.HistoricalRateStore;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import retrofit2.Call;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 import retrofit2.Response;
 
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * Implementación del servicio de divisas que interactúa con la API de divisas a través de Retrofit.
  * Esta clase ofrece métodos para obtener tasas de cambio, convertir divisas, y obtener información histórica
  * y actual sobre las divisas soportadas, utilizando el cliente API de Frankfurter.
+ * Las tasas actuales e históricas se resuelven con la caché local de tasas, sin llamar a la API en cada petición,
+ * y las series temporales se sirven desde el almacén histórico descargando solo los días que faltan.
  * @author Raul Fernandez, Yahya El Hadri, Javier Ruiz, Javier Hernandez, Samuel Cortes
  * @since 1.0
  */
@@ -26,15 +44,29 @@ import java.util.Map;
 public class CurrencyServiceImpl implements CurrencyService {
 
     private final CurrencyApiRest currencyApiRest;
+    private final CurrencyApiClient apiClient;
+    private final CurrencyRateCache rateCache;
+    private final HistoricalRateStore historyStore;
+    private final long maxTimeSeriesDays;
 
     /**
-     * Constructor que inyecta la instancia de la interfaz `CurrencyApiRest`.
+     * Constructor que inyecta la instancia de la interfaz `CurrencyApiRest`, la caché de tasas y el almacén histórico.
      * @param currencyApiRest La interfaz para interactuar con la API de divisas.
+     * @param apiClient La capa que agrupa, limita y reintenta las peticiones a la API.
+     * @param rateCache La caché local de tasas de cambio.
+     * @param historyStore El almacén local de tasas históricas.
+     * @param maxTimeSeriesDays El número máximo de días que se pueden pedir en una serie temporal.
      */
 
     @Autowired
-    public CurrencyServiceImpl(CurrencyApiRest currencyApiRest) {
+    public CurrencyServiceImpl(CurrencyApiRest currencyApiRest, CurrencyApiClient apiClient, CurrencyRateCache rateCache,
+                               HistoricalRateStore historyStore,
+                               @Value("${currency.timeseries.max-days:366}") long maxTimeSeriesDays) {
         this.currencyApiRest = currencyApiRest;
+        this.apiClient = apiClient;
+        this.rateCache = rateCache;
+        this.historyStore = historyStore;
+        this.maxTimeSeriesDays = Math.max(1, maxTimeSeriesDays);
     }
 
     /**
@@ -46,8 +78,7 @@ public class CurrencyServiceImpl implements CurrencyService {
     @Override
     public Map<String, Object> getAllCurrencies() {
         try {
-            retrofit2.Call<Map<String, Object>> call = currencyApiRest.getAllCurrency();
-            Response<Map<String, Object>> response = call.execute();
+            Response<Map<String, Object>> response = apiClient.execute("all", currencyApiRest::getAllCurrency);
             if (response.isSuccessful()) {
                 return response.body();
             } else {
@@ -69,28 +100,25 @@ public class CurrencyServiceImpl implements CurrencyService {
     @Override
     public getCurrencyById getCurrencyDetails(String symbol) {
         try {
-            Call<CurrencyResponse> call = currencyApiRest.getCurrencyById(symbol);
-            System.out.println("Request URL: " + call.request().url());
-
-            Response<CurrencyResponse> response = call.execute();
-
-            if (response.isSuccessful() && response.body() != null) {
-                CurrencyResponse currencyResponse = response.body();
-                Double rate = currencyResponse.getRates().get(symbol);
-
-                if (rate != null) {
-                    return new getCurrencyById(symbol, rate, currencyResponse.getDate());
-                } else {
-                    throw new CurrencyNotFoundException("El símbolo '" + symbol + "' no existe en las tasas.");
-                }
-            } else {
-                throw new ApiCommunicationException("Error al obtener la respuesta de la API.");
-            }
+            return details(rateCache.latest(), symbol, "El símbolo '" + symbol + "' no existe en las tasas.");
         } catch (Exception e) {
             throw new ApiCommunicationException("Error al comunicarse con la API: " + e.getMessage());
         }
     }
 
+    /**
+     * Variante no bloqueante de {@link #getCurrencyDetails(String)}.
+     * @param symbol El símbolo de la moneda.
+     * @return Un `Mono` con los detalles de la moneda.
+     */
+
+    @Override
+    public Mono<getCurrencyById> getCurrencyDetailsAsync(String symbol) {
+        return rateCache.latestAsync()
+                .map(snapshot -> details(snapshot, symbol, "El símbolo '" + symbol + "' no existe en las tasas."))
+                .onErrorMap(e -> new ApiCommunicationException("Error al comunicarse con la API: " + e.getMessage()));
+    }
+
     /**
      * Obtiene los detalles históricos de la moneda por una fecha específica y su símbolo.
      * @param date La fecha de la tasa histórica.
@@ -103,26 +131,7 @@ public class CurrencyServiceImpl implements CurrencyService {
     @Override
     public getCurrencyById getHistoricalCurrencyDetails(String date, String symbol) {
         try {
-            Call<CurrencyResponse> call = currencyApiRest.getHistoricalRates(date, symbol);
-            if (call == null) {
-                throw new ApiCommunicationException("El cuerpo de la respuesta es nulo.");
-            }
-            Response<CurrencyResponse> response = call.execute();
-            if (response.isSuccessful()) {
-                if (response.body() != null) {
-                    CurrencyResponse currencyResponse = response.body();
-                    Double rate = currencyResponse.getRates().get(symbol);
-                    if (rate != null) {
-                        return new getCurrencyById(symbol, rate, currencyResponse.getDate());
-                    } else {
-                        throw new CurrencyNotFoundException("El símbolo '" + symbol + "' no existe en las tasas para esa fecha.");
-                    }
-                } else {
-                    throw new ApiCommunicationException("El cuerpo de la respuesta es nulo.");
-                }
-            } else {
-                throw new ApiCommunicationException("Error al obtener la respuesta de la API: " + response.message());
-            }
+            return details(rateCache.historical(date), symbol, "El símbolo '" + symbol + "' no existe en las tasas para esa fecha.");
         } catch (CurrencyNotFoundException e) {
             throw e;
         } catch (Exception e) {
@@ -130,6 +139,29 @@ public class CurrencyServiceImpl implements CurrencyService {
         }
     }
 
+    /**
+     * Variante no bloqueante de {@link #getHistoricalCurrencyDetails(String, String)}.
+     * @param date La fecha de la tasa histórica.
+     * @param symbol El símbolo de la moneda.
+     * @return Un `Mono` con los detalles históricos de la moneda.
+     */
+
+    @Override
+    public Mono<getCurrencyById> getHistoricalCurrencyDetailsAsync(String date, String symbol) {
+        return rateCache.historicalAsync(date)
+                .map(snapshot -> details(snapshot, symbol, "El símbolo '" + symbol + "' no existe en las tasas para esa fecha."))
+                .onErrorMap(e -> !(e instanceof CurrencyNotFoundException),
+                        e -> new ApiCommunicationException("Error al comunicarse con la API: " + e.getMessage()));
+    }
+
+    private static getCurrencyById details(RateSnapshot snapshot, String symbol, String notFoundMessage) {
+        Double rate = snapshot.rates().get(symbol);
+        if (rate == null) {
+            throw new CurrencyNotFoundException(notFoundMessage);
+        }
+        return new getCurrencyById(symbol, rate, snapshot.date());
+    }
+
     /**
      * Convierte una cantidad de una moneda base a otra divisa especificada.
      * @param base La moneda base.
@@ -142,63 +174,187 @@ public class CurrencyServiceImpl implements CurrencyService {
     @Override
     public Map<String, Double> convertCurrency(String base, String symbols, double amount) {
         try {
-            String url = String.format("https://api.frankfurter.app/latest?from=%s&to=%s", base, symbols);
+            return convert(rateCache.latest().table(), base, symbols, amount);
+        } catch (Exception e) {
+            throw new ApiCommunicationException("Error al comunicarse con la API de conversión: " + e.getMessage());
+        }
+    }
 
-            Call<CurrencyResponse> call = currencyApiRest.getConversionRates(base, symbols);
-            Response<CurrencyResponse> response = call.execute();
+    /**
+     * Variante no bloqueante de {@link #convertCurrency(String, String, double)}.
+     * @param base La moneda base.
+     * @param symbols Las monedas a convertir.
+     * @param amount La cantidad a convertir.
+     * @return Un `Mono` con las cantidades convertidas.
+     */
 
-            if (response.isSuccessful()) {
-                CurrencyResponse currencyResponse = response.body();
-
-                if (currencyResponse != null && currencyResponse.getRates() != null) {
-                    Map<String, Double> rates = currencyResponse.getRates();
-                    Map<String, Double> convertedRates = new HashMap<>();
-
-                    for (String symbol : symbols.split(",")) {
-                        Double rate = rates.get(symbol);
-                        if (rate != null) {
-                            convertedRates.put(symbol, rate * amount);
-                        }
-                    }
-                    return convertedRates;
-                } else {
-                    throw new ApiCommunicationException("Respuesta vacía de la API o no se encontraron tasas.");
-                }
-            } else {
-                throw new ApiCommunicationException("Error al obtener las tasas de cambio. Código de error: " + response.code());
+    @Override
+    public Mono<Map<String, Double>> convertCurrencyAsync(String base, String symbols, double amount) {
+        return rateCache.latestAsync()
+                .map(snapshot -> convert(snapshot.table(), base, symbols, amount))
+                .onErrorMap(e -> new ApiCommunicationException("Error al comunicarse con la API de conversión: " + e.getMessage()));
+    }
+
+    private static Map<String, Double> convert(CrossRateTable table, String base, String symbols, double amount) {
+        int from = table.ordinal(base);
+        if (from == CrossRateTable.UNKNOWN) {
+            throw new CurrencyNotFoundException("La divisa base '" + base + "' no existe en las tasas.");
+        }
+
+        String[] codes = symbols.split(",");
+        int[] targets = new int[codes.length];
+        int known = 0;
+        for (String code : codes) {
+            int ordinal = table.ordinal(code);
+            if (ordinal != CrossRateTable.UNKNOWN) {
+                targets[known++] = ordinal;
             }
-        } catch (Exception e) {
-            throw new ApiCommunicationException("Error al comunicarse con la API de conversión: " + e.getMessage());
         }
 
+        double[] converted = table.convert(amount, from, Arrays.copyOf(targets, known));
+        Map<String, Double> convertedRates = new HashMap<>();
+        for (int i = 0; i < known; i++) {
+            convertedRates.put(table.code(targets[i]), converted[i]);
+        }
+        return convertedRates;
+    }
+
+    /**
+     * Convierte varias cantidades, cada una en su divisa, a una misma divisa de destino.
+     * Todas las cantidades se convierten con la misma instantánea de tasas, en una sola pasada.
+     * @param request Las cantidades y la divisa de destino.
+     * @return Las cantidades convertidas y su suma.
+     * @throws CurrencyNotFoundException Si alguna divisa no existe en las tasas.
+     * @throws ApiCommunicationException Si no hay tasas disponibles.
+     */
+
+    @Override
+    public BulkConversionResponse convertBulk(BulkConversionRequest request) {
+        var snapshot = rateCache.latest();
+        var table = snapshot.table();
+
+        int to = ordinalOf(table, request.target());
+        var items = request.items();
+        double[] amounts = new double[items.size()];
+        int[] from = new int[items.size()];
+        for (int i = 0; i < amounts.length; i++) {
+            amounts[i] = items.get(i).amount();
+            from[i] = ordinalOf(table, items.get(i).currency());
+        }
+
+        double[] converted = table.convertAll(amounts, from, to);
+        double total = 0;
+        for (double value : converted) {
+            total += value;
+        }
+        return new BulkConversionResponse(request.target(), snapshot.date(), Arrays.stream(converted).boxed().toList(), total);
+    }
+
+    private static int ordinalOf(CrossRateTable table, String code) {
+        int ordinal = table.ordinal(code);
+        if (ordinal == CrossRateTable.UNKNOWN) {
+            throw new CurrencyNotFoundException("La divisa '" + code + "' no existe en las tasas.");
+        }
+        return ordinal;
     }
 
     /**
      * Obtiene las tasas de cambio de un rango de fechas específico.
+     * Los días ya descargados se leen del almacén histórico; solo se piden a la API los tramos que faltan.
+     * El inicio anterior al primer día publicado se ajusta a ese día, y el rango no puede superar
+     * {@code currency.timeseries.max-days} días.
      * @param startDate La fecha de inicio del rango.
      * @param endDate La fecha final del rango.
      * @param base La moneda base.
      * @param symbols Las monedas a obtener tasas.
      * @return Un objeto `TimeSeriesResponse` con las tasas de cambio en el rango de fechas.
+     * @throws InvalidDateRangeException Si las fechas no son válidas, el inicio es posterior al fin o el rango es demasiado largo.
      * @throws ApiCommunicationException Si hay problemas al comunicarse con la API.
      */
 
     @Override
     public TimeSeriesResponse getTimeSeriesRates(String startDate, String endDate, String base, String symbols) {
+        LocalDate start = parseDate(startDate);
+        LocalDate end = parseDate(endDate);
+        if (start.isBefore(CurrencyRateCache.FIRST_DAY)) {
+            start = CurrencyRateCache.FIRST_DAY;
+        }
+        if (start.isAfter(end)) {
+            throw new InvalidDateRangeException("La fecha de inicio " + start + " es posterior a la de fin " + end);
+        }
+        if (ChronoUnit.DAYS.between(start, end) + 1 > maxTimeSeriesDays) {
+            throw new InvalidDateRangeException("El rango de fechas no puede superar " + maxTimeSeriesDays + " días");
+        }
+
         try {
-            Call<TimeSeriesResponse> call = currencyApiRest.getTimeSeriesRates(startDate, endDate, base, symbols);
-            Response<TimeSeriesResponse> response = call.execute();
+            LocalDate lastClosed = LocalDate.now(CurrencyRateCache.ZONE).minusDays(1);
+            LocalDate closedEnd = end.isAfter(lastClosed) ? lastClosed : end;
 
-            if (response.isSuccessful() && response.body() != null) {
-                return response.body();
-            } else {
-                throw new ApiCommunicationException("Error al obtener las tasas de series temporales. Código de error: " + response.code());
+            Map<String, Map<String, Double>> rates = new TreeMap<>();
+            if (!start.isAfter(closedEnd)) {
+                for (LocalDate[] gap : historyStore.gaps(start, closedEnd)) {
+                    fetchTimeSeries(gap[0], gap[1]);
+                }
+                historyStore.forEachDay(start, closedEnd,
+                        (day, snapshot) -> rates.put(day.toString(), snapshot.rebase(base, symbols).getRates()));
+            }
+
+            if (end.isAfter(lastClosed)) {
+                var latest = rateCache.latest();
+                if (latest.date() != null && latest.date().compareTo(start.toString()) >= 0 && latest.date().compareTo(end.toString()) <= 0) {
+                    rates.putIfAbsent(latest.date(), latest.rebase(base, symbols).getRates());
+                }
             }
+
+            return new TimeSeriesResponse(base, start.toString(), end.toString(), rates);
         } catch (Exception e) {
             throw new ApiCommunicationException("Error al comunicarse con la API de series temporales: " + e.getMessage());
         }
     }
 
+    /**
+     * Variante asíncrona de {@link #getTimeSeriesRates(String, String, String, String)}.
+     * @param startDate La fecha de inicio del rango.
+     * @param endDate La fecha final del rango.
+     * @param base La moneda base.
+     * @param symbols Las monedas a obtener tasas.
+     * @return Un `Mono` con las tasas de cambio en el rango de fechas.
+     */
+
+    @Override
+    public Mono<TimeSeriesResponse> getTimeSeriesRatesAsync(String startDate, String endDate, String base, String symbols) {
+        // Lee el fichero del almacén y puede descargar tramos: se hace fuera de los hilos de Tomcat
+        return Mono.fromCallable(() -> getTimeSeriesRates(startDate, endDate, base, symbols))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private static LocalDate parseDate(String date) {
+        try {
+            return LocalDate.parse(date);
+        } catch (DateTimeParseException e) {
+            throw new InvalidDateRangeException("La fecha '" + date + "' no es válida, debe tener el formato AAAA-MM-DD");
+        }
+    }
+
+    /**
+     * Descarga de la API todas las tasas respecto al euro de un tramo de días y las guarda en el almacén histórico.
+     */
+
+    private void fetchTimeSeries(LocalDate from, LocalDate to) throws IOException {
+        Response<TimeSeriesResponse> response = apiClient.execute("timeseries:" + from + ".." + to,
+                () -> currencyApiRest.getTimeSeriesRates(from.toString(), to.toString(), CurrencyRateCache.BASE, null));
+
+        if (!response.isSuccessful() || response.body() == null) {
+            throw new ApiCommunicationException("Error al obtener las tasas de series temporales. Código de error: " + response.code());
+        }
+
+        Map<LocalDate, Map<String, Double>> ratesByDay = new HashMap<>();
+        if (response.body().getRates() != null) {
+            response.body().getRates().forEach((day, dayRates) -> ratesByDay.put(LocalDate.parse(day), dayRates));
+        }
+        historyStore.append(from, to, ratesByDay);
+    }
+
     /**
      * Obtiene las tasas de cambio más recientes para una moneda base.
      * @param base La moneda base.
@@ -210,19 +366,26 @@ public class CurrencyServiceImpl implements CurrencyService {
     @Override
     public CurrencyResponse getLatestRates(String base, String symbols) {
         try {
-            Call<CurrencyResponse> call = currencyApiRest.getLatestRates(base, symbols);
-            Response<CurrencyResponse> response = call.execute();
-
-            if (response.isSuccessful() && response.body() != null) {
-                return response.body();
-            } else {
-                throw new ApiCommunicationException("Error al obtener las tasas actuales. Código de error: " + response.code());
-            }
+            return rateCache.latest().rebase(base, symbols);
         } catch (Exception e) {
             throw new ApiCommunicationException("Error al comunicarse con la API de tasas actuales: " + e.getMessage());
         }
     }
 
+    /**
+     * Variante no bloqueante de {@link #getLatestRates(String, String)}.
+     * @param base La moneda base.
+     * @param symbols Las monedas a obtener tasas.
+     * @return Un `Mono` con las tasas de cambio más recientes.
+     */
+
+    @Override
+    public Mono<CurrencyResponse> getLatestRatesAsync(String base, String symbols) {
+        return rateCache.latestAsync()
+                .map(snapshot -> snapshot.rebase(base, symbols))
+                .onErrorMap(e -> new ApiCommunicationException("Error al comunicarse con la API de tasas actuales: " + e.getMessage()));
+    }
+
     /**
      * Obtiene la lista de las monedas disponibles desde la API.
      * @return Un mapa con los códigos de las monedas y sus nombres.
@@ -232,8 +395,7 @@ public class CurrencyServiceImpl implements CurrencyService {
     @Override
     public Map<String, String> getAvailableCurrencies() {
         try {
-            Call<Map<String, String>> call = currencyApiRest.getAvailableCurrencies();
-            Response<Map<String, String>> response = call.execute();
+            Response<Map<String, String>> response = apiClient.execute("currencies", currencyApiRest::getAvailableCurrencies);
 
             if (response.isSuccessful() && response.body() != null) {
                 return response.body();
@@ -0,0 +1,321 @@
+package jyrs.dev.vivesbank.currency.storage;
+
+import jakarta.annotation.PreDestroy;
+import jyrs.dev.vivesbank.currency.cache.CrossRateTable;
+import jyrs.dev.vivesbank.currency.cache.CurrencyRateCache;
+import jyrs.dev.vivesbank.currency.cache.RateSnapshot;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+
+/**
+ * Almacén local de tasas de cambio históricas.
+ * Las tasas se guardan en un fichero de registros de ancho fijo (día, divisa, tasa respecto al euro) que se lee
+ * a través de un {@link MappedByteBuffer}, así que consultar años de histórico no requiere llamar a la API.
+ * Los registros de un mismo día se escriben seguidos; los días sin publicación (fines de semana, festivos) se guardan
+ * con un registro de marca para no volver a pedirlos. Solo se guardan días cerrados, nunca el día de hoy.
+ * @author Raul Fernandez, Yahya El Hadri, Javier Ruiz, Javier Hernandez, Samuel Cortes
+ * @since 1.0
+ */
+
+@Component
+@Slf4j
+public class HistoricalRateStore {
+
+    private static final int MAGIC = 0x46585231; // "FXR1"
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_SIZE = 16;
+    private static final int GROWTH_RECORDS = 64 * 1024;
+    private static final byte[] MARKER = {'-', '-', '-'};
+
+    private final Path file;
+    private final FileChannel channel;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, Slot> days = new HashMap<>();
+    private MappedByteBuffer buffer;
+    private long records;
+
+    @Autowired
+    public HistoricalRateStore(@Value("${currency.history.file:data/fx-rates.dat}") String file) {
+        this.file = Path.of(file);
+        try {
+            if (this.file.getParent() != null) {
+                Files.createDirectories(this.file.getParent());
+            }
+            this.channel = FileChannel.open(this.file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            open();
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se ha podido abrir el almacén de tasas " + file, e);
+        }
+    }
+
+    /**
+     * Indica si un día ya está en el almacén, tenga o no tasas publicadas.
+     * @param day El día.
+     * @return true si ya se ha descargado.
+     * @since 1.0
+     */
+
+    public boolean covers(LocalDate day) {
+        lock.readLock().lock();
+        try {
+            return days.containsKey(day.toEpochDay());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Calcula los tramos de días de un rango que todavía no están en el almacén.
+     * @param start El primer día del rango.
+     * @param end El último día del rango, incluido.
+     * @return Los tramos pendientes, cada uno como un par {inicio, fin}.
+     * @since 1.0
+     */
+
+    public List<LocalDate[]> gaps(LocalDate start, LocalDate end) {
+        List<LocalDate[]> gaps = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            LocalDate gapStart = null;
+            for (LocalDate day = start; !day.isAfter(end); day = day.plusDays(1)) {
+                boolean covered = days.containsKey(day.toEpochDay());
+                if (!covered && gapStart == null) {
+                    gapStart = day;
+                } else if (covered && gapStart != null) {
+                    gaps.add(new LocalDate[]{gapStart, day.minusDays(1)});
+                    gapStart = null;
+                }
+            }
+            if (gapStart != null) {
+                gaps.add(new LocalDate[]{gapStart, end});
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return gaps;
+    }
+
+    /**
+     * Guarda las tasas descargadas de un rango de días. Los días del rango sin tasas se guardan como días sin
+     * publicación; los días que ya estaban en el almacén, los anteriores a {@link CurrencyRateCache#FIRST_DAY}, los
+     * posteriores a ayer y los de fuera del rango se ignoran.
+     * @param start El primer día del rango descargado.
+     * @param end El último día del rango descargado, incluido.
+     * @param ratesByDay Las tasas respecto al euro de cada día con publicación.
+     * @since 1.0
+     */
+
+    public void append(LocalDate start, LocalDate end, Map<LocalDate, Map<String, Double>> ratesByDay) {
+        LocalDate lastClosed = LocalDate.now(CurrencyRateCache.ZONE).minusDays(1);
+        if (end.isAfter(lastClosed)) {
+            end = lastClosed;
+        }
+        if (start.isBefore(CurrencyRateCache.FIRST_DAY)) {
+            start = CurrencyRateCache.FIRST_DAY;
+        }
+        if (start.isAfter(end)) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            int written = 0;
+            for (LocalDate day = start; !day.isAfter(end); day = day.plusDays(1)) {
+                if (!days.containsKey(day.toEpochDay())) {
+                    written += writeDay(day, ratesByDay.getOrDefault(day, Map.of()));
+                }
+            }
+            if (written > 0) {
+                buffer.putLong(8, records);
+                log.debug("Guardados {} registros de tasas entre {} y {}", written, start, end);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Obtiene las tasas publicadas de un día.
+     * @param day El día.
+     * @return La instantánea de ese día, o vacío si no está en el almacén o no hubo publicación.
+     * @since 1.0
+     */
+
+    public Optional<RateSnapshot> snapshot(LocalDate day) {
+        lock.readLock().lock();
+        try {
+            return Optional.ofNullable(read(day));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Obtiene las tasas vigentes en un día: las de ese día o, si no hubo publicación, las del último día con
+     * publicación anterior, siempre que todos los días intermedios estén en el almacén.
+     * @param day El día.
+     * @return La instantánea vigente, o vacío si falta algún día en el almacén.
+     * @since 1.0
+     */
+
+    public Optional<RateSnapshot> effective(LocalDate day) {
+        lock.readLock().lock();
+        try {
+            for (LocalDate current = day; days.containsKey(current.toEpochDay()); current = current.minusDays(1)) {
+                var snapshot = read(current);
+                if (snapshot != null) {
+                    return Optional.of(snapshot);
+                }
+            }
+            return Optional.empty();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Recorre los días con publicación de un rango, en orden.
+     * @param start El primer día del rango.
+     * @param end El último día del rango, incluido.
+     * @param consumer Recibe cada día y su instantánea.
+     * @since 1.0
+     */
+
+    public void forEachDay(LocalDate start, LocalDate end, BiConsumer<LocalDate, RateSnapshot> consumer) {
+        lock.readLock().lock();
+        try {
+            for (LocalDate day = start; !day.isAfter(end); day = day.plusDays(1)) {
+                var snapshot = read(day);
+                if (snapshot != null) {
+                    consumer.accept(day, snapshot);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            buffer.force();
+            channel.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void open() throws IOException {
+        boolean empty = channel.size() < HEADER_SIZE;
+        map(Math.max(channel.size(), HEADER_SIZE + (long) GROWTH_RECORDS * RECORD_SIZE));
+
+        if (empty) {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, RECORD_SIZE);
+            buffer.putLong(8, 0);
+            return;
+        }
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != RECORD_SIZE) {
+            throw new IOException("El fichero " + file + " no es un almacén de tasas válido");
+        }
+
+        records = buffer.getLong(8);
+        for (int i = 0; i < records; i++) {
+            long day = buffer.getInt(offset(i));
+            var slot = days.get(day);
+            days.put(day, slot == null ? new Slot(i, isMarker(i) ? 0 : 1) : new Slot(slot.first(), slot.count() + 1));
+        }
+        log.info("Almacén de tasas {} abierto con {} días", file, days.size());
+    }
+
+    private int writeDay(LocalDate day, Map<String, Double> rates) {
+        int count = rates.size();
+        ensureCapacity(records + Math.max(count, 1));
+
+        int first = (int) records;
+        if (count == 0) {
+            putRecord(records++, day, MARKER, Double.NaN);
+        } else {
+            for (var rate : rates.entrySet()) {
+                putRecord(records++, day, rate.getKey().getBytes(StandardCharsets.US_ASCII), rate.getValue());
+            }
+        }
+        days.put(day.toEpochDay(), new Slot(first, count));
+        return Math.max(count, 1);
+    }
+
+    private RateSnapshot read(LocalDate day) {
+        var slot = days.get(day.toEpochDay());
+        if (slot == null || slot.count() == 0) {
+            return null;
+        }
+
+        Map<String, Double> rates = new HashMap<>(slot.count() * 2 + 1);
+        byte[] code = new byte[3];
+        for (int i = slot.first(); i < slot.first() + slot.count(); i++) {
+            int offset = offset(i);
+            buffer.get(offset + 4, code);
+            rates.put(new String(code, StandardCharsets.US_ASCII), buffer.getDouble(offset + 8));
+        }
+        rates.putIfAbsent(CurrencyRateCache.BASE, 1.0);
+        return new RateSnapshot(CurrencyRateCache.BASE, day.toString(), CrossRateTable.of(rates), Instant.now());
+    }
+
+    private void putRecord(long index, LocalDate day, byte[] code, double rate) {
+        int offset = offset(index);
+        buffer.putInt(offset, (int) day.toEpochDay());
+        buffer.put(offset + 4, code, 0, 3);
+        buffer.put(offset + 7, (byte) 0);
+        buffer.putDouble(offset + 8, rate);
+    }
+
+    private boolean isMarker(long index) {
+        return Double.isNaN(buffer.getDouble(offset(index) + 8));
+    }
+
+    private void ensureCapacity(long neededRecords) {
+        long needed = HEADER_SIZE + neededRecords * RECORD_SIZE;
+        if (needed > buffer.capacity()) {
+            try {
+                map(needed + (long) GROWTH_RECORDS * RECORD_SIZE);
+            } catch (IOException e) {
+                throw new UncheckedIOException("No se ha podido ampliar el almacén de tasas " + file, e);
+            }
+        }
+    }
+
+    private void map(long size) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("El almacén de tasas " + file + " ha superado el tamaño máximo");
+        }
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    private static int offset(long index) {
+        return (int) (HEADER_SIZE + index * RECORD_SIZE);
+    }
+
+    private record Slot(int first, int count) {
+    }
+}
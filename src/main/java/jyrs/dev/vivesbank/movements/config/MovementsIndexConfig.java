@@ -0,0 +1,61 @@
+package jyrs.dev.vivesbank.movements.config;
+
+import jyrs.dev.vivesbank.movements.models.Movement;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+
+/**
+ * Crea al arrancar los índices compuestos de la colección de movimientos.
+ * Las consultas por cliente filtran por remitente o destinatario y ordenan por fecha, por lo que los índices
+ * (SenderClient, date, _id) y (RecipientClient, date, _id) permiten paginar sin recorrer ni ordenar la colección entera.
+ * La creación se lanza en segundo plano para no retrasar el arranque si MongoDB tarda en responder.
+ * @author Raul Fernandez, Yahya El Hadri, Javier Ruiz, Javier Hernandez, Samuel Cortes
+ * @since 1.0
+ */
+
+@Configuration
+@Slf4j
+public class MovementsIndexConfig {
+
+    private final MongoTemplate mongoTemplate;
+
+    @Autowired
+    public MovementsIndexConfig(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        Thread.ofVirtual().name("movements-indexes").start(this::ensureIndexes);
+    }
+
+    /**
+     * Crea los índices si no existen. Si ya existen, MongoDB no hace nada.
+     * @since 1.0
+     */
+
+    void ensureIndexes() {
+        try {
+            var indexOps = mongoTemplate.indexOps(Movement.class);
+            indexOps.ensureIndex(new Index()
+                    .on("SenderClient", Sort.Direction.ASC)
+                    .on("date", Sort.Direction.DESC)
+                    .on("_id", Sort.Direction.DESC)
+                    .named("sender_date_idx"));
+            indexOps.ensureIndex(new Index()
+                    .on("RecipientClient", Sort.Direction.ASC)
+                    .on("date", Sort.Direction.DESC)
+                    .on("_id", Sort.Direction.DESC)
+                    .named("recipient_date_idx"));
+            log.info("Índices de movimientos creados");
+        } catch (Exception e) {
+            log.warn("No se han podido crear los índices de movimientos: {}", e.getMessage());
+        }
+    }
+}
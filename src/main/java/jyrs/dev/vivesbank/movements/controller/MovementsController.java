@@ -1,24 +1,37 @@
 package jyrs.dev.vivesbank.movements.controller;
 
+import jakarta.servlet.http.HttpServletRequest;
 import jyrs.dev.vivesbank.movements.dto.MovementRequest;
 import jyrs.dev.vivesbank.movements.dto.MovementResponse;
+import jyrs.dev.vivesbank.movements.dto.StatementJobResponse;
+import jyrs.dev.vivesbank.movements.exceptions.MovementPageInvalid;
 import jyrs.dev.vivesbank.movements.services.MovementsService;
+import jyrs.dev.vivesbank.movements.services.StatementJobService;
+import jyrs.dev.vivesbank.movements.storage.MovementPdfStatement;
 import jyrs.dev.vivesbank.products.bankAccounts.dto.UpdateAccountRequest;
 import jyrs.dev.vivesbank.products.bankAccounts.dto.UpdateAccountResponse;
 import jyrs.dev.vivesbank.products.bankAccounts.models.BankAccount;
 import jyrs.dev.vivesbank.products.bankAccounts.services.BankAccountService;
 import jyrs.dev.vivesbank.users.models.User;
+import jyrs.dev.vivesbank.utils.pagination.CursorPageResponse;
+import jyrs.dev.vivesbank.utils.pagination.PageResponse;
+import jyrs.dev.vivesbank.utils.pagination.PaginationLinksUtils;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.core.io.FileSystemResource;
-import org.springframework.core.io.Resource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.util.UriComponentsBuilder;
 
-import java.io.File;
+import java.nio.file.Files;
 import java.util.List;
 
 /**
@@ -35,10 +48,17 @@ public class MovementsController {
 
     private final MovementsService movementsService;
     private final BankAccountService service;
+    private final PaginationLinksUtils paginationLinksUtils;
+    private final StatementJobService statementJobService;
+    private final int maxPageSize;
 
-    public MovementsController(MovementsService movementsService, BankAccountService service) {
+    public MovementsController(MovementsService movementsService, BankAccountService service, PaginationLinksUtils paginationLinksUtils, StatementJobService statementJobService,
+                               @Value("${movements.page.max-size:100}") int maxPageSize) {
         this.movementsService = movementsService;
         this.service = service;
+        this.paginationLinksUtils = paginationLinksUtils;
+        this.statementJobService = statementJobService;
+        this.maxPageSize = maxPageSize;
     }
 
     /**
@@ -56,6 +76,21 @@ public class MovementsController {
                 .body(movementResponse);
     }
 
+    /**
+     * Crea un lote de movimientos del cliente autenticado en una única operación.
+     * @param movementRequests Lista de movimientos a crear
+     * @return ResponseEntity con los movimientos creados (201 Created)
+     * @since 1.0
+     */
+
+    @PostMapping("/batch")
+    public ResponseEntity<List<MovementResponse>> createMovements(@AuthenticationPrincipal User user, @RequestBody List<MovementRequest> movementRequests) {
+        var movementResponses = movementsService.createMovements(user.getGuuid(), movementRequests);
+        return ResponseEntity.status(HttpStatus.CREATED)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(movementResponses);
+    }
+
     @PostMapping("/me/{iban}")
     public ResponseEntity<UpdateAccountResponse> ingreso(@AuthenticationPrincipal User user, @RequestBody UpdateAccountRequest movementRequest, @PathVariable String iban) {
         var movementResponse = service.updateAccountResponse(user.getGuuid(), movementRequest,iban);
@@ -67,23 +102,52 @@ public class MovementsController {
     /**
      * Obtener todos los movimientos realizados por un cliente específico.
      * @param clientId El id del cliente cuyas transacciones se desean consultar
-     * @return ResponseEntity con la lista de movimientos del cliente
+     * @return ResponseEntity con la página de movimientos del cliente
      * @since 1.0
      */
 
     @GetMapping("/movement/admin/client/{clientId}")
-    public ResponseEntity<List<MovementResponse>> getAllMovementsById(@PathVariable String clientId) {
-        var movements = movementsService.getAllMovementsById(clientId);
-        System.out.println("Movimientos encontrados por su id: " + movements);
-        return ResponseEntity.ok()
-                .contentType(MediaType.APPLICATION_JSON)
-                .body(movements);
+    public ResponseEntity<PageResponse<MovementResponse>> getAllMovementsById(
+            @PathVariable String clientId,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(defaultValue = "date") String sortBy,
+            @RequestParam(defaultValue = "desc") String direction,
+            HttpServletRequest request
+    ) {
+        var movements = movementsService.getAllMovementsById(clientId, toPageable(page, size, sortBy, direction));
+        return buildPageResponse(movements, sortBy, direction, request);
     }
 
     @GetMapping("/me/movements/")
-    public ResponseEntity<List<MovementResponse>> getMeAllMovements(@AuthenticationPrincipal User user) {
-        var movements = movementsService.getAllMovementsById(user.getGuuid());
-        System.out.println("Movimientos encontrados por su id: " + movements);
+    public ResponseEntity<PageResponse<MovementResponse>> getMeAllMovements(
+            @AuthenticationPrincipal User user,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(defaultValue = "date") String sortBy,
+            @RequestParam(defaultValue = "desc") String direction,
+            HttpServletRequest request
+    ) {
+        var movements = movementsService.getAllMovementsById(user.getGuuid(), toPageable(page, size, sortBy, direction));
+        return buildPageResponse(movements, sortBy, direction, request);
+    }
+
+    /**
+     * Obtener los movimientos del cliente autenticado del más reciente al más antiguo, paginando por cursor.
+     * Para pedir la siguiente página se envía el cursor devuelto en la anterior.
+     * @param cursor Cursor de la página anterior, vacío para la primera
+     * @param size Número de movimientos por página, como mucho {@code movements.page.max-size}
+     * @return ResponseEntity con la página de movimientos y el cursor de la siguiente
+     * @since 1.0
+     */
+
+    @GetMapping("/me/movements/cursor")
+    public ResponseEntity<CursorPageResponse<MovementResponse>> getMeMovementsByCursor(
+            @AuthenticationPrincipal User user,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "10") int size
+    ) {
+        var movements = movementsService.getMovementsByCursor(user.getGuuid(), cursor, pageSize(size));
         return ResponseEntity.ok()
                 .contentType(MediaType.APPLICATION_JSON)
                 .body(movements);
@@ -109,49 +173,73 @@ public class MovementsController {
 
     /**
      * Obtener todos los movimientos registrados independientemente de su cliente.
-     * @return ResponseEntity con la lista de todos los movimientos
+     * @return ResponseEntity con la página de todos los movimientos
      * @since 1.0
      */
 
 
     @GetMapping("/movements/admin/")
-    public ResponseEntity<List<MovementResponse>> getAllMovements() {
-        var movements = movementsService.getAllMovements();
-        return ResponseEntity.ok()
-                .contentType(MediaType.APPLICATION_JSON)
-                .body(movements);
+    public ResponseEntity<PageResponse<MovementResponse>> getAllMovements(
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(defaultValue = "date") String sortBy,
+            @RequestParam(defaultValue = "desc") String direction,
+            HttpServletRequest request
+    ) {
+        var movements = movementsService.getAllMovements(toPageable(page, size, sortBy, direction));
+        return buildPageResponse(movements, sortBy, direction, request);
     }
 
     @GetMapping("/movements/admin/RecipientMovements/{clientId}")
-    public ResponseEntity<List<MovementResponse>> getAllRecipientMovements(@PathVariable String clientId) {
-        var movements = movementsService.getAllRecipientMovements(clientId);
-        return ResponseEntity.ok()
-                .contentType(MediaType.APPLICATION_JSON)
-                .body(movements);
+    public ResponseEntity<PageResponse<MovementResponse>> getAllRecipientMovements(
+            @PathVariable String clientId,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(defaultValue = "date") String sortBy,
+            @RequestParam(defaultValue = "desc") String direction,
+            HttpServletRequest request
+    ) {
+        var movements = movementsService.getAllRecipientMovements(clientId, toPageable(page, size, sortBy, direction));
+        return buildPageResponse(movements, sortBy, direction, request);
     }
 
     @GetMapping("/me/RecipientMovements")
-    public ResponseEntity<List<MovementResponse>> getMeAllRecipientMovements(@AuthenticationPrincipal User user) {
-        var movements = movementsService.getAllRecipientMovements(user.getGuuid());
-        return ResponseEntity.ok()
-                .contentType(MediaType.APPLICATION_JSON)
-                .body(movements);
+    public ResponseEntity<PageResponse<MovementResponse>> getMeAllRecipientMovements(
+            @AuthenticationPrincipal User user,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(defaultValue = "date") String sortBy,
+            @RequestParam(defaultValue = "desc") String direction,
+            HttpServletRequest request
+    ) {
+        var movements = movementsService.getAllRecipientMovements(user.getGuuid(), toPageable(page, size, sortBy, direction));
+        return buildPageResponse(movements, sortBy, direction, request);
     }
 
     @GetMapping("/movements/admin/SentMovements/{clientId}")
-    public ResponseEntity<List<MovementResponse>> getAllSentMovements(@PathVariable String clientId) {
-        var movements = movementsService.getAllSentMovements(clientId);
-        return ResponseEntity.ok()
-                .contentType(MediaType.APPLICATION_JSON)
-                .body(movements);
+    public ResponseEntity<PageResponse<MovementResponse>> getAllSentMovements(
+            @PathVariable String clientId,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(defaultValue = "date") String sortBy,
+            @RequestParam(defaultValue = "desc") String direction,
+            HttpServletRequest request
+    ) {
+        var movements = movementsService.getAllSentMovements(clientId, toPageable(page, size, sortBy, direction));
+        return buildPageResponse(movements, sortBy, direction, request);
     }
 
     @GetMapping("/me/SentMovements")
-    public ResponseEntity<List<MovementResponse>> getMeAllSentMovements(@AuthenticationPrincipal User user) {
-        var movements = movementsService.getAllSentMovements(user.getGuuid());
-        return ResponseEntity.ok()
-                .contentType(MediaType.APPLICATION_JSON)
-                .body(movements);
+    public ResponseEntity<PageResponse<MovementResponse>> getMeAllSentMovements(
+            @AuthenticationPrincipal User user,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(defaultValue = "date") String sortBy,
+            @RequestParam(defaultValue = "desc") String direction,
+            HttpServletRequest request
+    ) {
+        var movements = movementsService.getAllSentMovements(user.getGuuid(), toPageable(page, size, sortBy, direction));
+        return buildPageResponse(movements, sortBy, direction, request);
     }
 
     /**
@@ -207,60 +295,119 @@ public class MovementsController {
 
 
     @GetMapping("/pdf")
-    public ResponseEntity<Resource> downloadAllMovementPdf() {
-        File pdfFile = movementsService.generateAllMovementPdf();
-
-        return buildPdfResponse(pdfFile);
+    public ResponseEntity<StreamingResponseBody> downloadAllMovementPdf() {
+        return buildPdfResponse(movementsService.generateAllMovementPdf());
     }
 
     @GetMapping("/pdf/{id}")
-    public ResponseEntity<Resource> downloadMovementPdf(@PathVariable String id) {
-        File pdfFile = movementsService.generateMovementPdf(id);
-
-        return buildPdfResponse(pdfFile);
+    public ResponseEntity<StreamingResponseBody> downloadMovementPdf(@PathVariable String id) {
+        return buildPdfResponse(movementsService.generateMovementPdf(id));
     }
 
     @GetMapping("/me/pdf/{id}")
-    public ResponseEntity<Resource> downloadMeMovementPdf(@AuthenticationPrincipal User user,@PathVariable String id) {
-        File pdfFile = movementsService.generateMeMovementPdf(user.getGuuid(),id);
-
-        return buildPdfResponse(pdfFile);
+    public ResponseEntity<StreamingResponseBody> downloadMeMovementPdf(@AuthenticationPrincipal User user,@PathVariable String id) {
+        return buildPdfResponse(movementsService.generateMeMovementPdf(user.getGuuid(),id));
     }
 
     @GetMapping("/me/pdf")
-    public ResponseEntity<Resource> downloadAllMeMovementPdf(@AuthenticationPrincipal User user) {
-        File pdfFile = movementsService.generateAllMeMovementPdf(user.getGuuid());
-
-        return buildPdfResponse(pdfFile);
+    public ResponseEntity<StreamingResponseBody> downloadAllMeMovementPdf(@AuthenticationPrincipal User user) {
+        return buildPdfResponse(movementsService.generateAllMeMovementPdf(user.getGuuid()));
     }
 
     @GetMapping("/me/pdf/sended")
-    public ResponseEntity<Resource> downloadAllMeMovementSendedPdf(@AuthenticationPrincipal User user) {
-        File pdfFile = movementsService.generateAllMeMovementSendPdf(user.getGuuid());
-
-        return buildPdfResponse(pdfFile);
+    public ResponseEntity<StreamingResponseBody> downloadAllMeMovementSendedPdf(@AuthenticationPrincipal User user) {
+        return buildPdfResponse(movementsService.generateAllMeMovementSendPdf(user.getGuuid()));
     }
 
     @GetMapping("/me/pdf/recibied")
-    public ResponseEntity<Resource> downloadAllMeMovementRecibiedPdf(@AuthenticationPrincipal User user) {
-        File pdfFile = movementsService.generateAllMeMovementRecepientPdf(user.getGuuid());
+    public ResponseEntity<StreamingResponseBody> downloadAllMeMovementRecibiedPdf(@AuthenticationPrincipal User user) {
+        return buildPdfResponse(movementsService.generateAllMeMovementRecepientPdf(user.getGuuid()));
+    }
+
+    /**
+     * Encola la generación del extracto con todos los movimientos del banco.
+     * @return ResponseEntity con el trabajo creado (202 Accepted)
+     * @since 1.0
+     */
+
+    @PostMapping("/pdf/jobs")
+    public ResponseEntity<StatementJobResponse> submitAllMovementPdfJob(@AuthenticationPrincipal User user) {
+        var job = statementJobService.submit(user.getGuuid(), movementsService.generateAllMovementPdf());
+        return ResponseEntity.accepted().body(StatementJobResponse.of(job));
+    }
 
-        return buildPdfResponse(pdfFile);
+    /**
+     * Encola la generación del extracto con todos los movimientos del cliente autenticado.
+     * @return ResponseEntity con el trabajo creado (202 Accepted)
+     * @since 1.0
+     */
+
+    @PostMapping("/me/pdf/jobs")
+    public ResponseEntity<StatementJobResponse> submitAllMeMovementPdfJob(@AuthenticationPrincipal User user) {
+        var job = statementJobService.submit(user.getGuuid(), movementsService.generateAllMeMovementPdf(user.getGuuid()));
+        return ResponseEntity.accepted().body(StatementJobResponse.of(job));
     }
 
-    private ResponseEntity<Resource> buildPdfResponse(File pdfFile) {
-        if (pdfFile == null || !pdfFile.exists()) {
-            return ResponseEntity.notFound().build();
+    /**
+     * Consulta el estado de un extracto solicitado por el usuario autenticado.
+     * @param jobId ID del trabajo
+     * @return ResponseEntity con el estado del trabajo
+     * @since 1.0
+     */
+
+    @GetMapping({"/pdf/jobs/{jobId}", "/me/pdf/jobs/{jobId}"})
+    public ResponseEntity<StatementJobResponse> getStatementJob(@AuthenticationPrincipal User user, @PathVariable String jobId) {
+        return ResponseEntity.ok(StatementJobResponse.of(statementJobService.getJob(jobId, user.getGuuid())));
+    }
+
+    /**
+     * Descarga un extracto ya generado por el usuario autenticado.
+     * @param jobId ID del trabajo
+     * @return ResponseEntity con el PDF
+     * @since 1.0
+     */
+
+    @GetMapping({"/pdf/jobs/{jobId}/download", "/me/pdf/jobs/{jobId}/download"})
+    public ResponseEntity<StreamingResponseBody> downloadStatementJob(@AuthenticationPrincipal User user, @PathVariable String jobId) {
+        var job = statementJobService.getFinishedJob(jobId, user.getGuuid());
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + job.fileName())
+                .contentType(MediaType.APPLICATION_PDF)
+                .contentLength(job.size())
+                .body(out -> Files.copy(job.file(), out));
+    }
+
+    private Pageable toPageable(int page, int size, String sortBy, String direction) {
+        Sort sort = direction.equalsIgnoreCase(Sort.Direction.ASC.name())
+                ? Sort.by(sortBy).ascending()
+                : Sort.by(sortBy).descending();
+        return PageRequest.of(Math.max(0, page), pageSize(size), sort);
+    }
+
+    /**
+     * Rechaza los tamaños de página menores que 1 y limita los demás al máximo configurado.
+     */
+    private int pageSize(int size) {
+        if (size < 1) {
+            throw new MovementPageInvalid(size);
         }
+        return Math.min(size, maxPageSize);
+    }
+
+    private ResponseEntity<PageResponse<MovementResponse>> buildPageResponse(Page<MovementResponse> pageResult, String sortBy, String direction, HttpServletRequest request) {
+        UriComponentsBuilder uriBuilder = UriComponentsBuilder.fromHttpUrl(request.getRequestURL().toString());
+        return ResponseEntity.ok()
+                .header("link", paginationLinksUtils.createLinkHeader(pageResult, uriBuilder))
+                .body(PageResponse.of(pageResult, sortBy, direction));
+    }
 
-        Resource resource = new FileSystemResource(pdfFile);
+    private ResponseEntity<StreamingResponseBody> buildPdfResponse(MovementPdfStatement pdf) {
         HttpHeaders headers = new HttpHeaders();
-        headers.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + pdfFile.getName());
+        headers.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + pdf.fileName());
 
         return ResponseEntity.ok()
                 .headers(headers)
-                .contentLength(pdfFile.length())
                 .contentType(MediaType.APPLICATION_PDF)
-                .body(resource);
+                .body(pdf::writeTo);
     }
 }
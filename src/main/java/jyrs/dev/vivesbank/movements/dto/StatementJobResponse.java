@@ -0,0 +1,19 @@
+package jyrs.dev.vivesbank.movements.dto;
+
+import jyrs.dev.vivesbank.movements.models.StatementJob;
+
+import java.time.LocalDateTime;
+
+/**
+ * Estado de un trabajo de generación de extracto en PDF.
+ * @author Raul Fernandez, Yahya El Hadri, Javier Ruiz, Javier Hernandez, Samuel Cortes
+ * @since 1.0
+ */
+
+public record StatementJobResponse(String jobId, StatementJob.Status status, String fileName,
+                                   LocalDateTime createdAt, LocalDateTime finishedAt, String error) {
+
+    public static StatementJobResponse of(StatementJob job) {
+        return new StatementJobResponse(job.id(), job.status(), job.fileName(), job.createdAt(), job.finishedAt(), job.error());
+    }
+}
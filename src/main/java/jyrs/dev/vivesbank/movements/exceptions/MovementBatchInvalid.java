@@ -0,0 +1,9 @@
+package jyrs.dev.vivesbank.movements.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class MovementBatchInvalid extends MovementException {
+    public MovementBatchInvalid(String message) { super(message); }
+}
@@ -0,0 +1,9 @@
+package jyrs.dev.vivesbank.movements.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class MovementCursorInvalid extends MovementException {
+    public MovementCursorInvalid(String cursor) { super("Cursor de movimientos no válido: " + cursor); }
+}
@@ -0,0 +1,9 @@
+package jyrs.dev.vivesbank.movements.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class MovementPageInvalid extends MovementException {
+    public MovementPageInvalid(int size) { super("El tamaño de página debe ser mayor que 0: " + size); }
+}
@@ -0,0 +1,9 @@
+package jyrs.dev.vivesbank.movements.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.NOT_FOUND)
+public class StatementJobNotFound extends MovementException {
+    public StatementJobNotFound(String jobId) { super("No existe el extracto " + jobId + " o ya ha caducado"); }
+}
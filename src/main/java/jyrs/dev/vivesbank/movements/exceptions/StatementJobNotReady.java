@@ -0,0 +1,9 @@
+package jyrs.dev.vivesbank.movements.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.CONFLICT)
+public class StatementJobNotReady extends MovementException {
+    public StatementJobNotReady(String jobId, String status) { super("El extracto " + jobId + " no está disponible, estado: " + status); }
+}
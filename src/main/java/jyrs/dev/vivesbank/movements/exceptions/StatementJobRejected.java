@@ -0,0 +1,9 @@
+package jyrs.dev.vivesbank.movements.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.TOO_MANY_REQUESTS)
+public class StatementJobRejected extends MovementException {
+    public StatementJobRejected(int maxPending) { super("Hay demasiados extractos en cola (" + maxPending + "), inténtalo más tarde"); }
+}
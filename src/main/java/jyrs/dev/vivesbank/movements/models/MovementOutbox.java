@@ -0,0 +1,97 @@
+package jyrs.dev.vivesbank.movements.models;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Entrada de la bandeja de salida (outbox) de movimientos.
+ * Se guarda en la misma transacción JPA que actualiza los balances de las cuentas, de forma que
+ * el movimiento nunca se pierde aunque MongoDB no esté disponible en el momento de la transferencia.
+ * Una vez el movimiento se ha escrito en MongoDB, la entrada se elimina.
+ * @author Raul Fernandez, Yahya El Hadri, Javier Ruiz, Javier Hernandez, Samuel Cortes
+ * @since 1.0
+ */
+
+@Entity
+@Table(name = "MOVEMENTS_OUTBOX")
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class MovementOutbox {
+
+    /**
+     * Identificador autonumérico de la entrada.
+     * @since 1.0
+     */
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    /**
+     * Identificador que tendrá el movimiento en MongoDB, asignado antes de la transferencia.
+     * @since 1.0
+     */
+
+    @Column(nullable = false, unique = true)
+    private String movementId;
+
+    private String bankAccountOrigin;
+
+    private String bankAccountDestination;
+
+    private String typeMovement;
+
+    private String senderClient;
+
+    private String recipientClient;
+
+    private Double amount;
+
+    private LocalDateTime date;
+
+    /**
+     * Crea una entrada de outbox a partir de un movimiento.
+     * @param movement El movimiento que se va a publicar.
+     * @return La entrada de outbox.
+     * @since 1.0
+     */
+
+    public static MovementOutbox of(Movement movement) {
+        return MovementOutbox.builder()
+                .movementId(movement.getId())
+                .bankAccountOrigin(movement.getBankAccountOrigin())
+                .bankAccountDestination(movement.getBankAccountDestination())
+                .typeMovement(movement.getTypeMovement())
+                .senderClient(movement.getSenderClient())
+                .recipientClient(movement.getRecipientClient())
+                .amount(movement.getAmount())
+                .date(movement.getDate())
+                .build();
+    }
+
+    /**
+     * Reconstruye el movimiento que se debe escribir en MongoDB.
+     * @return El movimiento.
+     * @since 1.0
+     */
+
+    public Movement toMovement() {
+        return Movement.builder()
+                .id(movementId)
+                .BankAccountOrigin(bankAccountOrigin)
+                .BankAccountDestination(bankAccountDestination)
+                .typeMovement(typeMovement)
+                .SenderClient(senderClient)
+                .RecipientClient(recipientClient)
+                .amount(amount)
+                .date(date)
+                .build();
+    }
+}
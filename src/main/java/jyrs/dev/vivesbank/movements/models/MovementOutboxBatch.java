@@ -0,0 +1,15 @@
+package jyrs.dev.vivesbank.movements.models;
+
+import java.util.List;
+
+/**
+ * Evento con las entradas de outbox guardadas por una transferencia por lotes,
+ * para publicarlas en MongoDB con una única inserción.
+ * @author Raul Fernandez, Yahya El Hadri, Javier Ruiz, Javier Hernandez, Samuel Cortes
+ * @since 1.0
+ */
+
+public record MovementOutboxBatch(
+        List<MovementOutbox> entries
+) {
+}
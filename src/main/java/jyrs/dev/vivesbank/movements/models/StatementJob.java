@@ -0,0 +1,48 @@
+package jyrs.dev.vivesbank.movements.models;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+
+/**
+ * Trabajo de generación de un extracto en PDF en segundo plano.
+ * Es inmutable: cada cambio de estado crea una copia nueva que sustituye a la anterior.
+ * @param id El identificador del trabajo.
+ * @param owner El guuid del usuario que lo ha solicitado; solo él puede consultarlo.
+ * @param status El estado actual.
+ * @param fileName El nombre con el que se descarga el PDF.
+ * @param createdAt Cuándo se solicitó.
+ * @param finishedAt Cuándo terminó, o null si sigue en curso.
+ * @param error El motivo del fallo, si lo hubo.
+ * @param file El fichero temporal con el PDF generado, cuando ha terminado correctamente.
+ * @param size El tamaño del PDF en bytes.
+ * @author Raul Fernandez, Yahya El Hadri, Javier Ruiz, Javier Hernandez, Samuel Cortes
+ * @since 1.0
+ */
+
+public record StatementJob(String id, String owner, Status status, String fileName,
+                           LocalDateTime createdAt, LocalDateTime finishedAt, String error, Path file, long size) {
+
+    public enum Status {
+        PENDING, RUNNING, DONE, FAILED
+    }
+
+    public static StatementJob pending(String id, String owner, String fileName) {
+        return new StatementJob(id, owner, Status.PENDING, fileName, LocalDateTime.now(), null, null, null, 0);
+    }
+
+    public StatementJob running() {
+        return new StatementJob(id, owner, Status.RUNNING, fileName, createdAt, null, null, null, 0);
+    }
+
+    public StatementJob done(Path pdf, long bytes) {
+        return new StatementJob(id, owner, Status.DONE, fileName, createdAt, LocalDateTime.now(), null, pdf, bytes);
+    }
+
+    public StatementJob failed(String reason) {
+        return new StatementJob(id, owner, Status.FAILED, fileName, createdAt, LocalDateTime.now(), reason, null, 0);
+    }
+
+    public boolean isFinished() {
+        return status == Status.DONE || status == Status.FAILED;
+    }
+}
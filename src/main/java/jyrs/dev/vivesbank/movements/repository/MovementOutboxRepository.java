@@ -0,0 +1,25 @@
+package jyrs.dev.vivesbank.movements.repository;
+
+import jyrs.dev.vivesbank.movements.models.MovementOutbox;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * Repositorio JPA de la bandeja de salida de movimientos pendientes de escribir en MongoDB.
+ * @author Raul Fernandez, Yahya El Hadri, Javier Ruiz, Javier Hernandez, Samuel Cortes
+ * @since 1.0
+ */
+
+@Repository
+public interface MovementOutboxRepository extends JpaRepository<MovementOutbox, Long> {
+
+    /**
+     * Obtiene las entradas pendientes más antiguas.
+     * @return Las 100 primeras entradas pendientes por orden de llegada.
+     * @since 1.0
+     */
+
+    List<MovementOutbox> findTop100ByOrderByIdAsc();
+}
@@ -1,14 +1,24 @@
 package jyrs.dev.vivesbank.movements.repository;
 
 import jyrs.dev.vivesbank.movements.models.Movement;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.repository.Meta;
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * Interfaz para el repositorio de movimientos bancarios.
  * Proporciona los métodos necesarios para acceder y manipular los datos de movimientos en la base de datos MongoDB.
  * Se extiende de {@link MongoRepository} para aprovechar las funcionalidades CRUD estándar proporcionadas por Spring Data MongoDB.
+ * Las consultas por cliente se apoyan en los índices compuestos (cliente, fecha, id) creados al arrancar.
  * @author Raul Fernandez, Yahya El Hadri, Javier Ruiz, Javier Hernandez, Samuel Cortes
  * @since 1.0
  */
@@ -21,5 +31,131 @@ public interface MovementsRepository extends MongoRepository<Movement, String> {
     List<Movement> findByRecipientClient(String clientId);
 
     List<Movement> findBySenderClientAndRecipientClient(String clientId, String clientId1);
-}
 
+    /**
+     * Obtiene una página de los movimientos enviados por un cliente.
+     * @param clientId El guuid del cliente remitente.
+     * @param pageable La información de paginación y orden.
+     * @return La página de movimientos.
+     * @since 1.0
+     */
+
+    Page<Movement> findBySenderClient(String clientId, Pageable pageable);
+
+    /**
+     * Obtiene una página de los movimientos recibidos por un cliente.
+     * @param clientId El guuid del cliente destinatario.
+     * @param pageable La información de paginación y orden.
+     * @return La página de movimientos.
+     * @since 1.0
+     */
+
+    Page<Movement> findByRecipientClient(String clientId, Pageable pageable);
+
+    /**
+     * Obtiene todos los movimientos en los que participa un cliente, como remitente o como destinatario, con una sola consulta.
+     * @param clientId El guuid del cliente.
+     * @return Los movimientos del cliente.
+     * @since 1.0
+     */
+
+    @Query("{ '$or': [ { 'SenderClient': ?0 }, { 'RecipientClient': ?0 } ] }")
+    List<Movement> findAllByClient(String clientId);
+
+    /**
+     * Obtiene una página de los movimientos en los que participa un cliente, como remitente o como destinatario.
+     * @param clientId El guuid del cliente.
+     * @param pageable La información de paginación y orden.
+     * @return La página de movimientos.
+     * @since 1.0
+     */
+
+    @Query("{ '$or': [ { 'SenderClient': ?0 }, { 'RecipientClient': ?0 } ] }")
+    Page<Movement> findByClient(String clientId, Pageable pageable);
+
+    /**
+     * Obtiene los movimientos más recientes de un cliente, del más nuevo al más antiguo.
+     * Es la primera página de la paginación por cursor.
+     * @param clientId El guuid del cliente.
+     * @param limit El número máximo de movimientos.
+     * @return Los movimientos ordenados por fecha e id descendentes.
+     * @since 1.0
+     */
+
+    @Query(value = "{ '$or': [ { 'SenderClient': ?0 }, { 'RecipientClient': ?0 } ] }", sort = "{ 'date': -1, '_id': -1 }")
+    List<Movement> findLatestByClient(String clientId, Limit limit);
+
+    /**
+     * Obtiene los movimientos de un cliente anteriores a un cursor (fecha, id), del más nuevo al más antiguo.
+     * A diferencia de la paginación por número de página, el coste no crece al avanzar por las páginas.
+     * @param clientId El guuid del cliente.
+     * @param date La fecha del último movimiento de la página anterior.
+     * @param id El id del último movimiento de la página anterior.
+     * @param limit El número máximo de movimientos.
+     * @return Los movimientos ordenados por fecha e id descendentes.
+     * @since 1.0
+     */
+
+    @Query(value = "{ '$and': [ { '$or': [ { 'SenderClient': ?0 }, { 'RecipientClient': ?0 } ] }, " +
+            "{ '$or': [ { 'date': { '$lt': ?1 } }, { 'date': ?1, '_id': { '$lt': ?2 } } ] } ] }",
+            sort = "{ 'date': -1, '_id': -1 }")
+    List<Movement> findByClientBefore(String clientId, LocalDateTime date, ObjectId id, Limit limit);
+
+    /**
+     * Recorre todos los movimientos con un cursor de MongoDB, sin cargarlos en memoria.
+     * El stream debe cerrarse para liberar el cursor.
+     * @return Los movimientos ordenados por fecha.
+     * @since 1.0
+     */
+
+    @Meta(cursorBatchSize = 500)
+    @Query(value = "{}", sort = "{ 'date': 1, '_id': 1 }")
+    Stream<Movement> streamAll();
+
+    /**
+     * Recorre con un cursor los movimientos en los que participa un cliente, como remitente o como destinatario.
+     * El stream debe cerrarse para liberar el cursor.
+     * @param clientId El guuid del cliente.
+     * @return Los movimientos del cliente ordenados por fecha.
+     * @since 1.0
+     */
+
+    @Meta(cursorBatchSize = 500)
+    @Query(value = "{ '$or': [ { 'SenderClient': ?0 }, { 'RecipientClient': ?0 } ] }", sort = "{ 'date': 1, '_id': 1 }")
+    Stream<Movement> streamAllByClient(String clientId);
+
+    /**
+     * Recorre con un cursor los movimientos enviados por un cliente.
+     * El stream debe cerrarse para liberar el cursor.
+     * @param clientId El guuid del cliente remitente.
+     * @return Los movimientos ordenados por fecha.
+     * @since 1.0
+     */
+
+    @Meta(cursorBatchSize = 500)
+    @Query(value = "{ 'SenderClient': ?0 }", sort = "{ 'date': 1, '_id': 1 }")
+    Stream<Movement> streamBySenderClient(String clientId);
+
+    /**
+     * Recorre con un cursor los movimientos recibidos por un cliente.
+     * El stream debe cerrarse para liberar el cursor.
+     * @param clientId El guuid del cliente destinatario.
+     * @return Los movimientos ordenados por fecha.
+     * @since 1.0
+     */
+
+    @Meta(cursorBatchSize = 500)
+    @Query(value = "{ 'RecipientClient': ?0 }", sort = "{ 'date': 1, '_id': 1 }")
+    Stream<Movement> streamByRecipientClient(String clientId);
+
+    /**
+     * Recorre con un cursor los movimientos posteriores a una fecha, para los backups incrementales.
+     * El stream debe cerrarse para liberar el cursor.
+     * @param date La fecha desde la que se buscan movimientos.
+     * @return Los movimientos posteriores a la fecha.
+     * @since 1.0
+     */
+
+    @Meta(cursorBatchSize = 500)
+    Stream<Movement> streamByDateAfter(LocalDateTime date);
+}
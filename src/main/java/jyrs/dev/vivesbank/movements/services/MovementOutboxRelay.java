@@ -0,0 +1,118 @@
+package jyrs.dev.vivesbank.movements.services;
+
+import jyrs.dev.vivesbank.movements.models.MovementOutbox;
+import jyrs.dev.vivesbank.movements.models.MovementOutboxBatch;
+import jyrs.dev.vivesbank.movements.repository.MovementOutboxRepository;
+import jyrs.dev.vivesbank.movements.repository.MovementsRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.List;
+
+/**
+ * Publica en MongoDB los movimientos guardados en la bandeja de salida.
+ * Cada movimiento se publica justo después del commit de su transferencia y, si MongoDB falla en ese momento,
+ * la tarea periódica lo vuelve a intentar hasta conseguirlo. Como el ID del movimiento se asigna antes de la
+ * transferencia, publicar dos veces la misma entrada sobrescribe el mismo documento.
+ * Las entradas se publican en bloque con una sola inserción en MongoDB.
+ * @author Raul Fernandez, Yahya El Hadri, Javier Ruiz, Javier Hernandez, Samuel Cortes
+ * @since 1.0
+ */
+
+@Component
+@Slf4j
+public class MovementOutboxRelay {
+
+    private final MovementOutboxRepository outboxRepository;
+    private final MovementsRepository movementsRepository;
+
+    @Autowired
+    public MovementOutboxRelay(MovementOutboxRepository outboxRepository, MovementsRepository movementsRepository) {
+        this.outboxRepository = outboxRepository;
+        this.movementsRepository = movementsRepository;
+    }
+
+    /**
+     * Publica el movimiento en cuanto la transacción de la transferencia se ha confirmado.
+     * Se ejecuta en una transacción nueva para que el borrado de la entrada no dependa de la ya confirmada.
+     * @param outbox La entrada guardada en la transferencia.
+     * @since 1.0
+     */
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void onTransferCommitted(MovementOutbox outbox) {
+        publish(outbox);
+    }
+
+    /**
+     * Publica todos los movimientos de una transferencia por lotes en cuanto se ha confirmado.
+     * @param batch Las entradas guardadas por el lote.
+     * @since 1.0
+     */
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void onBatchCommitted(MovementOutboxBatch batch) {
+        publishAll(batch.entries());
+    }
+
+    /**
+     * Reintenta periódicamente las entradas que no se pudieron publicar.
+     * @since 1.0
+     */
+
+    @Scheduled(fixedDelayString = "${movements.outbox.relay-interval:5000}")
+    public void relayPending() {
+        var pending = outboxRepository.findTop100ByOrderByIdAsc();
+        if (!pending.isEmpty()) {
+            log.info("Reintentando la publicación de {} movimientos pendientes", pending.size());
+            publishAll(pending);
+        }
+    }
+
+    /**
+     * Escribe el movimiento en MongoDB y elimina la entrada de la bandeja de salida.
+     * @param outbox La entrada a publicar.
+     * @return true si se ha publicado, false si se reintentará más tarde.
+     * @since 1.0
+     */
+
+    boolean publish(MovementOutbox outbox) {
+        return publishAll(List.of(outbox));
+    }
+
+    /**
+     * Escribe los movimientos en MongoDB con una única inserción y elimina sus entradas de la bandeja de salida.
+     * Si alguno ya estaba publicado, se sobrescriben todos para no duplicar ni perder ninguno.
+     * @param entries Las entradas a publicar.
+     * @return true si se han publicado, false si se reintentará más tarde.
+     * @since 1.0
+     */
+
+    boolean publishAll(List<MovementOutbox> entries) {
+        if (entries.isEmpty()) {
+            return true;
+        }
+        var movements = entries.stream().map(MovementOutbox::toMovement).toList();
+        try {
+            try {
+                movementsRepository.insert(movements);
+            } catch (DuplicateKeyException e) {
+                movementsRepository.saveAll(movements);
+            }
+            outboxRepository.deleteAllByIdInBatch(entries.stream().map(MovementOutbox::getId).toList());
+            return true;
+        } catch (Exception e) {
+            log.warn("No se han podido publicar {} movimientos, se reintentará: {}", entries.size(), e.getMessage());
+            return false;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package jyrs.dev.vivesbank.movements.services;
+
+import jyrs.dev.vivesbank.movements.exceptions.MovementNotMoney;
+import jyrs.dev.vivesbank.movements.models.Movement;
+import jyrs.dev.vivesbank.movements.models.MovementOutbox;
+import jyrs.dev.vivesbank.movements.models.MovementOutboxBatch;
+import jyrs.dev.vivesbank.movements.repository.MovementOutboxRepository;
+import jyrs.dev.vivesbank.products.bankAccounts.exceptions.BankAccountNotFoundByIban;
+import jyrs.dev.vivesbank.products.bankAccounts.dto.AccountRef;
+import jyrs.dev.vivesbank.products.bankAccounts.repositories.BankAccountRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Motor de transferencias entre cuentas bancarias.
+ * El cargo y el abono se ejecutan como actualizaciones condicionales dentro de una única transacción JPA,
+ * por lo que el saldo nunca se lee y se escribe por separado y las transferencias concurrentes sobre
+ * la misma cuenta no pierden actualizaciones. Las filas se actualizan siempre en orden de ID para que dos
+ * transferencias cruzadas no se bloqueen mutuamente, y los conflictos transitorios de la base de datos se reintentan.
+ * El movimiento se guarda en la bandeja de salida en la misma transacción y se publica en MongoDB tras el commit.
+ * Las transferencias por lotes agregan los importes por cuenta y aplican todos los saldos con una única actualización JDBC por lotes.
+ * @author Raul Fernandez, Yahya El Hadri, Javier Ruiz, Javier Hernandez, Samuel Cortes
+ * @since 1.0
+ */
+
+@Component
+@Slf4j
+public class MovementTransferEngine {
+
+    private final BankAccountRepository bankAccountRepository;
+    private final MovementOutboxRepository outboxRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final JdbcTemplate jdbcTemplate;
+    private final int maxAttempts;
+
+    private static final String APPLY_DELTA_SQL =
+            "UPDATE BANK_ACCOUNTS SET balance = balance + ?, updated_at = CURRENT_TIMESTAMP WHERE id = ? AND balance + ? >= 0";
+
+    @Autowired
+    public MovementTransferEngine(BankAccountRepository bankAccountRepository,
+                                  MovementOutboxRepository outboxRepository,
+                                  ApplicationEventPublisher eventPublisher,
+                                  PlatformTransactionManager transactionManager,
+                                  JdbcTemplate jdbcTemplate,
+                                  @Value("${movements.transfer.max-attempts:3}") int maxAttempts) {
+        this.bankAccountRepository = bankAccountRepository;
+        this.outboxRepository = outboxRepository;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.jdbcTemplate = jdbcTemplate;
+        this.maxAttempts = Math.max(1, maxAttempts);
+    }
+
+    /**
+     * Transfiere el importe del movimiento de la cuenta de origen a la de destino y registra el movimiento en la bandeja de salida.
+     * @param origin La cuenta de la que sale el dinero.
+     * @param destination La cuenta que recibe el dinero.
+     * @param movement El movimiento ya construido, con su ID asignado.
+     * @throws MovementNotMoney Si la cuenta de origen no tiene saldo suficiente en el momento del cargo.
+     * @throws BankAccountNotFoundByIban Si alguna de las cuentas ha dejado de existir.
+     * @since 1.0
+     */
+
+    public void transfer(AccountRef origin, AccountRef destination, Movement movement) {
+        executeWithRetry(origin.iban() + " -> " + destination.iban(), () -> applyTransfer(origin, destination, movement));
+    }
+
+    /**
+     * Aplica un lote de transferencias como una única operación: o se aplican todas o ninguna.
+     * Los importes se agregan por cuenta, de modo que cada cuenta se actualiza una sola vez aunque aparezca en muchos movimientos.
+     * @param accounts Las cuentas implicadas en el lote, indexadas por IBAN.
+     * @param movements Los movimientos ya construidos, con su ID asignado.
+     * @throws MovementNotMoney Si alguna cuenta de origen no tiene saldo suficiente para el total de sus cargos.
+     * @throws BankAccountNotFoundByIban Si alguna de las cuentas ha dejado de existir.
+     * @since 1.0
+     */
+
+    public void transferAll(Map<String, AccountRef> accounts, List<Movement> movements) {
+        executeWithRetry("lote de " + movements.size() + " movimientos", () -> applyBatch(accounts, movements));
+    }
+
+    private void executeWithRetry(String description, Runnable work) {
+        int attempt = 1;
+        while (true) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> work.run());
+                return;
+            } catch (TransientDataAccessException e) {
+                if (attempt >= maxAttempts) {
+                    throw e;
+                }
+                log.warn("Conflicto al transferir {}, reintento {} de {}", description, attempt, maxAttempts);
+                backoff(attempt++);
+            }
+        }
+    }
+
+    private void applyTransfer(AccountRef origin, AccountRef destination, Movement movement) {
+        var amount = movement.getAmount();
+
+        if (origin.id() <= destination.id()) {
+            debit(origin, amount);
+            credit(destination, amount);
+        } else {
+            credit(destination, amount);
+            debit(origin, amount);
+        }
+
+        var outbox = outboxRepository.save(MovementOutbox.of(movement));
+        eventPublisher.publishEvent(outbox);
+    }
+
+    private void applyBatch(Map<String, AccountRef> accounts, List<Movement> movements) {
+        // Ordenadas por ID para bloquear las filas siempre en el mismo orden
+        Map<Long, Double> deltas = new TreeMap<>();
+        Map<Long, String> ibans = new TreeMap<>();
+        for (Movement movement : movements) {
+            var origin = accounts.get(movement.getBankAccountOrigin());
+            var destination = accounts.get(movement.getBankAccountDestination());
+            deltas.merge(origin.id(), -movement.getAmount(), Double::sum);
+            deltas.merge(destination.id(), movement.getAmount(), Double::sum);
+            ibans.put(origin.id(), origin.iban());
+            ibans.put(destination.id(), destination.iban());
+        }
+
+        var entries = new ArrayList<>(deltas.entrySet());
+        int[][] updated = jdbcTemplate.batchUpdate(APPLY_DELTA_SQL, entries, entries.size(), (ps, entry) -> {
+            ps.setDouble(1, entry.getValue());
+            ps.setLong(2, entry.getKey());
+            ps.setDouble(3, entry.getValue());
+        });
+
+        for (int i = 0; i < entries.size(); i++) {
+            if (updated[0][i] == 0) {
+                var entry = entries.get(i);
+                // Un saldo que no baja solo puede fallar porque la cuenta ha dejado de existir, como en credit()
+                if (entry.getValue() >= 0) {
+                    throw new BankAccountNotFoundByIban(ibans.get(entry.getKey()));
+                }
+                throw new MovementNotMoney("No hay suficiente dinero en la cuenta " + ibans.get(entry.getKey()) + " para todas las transferencias del lote.");
+            }
+        }
+
+        var outbox = outboxRepository.saveAll(movements.stream().map(MovementOutbox::of).toList());
+        eventPublisher.publishEvent(new MovementOutboxBatch(outbox));
+    }
+
+    private void debit(AccountRef account, Double amount) {
+        if (bankAccountRepository.debit(account.id(), amount) == 0) {
+            throw new MovementNotMoney("No tienes suficiente dinero en la cuenta " + account.iban() + " para poder hacer la transferencia.");
+        }
+    }
+
+    private void credit(AccountRef account, Double amount) {
+        if (bankAccountRepository.credit(account.id(), amount) == 0) {
+            throw new BankAccountNotFoundByIban(account.iban());
+        }
+    }
+
+    private void backoff(int attempt) {
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(5, 20) * attempt);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -3,6 +3,10 @@ package jyrs.dev.vivesbank.movements.services;
 import jyrs.dev.vivesbank.movements.dto.MovementRequest;
 import jyrs.dev.vivesbank.movements.dto.MovementResponse;
 import jyrs.dev.vivesbank.movements.models.Movement;
+import jyrs.dev.vivesbank.movements.storage.MovementPdfStatement;
+import jyrs.dev.vivesbank.utils.pagination.CursorPageResponse;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import java.io.File;
 import java.util.List;
 import org.springframework.stereotype.Service;
@@ -26,34 +30,71 @@ public interface MovementsService {
 
     MovementResponse createMovement(String senderClientId, MovementRequest movementRequest);
 
+    /**
+     * Crea varios movimientos bancarios de una vez, aplicándolos todos o ninguno.
+     * Pensado para cargas masivas como el pago de nóminas.
+     * @param senderClientId El ID del cliente remitente, propietario de todas las cuentas de origen.
+     * @param movementRequests Los movimientos a crear.
+     * @return Los movimientos creados, en el mismo orden que las solicitudes.
+     * @since 1.0
+     */
+
+    List<MovementResponse> createMovements(String senderClientId, List<MovementRequest> movementRequests);
+
+
 
+    /**
+     * Obtiene una página de todos los movimientos registrados.
+     * @param pageable La información de paginación y orden.
+     * @return La página de movimientos.
+     * @since 1.0
+     */
 
-    List<MovementResponse> getAllMovements ();
+    Page<MovementResponse> getAllMovements(Pageable pageable);
+
+
+    /**
+     * Obtiene una página de los movimientos de un cliente específico, enviados o recibidos.
+     * @param clientId El ID del cliente cuyos movimientos se desean obtener.
+     * @param pageable La información de paginación y orden.
+     * @return Página de movimientos del cliente.
+     * @since 1.0
+     */
 
+    Page<MovementResponse> getAllMovementsById(String clientId, Pageable pageable);
 
     /**
-     * Obtiene una lista de los movimientos realizados por un cliente específico.
+     * Obtiene los movimientos de un cliente del más reciente al más antiguo, paginando por cursor.
      * @param clientId El ID del cliente cuyos movimientos se desean obtener.
-     * @return Lista de movimientos realizados por el cliente.
+     * @param cursor El cursor devuelto en la página anterior, o null para la primera página.
+     * @param size El número máximo de movimientos de la página.
+     * @return La página de movimientos con el cursor de la siguiente, si la hay.
      * @since 1.0
      */
 
-    List<MovementResponse>  getAllMovementsById(String clientId);
+    CursorPageResponse<MovementResponse> getMovementsByCursor(String clientId, String cursor, int size);
 
     MovementResponse getMovementById(String movementId, String clientId);
 
     /**
-     *
+     * Obtiene una página de los movimientos enviados por un cliente.
+     * @param clientId El ID del cliente remitente.
+     * @param pageable La información de paginación y orden.
+     * @return Página de movimientos enviados.
+     * @since 1.0
      */
 
-    List<MovementResponse> getAllSentMovements(String clientId);
+    Page<MovementResponse> getAllSentMovements(String clientId, Pageable pageable);
 
-    /*
-     *
-     *
+    /**
+     * Obtiene una página de los movimientos recibidos por un cliente.
+     * @param clientId El ID del cliente destinatario.
+     * @param pageable La información de paginación y orden.
+     * @return Página de movimientos recibidos.
+     * @since 1.0
      */
 
-    List<MovementResponse> getAllRecipientMovements(String clientId);
+    Page<MovementResponse> getAllRecipientMovements(String clientId, Pageable pageable);
 
 
     /**
@@ -92,12 +133,59 @@ public interface MovementsService {
     void deleteMe(String user, String movementId);
 
 
-    File generateMovementPdf(String movement);
-    File generateMeMovementPdf(String idCl,String idMv);
-    File generateAllMeMovementPdf(String id);
-    File generateAllMeMovementSendPdf(String id);
-    File generateAllMeMovementRecepientPdf(String id);
-    File generateAllMovementPdf();
+    /**
+     * Prepara el PDF de un movimiento.
+     * @param movement El ID del movimiento.
+     * @return El extracto listo para escribirse en la respuesta.
+     * @since 1.0
+     */
+
+    MovementPdfStatement generateMovementPdf(String movement);
+
+    /**
+     * Prepara el PDF de un movimiento del cliente autenticado.
+     * @param idCl El guuid del cliente.
+     * @param idMv El ID del movimiento, que debe haber enviado o recibido el cliente.
+     * @return El extracto listo para escribirse en la respuesta.
+     * @since 1.0
+     */
+
+    MovementPdfStatement generateMeMovementPdf(String idCl,String idMv);
+
+    /**
+     * Prepara el PDF con todos los movimientos de un cliente. Los movimientos se leen con un cursor al escribir el PDF.
+     * @param id El guuid del cliente.
+     * @return El extracto listo para escribirse en la respuesta.
+     * @since 1.0
+     */
+
+    MovementPdfStatement generateAllMeMovementPdf(String id);
+
+    /**
+     * Prepara el PDF con los movimientos enviados por un cliente.
+     * @param id El guuid del cliente.
+     * @return El extracto listo para escribirse en la respuesta.
+     * @since 1.0
+     */
+
+    MovementPdfStatement generateAllMeMovementSendPdf(String id);
+
+    /**
+     * Prepara el PDF con los movimientos recibidos por un cliente.
+     * @param id El guuid del cliente.
+     * @return El extracto listo para escribirse en la respuesta.
+     * @since 1.0
+     */
+
+    MovementPdfStatement generateAllMeMovementRecepientPdf(String id);
+
+    /**
+     * Prepara el PDF con todos los movimientos del banco.
+     * @return El extracto listo para escribirse en la respuesta.
+     * @since 1.0
+     */
+
+    MovementPdfStatement generateAllMovementPdf();
 
 }
 
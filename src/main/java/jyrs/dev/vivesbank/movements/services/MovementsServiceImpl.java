@@ -1,4 +1,7 @@
 package jyrs.dev.vivesbank.movements.services;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jyrs.dev.vivesbank.config.websockets.WebSocketHandler;
 import jyrs.dev.vivesbank.movements.dto.MovementRequest;
 import jyrs.dev.vivesbank.movements.dto.MovementResponse;
 import jyrs.dev.vivesbank.movements.exceptions.*;
@@ -6,16 +9,29 @@ import jyrs.dev.vivesbank.movements.mappers.MovementMapper;
 import jyrs.dev.vivesbank.movements.models.Movement;
 import jyrs.dev.vivesbank.movements.repository.MovementsRepository;
 import jyrs.dev.vivesbank.movements.storage.MovementPdfGenerator;
+import jyrs.dev.vivesbank.movements.storage.MovementPdfStatement;
 import jyrs.dev.vivesbank.movements.storage.MovementsStorage;
 import jyrs.dev.vivesbank.products.bankAccounts.exceptions.BankAccountNotFoundByIban;
-import jyrs.dev.vivesbank.products.bankAccounts.repositories.BankAccountRepository;
+import jyrs.dev.vivesbank.products.bankAccounts.dto.AccountRef;
+import jyrs.dev.vivesbank.products.bankAccounts.services.AccountDirectory;
 import jyrs.dev.vivesbank.users.clients.exceptions.ClientNotFound;
+import jyrs.dev.vivesbank.users.clients.service.ClientResolver;
+import jyrs.dev.vivesbank.users.clients.models.Client;
 import jyrs.dev.vivesbank.users.clients.repository.ClientsRepository;
 import jyrs.dev.vivesbank.users.models.User;
 import jyrs.dev.vivesbank.users.users.repositories.UsersRepository;
 import lombok.extern.slf4j.Slf4j;
+import jyrs.dev.vivesbank.utils.pagination.CursorPageResponse;
+import jyrs.dev.vivesbank.websockets.bankAccount.notifications.dto.MovementNotificationResponse;
+import jyrs.dev.vivesbank.websockets.bankAccount.notifications.mapper.MovementNotificationMapper;
+import jyrs.dev.vivesbank.websockets.bankAccount.notifications.models.Notificacion;
+import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
@@ -23,10 +39,16 @@ import org.springframework.stereotype.Service;
 import org.springframework.web.bind.annotation.DeleteMapping;
 
 import java.io.File;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 @Service
 @Slf4j
@@ -34,103 +56,179 @@ public class MovementsServiceImpl implements MovementsService {
 
     private final MovementsRepository movementsRepository;
     private final ClientsRepository clientsRepository;
+    private final ClientResolver clientResolver;
     private final MovementPdfGenerator pdfGenerator;
     private final MovementsStorage storage;
-    private final BankAccountRepository bankAccountRepository;
+    private final AccountDirectory accountDirectory;
     private final MovementMapper movementMapper;
+    private final MovementTransferEngine transferEngine;
+    private final ObjectMapper objectMapper;
+    private final WebSocketHandler webSocketService;
+    private final int maxBatchSize;
 
     @Autowired
-    public MovementsServiceImpl(MovementsRepository movementsRepository, ClientsRepository clientsRepository, MovementPdfGenerator pdfGenerator, MovementsStorage storage, BankAccountRepository bankAccountRepository, MovementMapper movementMapper) {
+    public MovementsServiceImpl(MovementsRepository movementsRepository, ClientsRepository clientsRepository, ClientResolver clientResolver, MovementPdfGenerator pdfGenerator, MovementsStorage storage, AccountDirectory accountDirectory, MovementMapper movementMapper, MovementTransferEngine transferEngine, ObjectMapper objectMapper, @Qualifier("webSocketMovementsHandler") WebSocketHandler webSocketService, @Value("${movements.batch.max-size:5000}") int maxBatchSize) {
         this.movementsRepository = movementsRepository;
         this.clientsRepository = clientsRepository;
+        this.clientResolver = clientResolver;
         this.pdfGenerator = pdfGenerator;
         this.storage = storage;
-        this.bankAccountRepository = bankAccountRepository;
+        this.accountDirectory = accountDirectory;
         this.movementMapper = movementMapper;
+        this.transferEngine = transferEngine;
+        this.objectMapper = objectMapper;
+        this.webSocketService = webSocketService;
+        this.maxBatchSize = maxBatchSize;
 
     }
 
 
     @Override
     public MovementResponse createMovement(String senderClientId, MovementRequest movementRequest) {
-        var client = clientsRepository.getByUser_Guuid(senderClientId).orElseThrow(()-> new ClientNotFound(senderClientId));
-        var accountsSender = client.getCuentas();
-        var accountOrigin = bankAccountRepository.findByIban(movementRequest.getBankAccountOrigin().trim()).orElseThrow(()-> new BankAccountNotFoundByIban(movementRequest.getBankAccountOrigin()));
-        
-        if (accountOrigin.getClient().getDni() != client.getDni()) {
-            throw new MovementNotAccountClient("Esta cuenta: " + accountOrigin  +  " no pertenece a este cliente. " + client);
+        if (movementRequest.getAmount() == null || movementRequest.getAmount() <= 0) {
+            throw new MovementAmountInvalid("La cantidad del movimiento debe ser mayor que cero.");
         }
+        var client = clientResolver.resolve(senderClientId);
+        var originIban = movementRequest.getBankAccountOrigin().trim();
+        var destinationIban = movementRequest.getBankAccountDestination().trim();
 
-        
-        var accountRecipient = bankAccountRepository.findByIban(movementRequest.getBankAccountDestination().trim()).orElseThrow(()-> new BankAccountNotFoundByIban(movementRequest.getBankAccountDestination()));
-        var clientRecipient = accountRecipient.getClient();
-        
-        if (accountRecipient.getClient().getDni() != clientRecipient.getDni()) {
-            throw new MovementNotAccountClient("Esta cuenta: " + accountRecipient + " no pertenece a este cliente. " + clientRecipient);
+        var accountOrigin = accountDirectory.find(originIban).orElseThrow(()-> new BankAccountNotFoundByIban(movementRequest.getBankAccountOrigin()));
+        if (!accountOrigin.isOwnedBy(client.id())) {
+            throw new MovementNotAccountClient("Esta cuenta: " + originIban + " no pertenece a este cliente.");
         }
-        
-        if (movementRequest.getAmount() > accountOrigin.getBalance()) {
-            throw new MovementNotMoney("No tienes suficiente dinero en la " + accountOrigin + "  para poder hacer la transferencia.");
-        }
-
-        var saldoOrigin = accountOrigin.getBalance() - movementRequest.getAmount();
-
-        accountOrigin.setBalance(saldoOrigin);
-        bankAccountRepository.save(accountOrigin);
-
-        var saldoRecipient = accountRecipient.getBalance() + movementRequest.getAmount();
 
-        accountRecipient.setBalance(saldoRecipient);
-        bankAccountRepository.save(accountRecipient);
+        var accountRecipient = accountDirectory.find(destinationIban).orElseThrow(()-> new BankAccountNotFoundByIban(movementRequest.getBankAccountDestination()));
 
         var movement = Movement.builder()
+                .id(new ObjectId().toHexString())
                 .typeMovement(movementRequest.getTypeMovement())
                 .date(LocalDateTime.now())
                 .amount(movementRequest.getAmount())
                 .BankAccountOrigin(movementRequest.getBankAccountOrigin())
                 .BankAccountDestination(movementRequest.getBankAccountDestination())
                 .SenderClient(senderClientId)
-                .RecipientClient(clientRecipient.getUser().getGuuid())
+                .RecipientClient(accountRecipient.ownerGuuid())
                 .build();
 
-        movementsRepository.save(movement);
+        // El saldo se comprueba en el propio cargo, que no se aplica si no es suficiente
+        try {
+            transferEngine.transfer(accountOrigin, accountRecipient, movement);
+        } catch (MovementNotMoney | BankAccountNotFoundByIban e) {
+            // Puede que otro nodo haya borrado alguna de las cuentas, se vuelven a leer en el siguiente intento
+            accountDirectory.evict(originIban);
+            accountDirectory.evict(destinationIban);
+            throw e;
+        }
+        onMovement(movement);
 
         return movementMapper.toResponseMovement(movement);
     }
 
     @Override
-    public List<MovementResponse> getAllMovements() {
-        List<Movement> movements = movementsRepository.findAll();
-        List<MovementResponse> movementResponses = movements.stream().map(movementMapper::toResponseMovement).toList();
+    public List<MovementResponse> createMovements(String senderClientId, List<MovementRequest> movementRequests) {
+        if (movementRequests == null || movementRequests.isEmpty()) {
+            throw new MovementBatchInvalid("El lote de movimientos está vacío.");
+        }
+        if (movementRequests.size() > maxBatchSize) {
+            throw new MovementBatchInvalid("El lote supera el máximo de " + maxBatchSize + " movimientos.");
+        }
 
-        return movementResponses;
-    }
+        var client = clientResolver.resolve(senderClientId);
+
+        var ibans = new HashSet<String>();
+        for (MovementRequest request : movementRequests) {
+            if (request.getAmount() == null || request.getAmount() <= 0) {
+                throw new MovementBatchInvalid("La cantidad de cada movimiento debe ser mayor que cero.");
+            }
+            if (isBlank(request.getBankAccountOrigin()) || isBlank(request.getBankAccountDestination())) {
+                throw new MovementBatchInvalid("Cada movimiento debe indicar la cuenta de origen y la de destino.");
+            }
+            ibans.add(request.getBankAccountOrigin().trim());
+            ibans.add(request.getBankAccountDestination().trim());
+        }
+
+        Map<String, AccountRef> accounts = accountDirectory.findAll(ibans);
+
+        var now = LocalDateTime.now();
+        List<Movement> movements = new ArrayList<>(movementRequests.size());
+
+        for (MovementRequest request : movementRequests) {
+            var originIban = request.getBankAccountOrigin().trim();
+            var destinationIban = request.getBankAccountDestination().trim();
+
+            var accountOrigin = accounts.get(originIban);
+            if (accountOrigin == null) {
+                throw new BankAccountNotFoundByIban(originIban);
+            }
+            if (!accountOrigin.isOwnedBy(client.id())) {
+                throw new MovementNotAccountClient("Esta cuenta: " + originIban + " no pertenece a este cliente.");
+            }
+
+            var accountRecipient = accounts.get(destinationIban);
+            if (accountRecipient == null) {
+                throw new BankAccountNotFoundByIban(destinationIban);
+            }
+
+            movements.add(Movement.builder()
+                    .id(new ObjectId().toHexString())
+                    .typeMovement(request.getTypeMovement())
+                    .date(now)
+                    .amount(request.getAmount())
+                    .BankAccountOrigin(originIban)
+                    .BankAccountDestination(destinationIban)
+                    .SenderClient(senderClientId)
+                    .RecipientClient(accountRecipient.ownerGuuid())
+                    .build());
+        }
+
+        try {
+            transferEngine.transferAll(accounts, movements);
+        } catch (MovementNotMoney | BankAccountNotFoundByIban e) {
+            accounts.keySet().forEach(accountDirectory::evict);
+            throw e;
+        }
+        movements.forEach(this::onMovement);
 
+        return movements.stream().map(movementMapper::toResponseMovement).toList();
+    }
 
     @Override
-    public List<MovementResponse> getAllMovementsById(String clientId) {
-        var client = clientsRepository.getByUser_Guuid(clientId).orElseThrow(()-> new ClientNotFound(clientId));
+    public Page<MovementResponse> getAllMovements(Pageable pageable) {
+        return movementsRepository.findAll(pageable).map(movementMapper::toResponseMovement);
+    }
 
-        List<Movement> movements = List.of();
-        List<MovementResponse> movementResponses = List.of();
 
-        List<Movement> sentMovements = movementsRepository.findBySenderClient((clientId));
-        List<Movement> receivedMovements = movementsRepository.findByRecipientClient((clientId));
+    @Override
+    public Page<MovementResponse> getAllMovementsById(String clientId, Pageable pageable) {
+        clientResolver.resolve(clientId);
 
-        movements.addAll(sentMovements);
-        movements.addAll(receivedMovements);
+        return movementsRepository.findByClient(clientId, pageable).map(movementMapper::toResponseMovement);
+    }
 
-        for (Movement mov : movements) {
-            movementResponses.add(movementMapper.toResponseMovement(mov));
+    @Override
+    public CursorPageResponse<MovementResponse> getMovementsByCursor(String clientId, String cursor, int size) {
+        if (size < 1) {
+            throw new MovementPageInvalid(size);
+        }
+        clientResolver.resolve(clientId);
+
+        List<Movement> movements;
+        if (cursor == null || cursor.isBlank()) {
+            movements = movementsRepository.findLatestByClient(clientId, Limit.of(size));
+        } else {
+            var position = decodeCursor(cursor);
+            movements = movementsRepository.findByClientBefore(clientId, position.date(), position.id(), Limit.of(size));
         }
 
-        return movementResponses;
+        String nextCursor = movements.isEmpty() || movements.size() < size ? null : encodeCursor(movements.get(movements.size() - 1));
+
+        return CursorPageResponse.of(movements.stream().map(movementMapper::toResponseMovement).toList(), size, nextCursor);
     }
 
     @Override
     public MovementResponse getMovementById(String movementId, String clientId) {
         var movement = movementsRepository.findById(movementId).orElseThrow(()-> new MovementNotFoundException(movementId));
-        var client = clientsRepository.getByUser_Guuid(clientId).orElseThrow(() -> new ClientNotFound(clientId));
+        clientResolver.resolve(clientId);
 
         boolean isSender = movement.getSenderClient().equals(clientId);
 
@@ -143,45 +241,23 @@ public class MovementsServiceImpl implements MovementsService {
 
 
     @Override
-    public List<MovementResponse> getAllSentMovements(String clientId) {
-        var client = clientsRepository.getByUser_Guuid(clientId).orElseThrow(()-> new ClientNotFound(clientId));
+    public Page<MovementResponse> getAllSentMovements(String clientId, Pageable pageable) {
+        clientResolver.resolve(clientId);
 
-        List<Movement> movements = List.of();
-        List<MovementResponse> movementResponses = List.of();
-
-        List<Movement> sentMovements = movementsRepository.findBySenderClient((clientId));
-
-        movements.addAll(sentMovements);
-
-        for (Movement mov : movements) {
-            movementResponses.add(movementMapper.toResponseMovement(mov));
-        }
-
-        return movementResponses;
+        return movementsRepository.findBySenderClient(clientId, pageable).map(movementMapper::toResponseMovement);
     }
 
     @Override
-    public List<MovementResponse> getAllRecipientMovements(String clientId) {
-        var client = clientsRepository.getByUser_Guuid(clientId).orElseThrow(()-> new ClientNotFound(clientId));
-
-        List<Movement> movements = List.of();
-        List<MovementResponse> movementResponses = List.of();
+    public Page<MovementResponse> getAllRecipientMovements(String clientId, Pageable pageable) {
+        clientResolver.resolve(clientId);
 
-        List<Movement> recipientMovements = movementsRepository.findByRecipientClient((clientId));
-
-        movements.addAll(recipientMovements);
-
-        for (Movement mov : movements) {
-            movementResponses.add(movementMapper.toResponseMovement(mov));
-        }
-
-        return movementResponses;
+        return movementsRepository.findByRecipientClient(clientId, pageable).map(movementMapper::toResponseMovement);
     }
 
 
     @Override
     public List<MovementResponse> getMovementsByType(String typeMovement, String clientId) {
-        var client = clientsRepository.getByUser_Guuid(clientId).orElseThrow(() -> new ClientNotFound(clientId));
+        clientResolver.resolve(clientId);
 
         List<Movement> allClientMovements = movementsRepository.findBySenderClientAndRecipientClient(clientId, clientId);
 
@@ -226,11 +302,11 @@ public class MovementsServiceImpl implements MovementsService {
 
     @Override
     public void deleteMe(String clientId, String movementId) {
-        var client = clientsRepository.getByUser_Guuid(clientId).orElseThrow(() -> new ClientNotFound(clientId));
+        var client = clientResolver.resolve(clientId);
         var movement = movementsRepository.findById(movementId).orElseThrow(() -> new MovementNotFoundException(movementId));
         var timeNow = LocalDateTime.now();
 
-        if (movement.getSenderClient() != client.getUser().getGuuid()){
+        if (!client.guuid().equals(movement.getSenderClient())){
             throw new MovementNotHaveMovement("El movimiento no pertenece al cliente");
         }
 
@@ -242,70 +318,124 @@ public class MovementsServiceImpl implements MovementsService {
     }
 
     @Override
-    public File generateMovementPdf(String id) {
+    public MovementPdfStatement generateMovementPdf(String id) {
 
-        var movement = movementsRepository.findById(id).orElseThrow();
+        var movement = movementsRepository.findById(id).orElseThrow(() -> new MovementNotFoundException(id));
 
-        return pdfGenerator.generateMovementPdf(movement);
+        return new MovementPdfStatement("movement_" + movement.getId() + ".pdf", out -> pdfGenerator.writeMovementPdf(movement, out));
     }
 
     @Override
-    public File generateMeMovementPdf(String idCl,String idMv) {
-        var cliente = clientsRepository.getByUser_Guuid(idCl).orElseThrow(() -> new ClientNotFound(idCl));
+    public MovementPdfStatement generateMeMovementPdf(String idCl,String idMv) {
+        var guuid = clientResolver.resolve(idCl).guuid();
 
-        var movement = movementsRepository.findById(idMv).orElseThrow();
+        var movement = movementsRepository.findById(idMv).orElseThrow(() -> new MovementNotFoundException(idMv));
 
-        if (movement.getSenderClient() != cliente.getUser().getGuuid() || movement.getRecipientClient() != cliente.getUser().getGuuid()){
+        if (!guuid.equals(movement.getSenderClient()) && !guuid.equals(movement.getRecipientClient())){
             throw new MovementNotHaveMovement("El movimiento no pertenece al cliente");
         }
 
-        return pdfGenerator.generateMovementPdf(movement);
+        return new MovementPdfStatement("movement_" + movement.getId() + ".pdf", out -> pdfGenerator.writeMovementPdf(movement, out));
     }
 
     @Override
-    public File generateAllMeMovementPdf(String id) {
+    public MovementPdfStatement generateAllMeMovementPdf(String id) {
 
         var cliente = clientsRepository.getByUser_Guuid(id).orElseThrow(() -> new ClientNotFound(id));
 
-        List<Movement> lista = List.of();
+        return streamingStatement("movements_" + id + ".pdf", () -> movementsRepository.streamAllByClient(id), Optional.of(cliente));
+    }
 
-        List<Movement> sentMovements = movementsRepository.findBySenderClient((id));
-        List<Movement> receivedMovements = movementsRepository.findByRecipientClient((id));
+    @Override
+    public MovementPdfStatement generateAllMeMovementSendPdf(String id) {
 
-        lista.addAll(sentMovements);
-        lista.addAll(receivedMovements);
+        var cliente = clientsRepository.getByUser_Guuid(id).orElseThrow(() -> new ClientNotFound(id));
 
-        return pdfGenerator.generateMovementsPdf(lista, Optional.of(cliente));
+        return streamingStatement("movements_sent_" + id + ".pdf", () -> movementsRepository.streamBySenderClient(cliente.getUser().getGuuid()), Optional.of(cliente));
     }
 
     @Override
-    public File generateAllMeMovementSendPdf(String id) {
+    public MovementPdfStatement generateAllMeMovementRecepientPdf(String id) {
 
         var cliente = clientsRepository.getByUser_Guuid(id).orElseThrow(() -> new ClientNotFound(id));
 
-        var lista = movementsRepository.findBySenderClient(cliente.getUser().getGuuid());
-
-        return pdfGenerator.generateMovementsPdf(lista, Optional.of(cliente));
+        return streamingStatement("movements_received_" + id + ".pdf", () -> movementsRepository.streamByRecipientClient(cliente.getUser().getGuuid()), Optional.of(cliente));
     }
 
     @Override
-    public File generateAllMeMovementRecepientPdf(String id) {
-
-        var cliente = clientsRepository.getByUser_Guuid(id).orElseThrow(() -> new ClientNotFound(id));
+    public MovementPdfStatement generateAllMovementPdf() {
 
-        var lista = movementsRepository.findByRecipientClient(cliente.getUser().getGuuid());
+        return streamingStatement("movements.pdf", movementsRepository::streamAll, Optional.empty());
+    }
 
-        return pdfGenerator.generateMovementsPdf(lista, Optional.of(cliente));
+    /**
+     * Crea un extracto cuyo cursor de MongoDB solo se abre mientras se escribe el PDF y se cierra siempre al terminar.
+     */
+    private MovementPdfStatement streamingStatement(String fileName, Supplier<Stream<Movement>> movements, Optional<Client> client) {
+        return new MovementPdfStatement(fileName, out -> {
+            try (var stream = movements.get()) {
+                pdfGenerator.writeMovementsPdf(stream, client, out);
+            }
+        });
     }
 
-    @Override
-    public File generateAllMovementPdf() {
+    /**
+     * Codifica la posición (fecha, id) de un movimiento como cursor opaco para la siguiente página.
+     */
+    private String encodeCursor(Movement movement) {
+        var raw = movement.getDate() + "|" + movement.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
 
-        List<Movement> lista = movementsRepository.findAll();
+    private CursorPosition decodeCursor(String cursor) {
+        try {
+            var raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            var parts = raw.split("\\|", 2);
+            return new CursorPosition(LocalDateTime.parse(parts[0]), new ObjectId(parts[1]));
+        } catch (RuntimeException e) {
+            throw new MovementCursorInvalid(cursor);
+        }
+    }
 
-        return pdfGenerator.generateMovementsPdf(lista, Optional.empty());
+    private record CursorPosition(LocalDateTime date, ObjectId id) {
     }
 
-}
+    /**
+     * Notifica un movimiento por WebSocket al cliente que lo envía y al que lo recibe.
+     * @param movement El movimiento ya aplicado.
+     * @since 1.0
+     */
+
+    private void onMovement(Movement movement) {
+        if (webSocketService == null) {
+            return;
+        }
+        var recipients = new HashSet<String>();
+        if (movement.getSenderClient() != null) {
+            recipients.add(movement.getSenderClient());
+        }
+        if (movement.getRecipientClient() != null) {
+            recipients.add(movement.getRecipientClient());
+        }
+        if (recipients.isEmpty()) {
+            return;
+        }
 
+        try {
+            Notificacion<MovementNotificationResponse> notificacion = new Notificacion<>(
+                    "MOVEMENTS",
+                    Notificacion.Tipo.CREATE,
+                    MovementNotificationMapper.toMovementNotificationResponse(movement),
+                    LocalDateTime.now().toString()
+            );
+            String json = objectMapper.writeValueAsString(notificacion);
+            recipients.forEach(guuid -> webSocketService.sendMessage(guuid, json));
+        } catch (JsonProcessingException e) {
+            log.error("Error al convertir la notificación del movimiento a JSON", e);
+        }
+    }
 
+    private static boolean isBlank(String iban) {
+        return iban == null || iban.isBlank();
+    }
+}
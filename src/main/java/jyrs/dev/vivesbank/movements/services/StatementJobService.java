@@ -0,0 +1,191 @@
+package jyrs.dev.vivesbank.movements.services;
+
+import jakarta.annotation.PreDestroy;
+import jyrs.dev.vivesbank.movements.exceptions.StatementJobNotFound;
+import jyrs.dev.vivesbank.movements.exceptions.StatementJobNotReady;
+import jyrs.dev.vivesbank.movements.exceptions.StatementJobRejected;
+import jyrs.dev.vivesbank.movements.models.StatementJob;
+import jyrs.dev.vivesbank.movements.storage.MovementPdfStatement;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cola de trabajos para generar extractos en PDF en segundo plano.
+ * Cada trabajo se ejecuta en un hilo virtual, pero solo unos pocos generan PDF a la vez: el resto espera su turno
+ * sin ocupar hilos de Tomcat. Los PDF terminados se escriben en ficheros temporales, fuera de la memoria del servicio,
+ * y se borran pasado su tiempo de vida; al arrancar se borran los que quedaran de una ejecución anterior.
+ * @author Raul Fernandez, Yahya El Hadri, Javier Ruiz, Javier Hernandez, Samuel Cortes
+ * @since 1.0
+ */
+
+@Service
+@Slf4j
+public class StatementJobService {
+
+    private static final String EXTENSION = ".pdf";
+
+    private final Map<String, StatementJob> jobs = new ConcurrentHashMap<>();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Semaphore workers;
+    private final int maxPending;
+    private final long ttlMinutes;
+    private final Path directory;
+
+    @Autowired
+    public StatementJobService(@Value("${movements.statements.max-concurrent:4}") int maxConcurrent,
+                               @Value("${movements.statements.max-pending:200}") int maxPending,
+                               @Value("${movements.statements.ttl-minutes:30}") long ttlMinutes,
+                               @Value("${movements.statements.directory:${java.io.tmpdir}/vivesbank-statements}") String directory) {
+        this.workers = new Semaphore(Math.max(1, maxConcurrent), true);
+        this.maxPending = maxPending;
+        this.ttlMinutes = ttlMinutes;
+        this.directory = Path.of(directory);
+        try {
+            Files.createDirectories(this.directory);
+            try (var leftovers = Files.newDirectoryStream(this.directory, "*" + EXTENSION)) {
+                for (var file : leftovers) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se ha podido preparar el directorio de extractos " + directory, e);
+        }
+    }
+
+    /**
+     * Encola la generación de un extracto.
+     * @param owner El guuid del usuario que lo solicita.
+     * @param statement El extracto ya validado.
+     * @return El trabajo en estado PENDING.
+     * @throws StatementJobRejected Si la cola está llena.
+     * @since 1.0
+     */
+
+    public StatementJob submit(String owner, MovementPdfStatement statement) {
+        if (pending.incrementAndGet() > maxPending) {
+            pending.decrementAndGet();
+            throw new StatementJobRejected(maxPending);
+        }
+
+        var job = StatementJob.pending(UUID.randomUUID().toString(), owner, statement.fileName());
+        jobs.put(job.id(), job);
+        log.info("Extracto {} encolado para {}", job.id(), owner);
+
+        executor.execute(() -> render(job.id(), statement));
+        return job;
+    }
+
+    /**
+     * Obtiene el estado de un trabajo del usuario.
+     * @param jobId El identificador del trabajo.
+     * @param owner El guuid del usuario que lo consulta.
+     * @return El trabajo.
+     * @throws StatementJobNotFound Si no existe, ha caducado o pertenece a otro usuario.
+     * @since 1.0
+     */
+
+    public StatementJob getJob(String jobId, String owner) {
+        var job = jobs.get(jobId);
+        if (job == null || !job.owner().equals(owner)) {
+            throw new StatementJobNotFound(jobId);
+        }
+        return job;
+    }
+
+    /**
+     * Obtiene un trabajo terminado correctamente, listo para descargar.
+     * @param jobId El identificador del trabajo.
+     * @param owner El guuid del usuario que lo consulta.
+     * @return El trabajo con el PDF generado.
+     * @throws StatementJobNotReady Si todavía no ha terminado o ha fallado.
+     * @since 1.0
+     */
+
+    public StatementJob getFinishedJob(String jobId, String owner) {
+        var job = getJob(jobId, owner);
+        if (job.status() != StatementJob.Status.DONE) {
+            throw new StatementJobNotReady(jobId, job.status().name());
+        }
+        return job;
+    }
+
+    /**
+     * Elimina los trabajos terminados cuyo tiempo de vida ha expirado, junto con sus ficheros.
+     * @since 1.0
+     */
+
+    @Scheduled(fixedDelayString = "${movements.statements.cleanup-interval:60000}")
+    public void evictExpired() {
+        var limit = LocalDateTime.now().minusMinutes(ttlMinutes);
+        jobs.values().forEach(job -> {
+            if (job.isFinished() && job.finishedAt().isBefore(limit) && jobs.remove(job.id(), job)) {
+                delete(job.file());
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+        jobs.values().forEach(job -> delete(job.file()));
+        jobs.clear();
+    }
+
+    private void render(String jobId, MovementPdfStatement statement) {
+        try {
+            workers.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            jobs.computeIfPresent(jobId, (id, job) -> job.failed("Generación cancelada"));
+            pending.decrementAndGet();
+            return;
+        }
+
+        var file = directory.resolve(jobId + EXTENSION);
+        try {
+            jobs.computeIfPresent(jobId, (id, job) -> job.running());
+            try (var out = new BufferedOutputStream(Files.newOutputStream(file))) {
+                statement.writeTo(out);
+            }
+            long size = Files.size(file);
+            jobs.computeIfPresent(jobId, (id, job) -> job.done(file, size));
+            log.info("Extracto {} generado ({} bytes)", jobId, size);
+        } catch (Exception e) {
+            log.error("Error generando el extracto {}", jobId, e);
+            delete(file);
+            jobs.computeIfPresent(jobId, (id, job) -> job.failed(e.getMessage()));
+        } finally {
+            workers.release();
+            pending.decrementAndGet();
+        }
+    }
+
+    private void delete(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("No se ha podido borrar el extracto {}", file, e);
+        }
+    }
+}
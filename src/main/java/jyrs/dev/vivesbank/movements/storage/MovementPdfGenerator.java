@@ -5,120 +5,93 @@ import com.itextpdf.kernel.pdf.PdfWriter;
 import com.itextpdf.layout.Document;
 import com.itextpdf.layout.element.Paragraph;
 import com.itextpdf.layout.element.Table;
+import com.itextpdf.layout.properties.UnitValue;
 import jyrs.dev.vivesbank.movements.models.Movement;
 import jyrs.dev.vivesbank.users.clients.models.Client;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
-import java.io.File;
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.io.OutputStream;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.List;
+import java.util.Iterator;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Service
 public class MovementPdfGenerator {
 
     private static final Logger logger = LoggerFactory.getLogger(MovementPdfGenerator.class);
-    private static final String DATE_FORMAT = "dd/MM/yyyy HH:mm:ss";
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
     private static final String NA = "N/A";
+    private static final int FLUSH_ROWS = 100;
 
     /**
-     * Genera un archivo PDF con los detalles de un movimiento bancario.
+     * Escribe un PDF con los detalles de un movimiento bancario directamente en el flujo de salida.
      * @param movement El objeto movimiento con los detalles a incluir en el PDF.
+     * @param out El flujo donde se escribe el PDF; no se cierra al terminar.
      */
 
-    public File generateMovementPdf(Movement movement) {
-        File pdfFile = null;
-        try {
-            File directory = new File("./movements");
-
-            if (!directory.exists()) {
-                directory.mkdirs();
-            }
-
-            String fileName = "movement_" + movement.getSenderClient() + "_" + System.currentTimeMillis() + ".pdf";
-            String filePath = directory.getAbsolutePath() + File.separator + fileName;
-
-            pdfFile = new File(filePath);
-            PdfWriter writer = new PdfWriter(filePath);
-            PdfDocument pdf = new PdfDocument(writer);
-            Document document = new Document(pdf);
-
+    public void writeMovementPdf(Movement movement, OutputStream out) {
+        try (Document document = openDocument(out)) {
             document.add(new Paragraph("Detalles del Movimiento").setFontSize(14));
             addMovementDetailsToDocument(document, movement);
-
-            document.close();
-
-            logger.info("PDF generado exitosamente: {}", filePath);
-        } catch (IOException e) {
-            logger.error("Error al generar el PDF: {}", e.getMessage(), e);
         }
 
-        return pdfFile;
+        logger.info("PDF del movimiento {} generado", movement.getId());
     }
 
 
     /**
-     * Genera un archivo PDF con una lista de movimientos bancarios.
+     * Escribe un PDF con una lista de movimientos bancarios directamente en el flujo de salida.
+     * La tabla se genera en modo de tabla grande: las filas se vuelcan al PDF cada pocas decenas de movimientos,
+     * así que la memoria usada no depende del número de movimientos y nada se escribe en disco.
+     * @param movements Los movimientos a incluir, normalmente leídos de un cursor de MongoDB.
      * @param client por si es la lista de un cliente.
-     * @param movements La lista de movimientos a incluir en el PDF.
+     * @param out El flujo donde se escribe el PDF; no se cierra al terminar.
      */
 
-    public File generateMovementsPdf(List<Movement> movements, Optional<Client> client) {
-        File pdfFile = null;
-
-        try {
-            File directory = new File("./movements");
-            if (!directory.exists()) {
-                directory.mkdirs();
-            }
-
-            String fileName = "movements_list_" + System.currentTimeMillis() + ".pdf";
-            if (client.isPresent()) {
-                fileName = "movements_list_" + client.get().getId() + "_" + System.currentTimeMillis() + ".pdf";
-            }
-
-            String filePath = directory.getAbsolutePath() + File.separator + fileName;
-            pdfFile = new File(filePath);
-
-            PdfWriter writer = new PdfWriter(filePath);
-            PdfDocument pdf = new PdfDocument(writer);
-            Document document = new Document(pdf);
+    public void writeMovementsPdf(Stream<Movement> movements, Optional<Client> client, OutputStream out) {
+        long rows = 0;
 
+        try (Document document = openDocument(out)) {
             if (client.isPresent()) {
                 document.add(new Paragraph("Lista de Mis Movimientos").setFontSize(14));
             } else {
                 document.add(new Paragraph("Lista de Movimientos").setFontSize(14));
             }
 
-            Table table = new Table(6);
-            table.addCell("ID");
-            table.addCell("Tipo");
-            table.addCell("Fecha");
-            table.addCell("Cantidad");
+            Table table = new Table(UnitValue.createPercentArray(4), true).useAllAvailableWidth();
+            table.addHeaderCell("ID");
+            table.addHeaderCell("Tipo");
+            table.addHeaderCell("Fecha");
+            table.addHeaderCell("Cantidad");
+            document.add(table);
 
-            for (Movement movement : movements) {
-                table.addCell(movement.getId());
-                table.addCell(movement.getTypeMovement());
+            Iterator<Movement> iterator = movements.iterator();
+            while (iterator.hasNext()) {
+                Movement movement = iterator.next();
+                table.addCell(valueOrNa(movement.getId()));
+                table.addCell(valueOrNa(movement.getTypeMovement()));
                 table.addCell(formatDateTime(movement.getDate()));
                 table.addCell(String.valueOf(movement.getAmount()));
-            }
-
-            document.add(table);
 
-            document.close();
+                if (++rows % FLUSH_ROWS == 0) {
+                    table.flush();
+                }
+            }
 
-            logger.info("PDF generado exitosamente: {}", filePath);
-        } catch (IOException e) {
-            logger.error("Error al generar el PDF: {}", e.getMessage(), e);
+            table.complete();
         }
 
-        return pdfFile;
+        logger.info("PDF generado con {} movimientos", rows);
+    }
+
+    private static Document openDocument(OutputStream out) {
+        PdfWriter writer = new PdfWriter(out);
+        writer.setCloseStream(false);
+        return new Document(new PdfDocument(writer));
     }
 
     private static void addMovementDetailsToDocument(Document document, Movement movement) {
@@ -126,10 +99,14 @@ public class MovementPdfGenerator {
         document.add(new Paragraph("Tipo de Movimiento: " + movement.getTypeMovement()));
         document.add(new Paragraph("Fecha: " + formatDateTime(movement.getDate())));
         document.add(new Paragraph("Cantidad: " + movement.getAmount()));
-        document.add(new Paragraph("Cuenta Origen: " + (movement.getBankAccountOrigin() != null ? movement.getBankAccountOrigin() : NA)));
-        document.add(new Paragraph("Cuenta Destino: " + (movement.getBankAccountDestination() != null ? movement.getBankAccountDestination() : NA)));
-        document.add(new Paragraph("Cliente Remitente: " + (movement.getSenderClient() != null ? movement.getSenderClient() : NA)));
-        document.add(new Paragraph("Cliente Destinatario: " + (movement.getRecipientClient() != null ? movement.getRecipientClient() : NA)));
+        document.add(new Paragraph("Cuenta Origen: " + valueOrNa(movement.getBankAccountOrigin())));
+        document.add(new Paragraph("Cuenta Destino: " + valueOrNa(movement.getBankAccountDestination())));
+        document.add(new Paragraph("Cliente Remitente: " + valueOrNa(movement.getSenderClient())));
+        document.add(new Paragraph("Cliente Destinatario: " + valueOrNa(movement.getRecipientClient())));
+    }
+
+    private static String valueOrNa(String value) {
+        return value != null ? value : NA;
     }
 
     /**
@@ -140,8 +117,6 @@ public class MovementPdfGenerator {
 
     private static String formatDateTime(LocalDateTime dateTime) {
         if (dateTime == null) return NA;
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern(DATE_FORMAT);
-        return dateTime.format(formatter);
+        return dateTime.format(DATE_FORMAT);
     }
 }
-
@@ -0,0 +1,33 @@
+package jyrs.dev.vivesbank.movements.storage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Extracto en PDF pendiente de generar.
+ * Las comprobaciones (cliente, propiedad del movimiento...) ya se han hecho al crearlo; el PDF se escribe
+ * directamente en el flujo de salida cuando se invoca {@link #writeTo(OutputStream)}, sin ficheros temporales.
+ * @param fileName El nombre con el que se descarga el PDF.
+ * @param writer La función que escribe el PDF en el flujo.
+ * @author Raul Fernandez, Yahya El Hadri, Javier Ruiz, Javier Hernandez, Samuel Cortes
+ * @since 1.0
+ */
+
+public record MovementPdfStatement(String fileName, Writer writer) {
+
+    /**
+     * Escribe el PDF en el flujo de salida.
+     * @param out El flujo de salida; no se cierra.
+     * @throws IOException Si falla la escritura.
+     * @since 1.0
+     */
+
+    public void writeTo(OutputStream out) throws IOException {
+        writer.writeTo(out);
+    }
+
+    @FunctionalInterface
+    public interface Writer {
+        void writeTo(OutputStream out) throws IOException;
+    }
+}
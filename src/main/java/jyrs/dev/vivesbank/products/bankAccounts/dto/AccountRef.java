@@ -0,0 +1,29 @@
+package jyrs.dev.vivesbank.products.bankAccounts.dto;
+
+import jyrs.dev.vivesbank.products.bankAccounts.models.BankAccount;
+
+/**
+ * Datos mínimos de una cuenta para validar transferencias y comprobar a quién pertenece, sin cargar la entidad.
+ * Ninguno de estos valores cambia mientras la cuenta existe, por eso se pueden guardar en memoria.
+ * @param id El ID de la cuenta, con el que se hacen las lecturas y escrituras del balance.
+ * @param iban El IBAN de la cuenta.
+ * @param clientId El ID del cliente dueño, o {@code null} si no tiene.
+ * @param ownerGuuid El guuid del usuario del cliente dueño, o {@code null} si no tiene.
+ * @author Raul Fernandez, Yahya El Hadri, Javier Ruiz, Javier Hernandez, Samuel Cortes
+ * @since 1.0
+ */
+
+public record AccountRef(Long id, String iban, Long clientId, String ownerGuuid) {
+
+    public static AccountRef of(BankAccount account) {
+        var client = account.getClient();
+        var user = client != null ? client.getUser() : null;
+        return new AccountRef(account.getId(), account.getIban(),
+                client != null ? client.getId() : null,
+                user != null ? user.getGuuid() : null);
+    }
+
+    public boolean isOwnedBy(Long clientId) {
+        return this.clientId != null && this.clientId.equals(clientId);
+    }
+}
@@ -3,6 +3,7 @@ package jyrs.dev.vivesbank.products.bankAccounts.models;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.Min;
+import jyrs.dev.vivesbank.backup.service.BackupDeletionListener;
 import jyrs.dev.vivesbank.products.bankAccounts.models.Type.AccountType;
 import jyrs.dev.vivesbank.products.creditCards.models.CreditCard;
 import jyrs.dev.vivesbank.products.base.models.Product;
@@ -11,6 +12,7 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.LastModifiedDate;
 import org.springframework.data.jpa.domain.support.AuditingEntityListener;
 
 import java.time.LocalDateTime;
@@ -29,7 +31,7 @@ import java.time.LocalDateTime;
 @Builder
 @Entity
 @Table(name = "BANK_ACCOUNTS")
-@EntityListeners(AuditingEntityListener.class)
+@EntityListeners({AuditingEntityListener.class, BackupDeletionListener.class})
 public class BankAccount {
 
     /**
@@ -43,7 +45,9 @@ public class BankAccount {
     /**
      * El IBAN (Número Internacional de Cuenta Bancaria) asociado a la cuenta.
      * Este campo es de tipo String para permitir representar números largos.
+     * Tiene un índice único, que es lo que garantiza que no se repita.
      */
+    @Column(unique = true)
     private String iban;
 
     /**
@@ -75,6 +79,14 @@ public class BankAccount {
      */
     private LocalDateTime createdAt = LocalDateTime.now();
 
+    /**
+     * La fecha y hora de la última modificación de la cuenta bancaria.
+     * Los cambios de balance hechos con sentencias nativas también la actualizan; se usa para los backups incrementales.
+     */
+    @LastModifiedDate
+    @Builder.Default
+    private LocalDateTime updatedAt = LocalDateTime.now();
+
     /**
      * Relación de uno a uno con la entidad {@link CreditCard}.
      * Cada cuenta puede tener asociada una tarjeta de crédito.
@@ -0,0 +1,30 @@
+package jyrs.dev.vivesbank.products.bankAccounts.models;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Contador compartido del que cada nodo reserva bloques de números de cuenta para los IBAN.
+ * Una fila por serie; el valor es el primer número que aún no se ha reservado.
+ * @author Raul Fernandez, Yahya El Hadri, Javier Ruiz, Javier Hernandez, Samuel Cortes
+ * @since 1.0
+ */
+
+@Entity
+@Table(name = "IBAN_BLOCKS")
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class IbanBlock {
+
+    @Id
+    private String name;
+
+    @Column(nullable = false)
+    private Long nextValue;
+}
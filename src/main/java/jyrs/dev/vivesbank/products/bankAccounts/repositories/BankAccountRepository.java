@@ -1,10 +1,16 @@
 package jyrs.dev.vivesbank.products.bankAccounts.repositories;
 
+import jyrs.dev.vivesbank.products.bankAccounts.dto.AccountRef;
 import jyrs.dev.vivesbank.products.bankAccounts.models.BankAccount;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -24,6 +30,34 @@ public interface BankAccountRepository extends JpaRepository<BankAccount, Long>,
      */
     Optional<BankAccount> findByIban(String iban);
 
+    /**
+     * Comprueba si existe una cuenta bancaria con un IBAN, sin cargarla.
+     *
+     * @param iban El número de IBAN.
+     * @return true si existe, false en caso contrario.
+     */
+    boolean existsByIban(String iban);
+
+    /**
+     * Obtiene los datos mínimos de una cuenta por su IBAN, sin cargar la entidad ni sus relaciones.
+     *
+     * @param iban El número de IBAN.
+     * @return Un {@link Optional} con la referencia de la cuenta, vacío si no existe.
+     */
+    @Query("SELECT new jyrs.dev.vivesbank.products.bankAccounts.dto.AccountRef(a.id, a.iban, c.id, u.guuid) " +
+            "FROM BankAccount a LEFT JOIN a.client c LEFT JOIN c.user u WHERE a.iban = :iban")
+    Optional<AccountRef> findRefByIban(@Param("iban") String iban);
+
+    /**
+     * Obtiene en una sola consulta los datos mínimos de las cuentas cuyos IBAN estén en la colección indicada.
+     *
+     * @param ibans Los IBAN de las cuentas a buscar.
+     * @return Las referencias encontradas; los IBAN que no existan simplemente no aparecen.
+     */
+    @Query("SELECT new jyrs.dev.vivesbank.products.bankAccounts.dto.AccountRef(a.id, a.iban, c.id, u.guuid) " +
+            "FROM BankAccount a LEFT JOIN a.client c LEFT JOIN c.user u WHERE a.iban IN :ibans")
+    List<AccountRef> findRefsByIbanIn(@Param("ibans") Collection<String> ibans);
+
     /**
      * Encuentra todas las cuentas bancarias asociadas a un cliente por su ID.
      *
@@ -31,4 +65,49 @@ public interface BankAccountRepository extends JpaRepository<BankAccount, Long>,
      * @return Una lista de cuentas bancarias asociadas al cliente.
      */
     List<BankAccount> findAllByClientId(Long clientId);
+
+    /**
+     * Obtiene en una sola consulta todas las cuentas bancarias cuyos IBAN estén en la colección indicada.
+     *
+     * @param ibans Los IBAN de las cuentas a buscar.
+     * @return Una lista con las cuentas encontradas; los IBAN que no existan simplemente no aparecen.
+     */
+    List<BankAccount> findAllByIbanIn(Collection<String> ibans);
+
+    /**
+     * Resta una cantidad del balance de una cuenta de forma atómica, solo si el balance es suficiente.
+     * La comprobación y la escritura se hacen en una única sentencia, por lo que dos transferencias
+     * concurrentes sobre la misma cuenta no pueden perder actualizaciones.
+     *
+     * @param id     El ID de la cuenta bancaria a debitar.
+     * @param amount La cantidad a restar.
+     * @return El número de filas actualizadas: 1 si se aplicó el cargo, 0 si la cuenta no existe o no tiene saldo suficiente.
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "UPDATE BANK_ACCOUNTS SET balance = balance - :amount, updated_at = CURRENT_TIMESTAMP WHERE id = :id AND balance >= :amount", nativeQuery = true)
+    int debit(@Param("id") Long id, @Param("amount") Double amount);
+
+    /**
+     * Suma una cantidad al balance de una cuenta de forma atómica. Como la sentencia no pasa por la validación de la
+     * entidad, el abono no se aplica si dejara el balance en negativo.
+     *
+     * @param id     El ID de la cuenta bancaria a abonar.
+     * @param amount La cantidad a sumar.
+     * @return El número de filas actualizadas: 1 si se aplicó el abono, 0 si la cuenta no existe o el balance quedaría negativo.
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "UPDATE BANK_ACCOUNTS SET balance = balance + :amount, updated_at = CURRENT_TIMESTAMP WHERE id = :id AND balance + :amount >= 0", nativeQuery = true)
+    int credit(@Param("id") Long id, @Param("amount") Double amount);
+
+    /**
+     * Fija el balance de una cuenta. Abre su propia transacción si quien la llama no tiene una.
+     *
+     * @param id      El ID de la cuenta bancaria.
+     * @param balance El nuevo balance.
+     * @return El número de filas actualizadas: 1 si se aplicó, 0 si la cuenta no existe.
+     */
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "UPDATE BANK_ACCOUNTS SET balance = :balance, updated_at = CURRENT_TIMESTAMP WHERE id = :id", nativeQuery = true)
+    int setBalance(@Param("id") Long id, @Param("balance") Double balance);
 }
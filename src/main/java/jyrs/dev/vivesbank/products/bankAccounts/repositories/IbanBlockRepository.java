@@ -0,0 +1,42 @@
+package jyrs.dev.vivesbank.products.bankAccounts.repositories;
+
+import jyrs.dev.vivesbank.products.bankAccounts.models.IbanBlock;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Repositorio de los contadores de bloques de IBAN.
+ * @author Raul Fernandez, Yahya El Hadri, Javier Ruiz, Javier Hernandez, Samuel Cortes
+ * @since 1.0
+ */
+
+@Repository
+public interface IbanBlockRepository extends JpaRepository<IbanBlock, String> {
+
+    /**
+     * Avanza el contador de una serie de forma atómica. La fila queda bloqueada hasta el final de la transacción,
+     * así que dos nodos nunca reservan el mismo bloque.
+     *
+     * @param name La serie.
+     * @param size El tamaño del bloque que se reserva.
+     * @return 1 si se ha avanzado, 0 si la serie todavía no existe.
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "UPDATE IBAN_BLOCKS SET next_value = next_value + :size WHERE name = :name", nativeQuery = true)
+    int advance(@Param("name") String name, @Param("size") long size);
+
+    /**
+     * Crea una serie con una inserción directa, sin el merge de {@code save}, que con un ID asignado actualizaría la
+     * fila si otro nodo la hubiera creado a la vez. Si ya existe, falla por la clave primaria.
+     *
+     * @param name La serie.
+     * @param firstValue El primer número de la serie.
+     * @return 1 si se ha creado.
+     */
+    @Modifying(flushAutomatically = true)
+    @Query(value = "INSERT INTO IBAN_BLOCKS (name, next_value) VALUES (:name, :firstValue)", nativeQuery = true)
+    int create(@Param("name") String name, @Param("firstValue") long firstValue);
+}
@@ -0,0 +1,131 @@
+package jyrs.dev.vivesbank.products.bankAccounts.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jyrs.dev.vivesbank.config.cache.BoundedCache;
+import jyrs.dev.vivesbank.products.bankAccounts.dto.AccountRef;
+import jyrs.dev.vivesbank.products.bankAccounts.repositories.BankAccountRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Directorio en memoria de IBAN a {@link AccountRef} (ID de la cuenta, cliente y guuid del dueño).
+ * Las transferencias y las comprobaciones de propiedad lo consultan en lugar de cargar la cuenta con todas sus
+ * relaciones; solo la primera vez que se ve un IBAN se lee de la base de datos con una consulta de proyección.
+ * Como estos datos no cambian mientras la cuenta existe, las entradas no caducan: el servicio de cuentas las añade
+ * al crear y las elimina al borrar. Si otro nodo borra una cuenta, las escrituras por ID fallan al no encontrarla y
+ * quien las hace elimina la entrada.
+ * @author Raul Fernandez, Yahya El Hadri, Javier Ruiz, Javier Hernandez, Samuel Cortes
+ * @since 1.0
+ */
+
+@Component
+@Slf4j
+public class AccountDirectory {
+
+    private final BoundedCache<String, AccountRef> entries;
+    private final BankAccountRepository bankAccountRepository;
+    private final Counter hits;
+    private final Counter misses;
+
+    @Autowired
+    public AccountDirectory(BankAccountRepository bankAccountRepository, MeterRegistry registry,
+                            @Value("${bankaccounts.directory.max-size:100000}") int maxSize) {
+        this.bankAccountRepository = bankAccountRepository;
+        this.entries = new BoundedCache<>(maxSize, 0, System::nanoTime);
+        this.hits = registry.counter("bankaccounts.directory.requests", "result", "hit");
+        this.misses = registry.counter("bankaccounts.directory.requests", "result", "miss");
+        Gauge.builder("bankaccounts.directory.size", entries, BoundedCache::size).register(registry);
+    }
+
+    /**
+     * Busca una cuenta por su IBAN.
+     * @param iban El IBAN.
+     * @return La referencia de la cuenta, o vacío si no existe.
+     * @since 1.0
+     */
+
+    public Optional<AccountRef> find(String iban) {
+        var ref = entries.get(iban);
+        if (ref != null) {
+            hits.increment();
+            return Optional.of(ref);
+        }
+        misses.increment();
+        var loaded = bankAccountRepository.findRefByIban(iban);
+        loaded.ifPresent(this::put);
+        return loaded;
+    }
+
+    /**
+     * Busca varias cuentas por su IBAN, con una única consulta para las que no están en el directorio.
+     * @param ibans Los IBAN.
+     * @return Las referencias indexadas por IBAN; los que no existen no aparecen.
+     * @since 1.0
+     */
+
+    public Map<String, AccountRef> findAll(Collection<String> ibans) {
+        Map<String, AccountRef> found = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String iban : ibans) {
+            var ref = entries.get(iban);
+            if (ref != null) {
+                found.put(iban, ref);
+            } else {
+                missing.add(iban);
+            }
+        }
+        hits.increment(found.size());
+        if (!missing.isEmpty()) {
+            misses.increment(missing.size());
+            for (AccountRef ref : bankAccountRepository.findRefsByIbanIn(missing)) {
+                put(ref);
+                found.put(ref.iban(), ref);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Añade o reemplaza una cuenta. Si el directorio está lleno se descarta la más antigua.
+     * @param ref La referencia de la cuenta.
+     * @since 1.0
+     */
+
+    public void put(AccountRef ref) {
+        if (ref == null || ref.iban() == null) {
+            return;
+        }
+        entries.put(ref.iban(), ref);
+    }
+
+    /**
+     * Elimina una cuenta del directorio. Se debe llamar al borrarla.
+     * @param iban El IBAN.
+     * @since 1.0
+     */
+
+    public void evict(String iban) {
+        if (entries.invalidate(iban)) {
+            log.debug("Cuenta {} eliminada del directorio", iban);
+        }
+    }
+
+    public void invalidateAll() {
+        entries.invalidateAll();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+}
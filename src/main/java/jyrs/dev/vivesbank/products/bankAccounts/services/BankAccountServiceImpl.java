@@ -4,6 +4,7 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import jyrs.dev.vivesbank.config.websockets.WebSocketConfig;
 import jyrs.dev.vivesbank.config.websockets.WebSocketHandler;
+import jyrs.dev.vivesbank.products.bankAccounts.dto.AccountRef;
 import jyrs.dev.vivesbank.products.bankAccounts.dto.BankAccountRequest;
 import jyrs.dev.vivesbank.products.bankAccounts.dto.BankAccountResponse;
 import jyrs.dev.vivesbank.products.bankAccounts.dto.UpdateAccountRequest;
@@ -13,7 +14,9 @@ import jyrs.dev.vivesbank.products.bankAccounts.mappers.BankAccountMapper;
 import jyrs.dev.vivesbank.products.bankAccounts.models.BankAccount;
 import jyrs.dev.vivesbank.products.bankAccounts.repositories.BankAccountRepository;
 import jyrs.dev.vivesbank.products.bankAccounts.storage.BankAccountStorage;
+import jyrs.dev.vivesbank.users.clients.cache.ClientCache;
 import jyrs.dev.vivesbank.users.clients.exceptions.ClientNotFound;
+import jyrs.dev.vivesbank.users.clients.service.ClientResolver;
 import jyrs.dev.vivesbank.users.clients.repository.ClientsRepository;
 import jyrs.dev.vivesbank.websockets.bankAccount.notifications.dto.BankAccountNotificationResponse;
 import jyrs.dev.vivesbank.websockets.bankAccount.notifications.mapper.BankAccountNotificationMapper;
@@ -24,17 +27,16 @@ import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.cache.annotation.CacheConfig;
 import org.springframework.cache.annotation.CachePut;
 import org.springframework.cache.annotation.Cacheable;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 
 import java.io.File;
-import java.math.BigInteger;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
-import java.util.Random;
 
 
 /**
@@ -55,6 +57,12 @@ public class BankAccountServiceImpl implements BankAccountService {
     private final BankAccountNotificationMapper bankAccountNotificationMapper;
     private WebSocketHandler webSocketService;
     private final BankAccountStorage storage;
+    private final IbanAllocator ibanAllocator;
+    private final AccountDirectory accountDirectory;
+    private final ClientResolver clientResolver;
+    private final ClientCache clientCache;
+
+    private static final int MAX_IBAN_ATTEMPTS = 5;
 
     /**
      * Constructor de la clase, con inyección de dependencias.
@@ -66,6 +74,10 @@ public class BankAccountServiceImpl implements BankAccountService {
      * @param bankAccountNotificationMapper Mapea notificaciones de cuentas bancarias
      * @param storage Almacenamiento de cuentas bancarias
      * @param webSocketService Servicio WebSocket para enviar notificaciones
+     * @param ibanAllocator Asigna los IBAN de las cuentas nuevas
+     * @param accountDirectory Directorio en memoria de IBAN a cuenta
+     * @param clientResolver Resuelve el guuid del usuario autenticado a su cliente
+     * @param clientCache Caché de clientes, que incluye sus cuentas
      */
     @Autowired
     public BankAccountServiceImpl(ClientsRepository clientsRepository, BankAccountRepository bankAccountRepository,
@@ -73,7 +85,11 @@ public class BankAccountServiceImpl implements BankAccountService {
                                   ObjectMapper mapper,
                                   BankAccountNotificationMapper bankAccountNotificationMapper,
                                   BankAccountStorage storage,
-                                  @Qualifier("webSocketBankAccountHandler") WebSocketHandler webSocketService) {
+                                  @Qualifier("webSocketBankAccountHandler") WebSocketHandler webSocketService,
+                                  IbanAllocator ibanAllocator,
+                                  AccountDirectory accountDirectory,
+                                  ClientResolver clientResolver,
+                                  ClientCache clientCache) {
         this.clientsRepository = clientsRepository;
         this.bankAccountRepository = bankAccountRepository;
         this.bankAccountMapper = bankAccountMapper;
@@ -81,6 +97,10 @@ public class BankAccountServiceImpl implements BankAccountService {
         this.bankAccountNotificationMapper = bankAccountNotificationMapper;
         this.storage = storage;
         this.webSocketService = webSocketService;
+        this.ibanAllocator = ibanAllocator;
+        this.accountDirectory = accountDirectory;
+        this.clientResolver = clientResolver;
+        this.clientCache = clientCache;
     }
 
     /**
@@ -164,17 +184,18 @@ public class BankAccountServiceImpl implements BankAccountService {
     public BankAccountResponse saveBankAccount(String id, BankAccountRequest bankAccountRequest) {
         log.info("Guardando cuenta bancaria: " + bankAccountRequest);
 
-        var client = clientsRepository.getByUser_Guuid(id).orElseThrow(() -> new ClientNotFound(id));
-
-        String iban = generateUniqueIban();
+        var client = clientResolver.resolve(id);
 
         BankAccount bankAccount = bankAccountMapper.toBankAccount(bankAccountRequest);
-        bankAccount.setIban(iban);
         bankAccount.setBalance(0.0);
         bankAccount.setCreditCard(null);
-        bankAccount.setClient(client);
+        // Basta con la referencia para la clave ajena: no se carga el cliente ni su usuario
+        bankAccount.setClient(clientsRepository.getReferenceById(client.id()));
 
-        BankAccount savedBankAccount = bankAccountRepository.save(bankAccount);
+        BankAccount savedBankAccount = saveWithUniqueIban(bankAccount);
+        accountDirectory.put(new AccountRef(savedBankAccount.getId(), savedBankAccount.getIban(), client.id(), client.guuid()));
+        // El cliente en caché incluye sus cuentas
+        clientCache.evict(client.id(), client.dni());
 
         onChange(Notificacion.Tipo.CREATE, savedBankAccount);
 
@@ -183,13 +204,18 @@ public class BankAccountServiceImpl implements BankAccountService {
 
     @Override
     public UpdateAccountResponse updateAccountResponse(String id, UpdateAccountRequest updateAccountRequest,String iban){
-        var client = clientsRepository.getByUser_Guuid(id).orElseThrow(() -> new ClientNotFound(id));
-
-        var account = bankAccountRepository.findByIban(iban).orElseThrow(()->new BankAccountNotFoundByIban(iban));
+        var dinero = updateAccountRequest.getDinero();
+        if (dinero == null || dinero < 0) {
+            throw new BankAccountBadRequest("El balance de la cuenta no puede ser negativo.");
+        }
+        clientResolver.resolve(id);
 
-        account.setBalance(updateAccountRequest.getDinero());
+        var account = accountDirectory.find(iban).orElseThrow(()->new BankAccountNotFoundByIban(iban));
 
-        bankAccountRepository.save(account);
+        if (bankAccountRepository.setBalance(account.id(), updateAccountRequest.getDinero()) == 0) {
+            accountDirectory.evict(iban);
+            throw new BankAccountNotFoundByIban(iban);
+        }
 
         return UpdateAccountResponse.builder().iban(iban).dinero(updateAccountRequest.getDinero().toString()).build();
     }
@@ -213,6 +239,10 @@ public class BankAccountServiceImpl implements BankAccountService {
         }
 
         bankAccountRepository.deleteById(id);
+        accountDirectory.evict(account.getIban());
+        if (account.getClient() != null) {
+            clientCache.evict(account.getClient());
+        }
         onChange(Notificacion.Tipo.DELETE, account);
         log.info("Cuenta bancaria con ID " + id + " eliminada exitosamente.");
     }
@@ -230,8 +260,7 @@ public class BankAccountServiceImpl implements BankAccountService {
     public void deleteMeBankAccount(String idClient, Long idAccount) {
         log.info("Eliminando cuenta de banco por el ID: " + idClient);
 
-        var user = clientsRepository.getByUser_Guuid(idClient)
-                .orElseThrow(() -> new ClientNotFound(idClient));
+        var client = clientResolver.resolve(idClient);
 
         var account = bankAccountRepository.findById(idAccount)
                 .orElseThrow(() -> new BankAccountNotFound(idAccount));
@@ -240,7 +269,7 @@ public class BankAccountServiceImpl implements BankAccountService {
             throw new BankAccountBadRequest("La cuenta bancaria no tiene un cliente asociado.");
         }
 
-        if (!account.getClient().getId().equals(user.getId())) {
+        if (!account.getClient().getId().equals(client.id())) {
             throw new BankAccountBadRequest("No se puede eliminar una cuenta de otro cliente.");
         }
 
@@ -249,6 +278,8 @@ public class BankAccountServiceImpl implements BankAccountService {
         }
 
         bankAccountRepository.deleteById(idAccount);
+        accountDirectory.evict(account.getIban());
+        clientCache.evict(client.id(), client.dni());
 
         onChange(Notificacion.Tipo.DELETE, account);
 
@@ -263,8 +294,7 @@ public class BankAccountServiceImpl implements BankAccountService {
      */
     @Override
     public List<BankAccountResponse> getAllMeAccounts(String id){
-        var user = clientsRepository.getByUser_Guuid(id).orElseThrow(() -> new ClientNotFound(id));
-        var cuentas = findAllBankAccountsByClientId(user.getId());
+        var cuentas = findAllBankAccountsByClientId(clientResolver.resolve(id).id());
 
         return cuentas;
     }
@@ -297,95 +327,51 @@ public class BankAccountServiceImpl implements BankAccountService {
     }
 
     /**
-     * Genera un IBAN único, garantizando que no se repita.
+     * Genera un IBAN único a partir del bloque de números de cuenta reservado por este nodo, sin consultar la base de datos.
      *
      * @return Un IBAN único
-     * @throws BankAccountIbanException Si no se puede generar un IBAN único después de 1000 intentos
+     * @throws BankAccountIbanException Si se han agotado los números de cuenta
      */
     public String generateUniqueIban() {
-        String iban;
-        int attempts = 0;
-        do {
-            iban = generateIban();
-            attempts++;
-            if (attempts > 1000) {
-                throw new BankAccountIbanException("No se pudo generar un IBAN único después de 1000 intentos.");
-            }
-        } while (ibanExists(iban));
-        return iban;
+        return ibanAllocator.nextIban();
     }
 
     /**
-     * Verifica si un IBAN ya existe en la base de datos.
+     * Verifica si un IBAN ya existe en la base de datos, usando el índice único de la columna sin cargar la cuenta.
      *
      * @param iban El IBAN a verificar
      * @return true si el IBAN ya existe, false en caso contrario
      */
     public boolean ibanExists(String iban) {
-        return bankAccountRepository.findByIban(iban).isPresent();
+        return bankAccountRepository.existsByIban(iban);
     }
 
     /**
-     * Genera un nuevo IBAN en formato estándar, con un código de país, entidad, sucursal, y dígitos de control.
-     *
-     * @return El IBAN generado
-     */
-    public String generateIban() {
-        String countryCode = "ES";
-        String entityCode = "0128";
-        String branchCode = "0001";
-        String accountControlDigits = "00";
-        String accountNumber = generateRandomDigits(10);
-        String ibanBase = entityCode + branchCode + accountControlDigits + accountNumber + "142800";
-        int checkDigits = calculateControlDigits(ibanBase);
-
-        return countryCode + String.format("%02d", checkDigits) + entityCode + branchCode + accountControlDigits + accountNumber;
-    }
-
-
-    /**
-     * Calcula los dígitos de control de un IBAN, usando el algoritmo estándar.
+     * Guarda una cuenta nueva con el siguiente IBAN disponible. Si el índice único lo rechaza porque ya lo tenía una
+     * cuenta anterior a los bloques de IBAN, se prueba con el siguiente.
      *
-     * @param ibanBase La base del IBAN sin los dígitos de control
-     * @return Los dígitos de control calculados
+     * @param bankAccount La cuenta a guardar, sin IBAN
+     * @return La cuenta guardada
+     * @throws BankAccountIbanException Si no se puede asignar un IBAN libre después de varios intentos
      */
-    public int calculateControlDigits(String ibanBase) {
-        StringBuilder numericIban = new StringBuilder();
-
-        for (char ch : ibanBase.toCharArray()) {
-            if (Character.isDigit(ch)) {
-                numericIban.append(ch);
-            } else {
-                numericIban.append((int) ch - 'A' + 10);
+    private BankAccount saveWithUniqueIban(BankAccount bankAccount) {
+        for (int attempt = 1; attempt <= MAX_IBAN_ATTEMPTS; attempt++) {
+            bankAccount.setIban(generateUniqueIban());
+            try {
+                return bankAccountRepository.save(bankAccount);
+            } catch (DataIntegrityViolationException e) {
+                if (!ibanExists(bankAccount.getIban())) {
+                    throw e;
+                }
+                log.warn("El IBAN {} ya estaba asignado, se prueba con el siguiente", bankAccount.getIban());
             }
         }
-
-        String numericIbanStr = numericIban.toString();
-        BigInteger numericIbanBigInt = new BigInteger(numericIbanStr);
-
-        BigInteger remainder = numericIbanBigInt.mod(BigInteger.valueOf(97));
-
-        BigInteger checkDigits = BigInteger.valueOf(98).subtract(remainder);
-        return checkDigits.intValue();
+        throw new BankAccountIbanException("No se pudo generar un IBAN único después de " + MAX_IBAN_ATTEMPTS + " intentos.");
     }
 
     /**
-     * Genera una cadena de dígitos aleatorios de una longitud específica.
-     *
-     * @param length Longitud de la cadena de dígitos
-     * @return La cadena de dígitos aleatorios
-     */
-    public String generateRandomDigits(int length) {
-        Random random = new Random();
-        StringBuilder digits = new StringBuilder();
-        for (int i = 0; i < length; i++) {
-            digits.append(random.nextInt(10));
-        }
-        return digits.toString();
-    }
-
-    /**
-     * Metodo para enviar notificaciones a traves de websocket cada vez que se realiza un cambio en cuenta bancaria
+     * Metodo para enviar notificaciones a traves de websocket cada vez que se realiza un cambio en cuenta bancaria.
+     * La notificación solo se envía al cliente dueño de la cuenta, en el nodo en el que tenga sus sesiones abiertas.
      * @param tipo El tipo de cambio realizado (por ejemplo, CREATE, DELETE)
      * @param data Los datos de la cuenta bancaria afectada
      */
@@ -394,8 +380,15 @@ public class BankAccountServiceImpl implements BankAccountService {
 
         if (webSocketService == null) {
             log.warn("No se ha podido enviar la notificación a los clientes ws, no se ha encontrado el servicio");
+            return;
         }
 
+        if (data.getClient() == null || data.getClient().getUser() == null) {
+            log.warn("La cuenta {} no tiene cliente, no se envía la notificación", data.getIban());
+            return;
+        }
+        String ownerGuuid = data.getClient().getUser().getGuuid();
+
         try {
             Notificacion<BankAccountNotificationResponse> notificacion = new Notificacion<>(
                     "BANK_ACCOUNT",
@@ -407,14 +400,7 @@ public class BankAccountServiceImpl implements BankAccountService {
             String json = mapper.writeValueAsString(notificacion);
 
             log.info("Enviando mensaje a los clientes ws");
-            Thread senderThread = new Thread(() -> {
-                try {
-                    webSocketService.sendMessage(json);
-                } catch (Exception e) {
-                    log.error("Error al enviar el mensaje a través del servicio WebSocket", e);
-                }
-            });
-            senderThread.start();
+            webSocketService.sendMessage(ownerGuuid, json);
         } catch (JsonProcessingException e) {
             log.error("Error al convertir la notificación a JSON", e);
         }
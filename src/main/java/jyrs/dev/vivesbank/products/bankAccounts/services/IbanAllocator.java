@@ -0,0 +1,130 @@
+package jyrs.dev.vivesbank.products.bankAccounts.services;
+
+import jyrs.dev.vivesbank.products.bankAccounts.exceptions.BankAccountIbanException;
+import jyrs.dev.vivesbank.products.bankAccounts.models.IbanBlock;
+import jyrs.dev.vivesbank.products.bankAccounts.repositories.IbanBlockRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Asigna los IBAN de las cuentas nuevas sin consultar la tabla de cuentas.
+ * Los números de cuenta salen de bloques reservados en la tabla {@code IBAN_BLOCKS}: cada nodo reserva un bloque
+ * con una única actualización y lo reparte en memoria, de modo que solo vuelve a la base de datos cuando lo agota.
+ * Los dígitos de control se calculan con aritmética de {@code long}, sin convertir el IBAN a número grande.
+ * La unicidad la garantiza el índice único de la columna {@code iban}; los números de un bloque que no se llega a
+ * usar (por ejemplo, al reiniciar el nodo) simplemente se saltan.
+ * @author Raul Fernandez, Yahya El Hadri, Javier Ruiz, Javier Hernandez, Samuel Cortes
+ * @since 1.0
+ */
+
+@Component
+@Slf4j
+public class IbanAllocator {
+
+    static final String SERIES = "bank_accounts";
+    static final long FIRST_ACCOUNT = 1L;
+    static final long MAX_ACCOUNT = 9_999_999_999L;
+
+    private static final String COUNTRY_CODE = "ES";
+    private static final String BANK_PREFIX = "0128" + "0001" + "00";
+    private static final long ACCOUNT_MODULUS = 10_000_000_000L;
+    // "ES00" pasado al final y convertido a dígitos: E=14, S=28
+    private static final long COUNTRY_SUFFIX = 142800L;
+    private static final long PREFIX_REMAINDER = Long.parseLong(BANK_PREFIX) % 97;
+
+    private final IbanBlockRepository repository;
+    private final TransactionTemplate transactionTemplate;
+    private final long blockSize;
+    private long next;
+    private long end;
+
+    @Autowired
+    public IbanAllocator(IbanBlockRepository repository,
+                         PlatformTransactionManager transactionManager,
+                         @Value("${bankaccounts.iban.block-size:100}") long blockSize) {
+        this.repository = repository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.blockSize = Math.max(1, blockSize);
+    }
+
+    /**
+     * Devuelve el siguiente IBAN libre, reservando un bloque nuevo si el actual se ha agotado.
+     * @return El IBAN.
+     * @throws BankAccountIbanException Si se han agotado los números de cuenta.
+     * @since 1.0
+     */
+
+    public synchronized String nextIban() {
+        if (next >= end) {
+            end = lease();
+            next = end - blockSize;
+        }
+        return format(next++);
+    }
+
+    /**
+     * Construye el IBAN español de un número de cuenta.
+     * @param accountNumber El número de cuenta, de 10 dígitos como máximo.
+     * @return El IBAN de 24 caracteres.
+     * @since 1.0
+     */
+
+    static String format(long accountNumber) {
+        char[] iban = new char[24];
+        iban[0] = COUNTRY_CODE.charAt(0);
+        iban[1] = COUNTRY_CODE.charAt(1);
+        int checkDigits = checkDigits(accountNumber);
+        iban[2] = (char) ('0' + checkDigits / 10);
+        iban[3] = (char) ('0' + checkDigits % 10);
+        BANK_PREFIX.getChars(0, BANK_PREFIX.length(), iban, 4);
+        for (int i = iban.length - 1; i >= 14; i--) {
+            iban[i] = (char) ('0' + accountNumber % 10);
+            accountNumber /= 10;
+        }
+        return new String(iban);
+    }
+
+    /**
+     * Calcula los dígitos de control (ISO 13616, mod 97) de un número de cuenta de esta entidad y oficina.
+     * @param accountNumber El número de cuenta.
+     * @return Los dígitos de control, entre 2 y 98.
+     * @since 1.0
+     */
+
+    static int checkDigits(long accountNumber) {
+        long remainder = (PREFIX_REMAINDER * ACCOUNT_MODULUS + accountNumber) % 97;
+        remainder = (remainder * 1_000_000L + COUNTRY_SUFFIX) % 97;
+        return (int) (98 - remainder);
+    }
+
+    private long lease() {
+        Long leasedEnd;
+        try {
+            leasedEnd = transactionTemplate.execute(status -> reserve());
+        } catch (DataIntegrityViolationException e) {
+            // Otro nodo ha creado la serie a la vez, ya existe y se puede avanzar
+            leasedEnd = transactionTemplate.execute(status -> reserve());
+        }
+        if (leasedEnd == null || leasedEnd - 1 > MAX_ACCOUNT) {
+            throw new BankAccountIbanException("No quedan números de cuenta disponibles para generar IBAN.");
+        }
+        log.debug("Reservado el bloque de IBAN [{}, {})", leasedEnd - blockSize, leasedEnd);
+        return leasedEnd;
+    }
+
+    private Long reserve() {
+        // La serie se crea sin reservar nada: el bloque siempre sale de advance, que bloquea la fila
+        if (repository.advance(SERIES, blockSize) == 0) {
+            repository.create(SERIES, FIRST_ACCOUNT);
+            repository.advance(SERIES, blockSize);
+        }
+        return repository.findById(SERIES).map(IbanBlock::getNextValue).orElse(null);
+    }
+}
@@ -3,6 +3,7 @@ package jyrs.dev.vivesbank.products.base.models;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.Min;
 
+import jyrs.dev.vivesbank.backup.service.BackupDeletionListener;
 import jyrs.dev.vivesbank.products.base.models.type.ProductType;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -18,6 +19,7 @@ import java.time.LocalDateTime;
 @NoArgsConstructor
 @Entity
 @Table(name = "PRODUCTS" )
+@EntityListeners(BackupDeletionListener.class)
 public class Product {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -2,6 +2,7 @@ package jyrs.dev.vivesbank.products.creditCards.models;
 
 
 import jakarta.persistence.*;
+import jyrs.dev.vivesbank.backup.service.BackupDeletionListener;
 import jyrs.dev.vivesbank.products.bankAccounts.models.BankAccount;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -18,7 +19,7 @@ import java.time.LocalDateTime;
 @AllArgsConstructor
 @NoArgsConstructor
 @Entity
-@EntityListeners(AuditingEntityListener.class)
+@EntityListeners({AuditingEntityListener.class, BackupDeletionListener.class})
 @Table(name = "CREDIT_CARD")
 public class CreditCard {
 
@@ -1,5 +1,6 @@
 package jyrs.dev.vivesbank.users.admins.services;
 
+import jyrs.dev.vivesbank.auth.users.cache.PrincipalCache;
 import jyrs.dev.vivesbank.users.admins.dto.AdminRequestDto;
 import jyrs.dev.vivesbank.users.admins.dto.AdminUpdateRequest;
 import jyrs.dev.vivesbank.users.admins.exceptions.AdminExceptions;
@@ -48,13 +49,18 @@ public class AdminServiceImpl implements AdminService {
      * Repositorio de usuarios
      */
     private final UsersRepository usersRepository;
+    /**
+     * Caché de usuarios autenticados, que se invalida al cambiar roles o borrar administradores.
+     */
+    private final PrincipalCache principalCache;
     @Autowired
 
-    public AdminServiceImpl(AdminRepository adminRepository, AdminStorage adminStorage, AdminMappers adminMappers, UsersRepository usersRepository) {
+    public AdminServiceImpl(AdminRepository adminRepository, AdminStorage adminStorage, AdminMappers adminMappers, UsersRepository usersRepository, PrincipalCache principalCache) {
         this.adminRepository = adminRepository;
         this.adminStorage = adminStorage;
         this.adminMappers = adminMappers;
         this.usersRepository = usersRepository;
+        this.principalCache = principalCache;
     }
 
     /**
@@ -121,6 +127,7 @@ public class AdminServiceImpl implements AdminService {
         admin.setUser(user);
         admin.setGuuid(user.getGuuid());
         var adminGuardado = adminRepository.save(admin);
+        principalCache.invalidate(user.getGuuid());
         return adminMappers.fromAdminToResponse(adminGuardado);
     }
 
@@ -142,6 +149,7 @@ public class AdminServiceImpl implements AdminService {
         userToUpdate.setFotoPerfil(user.getFotoPerfil());
         adminToUpdate.setUser(userToUpdate);
         adminRepository.save(adminToUpdate);
+        principalCache.invalidate(userToUpdate.getGuuid());
         return adminMappers.fromAdminToResponse(adminToUpdate);
     }
 
@@ -167,6 +175,7 @@ public class AdminServiceImpl implements AdminService {
         userToDelete.setIsDeleted(true);
         adminToDelete.setUser(userToDelete);
         adminRepository.save(adminToDelete);
+        principalCache.invalidate(userToDelete.getGuuid());
     }
 
     /**
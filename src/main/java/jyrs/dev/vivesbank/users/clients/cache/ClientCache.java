@@ -0,0 +1,382 @@
+package jyrs.dev.vivesbank.users.clients.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import jyrs.dev.vivesbank.config.cache.BoundedCache;
+import jyrs.dev.vivesbank.config.redis.RedisChannelSubscription;
+import jyrs.dev.vivesbank.users.clients.models.Client;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Caché de clientes en dos niveles: una caché local acotada (L1) delante de Redis (L2).
+ * Las lecturas calientes se sirven desde la memoria del nodo sin ir a Redis ni deserializar el cliente; si no está
+ * en L1 se busca en Redis y, si tampoco está, se carga de la base de datos. Solo un hilo carga cada clave a la vez,
+ * el resto espera su resultado. Al modificar o borrar un cliente se eliminan sus claves de los dos niveles y se
+ * publica la invalidación en un canal de Redis para que los demás nodos las quiten de su L1.
+ * Cada clave tiene en Redis una versión que se incrementa al invalidarla. Quien carga un cliente de la base de datos
+ * lee la versión antes y solo lo guarda en Redis si sigue siendo la misma, comprobándolo en un script atómico: así un
+ * cliente leído antes de un cambio hecho en cualquier nodo no sustituye a la invalidación. Si Redis no responde
+ * se trabaja solo con L1 y la base de datos hasta pasado el intervalo de reintento; mientras tanto el tiempo de vida
+ * de L1 limita cuánto tarda en verse un cambio hecho desde otro nodo.
+ * @author Raul Fernandez, Yahya El Hadri, Javier Ruiz, Javier Hernandez, Samuel Cortes
+ * @since 1.0
+ */
+
+@Component
+@Slf4j
+public class ClientCache implements MessageListener {
+
+    public static final String CHANNEL = "clients:cache:invalidate";
+    private static final char SEPARATOR = '|';
+
+    // Guarda el cliente solo si la versión de la clave no ha cambiado desde que se leyó ('' si no existía)
+    static final RedisScript<Long> SET_IF_VERSION = RedisScript.of("""
+            if (redis.call('GET', KEYS[2]) or '') ~= ARGV[1] then
+                return 0
+            end
+            redis.call('SET', KEYS[1], ARGV[3], 'EX', ARGV[2])
+            return 1""", Long.class);
+
+    // Incrementa la versión de cada clave y la borra
+    static final RedisScript<Long> EVICT = RedisScript.of("""
+            for i, key in ipairs(KEYS) do
+                redis.call('INCR', key .. ':version')
+                redis.call('EXPIRE', key .. ':version', ARGV[1])
+                redis.call('DEL', key)
+            end
+            return #KEYS""", Long.class);
+
+    private final Map<String, CompletableFuture<Optional<Client>>> loading = new ConcurrentHashMap<>();
+    private final String nodeId = UUID.randomUUID().toString();
+    private final BoundedCache<String, Client> local;
+    private final RedisTemplate<String, Client> redisTemplate;
+    private final StringRedisTemplate redis;
+    private final RedisChannelSubscription subscription;
+    private final long redisTtlSeconds;
+    private final long retryIntervalNanos;
+    private final LongSupplier clock;
+    private final Counter localHits;
+    private final Counter redisHits;
+    private final Counter misses;
+    private final Counter sizeEvictions;
+    private final Counter invalidations;
+    private final Counter remoteInvalidations;
+    private volatile long retryAt;
+    private volatile boolean redisDown;
+
+    @Autowired
+    public ClientCache(RedisTemplate<String, Client> redisTemplate, StringRedisTemplate redis,
+                       RedisConnectionFactory connectionFactory, MeterRegistry registry,
+                       @Value("${clients.cache.local-ttl-seconds:60}") long localTtlSeconds,
+                       @Value("${clients.cache.redis-ttl-seconds:600}") long redisTtlSeconds,
+                       @Value("${clients.cache.max-size:10000}") int maxSize,
+                       @Value("${clients.cache.retry-interval-ms:5000}") long retryIntervalMs) {
+        this(redisTemplate, redis, connectionFactory, registry, localTtlSeconds, redisTtlSeconds, maxSize,
+                retryIntervalMs, System::nanoTime);
+    }
+
+    ClientCache(RedisTemplate<String, Client> redisTemplate, StringRedisTemplate redis,
+                RedisConnectionFactory connectionFactory, MeterRegistry registry, long localTtlSeconds,
+                long redisTtlSeconds, int maxSize, long retryIntervalMs, LongSupplier clock) {
+        this.redisTemplate = redisTemplate;
+        this.redis = redis;
+        this.subscription = new RedisChannelSubscription(connectionFactory, CHANNEL, this, "invalidar la caché de clientes");
+        this.redisTtlSeconds = redisTtlSeconds;
+        this.retryIntervalNanos = TimeUnit.MILLISECONDS.toNanos(retryIntervalMs);
+        this.clock = clock;
+        this.localHits = registry.counter("clients.cache.requests", "result", "hit", "level", "local");
+        this.redisHits = registry.counter("clients.cache.requests", "result", "hit", "level", "redis");
+        this.misses = registry.counter("clients.cache.requests", "result", "miss", "level", "database");
+        this.sizeEvictions = registry.counter("clients.cache.evictions", "cause", "size");
+        this.invalidations = registry.counter("clients.cache.evictions", "cause", "invalidation");
+        this.remoteInvalidations = registry.counter("clients.cache.evictions", "cause", "remote");
+        this.local = new BoundedCache<>(maxSize, TimeUnit.SECONDS.toNanos(localTtlSeconds), clock, sizeEvictions::increment);
+        Gauge.builder("clients.cache.size", local, BoundedCache::size).register(registry);
+    }
+
+    public static String idKey(Long id) {
+        return "client:id:" + id;
+    }
+
+    public static String dniKey(String dni) {
+        return "client:dni:" + dni;
+    }
+
+    /**
+     * Obtiene un cliente de la caché o lo carga si no está en ningún nivel.
+     * Si otro hilo ya está cargando la misma clave se espera a su resultado en lugar de repetir la consulta.
+     * Los clientes que no existen no se guardan.
+     * @param key La clave, {@link #idKey(Long)} o {@link #dniKey(String)}.
+     * @param loader Carga el cliente de la base de datos.
+     * @return El cliente, o vacío si el cargador no lo encuentra.
+     * @since 1.0
+     */
+
+    public Optional<Client> get(String key, Supplier<Optional<Client>> loader) {
+        var cached = local.get(key);
+        if (cached != null) {
+            localHits.increment();
+            return Optional.of(cached);
+        }
+
+        var load = new CompletableFuture<Optional<Client>>();
+        var running = loading.putIfAbsent(key, load);
+        if (running != null) {
+            return await(running);
+        }
+
+        long startedAt = local.generation();
+        try {
+            var loaded = loadThrough(key, loader, startedAt);
+            // Si se ha invalidado algo durante la carga el valor puede ser antiguo y no se guarda en L1
+            loaded.ifPresent(client -> local.putIfCurrent(key, client, startedAt));
+            load.complete(loaded);
+            return loaded;
+        } catch (RuntimeException e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, load);
+        }
+    }
+
+    /**
+     * Elimina un cliente de los dos niveles y avisa al resto de nodos. Se debe llamar siempre que se modifique
+     * o borre, con los datos que tenía antes del cambio, y cuando se crea o borra una de sus cuentas.
+     * @param client El cliente.
+     * @since 1.0
+     */
+
+    public void evict(Client client) {
+        evictAll(List.of(client));
+    }
+
+    /**
+     * Elimina un cliente de los dos niveles a partir de su ID y su DNI, sin necesitar la entidad.
+     * @param id El ID del cliente.
+     * @param dni El DNI del cliente.
+     * @since 1.0
+     */
+
+    public void evict(Long id, String dni) {
+        evictAll(List.of(Client.builder().id(id).dni(dni).build()));
+    }
+
+    /**
+     * Elimina varios clientes de los dos niveles y avisa al resto de nodos con un único mensaje.
+     * @param clients Los clientes.
+     * @since 1.0
+     */
+
+    public void evictAll(Collection<Client> clients) {
+        List<String> keys = new ArrayList<>();
+        for (Client client : clients) {
+            if (client.getId() != null) {
+                keys.add(idKey(client.getId()));
+            }
+            if (client.getDni() != null) {
+                keys.add(dniKey(client.getDni()));
+            }
+        }
+        if (keys.isEmpty()) {
+            return;
+        }
+        removeLocal(keys, invalidations);
+        if (redisAvailable()) {
+            try {
+                redis.execute(EVICT, keys, String.valueOf(versionTtlSeconds()));
+                redis.convertAndSend(CHANNEL, encode(nodeId, keys));
+            } catch (RuntimeException e) {
+                markRedisDown(e);
+            }
+        }
+    }
+
+    /**
+     * Vacía la caché local de este nodo.
+     * @since 1.0
+     */
+
+    public void invalidateAll() {
+        local.invalidateAll();
+        loading.clear();
+    }
+
+    public int size() {
+        return local.size();
+    }
+
+    /**
+     * Se suscribe al canal de invalidaciones si aún no lo está. Una vez suscrito, el contenedor de Redis se encarga
+     * de reconectar.
+     * @since 1.0
+     */
+
+    @Scheduled(fixedDelayString = "${clients.cache.retry-interval-ms:5000}")
+    public void subscribe() {
+        if (subscription.subscribe()) {
+            // Mientras no estaba suscrito se han podido perder invalidaciones de otros nodos
+            invalidateAll();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        subscription.shutdown();
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int separator = body.indexOf(SEPARATOR);
+        if (separator < 0) {
+            log.warn("Invalidación de la caché de clientes no válida recibida de Redis");
+            return;
+        }
+        if (nodeId.equals(body.substring(0, separator))) {
+            return;
+        }
+        removeLocal(List.of(body.substring(separator + 1).split(",")), remoteInvalidations);
+    }
+
+    static String encode(String nodeId, Collection<String> keys) {
+        return nodeId + SEPARATOR + String.join(",", keys);
+    }
+
+    private Optional<Client> loadThrough(String key, Supplier<Optional<Client>> loader, long startedAt) {
+        var cached = readRedis(key);
+        if (cached != null) {
+            redisHits.increment();
+            return Optional.of(cached);
+        }
+
+        misses.increment();
+        var version = readVersion(key);
+        var loaded = loader.get();
+        if (version != null) {
+            loaded.filter(client -> local.generation() == startedAt).ifPresent(client -> writeRedis(key, client, version));
+        }
+        return loaded;
+    }
+
+    static String versionKey(String key) {
+        return key + ":version";
+    }
+
+    /**
+     * @return La versión de la clave, '' si no tiene, o null si no se ha podido leer y no se debe escribir en Redis.
+     */
+    private String readVersion(String key) {
+        if (!redisAvailable()) {
+            return null;
+        }
+        try {
+            var version = redis.opsForValue().get(versionKey(key));
+            return version != null ? version : "";
+        } catch (RuntimeException e) {
+            markRedisDown(e);
+            return null;
+        }
+    }
+
+    private long versionTtlSeconds() {
+        // La versión debe durar más que cualquier carga en curso; con el tiempo de vida de los clientes basta
+        return Math.max(60, redisTtlSeconds);
+    }
+
+    private Client readRedis(String key) {
+        if (!redisAvailable()) {
+            return null;
+        }
+        try {
+            return redisTemplate.opsForValue().get(key);
+        } catch (RuntimeException e) {
+            markRedisDown(e);
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void writeRedis(String key, Client client, String version) {
+        if (!redisAvailable()) {
+            return;
+        }
+        try {
+            var value = ((RedisSerializer<Client>) redisTemplate.getValueSerializer()).serialize(client);
+            redisTemplate.execute(SET_IF_VERSION, RedisSerializer.byteArray(), new GenericToStringSerializer<>(Long.class),
+                    List.of(key, versionKey(key)), version.getBytes(StandardCharsets.UTF_8),
+                    String.valueOf(redisTtlSeconds).getBytes(StandardCharsets.UTF_8), value);
+        } catch (RuntimeException e) {
+            markRedisDown(e);
+        }
+    }
+
+    private boolean redisAvailable() {
+        if (!redisDown) {
+            return true;
+        }
+        if (clock.getAsLong() - retryAt < 0) {
+            return false;
+        }
+        redisDown = false;
+        log.info("Se vuelve a usar Redis para la caché de clientes");
+        return true;
+    }
+
+    private void markRedisDown(RuntimeException e) {
+        if (!redisDown) {
+            log.warn("Redis no responde, la caché de clientes se usa solo en local: {}", e.getMessage());
+        }
+        retryAt = clock.getAsLong() + retryIntervalNanos;
+        redisDown = true;
+    }
+
+    private void removeLocal(Collection<String> keys, Counter counter) {
+        for (String key : keys) {
+            loading.remove(key);
+            if (local.invalidate(key)) {
+                counter.increment();
+            }
+        }
+    }
+
+    private static Optional<Client> await(CompletableFuture<Optional<Client>> running) {
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+}
@@ -0,0 +1,15 @@
+package jyrs.dev.vivesbank.users.clients.dto;
+
+/**
+ * Datos mínimos de un cliente para las peticiones {@code /me}, que solo necesitan saber quién es y comprobar
+ * que existe, sin cargar la entidad con su usuario y su dirección.
+ * @param id El ID del cliente.
+ * @param dni El DNI del cliente.
+ * @param userId El ID del usuario del cliente.
+ * @param guuid El guuid del usuario del cliente.
+ * @author Raul Fernandez, Yahya El Hadri, Javier Ruiz, Javier Hernandez, Samuel Cortes
+ * @since 1.0
+ */
+
+public record ClientRef(Long id, String dni, Long userId, String guuid) {
+}
@@ -3,6 +3,7 @@ package jyrs.dev.vivesbank.users.clients.models;
 
 import jakarta.persistence.*;
 import jakarta.validation.constraints.NotBlank;
+import jyrs.dev.vivesbank.backup.service.BackupDeletionListener;
 import jyrs.dev.vivesbank.products.bankAccounts.models.BankAccount;
 import jyrs.dev.vivesbank.users.models.User;
 import lombok.AllArgsConstructor;
@@ -10,6 +11,10 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -19,6 +24,7 @@ import org.hibernate.validator.constraints.UniqueElements;
 
 @Entity
 @Table(name = "Clients")
+@EntityListeners(BackupDeletionListener.class)
 @Data
 @Builder
 @NoArgsConstructor
@@ -70,6 +76,15 @@ public class Client {
     @JoinColumn(name = "BANK_ACCOUNTS_id")
     private List<BankAccount> cuentas;
 
+    @CreationTimestamp
+    @Column(updatable = false)
+    @Builder.Default
+    private LocalDateTime createdAt = LocalDateTime.now();
+
+    @UpdateTimestamp
+    @Builder.Default
+    private LocalDateTime updatedAt = LocalDateTime.now();
+
     public <E> Client(long l, String sender, ArrayList<E> es) {
     }
 
@@ -1,9 +1,13 @@
 package jyrs.dev.vivesbank.users.clients.repository;
 
+import jyrs.dev.vivesbank.users.clients.dto.ClientRef;
 import jyrs.dev.vivesbank.users.clients.models.Client;
 import jyrs.dev.vivesbank.users.models.User;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import org.springframework.web.bind.annotation.ResponseStatus;
 
@@ -15,4 +19,14 @@ public interface ClientsRepository extends JpaRepository<Client,Long>, JpaSpecif
 
     Optional<Client> getByDni(String dni);
     Optional<Client> getByUser_Guuid(String guuid);
+
+    @EntityGraph(attributePaths = {"user", "cuentas"})
+    Optional<Client> findWithCuentasById(Long id);
+
+    @EntityGraph(attributePaths = {"user", "cuentas"})
+    Optional<Client> findWithCuentasByDni(String dni);
+
+    @Query("SELECT new jyrs.dev.vivesbank.users.clients.dto.ClientRef(c.id, c.dni, u.id, u.guuid) " +
+            "FROM Client c JOIN c.user u WHERE u.guuid = :guuid")
+    Optional<ClientRef> findRefByUserGuuid(@Param("guuid") String guuid);
 }
@@ -0,0 +1,106 @@
+package jyrs.dev.vivesbank.users.clients.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jyrs.dev.vivesbank.config.cache.BoundedCache;
+import jyrs.dev.vivesbank.users.clients.dto.ClientRef;
+import jyrs.dev.vivesbank.users.clients.exceptions.ClientNotFound;
+import jyrs.dev.vivesbank.users.clients.repository.ClientsRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Resuelve el guuid del usuario autenticado a su cliente ({@link ClientRef}) con una caché local acotada.
+ * Las peticiones {@code /me} de movimientos y cuentas lo usan en lugar de cargar el cliente con su usuario en cada
+ * llamada. El servicio de clientes invalida la entrada al crear, modificar o borrar un cliente; el tiempo de vida
+ * limita lo que tarda en verse un cambio hecho desde otro nodo. Los guuid sin cliente no se guardan.
+ * @author Raul Fernandez, Yahya El Hadri, Javier Ruiz, Javier Hernandez, Samuel Cortes
+ * @since 1.0
+ */
+
+@Component
+@Slf4j
+public class ClientResolver {
+
+    private final BoundedCache<String, ClientRef> entries;
+    private final ClientsRepository clientsRepository;
+    private final Counter hits;
+    private final Counter misses;
+
+    @Autowired
+    public ClientResolver(ClientsRepository clientsRepository, MeterRegistry registry,
+                          @Value("${clients.resolver.ttl-seconds:60}") long ttlSeconds,
+                          @Value("${clients.resolver.max-size:10000}") int maxSize) {
+        this(clientsRepository, registry, ttlSeconds, maxSize, System::nanoTime);
+    }
+
+    ClientResolver(ClientsRepository clientsRepository, MeterRegistry registry, long ttlSeconds, int maxSize,
+                   LongSupplier clock) {
+        this.clientsRepository = clientsRepository;
+        this.entries = new BoundedCache<>(maxSize, TimeUnit.SECONDS.toNanos(ttlSeconds), clock);
+        this.hits = registry.counter("clients.resolver.requests", "result", "hit");
+        this.misses = registry.counter("clients.resolver.requests", "result", "miss");
+        Gauge.builder("clients.resolver.size", entries, BoundedCache::size).register(registry);
+    }
+
+    /**
+     * Busca el cliente de un usuario.
+     * @param guuid El guuid del usuario.
+     * @return El cliente, o vacío si el usuario no tiene cliente.
+     * @since 1.0
+     */
+
+    public Optional<ClientRef> find(String guuid) {
+        var cached = entries.get(guuid);
+        if (cached != null) {
+            hits.increment();
+            return Optional.of(cached);
+        }
+
+        misses.increment();
+        long startedAt = entries.generation();
+        var loaded = clientsRepository.findRefByUserGuuid(guuid);
+        // Si se ha invalidado algo durante la carga el valor puede ser anterior al cambio y no se guarda
+        loaded.ifPresent(ref -> entries.putIfCurrent(guuid, ref, startedAt));
+        return loaded;
+    }
+
+    /**
+     * Busca el cliente de un usuario.
+     * @param guuid El guuid del usuario.
+     * @return El cliente.
+     * @throws ClientNotFound Si el usuario no tiene cliente.
+     * @since 1.0
+     */
+
+    public ClientRef resolve(String guuid) {
+        return find(guuid).orElseThrow(() -> new ClientNotFound(guuid));
+    }
+
+    /**
+     * Elimina un cliente de la caché. Se debe llamar siempre que se cree, modifique o borre.
+     * @param guuid El guuid del usuario del cliente.
+     * @since 1.0
+     */
+
+    public void invalidate(String guuid) {
+        if (entries.invalidate(guuid)) {
+            log.debug("Cliente {} eliminado de la caché de clientes", guuid);
+        }
+    }
+
+    public void invalidateAll() {
+        entries.invalidateAll();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+}
@@ -1,10 +1,12 @@
 package jyrs.dev.vivesbank.users.clients.service;
 
 
+import jyrs.dev.vivesbank.auth.users.cache.PrincipalCache;
 import jyrs.dev.vivesbank.products.bankAccounts.dto.BankAccountResponse;
 import jyrs.dev.vivesbank.products.bankAccounts.mappers.BankAccountMapper;
 import jyrs.dev.vivesbank.products.bankAccounts.models.BankAccount;
 import jyrs.dev.vivesbank.products.bankAccounts.services.BankAccountService;
+import jyrs.dev.vivesbank.users.clients.cache.ClientCache;
 import jyrs.dev.vivesbank.users.clients.dto.ClientRequestCreate;
 import jyrs.dev.vivesbank.users.clients.dto.ClientRequestUpdate;
 import jyrs.dev.vivesbank.users.clients.dto.ClientResponse;
@@ -23,7 +25,6 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.domain.Specification;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
@@ -31,7 +32,6 @@ import java.io.File;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
-import java.util.concurrent.TimeUnit;
 
 @Service
 @Slf4j
@@ -43,17 +43,21 @@ public class ClientsServiceImpl implements ClientsService {
     private final ClientMapper mapper;
     private final ClientStorage storage;
     private final BankAccountService bankAccountService;
-    private final RedisTemplate<String, Client> redisTemplate;
+    private final ClientCache clientCache;
+    private final PrincipalCache principalCache;
+    private final ClientResolver clientResolver;
     @Autowired
 
-    public ClientsServiceImpl(ClientsRepository repository, UsersRepository usersRepository, RedisTemplate<String, Client> redisTemplate, StorageService storageService, ClientMapper mapper, ClientStorage storage, BankAccountService bankAccountService) {
+    public ClientsServiceImpl(ClientsRepository repository, UsersRepository usersRepository, ClientCache clientCache, StorageService storageService, ClientMapper mapper, ClientStorage storage, BankAccountService bankAccountService, PrincipalCache principalCache, ClientResolver clientResolver) {
         this.repository = repository;
         this.usersRepository = usersRepository;
         this.storageService = storageService;
         this.mapper = mapper;
         this.storage = storage;
-        this.redisTemplate = redisTemplate;
+        this.clientCache = clientCache;
         this.bankAccountService = bankAccountService;
+        this.principalCache = principalCache;
+        this.clientResolver = clientResolver;
     }
 
     @Override
@@ -87,19 +91,8 @@ public class ClientsServiceImpl implements ClientsService {
 
     @Override
     public ClientResponse getById(Long id) {
-        String redisKey = "client:id:" + id;
-        Client cachedClient = redisTemplate.opsForValue().get(redisKey);
-
-        if (cachedClient != null) {
-            log.info("Cliente obtenido desde caché de Redis");
-            return mapper.toResponse(cachedClient);
-        }
-
-        var cliente = repository.findById(id).orElseThrow(() -> new ClientNotFound(id.toString()));
-
-        redisTemplate.opsForValue().set(redisKey, cliente, 10, TimeUnit.MINUTES);
-
-        log.info("Cliente obtenido desde la base de datos y almacenado en caché Redis");
+        var cliente = clientCache.get(ClientCache.idKey(id), () -> repository.findWithCuentasById(id))
+                .orElseThrow(() -> new ClientNotFound(id.toString()));
         return mapper.toResponse(cliente);
     }
 
@@ -111,20 +104,8 @@ public class ClientsServiceImpl implements ClientsService {
 
     @Override
     public ClientResponse getByDni(String dni) {
-        String redisKey = "client:dni:" + dni;
-        Client cachedClient = redisTemplate.opsForValue().get(redisKey);
-
-        if (cachedClient != null) {
-            log.info("Cliente con DNI {} obtenido desde caché de Redis", dni);
-            return mapper.toResponse(cachedClient);
-        }
-
-        var cliente = repository.getByDni(dni).orElseThrow(() -> new ClientNotFound(dni));
-
-
-        redisTemplate.opsForValue().set(redisKey, cliente, 10, TimeUnit.MINUTES);
-
-        log.info("Cliente con DNI {} obtenido desde la base de datos y almacenado en caché Redis", dni);
+        var cliente = clientCache.get(ClientCache.dniKey(dni), () -> repository.findWithCuentasByDni(dni))
+                .orElseThrow(() -> new ClientNotFound(dni));
         return mapper.toResponse(cliente);
     }
 
@@ -149,12 +130,14 @@ public class ClientsServiceImpl implements ClientsService {
         roles.add(Role.CLIENT);
         user.setRoles(roles);
         usersRepository.save(user);
+        principalCache.invalidate(user.getGuuid());
         cliente.setUser(user);
 
         cliente.setEmail(user.getUsername());
         cliente.setCuentas(List.of());
 
         var clienteGuardado = repository.save(cliente);
+        clientResolver.invalidate(user.getGuuid());
 
         log.error(clienteGuardado.getUser().getRoles().toString());
         log.error(user.getRoles().toString());
@@ -177,10 +160,11 @@ public class ClientsServiceImpl implements ClientsService {
         user.setUsername(clienteRequest.getEmail() != null ? cliente.getEmail() : user.getUsername());
         user.setPassword(clienteRequest.getPassword() != null ? clienteRequest.getPassword() : user.getPassword());
         res.setUser(user);
-      
-        redisTemplate.delete("client:id:" + id);
 
         var clienteActualizado = repository.save(res);
+        principalCache.invalidate(id);
+        clientCache.evict(res);
+        clientResolver.invalidate(id);
         return mapper.toResponse(clienteActualizado);
     }
       
@@ -196,6 +180,7 @@ public class ClientsServiceImpl implements ClientsService {
         cliente.setFotoDni(imageStored);
 
         var clienteActualizado = repository.save(cliente);
+        clientCache.evict(cliente);
 
         return mapper.toResponse(clienteActualizado);
     }
@@ -217,6 +202,8 @@ public class ClientsServiceImpl implements ClientsService {
 
         cliente.setUser(user);
         var clienteActualizado = repository.save(cliente);
+        principalCache.invalidate(id);
+        clientCache.evict(cliente);
 
         return mapper.toResponse(clienteActualizado);
     }
@@ -227,6 +214,10 @@ public class ClientsServiceImpl implements ClientsService {
         var cliente = repository.findById(id).orElseThrow(() -> new ClientNotFound(id.toString()));
 
         repository.deleteById(id);
+        clientCache.evict(cliente);
+        if (cliente.getUser() != null) {
+            clientResolver.invalidate(cliente.getUser().getGuuid());
+        }
         storageService.delete(cliente.getFotoDni());
 
     }
@@ -246,6 +237,9 @@ public class ClientsServiceImpl implements ClientsService {
         cliente.setUser(user);
 
         repository.save(cliente);
+        principalCache.invalidate(user.getGuuid());
+        clientResolver.invalidate(user.getGuuid());
+        clientCache.evict(cliente);
     }
 
 
@@ -254,6 +248,8 @@ public class ClientsServiceImpl implements ClientsService {
         var cliente = repository.getByUser_Guuid(id).orElseThrow(() -> new ClientNotFound(id));
 
         repository.deleteById(cliente.getId());
+        clientResolver.invalidate(id);
+        clientCache.evict(cliente);
         storageService.delete(cliente.getFotoDni());
 
     }
@@ -270,6 +266,9 @@ public class ClientsServiceImpl implements ClientsService {
         cliente.setUser(user);
 
         repository.save(cliente);
+        principalCache.invalidate(id);
+        clientResolver.invalidate(id);
+        clientCache.evict(cliente);
     }
 
     @Override
@@ -285,7 +284,9 @@ public class ClientsServiceImpl implements ClientsService {
 
         List<Client> clients= storage.importJson(file);
 
-        repository.saveAll(clients);
+        var guardados = repository.saveAll(clients);
+        clientResolver.invalidateAll();
+        clientCache.evictAll(guardados);
     }
 
 
@@ -2,6 +2,7 @@ package jyrs.dev.vivesbank.users.users.services;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jyrs.dev.vivesbank.auth.users.cache.PrincipalCache;
 import jyrs.dev.vivesbank.config.websockets.WebSocketConfig;
 import jyrs.dev.vivesbank.config.websockets.WebSocketHandler;
 import jyrs.dev.vivesbank.users.models.User;
@@ -65,8 +66,12 @@ public class UsersServiceImpl implements UsersService {
      * Mapper de notificaciones de usuario.
      */
     private final UserNotificationMapper userNotificationMapper;
+    /**
+     * Caché de usuarios autenticados, que se invalida al modificar o borrar un usuario.
+     */
+    private final PrincipalCache principalCache;
     @Autowired
-    public UsersServiceImpl(UserMapper userMapper, WebSocketConfig webSocketConfig, UsersRepository usersRepository, UserStorage storage, UserNotificationMapper userNotificationMapper) {
+    public UsersServiceImpl(UserMapper userMapper, WebSocketConfig webSocketConfig, UsersRepository usersRepository, UserStorage storage, UserNotificationMapper userNotificationMapper, PrincipalCache principalCache) {
         this.userMapper = userMapper;
         this.storage = storage;
         objectMapper= new ObjectMapper();
@@ -74,6 +79,7 @@ public class UsersServiceImpl implements UsersService {
         webSocketService = webSocketConfig.webSocketUserHandler();
         this.usersRepository = usersRepository;
         this.userNotificationMapper = userNotificationMapper;
+        this.principalCache = principalCache;
     }
 
     /**
@@ -155,6 +161,7 @@ public class UsersServiceImpl implements UsersService {
            throw  new UserExceptions.UserNotFound("No se ha encontrado user con id: " + id);
         }
         var res = userMapper.toUserResponse(usersRepository.save(userMapper.toUser(user, result)));
+        principalCache.invalidate(id);
         onChange(Notificacion.Tipo.UPDATE, userMapper.fromUserDto(user));
         return res;
     }
@@ -172,6 +179,7 @@ public class UsersServiceImpl implements UsersService {
         }
         result.setIsDeleted(true);
         usersRepository.save(result);
+        principalCache.invalidate(id);
         onChange(Notificacion.Tipo.DELETE, result);
     }
 
@@ -210,6 +218,9 @@ public class UsersServiceImpl implements UsersService {
         if(webSocketService == null){
             log.warn("No se ha podido enviar la notificación a los clientes ws, no se ha encontrado el servicio");
             webSocketService = this.webSocketConfig.webSocketUserHandler();
+            if(webSocketService == null){
+                return;
+            }
         }
         try {
             Notificacion<UserNotificationResponse> notification = new Notificacion<>(
@@ -220,14 +231,7 @@ public class UsersServiceImpl implements UsersService {
             );
             String json = objectMapper.writeValueAsString((notification));
             log.info("Enviando mensaje a los clientes ws");
-            Thread senderThread = new Thread(() ->{
-                try{
-                    webSocketService.sendMessage(json);
-                }catch (Exception e){
-                    log.error("Error al enviar el mensaje a través del servicio Websocket " , e);
-                }
-            });
-            senderThread.start();
+            webSocketService.sendMessage(json);
         }catch (JsonProcessingException e){
             log.error("Error al convertir la notificación a JSON", e);
         }
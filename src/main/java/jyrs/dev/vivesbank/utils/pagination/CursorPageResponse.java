@@ -0,0 +1,14 @@
+package jyrs.dev.vivesbank.utils.pagination;
+
+import java.util.List;
+
+public record CursorPageResponse<T>(
+        List<T> content,
+        int pageSize,
+        String nextCursor,
+        boolean last
+) {
+    public static <T> CursorPageResponse<T> of(List<T> content, int pageSize, String nextCursor) {
+        return new CursorPageResponse<>(content, pageSize, nextCursor, nextCursor == null);
+    }
+}
@@ -1,29 +1,40 @@
 package jyrs.dev.vivesbank.auth.auth;
 
+import com.auth0.jwt.interfaces.Claim;
+import com.auth0.jwt.interfaces.DecodedJWT;
 import jyrs.dev.vivesbank.auth.dto.JwtAuthResponse;
+import jyrs.dev.vivesbank.auth.dto.RefreshTokenRequest;
 import jyrs.dev.vivesbank.auth.dto.UserSignInRequest;
 import jyrs.dev.vivesbank.auth.dto.UserSignUpRequest;
+import jyrs.dev.vivesbank.auth.exception.AuthRefreshInvalid;
 import jyrs.dev.vivesbank.auth.exception.AuthSignUpInvalid;
+import jyrs.dev.vivesbank.auth.exception.AuthTooManyAttempts;
 import jyrs.dev.vivesbank.auth.exception.UserAuthNameOrEmailExisten;
 import jyrs.dev.vivesbank.auth.exception.UserDiferentePasswords;
 import jyrs.dev.vivesbank.auth.exception.UserPasswordBadRequest;
 import jyrs.dev.vivesbank.auth.jwt.JwtService;
+import jyrs.dev.vivesbank.auth.jwt.JwtServiceImpl;
+import jyrs.dev.vivesbank.auth.password.PasswordHashingService;
+import jyrs.dev.vivesbank.auth.revocation.TokenRevocationService;
+import jyrs.dev.vivesbank.auth.throttle.LoginThrottle;
 import jyrs.dev.vivesbank.auth.users.repositories.AuthUserRepository;
+import jyrs.dev.vivesbank.auth.users.service.AuthUserService;
 import jyrs.dev.vivesbank.auth.validator.UserValidator;
 import jyrs.dev.vivesbank.users.models.User;
+import jyrs.dev.vivesbank.users.users.exceptions.UserExceptions;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.dao.DataIntegrityViolationException;
-import org.springframework.security.authentication.AuthenticationManager;
-import org.springframework.security.crypto.password.PasswordEncoder;
 
+import java.time.Instant;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -31,13 +42,17 @@ public class AuthServiceImplTest {
     @Mock
     private AuthUserRepository authUserRepository;
     @Mock
-    private PasswordEncoder passwordEncoder;
+    private PasswordHashingService passwordHashingService;
     @Mock
     private JwtService jwtService;
     @Mock
-    private AuthenticationManager authenticationManager;
-    @Mock
     private UserValidator userValidator;
+    @Mock
+    private TokenRevocationService revocationService;
+    @Mock
+    private LoginThrottle loginThrottle;
+    @Mock
+    private AuthUserService authUserService;
     @InjectMocks
     private AuthServiceImpl authService;
 
@@ -122,29 +137,145 @@ public class AuthServiceImplTest {
         request.setPassword("123456Abc@");
 
         User user = new User();
+        user.setPassword("hash");
         when(authUserRepository.findByUsername(request.getUsername())).thenReturn(Optional.of(user));
+        when(passwordHashingService.matches("123456Abc@", "hash")).thenReturn(true);
 
         String token = "test_token";
         when(jwtService.generateToken(user)).thenReturn(token);
 
-        JwtAuthResponse response = authService.signIn(request);
+        JwtAuthResponse response = authService.signIn(request, "127.0.0.1");
 
         assertAll(
                 () -> assertNotNull(response),
                 () -> assertEquals(token, response.getToken()),
                 () -> verify(authUserRepository, times(1)).findByUsername(request.getUsername()),
-                () -> verify(jwtService, times(1)).generateToken(user)
+                () -> verify(jwtService, times(1)).generateToken(user),
+                () -> verify(loginThrottle, times(1)).acquire("javi@example.com", "127.0.0.1"),
+                () -> verify(loginThrottle, times(1)).onSuccess("javi@example.com")
         );
     }
 
+    @Test
+    void SignIn_WithBadPassword_ShouldReturn_Exception() {
+        UserSignInRequest request = new UserSignInRequest();
+        request.setUsername("javi@example.com");
+        request.setPassword("123456Abc@");
+        User user = new User();
+        user.setPassword("hash");
+        when(authUserRepository.findByUsername(request.getUsername())).thenReturn(Optional.of(user));
+        when(passwordHashingService.matches("123456Abc@", "hash")).thenReturn(false);
+
+        assertThrows(AuthSignUpInvalid.class, () -> authService.signIn(request, "127.0.0.1"));
+        verify(loginThrottle, times(1)).onFailure("javi@example.com");
+        verify(jwtService, never()).generateToken(any());
+    }
+
+    @Test
+    void SignIn_Throttled_ShouldNotCheckPassword() {
+        UserSignInRequest request = new UserSignInRequest();
+        request.setUsername("javi@example.com");
+        request.setPassword("123456Abc@");
+        doThrow(new AuthTooManyAttempts("Demasiados intentos")).when(loginThrottle).acquire("javi@example.com", "127.0.0.1");
+
+        assertThrows(AuthTooManyAttempts.class, () -> authService.signIn(request, "127.0.0.1"));
+        verifyNoInteractions(authUserRepository, passwordHashingService);
+    }
+
     @Test
     void SignIn_WithAnUserNotSave_ShouldReturn_Exception() throws AuthSignUpInvalid {
         UserSignInRequest request = new UserSignInRequest();
         request.setUsername("javi@example.com");
         request.setPassword("123456Abc@");
         when(authUserRepository.findByUsername(request.getUsername())).thenReturn(Optional.empty());
-        assertThrows(AuthSignUpInvalid.class, () -> authService.signIn(request));
+        assertThrows(AuthSignUpInvalid.class, () -> authService.signIn(request, "127.0.0.1"));
     }
 
+    @Test
+    void Logout_ShouldRevokeToken() {
+        DecodedJWT jwt = mock(DecodedJWT.class);
+        Instant expiresAt = Instant.now().plusSeconds(300);
+        when(jwtService.verifyToken("test_token")).thenReturn(jwt);
+        when(jwt.getId()).thenReturn("jti");
+        when(jwt.getExpiresAtAsInstant()).thenReturn(expiresAt);
+
+        authService.logout("test_token");
+
+        verify(revocationService, times(1)).revoke("jti", expiresAt);
+    }
+
+    @Test
+    void RevokeSessions_ShouldRevokeAllUserTokens() {
+        when(authUserRepository.findByGuuid("puZjCDm_xCg")).thenReturn(Optional.of(new User()));
 
+        authService.revokeSessions("puZjCDm_xCg");
+
+        verify(revocationService, times(1)).revokeAll("puZjCDm_xCg");
+    }
+
+    @Test
+    void RevokeSessions_WithUnknownUser_ShouldReturn_Exception() {
+        when(authUserRepository.findByGuuid("puZjCDm_xCx")).thenReturn(Optional.empty());
+
+        assertThrows(UserExceptions.UserNotFound.class, () -> authService.revokeSessions("puZjCDm_xCx"));
+        verify(revocationService, never()).revokeAll(any());
+    }
+
+    @Test
+    void Refresh_ShouldRotateRefreshToken() {
+        DecodedJWT jwt = refreshToken(JwtServiceImpl.REFRESH_TYPE);
+        User user = User.builder().guuid("puZjCDm_xCg").build();
+        when(jwtService.verifyToken("refresh_token")).thenReturn(jwt);
+        when(authUserService.loadUserByGuuid("puZjCDm_xCg")).thenReturn(user);
+        when(jwtService.generateToken(user)).thenReturn("new_token");
+        when(jwtService.generateRefreshToken(user)).thenReturn("new_refresh");
+        when(revocationService.revokeOnce(eq("jti"), any())).thenReturn(true);
+
+        JwtAuthResponse response = authService.refresh(new RefreshTokenRequest("refresh_token"));
+
+        assertEquals("new_token", response.getToken());
+        assertEquals("new_refresh", response.getRefreshToken());
+        verify(revocationService, times(1)).revokeOnce(eq("jti"), any());
+    }
+
+    @Test
+    void Refresh_WithTokenAlreadyUsed_ShouldReturn_Exception() {
+        DecodedJWT jwt = refreshToken(JwtServiceImpl.REFRESH_TYPE);
+        when(jwtService.verifyToken("refresh_token")).thenReturn(jwt);
+        when(authUserService.loadUserByGuuid("puZjCDm_xCg")).thenReturn(User.builder().guuid("puZjCDm_xCg").build());
+        when(revocationService.revokeOnce(eq("jti"), any())).thenReturn(false);
+
+        assertThrows(AuthRefreshInvalid.class, () -> authService.refresh(new RefreshTokenRequest("refresh_token")));
+        verify(jwtService, never()).generateRefreshToken(any());
+    }
+
+    @Test
+    void Refresh_WithAccessToken_ShouldReturn_Exception() {
+        DecodedJWT jwt = refreshToken(JwtServiceImpl.ACCESS_TYPE);
+        when(jwtService.verifyToken("access_token")).thenReturn(jwt);
+
+        assertThrows(AuthRefreshInvalid.class, () -> authService.refresh(new RefreshTokenRequest("access_token")));
+        verify(revocationService, never()).revokeOnce(any(), any());
+    }
+
+    @Test
+    void Refresh_WithRevokedToken_ShouldReturn_Exception() {
+        DecodedJWT jwt = refreshToken(JwtServiceImpl.REFRESH_TYPE);
+        when(jwtService.verifyToken("refresh_token")).thenReturn(jwt);
+        when(revocationService.isRevoked(jwt)).thenReturn(true);
+
+        assertThrows(AuthRefreshInvalid.class, () -> authService.refresh(new RefreshTokenRequest("refresh_token")));
+        verifyNoInteractions(authUserService);
+    }
+
+    private static DecodedJWT refreshToken(String type) {
+        DecodedJWT jwt = mock(DecodedJWT.class);
+        Claim claim = mock(Claim.class);
+        lenient().when(claim.asString()).thenReturn(type);
+        lenient().when(jwt.getClaim(JwtServiceImpl.TYPE_CLAIM)).thenReturn(claim);
+        lenient().when(jwt.getId()).thenReturn("jti");
+        lenient().when(jwt.getSubject()).thenReturn("puZjCDm_xCg");
+        lenient().when(jwt.getExpiresAtAsInstant()).thenReturn(Instant.now().plusSeconds(3600));
+        return jwt;
+    }
 }
@@ -19,11 +19,13 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MockMvc;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 
 @SpringBootTest
@@ -148,7 +150,7 @@ public class AuthControllerTests {
         var myLocalEndpoint = myEndpoint + "/signin";
 
         JwtAuthResponse jwtResponse = new JwtAuthResponse("mockToken");
-        when(service.signIn(userSignInRequest)).thenReturn(jwtResponse);
+        when(service.signIn(userSignInRequest, "127.0.0.1")).thenReturn(jwtResponse);
 
         MockHttpServletResponse response = mockMvc.perform(
                         post(myLocalEndpoint)
@@ -157,7 +159,7 @@ public class AuthControllerTests {
                 .andReturn().getResponse();
 
         assertEquals(200, response.getStatus());
-        verify(service, times(1)).signIn(userSignInRequest);
+        verify(service, times(1)).signIn(userSignInRequest, "127.0.0.1");
     }
 
     @Test
@@ -166,14 +168,14 @@ public class AuthControllerTests {
         UserSignInRequest userSignInRequest = UserSignInRequest.builder()
                 .username("torrente@example.com")
                 .password("123456Ab@").build();
-        when(service.signIn(userSignInRequest)).thenThrow(new AuthSignUpInvalid("Usuario o contraseña incorrectos"));
+        when(service.signIn(userSignInRequest, "127.0.0.1")).thenThrow(new AuthSignUpInvalid("Usuario o contraseña incorrectos"));
         MockHttpServletResponse response = mockMvc.perform(
                         post(myLocalEndpoint)
                                 .contentType(MediaType.APPLICATION_JSON)
                                 .content(mapper.writeValueAsString(userSignInRequest)))
                 .andReturn().getResponse();
         assertEquals(404, response.getStatus());
-        verify(service, times(1)).signIn(userSignInRequest);
+        verify(service, times(1)).signIn(userSignInRequest, "127.0.0.1");
     }
     @Test
     void SignInUserBadPassword() throws Exception {
@@ -181,16 +183,33 @@ public class AuthControllerTests {
         UserSignInRequest userSignInRequest = UserSignInRequest.builder()
                 .username("admin@example.com")
                 .password("123456aB@").build();
-        when(service.signIn(userSignInRequest)).thenThrow(new AuthSignUpInvalid("Usuario o contraseña incorrectos"));
+        when(service.signIn(userSignInRequest, "127.0.0.1")).thenThrow(new AuthSignUpInvalid("Usuario o contraseña incorrectos"));
         MockHttpServletResponse response = mockMvc.perform(
                         post(myLocalEndpoint)
                                 .contentType(MediaType.APPLICATION_JSON)
                                 .content(mapper.writeValueAsString(userSignInRequest)))
                 .andReturn().getResponse();
         assertEquals(404, response.getStatus());
-        verify(service, times(1)).signIn(userSignInRequest);
+        verify(service, times(1)).signIn(userSignInRequest, "127.0.0.1");
     }
 
+    @Test
+    @WithMockUser(username = "admin", roles = {"ADMIN", "USER"})
+    void revokeSessions() throws Exception {
+        MockHttpServletResponse response = mockMvc.perform(delete(myEndpoint + "/sessions/puZjCDm_xCg"))
+                .andReturn().getResponse();
 
+        assertEquals(204, response.getStatus());
+        verify(service, times(1)).revokeSessions("puZjCDm_xCg");
+    }
 
+    @Test
+    @WithMockUser(username = "user", roles = {"USER"})
+    void revokeSessionsForbidden() throws Exception {
+        MockHttpServletResponse response = mockMvc.perform(delete(myEndpoint + "/sessions/puZjCDm_xCg"))
+                .andReturn().getResponse();
+
+        assertEquals(403, response.getStatus());
+        verify(service, never()).revokeSessions(any());
+    }
 }
@@ -1,6 +1,8 @@
 package jyrs.dev.vivesbank.auth.jwt;
 
 import jyrs.dev.vivesbank.auth.jwt.JwtServiceImpl;
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import jyrs.dev.vivesbank.users.models.Role;
 import jyrs.dev.vivesbank.users.models.User;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -11,6 +13,8 @@ import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.test.util.ReflectionTestUtils;
 
 import java.util.Date;
+import java.util.List;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.mock;
@@ -64,4 +68,37 @@ public class jwtServiceImplTest {
         assertFalse(jwtService.isTokenValid(expiredToken, userMock)); // Debe ser inválido
     }
 
+    @Test
+    void testVerifyTokenRejectsOtherSignature() {
+        String token = jwtService.generateToken(userMock);
+        JwtServiceImpl otherService = new JwtServiceImpl();
+        ReflectionTestUtils.setField(otherService, "jwtSignInKey", "otraClave");
+        ReflectionTestUtils.setField(otherService, "jwtExpiration", 3600L);
+
+        assertThrows(JWTVerificationException.class, () -> otherService.verifyToken(token));
+        assertFalse(otherService.isTokenValid(token, userMock));
+    }
+
+    @Test
+    void testTokenContainsRoles() {
+        User user = User.builder().guuid("puZjCDm_xCg").username("testUser").roles(Set.of(Role.USER, Role.ADMIN)).build();
+
+        var decoded = jwtService.verifyToken(jwtService.generateToken(user));
+
+        assertEquals("puZjCDm_xCg", decoded.getSubject());
+        assertTrue(decoded.getClaim(JwtServiceImpl.ROLES_CLAIM).asList(String.class).containsAll(List.of("ROLE_USER", "ROLE_ADMIN")));
+    }
+
+    @Test
+    void testGenerateRefreshToken() {
+        var access = jwtService.verifyToken(jwtService.generateToken(userMock));
+        var refresh = jwtService.verifyToken(jwtService.generateRefreshToken(userMock));
+
+        assertEquals(JwtServiceImpl.ACCESS_TYPE, access.getClaim(JwtServiceImpl.TYPE_CLAIM).asString());
+        assertEquals(JwtServiceImpl.REFRESH_TYPE, refresh.getClaim(JwtServiceImpl.TYPE_CLAIM).asString());
+        assertEquals("puZjCDm_xCg", refresh.getSubject());
+        assertNotEquals(access.getId(), refresh.getId());
+        assertTrue(refresh.getExpiresAt().after(access.getExpiresAt()));
+    }
+
 }
@@ -0,0 +1,85 @@
+package jyrs.dev.vivesbank.auth.password;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jyrs.dev.vivesbank.auth.exception.AuthServiceBusy;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PasswordHashingServiceTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private PasswordHashingService service;
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void encodeAndMatches() {
+        service = new PasswordHashingService(new BCryptPasswordEncoder(4), registry, 2, 4, 5_000);
+
+        String hash = service.encode("123456Abc@");
+
+        assertTrue(service.matches("123456Abc@", hash));
+        assertFalse(service.matches("otraClave1", hash));
+        assertFalse(service.matches("123456Abc@", null));
+        assertEquals(1, registry.get("auth.password.duration").tag("operation", "encode").timer().count());
+        assertEquals(2, registry.get("auth.password.duration").tag("operation", "matches").timer().count());
+    }
+
+    @Test
+    void rejectsWhenQueueIsFull() throws Exception {
+        var release = new CountDownLatch(1);
+        service = new PasswordHashingService(blockingEncoder(release), registry, 1, 1, 5_000);
+
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            var running = executor.submit(() -> service.encode("a"));
+            var queued = executor.submit(() -> service.encode("b"));
+            Thread.sleep(200);
+
+            assertThrows(AuthServiceBusy.class, () -> service.encode("c"));
+            assertEquals(1, registry.get("auth.password.rejected").counter().count());
+
+            release.countDown();
+            assertEquals("a", running.get(5, TimeUnit.SECONDS));
+            assertEquals("b", queued.get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void rejectsWhenWaitIsTooLong() {
+        var release = new CountDownLatch(1);
+        service = new PasswordHashingService(blockingEncoder(release), registry, 1, 4, 100);
+
+        assertThrows(AuthServiceBusy.class, () -> service.encode("a"));
+        release.countDown();
+    }
+
+    private static PasswordEncoder blockingEncoder(CountDownLatch release) {
+        return new PasswordEncoder() {
+            @Override
+            public String encode(CharSequence rawPassword) {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return rawPassword.toString();
+            }
+
+            @Override
+            public boolean matches(CharSequence rawPassword, String encodedPassword) {
+                return rawPassword.toString().equals(encodedPassword);
+            }
+        };
+    }
+}
@@ -0,0 +1,146 @@
+package jyrs.dev.vivesbank.auth.revocation;
+
+import com.auth0.jwt.interfaces.DecodedJWT;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.ZSetOperations;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class TokenRevocationServiceTest {
+
+    private final AtomicLong now = new AtomicLong(1_700_000_000_000L);
+    private StringRedisTemplate redis;
+    private ZSetOperations<String, String> zset;
+    private ValueOperations<String, String> values;
+    private TokenRevocationService service;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        redis = mock(StringRedisTemplate.class);
+        zset = mock(ZSetOperations.class);
+        when(redis.opsForZSet()).thenReturn(zset);
+        values = mock(ValueOperations.class);
+        when(redis.opsForValue()).thenReturn(values);
+        service = new TokenRevocationService(redis, 300, 28_800, 100, 0.01, now::get);
+    }
+
+    @Test
+    void revokedTokenIsRejectedUntilItExpires() {
+        service.revoke("jti-1", Instant.ofEpochMilli(now.get() + 60_000));
+
+        assertTrue(service.isRevoked(token("jti-1", "user", now.get())));
+        assertFalse(service.isRevoked(token("jti-2", "user", now.get())));
+        verify(zset).add(eq(TokenRevocationService.REDIS_KEY), eq("jti:jti-1:" + (now.get() + 60_000)), anyDouble());
+
+        now.addAndGet(60_001);
+        service.purgeExpired();
+
+        assertFalse(service.isRevoked(token("jti-1", "user", now.get())));
+        assertEquals(0, service.revokedTokens());
+    }
+
+    @Test
+    void revokeAllRejectsOlderTokensOnly() {
+        long issuedBefore = now.get();
+        service.revokeAll("user");
+        now.addAndGet(2_000);
+
+        assertTrue(service.isRevoked(token("a", "user", issuedBefore)));
+        assertFalse(service.isRevoked(token("b", "user", now.get())));
+        assertFalse(service.isRevoked(token("c", "other", issuedBefore)));
+    }
+
+    @Test
+    void revokeAllOutlivesAccessTokenLifetime() {
+        long issuedBefore = now.get();
+        service.revokeAll("user");
+
+        now.addAndGet(301_000);
+        service.purgeExpired();
+        assertTrue(service.isRevoked(token("refresh", "user", issuedBefore)));
+
+        now.addAndGet(28_800_000);
+        service.purgeExpired();
+        assertFalse(service.isRevoked(token("refresh", "user", issuedBefore)));
+    }
+
+    @Test
+    void revokeOnceSucceedsOnlyOnce() {
+        when(values.setIfAbsent(anyString(), anyString(), any(Duration.class))).thenReturn(true);
+        var expiresAt = Instant.ofEpochMilli(now.get() + 60_000);
+
+        assertTrue(service.revokeOnce("jti-1", expiresAt));
+        assertFalse(service.revokeOnce("jti-1", expiresAt));
+
+        assertTrue(service.isRevoked(token("jti-1", "user", now.get())));
+        verify(values, times(1)).setIfAbsent(TokenRevocationService.USED_KEY_PREFIX + "jti-1", "1", Duration.ofMillis(60_000));
+    }
+
+    @Test
+    void revokeOnceFailsWhenAnotherNodeUsedTheToken() {
+        when(values.setIfAbsent(anyString(), anyString(), any(Duration.class))).thenReturn(false);
+
+        assertFalse(service.revokeOnce("jti-1", Instant.ofEpochMilli(now.get() + 60_000)));
+        assertTrue(service.isRevoked(token("jti-1", "user", now.get())));
+    }
+
+    @Test
+    void syncAppliesRevocationsFromOtherNodes() {
+        long expiry = now.get() + 60_000;
+        when(zset.rangeByScore(eq(TokenRevocationService.REDIS_KEY), anyDouble(), anyDouble()))
+                .thenReturn(Set.of("jti:remote:" + expiry, "user:victim:" + now.get()));
+
+        service.sync();
+
+        assertTrue(service.isRevoked(token("remote", "user", now.get())));
+        assertTrue(service.isRevoked(token("x", "victim", now.get() - 1_000)));
+        verify(zset).removeRangeByScore(TokenRevocationService.REDIS_KEY, 0, now.get() - 28_800_000);
+    }
+
+    @Test
+    void revocationsArePublishedWhenRedisComesBack() {
+        when(zset.add(anyString(), anyString(), anyDouble()))
+                .thenThrow(new RedisConnectionFailureException("sin conexión"))
+                .thenReturn(true);
+
+        service.revoke("jti-1", Instant.ofEpochMilli(now.get() + 60_000));
+        assertTrue(service.isRevoked(token("jti-1", "user", now.get())));
+
+        service.sync();
+
+        verify(zset, times(2)).add(TokenRevocationService.REDIS_KEY, "jti:jti-1:" + (now.get() + 60_000), (double) now.get());
+    }
+
+    @Test
+    void filterGrowsBeyondExpectedSize() {
+        for (int i = 0; i < 500; i++) {
+            service.revoke("jti-" + i, Instant.ofEpochMilli(now.get() + 60_000));
+        }
+
+        for (int i = 0; i < 500; i++) {
+            assertTrue(service.isRevoked(token("jti-" + i, "user", now.get())));
+        }
+        assertEquals(500, service.revokedTokens());
+    }
+
+    private static DecodedJWT token(String jti, String subject, long issuedAt) {
+        var jwt = mock(DecodedJWT.class);
+        when(jwt.getId()).thenReturn(jti);
+        when(jwt.getSubject()).thenReturn(subject);
+        when(jwt.getIssuedAt()).thenReturn(new Date(issuedAt / 1000 * 1000));
+        return jwt;
+    }
+}
@@ -0,0 +1,63 @@
+package jyrs.dev.vivesbank.auth.throttle;
+
+import jyrs.dev.vivesbank.auth.exception.AuthTooManyAttempts;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoginThrottleTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private final LoginThrottle throttle = new LoginThrottle(3, 60, 2, 1, now::get);
+
+    @Test
+    void limitsAttemptsPerIp() {
+        for (int i = 0; i < 3; i++) {
+            throttle.acquire("user" + i + "@correo.com", "10.0.0.1");
+        }
+
+        assertThrows(AuthTooManyAttempts.class, () -> throttle.acquire("otro@correo.com", "10.0.0.1"));
+        assertDoesNotThrow(() -> throttle.acquire("otro@correo.com", "10.0.0.2"));
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertDoesNotThrow(() -> throttle.acquire("otro@correo.com", "10.0.0.1"));
+    }
+
+    @Test
+    void limitsFailuresPerUsername() {
+        throttle.onFailure("javi@correo.com");
+        throttle.onFailure("JAVI@correo.com");
+
+        assertThrows(AuthTooManyAttempts.class, () -> throttle.acquire("javi@correo.com", "10.0.0.9"));
+
+        now.addAndGet(TimeUnit.MINUTES.toNanos(1));
+        assertDoesNotThrow(() -> throttle.acquire("javi@correo.com", "10.0.0.9"));
+    }
+
+    @Test
+    void successClearsFailures() {
+        throttle.onFailure("javi@correo.com");
+        throttle.onFailure("javi@correo.com");
+
+        throttle.onSuccess("javi@correo.com");
+
+        assertDoesNotThrow(() -> throttle.acquire("javi@correo.com", "10.0.0.1"));
+    }
+
+    @Test
+    void evictIdleRemovesRefilledBuckets() {
+        throttle.acquire("javi@correo.com", "10.0.0.1");
+        throttle.onFailure("javi@correo.com");
+        now.addAndGet(TimeUnit.MINUTES.toNanos(5));
+
+        throttle.evictIdle();
+
+        for (int i = 0; i < 3; i++) {
+            throttle.acquire("javi@correo.com", "10.0.0.1");
+        }
+        assertThrows(AuthTooManyAttempts.class, () -> throttle.acquire("javi@correo.com", "10.0.0.1"));
+    }
+}
@@ -0,0 +1,124 @@
+package jyrs.dev.vivesbank.auth.users.cache;
+
+import jyrs.dev.vivesbank.users.models.Role;
+import jyrs.dev.vivesbank.users.models.User;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class PrincipalCacheTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private final AtomicInteger loads = new AtomicInteger();
+    private final StringRedisTemplate redis = mock(StringRedisTemplate.class);
+    private final PrincipalCache cache = new PrincipalCache(redis, mock(RedisConnectionFactory.class), 60, 2, now::get);
+
+    private final Function<String, Optional<User>> loader = guuid -> {
+        loads.incrementAndGet();
+        return Optional.of(User.builder().guuid(guuid).username(guuid + "@correo.com").roles(Set.of(Role.USER)).build());
+    };
+
+    @Test
+    void getLoadsOnce() {
+        var first = cache.get("a", loader);
+        var second = cache.get("a", loader);
+
+        assertSame(first.get(), second.get());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void getReloadsAfterTtl() {
+        cache.get("a", loader);
+        now.addAndGet(TimeUnit.SECONDS.toNanos(61));
+
+        cache.get("a", loader);
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void invalidateForcesReload() {
+        cache.get("a", loader);
+
+        cache.invalidate("a");
+        cache.get("a", loader);
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void invalidationDuringLoadIsNotOverwritten() {
+        cache.get("a", guuid -> {
+            var user = loader.apply(guuid);
+            cache.invalidate(guuid);
+            return user;
+        });
+
+        assertEquals(0, cache.size());
+        cache.get("a", loader);
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void deletedUsersAreNotCached() {
+        Function<String, Optional<User>> deleted = guuid -> {
+            loads.incrementAndGet();
+            return Optional.of(User.builder().guuid(guuid).isDeleted(true).roles(Set.of()).build());
+        };
+
+        cache.get("a", deleted);
+        cache.get("a", deleted);
+
+        assertEquals(0, cache.size());
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void invalidatePublishesToOtherNodes() {
+        cache.invalidate("a");
+
+        verify(redis).convertAndSend(PrincipalCache.CHANNEL,
+                PrincipalCache.encode((String) ReflectionTestUtils.getField(cache, "nodeId"), "a"));
+    }
+
+    @Test
+    void invalidateAppliesLocallyWhenRedisIsDown() {
+        cache.get("a", loader);
+        when(redis.convertAndSend(anyString(), anyString())).thenThrow(new IllegalStateException("Redis caído"));
+
+        cache.invalidate("a");
+
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void remoteInvalidationEvictsButOwnMessagesAreIgnored() {
+        cache.get("a", loader);
+        String ownNode = (String) ReflectionTestUtils.getField(cache, "nodeId");
+
+        cache.onMessage(message(PrincipalCache.encode(ownNode, "a")), null);
+        assertEquals(1, cache.size());
+
+        cache.onMessage(message(PrincipalCache.encode("otro-nodo", "a")), null);
+        assertEquals(0, cache.size());
+    }
+
+    private DefaultMessage message(String body) {
+        return new DefaultMessage(PrincipalCache.CHANNEL.getBytes(StandardCharsets.UTF_8), body.getBytes(StandardCharsets.UTF_8));
+    }
+}
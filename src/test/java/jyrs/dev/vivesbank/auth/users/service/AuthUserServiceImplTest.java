@@ -1,5 +1,6 @@
 package jyrs.dev.vivesbank.auth.users.service;
 
+import jyrs.dev.vivesbank.auth.users.cache.PrincipalCache;
 import jyrs.dev.vivesbank.auth.users.repositories.AuthUserRepository;
 import jyrs.dev.vivesbank.auth.users.service.AuthUserServiceImpl;
 import jyrs.dev.vivesbank.users.models.Role;
@@ -10,6 +11,8 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.security.core.userdetails.UserDetails;
 
 import java.util.Optional;
@@ -31,6 +34,8 @@ public class AuthUserServiceImplTest {
 
     @Mock
     private AuthUserRepository authUserRepository;
+    @Mock
+    private PrincipalCache principalCache;
     @InjectMocks
     private AuthUserServiceImpl authUserService;
 
@@ -74,4 +79,25 @@ public class AuthUserServiceImplTest {
         verify(authUserRepository, times(1)).findByUsername("usuarioNotFound@correo.com");
     }
 
+    @Test
+    void loadUserByGuuid_cached() {
+        var service = new AuthUserServiceImpl(authUserRepository, new PrincipalCache(mock(StringRedisTemplate.class), mock(RedisConnectionFactory.class), 60, 10));
+        when(authUserRepository.findByGuuid("puZjCDm_xCg")).thenReturn(Optional.of(user));
+
+        service.loadUserByGuuid("puZjCDm_xCg");
+        UserDetails result = service.loadUserByGuuid("puZjCDm_xCg");
+
+        assertEquals("usuario@correo.com", result.getUsername());
+        verify(authUserRepository, times(1)).findByGuuid("puZjCDm_xCg");
+    }
+
+    @Test
+    void loadUserByGuuid_deleted() {
+        var deleted = User.builder().guuid("puZjCDm_xCx").username("borrado@correo.com").isDeleted(true).roles(Set.of(Role.USER)).build();
+        var service = new AuthUserServiceImpl(authUserRepository, new PrincipalCache(mock(StringRedisTemplate.class), mock(RedisConnectionFactory.class), 60, 10));
+        when(authUserRepository.findByGuuid("puZjCDm_xCx")).thenReturn(Optional.of(deleted));
+
+        assertThrows(UserExceptions.UserNotFound.class, () -> service.loadUserByGuuid("puZjCDm_xCx"));
+    }
+
 }
@@ -0,0 +1,55 @@
+package jyrs.dev.vivesbank.backup;
+
+import jyrs.dev.vivesbank.backup.controller.BackupController;
+import jyrs.dev.vivesbank.backup.service.BackupService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+
+import java.io.File;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class BackupControllerTest {
+
+    @Mock
+    private BackupService service;
+
+    @InjectMocks
+    private BackupController controller;
+
+    @Test
+    void restoreRejectsPathOutsideBackupDirectory() {
+        for (String fileName : new String[]{"../application.properties", "/etc/passwd", "sub/backup.zip", ".."}) {
+            var response = controller.restoreBackup(fileName);
+
+            assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode(), fileName);
+        }
+        verify(service, never()).restoreChain(any(File.class));
+    }
+
+    @Test
+    void exportRejectsPathOutsideBackupDirectory() {
+        var response = controller.exportBackup("../escaped.zip", false);
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        verify(service, never()).exportToZip(any(File.class));
+    }
+
+    @Test
+    void incrementalWithoutValidBaseFallsBackToFullExport() {
+        when(service.findLatestBackup(any(File.class))).thenReturn(null);
+
+        var response = controller.exportBackup("testFallback.zip", true);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        verify(service).exportToZip(any(File.class));
+        verify(service, never()).exportIncrementalZip(any(File.class), any(File.class));
+    }
+}
@@ -1,5 +1,11 @@
 package jyrs.dev.vivesbank.backup;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import jakarta.persistence.EntityManager;
+import jyrs.dev.vivesbank.backup.exceptions.BackupManifestInvalid;
+import jyrs.dev.vivesbank.backup.models.BackupDeletion;
+import jyrs.dev.vivesbank.backup.repository.BackupDeletionRepository;
 import jyrs.dev.vivesbank.backup.service.BackupServiceImpl;
 import jyrs.dev.vivesbank.movements.models.Movement;
 import jyrs.dev.vivesbank.movements.repository.MovementsRepository;
@@ -10,6 +16,7 @@ import jyrs.dev.vivesbank.products.bankAccounts.repositories.BankAccountReposito
 import jyrs.dev.vivesbank.products.bankAccounts.services.BankAccountService;
 import jyrs.dev.vivesbank.products.creditCards.models.CreditCard;
 import jyrs.dev.vivesbank.products.creditCards.repository.CreditCardRepository;
+import jyrs.dev.vivesbank.products.creditCards.service.CreditCardService;
 import jyrs.dev.vivesbank.products.base.models.Product;
 import jyrs.dev.vivesbank.products.base.models.type.ProductType;
 import jyrs.dev.vivesbank.products.base.repositories.ProductRepository;
@@ -22,9 +29,15 @@ import jyrs.dev.vivesbank.users.models.Role;
 import jyrs.dev.vivesbank.users.models.User;
 import jyrs.dev.vivesbank.users.users.repositories.UsersRepository;
 import jyrs.dev.vivesbank.users.users.services.UsersService;
+import org.junit.jupiter.api.BeforeEach;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
@@ -34,7 +47,9 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.stream.Stream;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipOutputStream;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -100,7 +115,7 @@ class StorageServiceImplTest {
     Client recipientClient = new Client(2L, "Recipient", new ArrayList<>());
     Movement movement = Movement.builder()
             .SenderClient(user.getGuuid())
-            .RecipientClient(recipientClient.getUser().getGuuid())
+            .RecipientClient(user.getGuuid())
             .BankAccountOrigin(origin.getIban())
             .BankAccountDestination(destination.getIban())
             .typeMovement(typeMovement)
@@ -118,6 +133,8 @@ class StorageServiceImplTest {
     @Mock
     private MovementsService movementsService;
     @Mock
+    private CreditCardService creditCardService;
+    @Mock
     private ClientsRepository clientsRepository;
     @Mock
     private UsersRepository usersRepository;
@@ -129,70 +146,194 @@ class StorageServiceImplTest {
     private CreditCardRepository creditCardRepository;
     @Mock
     private MovementsRepository movementsRepository;
+    @Mock
+    private BackupDeletionRepository deletionRepository;
+    @Mock
+    private EntityManager entityManager;
+    @Mock
+    private MongoTemplate mongoTemplate;
+    @Mock
+    private PlatformTransactionManager transactionManager;
 
-    @InjectMocks
     private BackupServiceImpl storageService;
 
+    @BeforeEach
+    void setUp() {
+        storageService = new BackupServiceImpl(clientsService, usersService, bankAccountService, productServices, creditCardService, movementsService,
+                clientsRepository, usersRepository, bankAccountRepository, productRepository, creditCardRepository, movementsRepository, deletionRepository,
+                new ObjectMapper().registerModule(new JavaTimeModule()), entityManager, mongoTemplate, transactionManager, 2, 2, 0);
+    }
+
 
     @Test
     void exportToZip() throws IOException {
         File zipFile = new File("testExport.zip");
 
-        User mockUser = mock(User.class);
-        when(mockUser.getGuuid()).thenReturn("mock-guuid");
-
-        Client mockClient = mock(Client.class);
-        when(mockClient.getUser()).thenReturn(mockUser);
-
-        BankAccount mockAccount = mock(BankAccount.class);
-        Product mockProduct = mock(Product.class);
-        Movement mockMovement = mock(Movement.class);
-
-        Movement movement = Movement.builder()
-                .SenderClient(mockClient.getUser().getGuuid())
-                .RecipientClient(mockClient.getUser().getGuuid())
-                .BankAccountOrigin(mockAccount.getIban())
-                .BankAccountDestination(mockAccount.getIban())
-                .typeMovement("TRANSFER")
-                .amount(100.0)
-                .build();
-
-        List<Client> clients = List.of(mockClient);
-        List<User> users = List.of(mockUser);
-        List<BankAccount> accounts = List.of(mockAccount);
-        List<Product> products = List.of(mockProduct);
-        List<Movement> movements = List.of(movement);
-
-        when(clientsRepository.findAll()).thenReturn(clients);
-        when(usersRepository.findAll()).thenReturn(users);
-        when(bankAccountRepository.findAll()).thenReturn(accounts);
-        when(productRepository.findAll()).thenReturn(products);
-        when(movementsRepository.findAll()).thenReturn(movements);
-
-        storageService.exportToZip(zipFile);
-
-        verify(clientsService).exportJson(any(File.class), eq(clients));
-        verify(usersService).exportJson(any(File.class), eq(users));
-        verify(bankAccountService).exportJson(any(File.class), eq(accounts));
-        verify(productServices).exportJson(any(File.class), eq(products));
-        verify(movementsService).exportJson(any(File.class), eq(movements));
-
-        assertTrue(zipFile.exists());
+        Product second = Product.builder().id(2L).type(ProductType.BANK_ACCOUNT).specification("second").tae(0.1).build();
+        Product third = Product.builder().id(3L).type(ProductType.BANK_ACCOUNT).specification("third").tae(0.1).build();
+
+        when(clientsRepository.findBy(any(Specification.class), any())).thenReturn(List.of());
+        when(usersRepository.findBy(any(Specification.class), any())).thenReturn(List.of());
+        when(creditCardRepository.findBy(any(Specification.class), any())).thenReturn(List.of());
+        when(bankAccountRepository.findBy(any(Specification.class), any())).thenReturn(List.of());
+        when(productRepository.findBy(any(Specification.class), any())).thenReturn(List.of(product, second), List.of(third));
+        when(movementsRepository.streamAll()).thenReturn(Stream.of(movement));
+
+        var stats = storageService.exportToZip(zipFile);
+
+        assertEquals(4, stats.records());
+        assertTrue(stats.bytes() > 0);
+        verify(productRepository, times(2)).findBy(any(Specification.class), any());
+        verify(entityManager, times(6)).clear();
+        verify(movementsService, never()).exportJson(any(File.class), anyList());
+        verify(deletionRepository).deleteByDeletedAtBefore(any(LocalDateTime.class));
+        verify(deletionRepository, never()).findBy(any(Specification.class), any());
+
+        try (ZipFile zip = new ZipFile(zipFile)) {
+            assertEquals(7, zip.size());
+            assertNotNull(zip.getEntry("manifest.json"));
+            var products = new String(zip.getInputStream(zip.getEntry("products.json")).readAllBytes());
+            assertTrue(products.contains("second") && products.contains("third"));
+            var movements = new String(zip.getInputStream(zip.getEntry("movements.json")).readAllBytes());
+            assertTrue(movements.contains("TRANSFER"));
+        }
+        zipFile.delete();
+    }
+
+
+
+
+    @Test
+    void exportIncrementalZip() throws IOException {
+        File fullZip = new File("testFull.zip");
+        File incrementalZip = new File("testIncremental.zip");
+
+        when(clientsRepository.findBy(any(Specification.class), any())).thenReturn(List.of());
+        when(usersRepository.findBy(any(Specification.class), any())).thenReturn(List.of());
+        when(creditCardRepository.findBy(any(Specification.class), any())).thenReturn(List.of());
+        when(bankAccountRepository.findBy(any(Specification.class), any())).thenReturn(List.of());
+        when(productRepository.findBy(any(Specification.class), any())).thenReturn(List.of(product), List.of());
+        when(movementsRepository.streamAll()).thenReturn(Stream.of(movement));
+        when(movementsRepository.streamByDateAfter(any(LocalDateTime.class))).thenReturn(Stream.of());
+        var deletion = BackupDeletion.builder().id(1L).entityName(BackupDeletion.BANK_ACCOUNTS).recordId("5")
+                .deletedAt(LocalDateTime.now()).build();
+        when(deletionRepository.findBy(any(Specification.class), any())).thenReturn(List.of(deletion));
+
+        storageService.exportToZip(fullZip);
+        var stats = storageService.exportIncrementalZip(incrementalZip, fullZip);
+
+        assertEquals(1, stats.records());
+        verify(movementsRepository).streamByDateAfter(any(LocalDateTime.class));
+        try (ZipFile zip = new ZipFile(incrementalZip)) {
+            var deletions = new String(zip.getInputStream(zip.getEntry("deletions.json")).readAllBytes());
+            assertTrue(deletions.contains("bankAccounts") && deletions.contains("\"5\""));
+            var manifest = new String(zip.getInputStream(zip.getEntry("manifest.json")).readAllBytes());
+            assertTrue(manifest.contains("INCREMENTAL"));
+            assertTrue(manifest.contains("testFull.zip") && manifest.contains("testIncremental.zip"));
+        }
+        fullZip.delete();
+        incrementalZip.delete();
+    }
+
+    @Test
+    void restoreChainWithoutManifest() throws IOException {
+        File zipFile = new File("testNoManifest.zip");
+        try (ZipOutputStream zipOutputStream = new ZipOutputStream(Files.newOutputStream(zipFile.toPath()))) {
+            zipOutputStream.putNextEntry(new ZipEntry("products.json"));
+            zipOutputStream.write("[]".getBytes());
+            zipOutputStream.closeEntry();
+        }
+
+        assertThrows(BackupManifestInvalid.class, () -> storageService.restoreChain(zipFile));
+
+        verify(productRepository, never()).saveAll(anyList());
         zipFile.delete();
     }
 
+    @Test
+    void restoreChainRejectsFilesOutsideDirectory() throws IOException {
+        Path dir = Files.createTempDirectory("testChain");
+        File zipFile = dir.resolve("testEvil.zip").toFile();
+        try (ZipOutputStream zipOutputStream = new ZipOutputStream(Files.newOutputStream(zipFile.toPath()))) {
+            zipOutputStream.putNextEntry(new ZipEntry("manifest.json"));
+            zipOutputStream.write("""
+                    {"type":"INCREMENTAL","chain":["../outside.zip","testEvil.zip"]}""".getBytes());
+            zipOutputStream.closeEntry();
+        }
+
+        var ex = assertThrows(BackupManifestInvalid.class, () -> storageService.restoreChain(zipFile));
+
+        assertTrue(ex.getMessage().contains("../outside.zip"));
+        verify(productRepository, never()).saveAll(anyList());
+        zipFile.delete();
+        dir.toFile().delete();
+    }
+
+    @Test
+    void findLatestBackupSkipsZipsWithoutManifest() throws IOException {
+        Path dir = Files.createTempDirectory("testLatest");
+        when(clientsRepository.findBy(any(Specification.class), any())).thenReturn(List.of());
+        when(usersRepository.findBy(any(Specification.class), any())).thenReturn(List.of());
+        when(creditCardRepository.findBy(any(Specification.class), any())).thenReturn(List.of());
+        when(bankAccountRepository.findBy(any(Specification.class), any())).thenReturn(List.of());
+        when(productRepository.findBy(any(Specification.class), any())).thenReturn(List.of());
+        when(movementsRepository.streamAll()).thenReturn(Stream.of());
+
+        File full = dir.resolve("full.zip").toFile();
+        storageService.exportToZip(full);
+        File partial = dir.resolve("partial.zip").toFile();
+        try (ZipOutputStream zipOutputStream = new ZipOutputStream(Files.newOutputStream(partial.toPath()))) {
+            zipOutputStream.putNextEntry(new ZipEntry("products.json"));
+            zipOutputStream.write("[]".getBytes());
+            zipOutputStream.closeEntry();
+        }
+        partial.setLastModified(full.lastModified() + 10_000);
 
+        assertEquals(full.getName(), storageService.findLatestBackup(dir.toFile()).getName());
 
+        partial.delete();
+        full.delete();
+        assertNull(storageService.findLatestBackup(dir.toFile()));
+        dir.toFile().delete();
+    }
+
+    @Test
+    void importAppliesDeletionsAfterRecords() throws IOException {
+        File zipFile = new File("testDeletions.zip");
+        try (ZipOutputStream zipOutputStream = new ZipOutputStream(Files.newOutputStream(zipFile.toPath()))) {
+            zipOutputStream.putNextEntry(new ZipEntry("bankAccounts.json"));
+            zipOutputStream.write("[{\"id\":5,\"iban\":\"ES00\"}]".getBytes());
+            zipOutputStream.closeEntry();
+            zipOutputStream.putNextEntry(new ZipEntry("deletions.json"));
+            zipOutputStream.write("""
+                    [{"id":1,"entityName":"bankAccounts","recordId":"5"},
+                     {"id":2,"entityName":"clients","recordId":"7"},
+                     {"id":3,"entityName":"movements","recordId":"abc"}]""".getBytes());
+            zipOutputStream.closeEntry();
+        }
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+
+        var stats = storageService.importFromZip(zipFile);
+
+        assertEquals(1, stats.records());
+        var order = inOrder(bankAccountRepository, clientsRepository);
+        order.verify(bankAccountRepository).saveAll(anyList());
+        order.verify(bankAccountRepository).deleteAllById(List.of(5L));
+        order.verify(clientsRepository).deleteAllById(List.of(7L));
+        verify(mongoTemplate).remove(any(Query.class), eq(Movement.class));
+        zipFile.delete();
+    }
 
     @Test
     void importFromZip() throws IOException {
         File zipFile = new File("testImport.zip");
         Path tempDir = Files.createTempDirectory("testTemp");
-        Files.createFile(tempDir.resolve("clients.json"));
+        Files.writeString(tempDir.resolve("clients.json"), "[]");
         Files.createFile(tempDir.resolve("users.json"));
-        Files.createFile(tempDir.resolve("bankAccounts.json"));
-        Files.createFile(tempDir.resolve("products.json"));
-        Files.createFile(tempDir.resolve("movements.json"));
+        Files.writeString(tempDir.resolve("bankAccounts.json"), "[]");
+        Files.writeString(tempDir.resolve("products.json"),
+                "[{\"id\":1,\"specification\":\"a\"},{\"id\":2,\"specification\":\"b\"},{\"id\":3,\"specification\":\"c\"}]");
+        Files.writeString(tempDir.resolve("movements.json"), "[{\"typeMovement\":\"TRANSFER\",\"amount\":100.0}]");
 
         try (ZipOutputStream zipOutputStream = new ZipOutputStream(Files.newOutputStream(zipFile.toPath()))) {
             Files.walk(tempDir).filter(Files::isRegularFile).forEach(path -> {
@@ -206,13 +347,20 @@ class StorageServiceImplTest {
             });
         }
 
-        storageService.importFromZip(zipFile);
+        BulkOperations bulk = mock(BulkOperations.class);
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Movement.class)).thenReturn(bulk);
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+
+        var stats = storageService.importFromZip(zipFile);
 
-        verify(clientsService).importJson(any(File.class));
-        verify(usersService).importJson(any(File.class));
-        verify(bankAccountService).importJson(any(File.class));
-        verify(productServices).importJson(any(File.class));
-        verify(movementsService).importJson(any(File.class));
+        assertEquals(4, stats.records());
+        verify(productRepository).saveAll(argThat((List<Product> batch) -> batch.size() == 2));
+        verify(productRepository).saveAll(argThat((List<Product> batch) -> batch.size() == 1));
+        verify(clientsRepository, never()).saveAll(anyList());
+        verify(bulk).insert(any(Object.class));
+        verify(bulk).execute();
+        verify(transactionManager, times(2)).commit(any());
+        verify(productServices, never()).importJson(any(File.class));
 
         zipFile.delete();
         Files.walk(tempDir).sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
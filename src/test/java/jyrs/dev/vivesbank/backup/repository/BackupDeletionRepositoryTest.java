@@ -0,0 +1,60 @@
+package jyrs.dev.vivesbank.backup.repository;
+
+import jyrs.dev.vivesbank.backup.models.BackupDeletion;
+import jyrs.dev.vivesbank.products.base.models.Product;
+import jyrs.dev.vivesbank.products.base.models.type.ProductType;
+import jyrs.dev.vivesbank.products.base.repositories.ProductRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.test.annotation.DirtiesContext;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Crea productos y adelanta su autonumérico, del que dependen otros tests que comparten la base de datos
+@DataJpaTest
+@DirtiesContext
+class BackupDeletionRepositoryTest {
+
+    @Autowired
+    private BackupDeletionRepository deletionRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Test
+    void hardDeleteIsRecorded() {
+        var product = entityManager.persistAndFlush(Product.builder()
+                .type(ProductType.BANK_ACCOUNT)
+                .specification("borrado")
+                .tae(0.1)
+                .build());
+
+        productRepository.deleteById(product.getId());
+        entityManager.flush();
+
+        var deletions = deletionRepository.findAll();
+        assertEquals(1, deletions.size());
+        assertEquals(BackupDeletion.PRODUCTS, deletions.get(0).getEntityName());
+        assertEquals(product.getId().toString(), deletions.get(0).getRecordId());
+    }
+
+    @Test
+    void deleteByDeletedAtBeforeKeepsNewerDeletions() {
+        var now = LocalDateTime.now();
+        deletionRepository.save(BackupDeletion.builder().entityName(BackupDeletion.CLIENTS).recordId("1").deletedAt(now.minusDays(1)).build());
+        deletionRepository.save(BackupDeletion.builder().entityName(BackupDeletion.CLIENTS).recordId("2").deletedAt(now.plusSeconds(1)).build());
+
+        assertEquals(1, deletionRepository.deleteByDeletedAtBefore(now));
+
+        var remaining = deletionRepository.findAll();
+        assertEquals(1, remaining.size());
+        assertEquals("2", remaining.get(0).getRecordId());
+    }
+}
@@ -0,0 +1,84 @@
+package jyrs.dev.vivesbank.config.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BoundedCacheTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private final AtomicInteger evictions = new AtomicInteger();
+    private final BoundedCache<String, String> cache = new BoundedCache<>(2, 100, now::get, evictions::incrementAndGet);
+
+    @Test
+    void entryExpiresAfterTtl() {
+        cache.put("a", "1");
+        now.set(99);
+        assertEquals("1", cache.get("a"));
+
+        now.set(100);
+        assertNull(cache.get("a"));
+    }
+
+    @Test
+    void fullCacheDropsOldestEntry() {
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.put("c", "3");
+
+        assertNull(cache.get("a"));
+        assertEquals("2", cache.get("b"));
+        assertEquals("3", cache.get("c"));
+        assertEquals(2, cache.size());
+        assertEquals(1, evictions.get());
+    }
+
+    @Test
+    void expiredEntriesMakeRoomWithoutCountingAsEvictions() {
+        cache.put("a", "1");
+        cache.put("b", "2");
+        now.set(150);
+
+        cache.put("c", "3");
+
+        assertEquals(1, cache.size());
+        assertEquals(0, evictions.get());
+    }
+
+    @Test
+    void replacingKeepsExpiryOrder() {
+        cache.put("a", "1");
+        now.set(10);
+        cache.put("b", "2");
+        now.set(20);
+        cache.put("a", "1b");
+
+        cache.put("c", "3");
+
+        assertNull(cache.get("b"));
+        assertEquals("1b", cache.get("a"));
+    }
+
+    @Test
+    void invalidationDuringLoadDiscardsValue() {
+        long startedAt = cache.generation();
+        cache.invalidate("a");
+
+        assertFalse(cache.putIfCurrent("a", "viejo", startedAt));
+        assertNull(cache.get("a"));
+        assertTrue(cache.putIfCurrent("a", "nuevo", cache.generation()));
+    }
+
+    @Test
+    void zeroTtlNeverExpires() {
+        var directory = new BoundedCache<String, String>(1, 0, now::get);
+        directory.put("a", "1");
+
+        now.set(Long.MAX_VALUE / 2);
+
+        assertEquals("1", directory.get("a"));
+    }
+}
@@ -0,0 +1,84 @@
+package jyrs.dev.vivesbank.config.websockets;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NotificationReplayBufferTest {
+
+    private final NotificationReplayBuffer buffer = new NotificationReplayBuffer(3, 1000);
+
+    @Test
+    void stampAddsSequenceNumber() {
+        assertEquals("{\"seq\":100,\"id\":1}", NotificationReplayBuffer.stamp(100, "{\"id\":1}"));
+        assertEquals("{\"seq\":101}", NotificationReplayBuffer.stamp(101, "{}"));
+        assertEquals("texto", NotificationReplayBuffer.stamp(102, "texto"));
+    }
+
+    @Test
+    void sinceReturnsOnlyTheGapForTheClient() {
+        buffer.append(100, "owner", "1", 0);
+        buffer.append(101, "other", "2", 0);
+        buffer.append(102, null, "3", 0);
+
+        assertEquals(Optional.of(List.of("3")), buffer.since(100, "owner", 0));
+        assertEquals(Optional.of(List.of()), buffer.since(102, "owner", 0));
+        assertEquals(102, buffer.lastSeq());
+    }
+
+    @Test
+    void clientAndBroadcastNotificationsAreMergedInOrder() {
+        buffer.append(100, "owner", "1", 0);
+        buffer.append(102, null, "3", 0);
+        buffer.append(101, "owner", "2", 0);
+
+        assertEquals(Optional.of(List.of("1", "2", "3")), buffer.since(99, "owner", 0));
+    }
+
+    @Test
+    void busyClientDoesNotForceOthersToResync() {
+        buffer.append(100, "owner", "1", 0);
+        for (long seq = 101; seq < 110; seq++) {
+            buffer.append(seq, "other", "x", 0);
+        }
+
+        assertEquals(Optional.of(List.of("1")), buffer.since(99, "owner", 0));
+        assertTrue(buffer.since(99, "other", 0).isEmpty());
+        assertEquals(3, buffer.since(106, "other", 0).orElseThrow().size());
+    }
+
+    @Test
+    void gapOlderThanMaxAgeRequiresResync() {
+        buffer.append(100, "owner", "1", 0);
+        buffer.append(101, "owner", "2", TimeUnit.MILLISECONDS.toNanos(900));
+
+        long now = TimeUnit.MILLISECONDS.toNanos(1500);
+        assertTrue(buffer.since(99, "owner", now).isEmpty());
+        assertEquals(Optional.of(List.of("2")), buffer.since(100, "owner", now));
+    }
+
+    @Test
+    void prunedClientStillRequiresResyncForForgottenGap() {
+        buffer.append(100, "owner", "1", 0);
+        buffer.append(101, null, "2", 0);
+
+        buffer.prune(TimeUnit.MILLISECONDS.toNanos(1000));
+        assertEquals(0, buffer.clientCount());
+
+        assertTrue(buffer.since(99, "owner", 0).isEmpty());
+        assertEquals(Optional.of(List.of()), buffer.since(101, "owner", 0));
+    }
+
+    @Test
+    void sequenceOutsideSeenRangeRequiresResync() {
+        buffer.append(100, "owner", "1", 0);
+
+        assertTrue(buffer.since(500, "owner", 0).isEmpty());
+        assertTrue(buffer.since(5, "owner", 0).isEmpty());
+        assertEquals(Optional.of(List.of("1")), buffer.since(99, "owner", 0));
+    }
+}
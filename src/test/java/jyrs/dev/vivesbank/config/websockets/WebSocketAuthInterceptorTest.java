@@ -0,0 +1,116 @@
+package jyrs.dev.vivesbank.config.websockets;
+
+import com.auth0.jwt.interfaces.Claim;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import jyrs.dev.vivesbank.auth.jwt.JwtService;
+import jyrs.dev.vivesbank.auth.jwt.JwtServiceImpl;
+import jyrs.dev.vivesbank.auth.revocation.TokenRevocationService;
+import jyrs.dev.vivesbank.auth.users.service.AuthUserService;
+import jyrs.dev.vivesbank.users.models.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class WebSocketAuthInterceptorTest {
+
+    @Mock
+    private JwtService jwtService;
+    @Mock
+    private AuthUserService authUserService;
+    @Mock
+    private TokenRevocationService revocationService;
+    @Mock
+    private DecodedJWT jwt;
+    @Mock
+    private Claim typeClaim;
+
+    @InjectMocks
+    private WebSocketAuthInterceptor interceptor;
+
+    private MockHttpServletRequest servletRequest;
+    private MockHttpServletResponse servletResponse;
+    private Map<String, Object> attributes;
+
+    @BeforeEach
+    void setUp() {
+        servletRequest = new MockHttpServletRequest("GET", "/ws/v1/cuentas");
+        servletResponse = new MockHttpServletResponse();
+        attributes = new HashMap<>();
+    }
+
+    private boolean handshake() {
+        return interceptor.beforeHandshake(new ServletServerHttpRequest(servletRequest),
+                new ServletServerHttpResponse(servletResponse), null, attributes);
+    }
+
+    private void validToken(String token) {
+        when(jwtService.verifyToken(token)).thenReturn(jwt);
+        when(jwt.getClaim(JwtServiceImpl.TYPE_CLAIM)).thenReturn(typeClaim);
+        when(typeClaim.asString()).thenReturn(JwtServiceImpl.ACCESS_TYPE);
+    }
+
+    @Test
+    void acceptsBearerHeaderAndStoresGuuid() {
+        servletRequest.addHeader("Authorization", "Bearer good");
+        validToken("good");
+        when(jwt.getSubject()).thenReturn("guuid-1");
+        when(authUserService.loadUserByGuuid("guuid-1")).thenReturn(User.builder().guuid("guuid-1").build());
+
+        assertTrue(handshake());
+        assertEquals("guuid-1", attributes.get(WebSocketAuthInterceptor.GUUID_ATTRIBUTE));
+    }
+
+    @Test
+    void acceptsTokenQueryParameter() {
+        servletRequest.setQueryString("token=good");
+        validToken("good");
+        when(jwt.getSubject()).thenReturn("guuid-1");
+        when(authUserService.loadUserByGuuid("guuid-1")).thenReturn(User.builder().guuid("guuid-1").build());
+
+        assertTrue(handshake());
+        assertEquals("guuid-1", attributes.get(WebSocketAuthInterceptor.GUUID_ATTRIBUTE));
+    }
+
+    @Test
+    void rejectsMissingToken() {
+        assertFalse(handshake());
+        assertEquals(HttpStatus.UNAUTHORIZED.value(), servletResponse.getStatus());
+        verifyNoInteractions(jwtService);
+    }
+
+    @Test
+    void rejectsInvalidToken() {
+        servletRequest.addHeader("Authorization", "Bearer bad");
+        when(jwtService.verifyToken("bad")).thenThrow(new JWTVerificationException("firma"));
+
+        assertFalse(handshake());
+        assertEquals(HttpStatus.UNAUTHORIZED.value(), servletResponse.getStatus());
+        assertTrue(attributes.isEmpty());
+    }
+
+    @Test
+    void rejectsRevokedToken() {
+        servletRequest.addHeader("Authorization", "Bearer revoked");
+        validToken("revoked");
+        when(revocationService.isRevoked(jwt)).thenReturn(true);
+
+        assertFalse(handshake());
+        verifyNoInteractions(authUserService);
+    }
+}
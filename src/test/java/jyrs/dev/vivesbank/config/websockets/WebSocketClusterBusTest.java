@@ -0,0 +1,137 @@
+package jyrs.dev.vivesbank.config.websockets;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jyrs.dev.vivesbank.config.redis.RedisChannelSubscription;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class WebSocketClusterBusTest {
+
+    private StringRedisTemplate redis;
+    private WebSocketHandler handler;
+    private WebSocketClusterBus bus;
+    private RedisChannelSubscription subscription;
+    private SimpleMeterRegistry registry;
+    private final AtomicLong now = new AtomicLong(1_000);
+
+    @BeforeEach
+    void setUp() {
+        redis = mock(StringRedisTemplate.class);
+        handler = mock(WebSocketHandler.class);
+        when(handler.getEntity()).thenReturn("cuentas");
+        registry = new SimpleMeterRegistry();
+        bus = new WebSocketClusterBus(redis, mock(RedisConnectionFactory.class), registry, 5_000, now::get);
+        bus.register(handler);
+        subscription = mock(RedisChannelSubscription.class);
+        when(subscription.isSubscribed()).thenReturn(true);
+        ReflectionTestUtils.setField(bus, "subscription", subscription);
+    }
+
+    private DefaultMessage message(String body) {
+        return new DefaultMessage(WebSocketClusterBus.CHANNEL.getBytes(StandardCharsets.UTF_8), body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void publishSendsToRedisOnly() {
+        bus.publish("cuentas", "guuid-1", 7, "{\"iban\":\"ES1\"}");
+
+        verify(redis).convertAndSend(WebSocketClusterBus.CHANNEL, "cuentas|guuid-1|7|{\"iban\":\"ES1\"}");
+        verify(handler, never()).deliverLocal(any(), anyLong(), anyString());
+    }
+
+    @Test
+    void publishAlsoDeliversLocallyWhileNotSubscribed() {
+        when(subscription.isSubscribed()).thenReturn(false);
+
+        bus.publish("cuentas", "guuid-1", 3, "{}");
+
+        verify(redis).convertAndSend(WebSocketClusterBus.CHANNEL, "cuentas|guuid-1|3|{}");
+        verify(handler).deliverLocal("guuid-1", 3, "{}");
+    }
+
+    @Test
+    void receivedMessageIsDeliveredToLocalHandler() {
+        bus.onMessage(message("cuentas|guuid-1|5|{\"a\":\"x|y\"}"), null);
+
+        verify(handler).deliverLocal("guuid-1", 5, "{\"a\":\"x|y\"}");
+    }
+
+    @Test
+    void broadcastRoundTripsAsNullClient() {
+        bus.onMessage(message(WebSocketClusterBus.encode("cuentas", null, 0, "{}")), null);
+
+        verify(handler).deliverLocal(null, 0, "{}");
+    }
+
+    @Test
+    void messageForUnknownEntityIsIgnored() {
+        bus.onMessage(message("users|guuid-1|1|{}"), null);
+        bus.onMessage(message("sin separadores"), null);
+        bus.onMessage(message("cuentas|guuid-1|{}"), null);
+
+        verify(handler, never()).deliverLocal(any(), anyLong(), anyString());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void sequenceIsSharedThroughRedis() {
+        var values = mock(ValueOperations.class);
+        when(redis.opsForValue()).thenReturn(values);
+        when(values.increment("ws:seq:cuentas")).thenReturn(10L, 11L);
+
+        assertEquals(10, bus.nextSequence("cuentas"));
+        assertEquals(11, bus.nextSequence("cuentas"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void sequenceContinuesLocallyWithoutRedisAndCatchesUpLater() {
+        var values = mock(ValueOperations.class);
+        when(redis.opsForValue()).thenReturn(values);
+        bus.onMessage(message("cuentas|*|20|{}"), null);
+        when(values.increment("ws:seq:cuentas")).thenThrow(new RedisConnectionFailureException("caído"));
+
+        assertEquals(21, bus.nextSequence("cuentas"));
+        assertEquals(22, bus.nextSequence("cuentas"));
+        verify(values, times(1)).increment("ws:seq:cuentas");
+
+        now.addAndGet(5_000);
+        doReturn(15L).when(values).increment("ws:seq:cuentas");
+        doReturn(23L).when(values).increment("ws:seq:cuentas", 8L);
+
+        assertEquals(23, bus.nextSequence("cuentas"));
+    }
+
+    @Test
+    void redisFailureFallsBackToLocalAndBacksOff() {
+        doThrow(new RedisConnectionFailureException("caído")).when(redis).convertAndSend(anyString(), anyString());
+
+        bus.publish("cuentas", "guuid-1", 3, "{}");
+        bus.publish("cuentas", "guuid-1", 3, "{}");
+
+        verify(redis, times(1)).convertAndSend(anyString(), anyString());
+        verify(handler, times(2)).deliverLocal("guuid-1", 3, "{}");
+        assertEquals(2.0, registry.get("websocket.cluster.local_fallback").counter().count());
+
+        now.addAndGet(5_000);
+        doReturn(1L).when(redis).convertAndSend(anyString(), anyString());
+        bus.publish("cuentas", "guuid-1", 3, "{}");
+
+        verify(redis, times(2)).convertAndSend(anyString(), anyString());
+        verify(handler, times(2)).deliverLocal("guuid-1", 3, "{}");
+    }
+}
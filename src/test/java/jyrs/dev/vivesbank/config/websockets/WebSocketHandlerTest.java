@@ -0,0 +1,332 @@
+package jyrs.dev.vivesbank.config.websockets;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PingMessage;
+import org.springframework.web.socket.PongMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class WebSocketHandlerTest {
+
+    private SimpleMeterRegistry registry;
+    private WebSocketDispatcher dispatcher;
+    private WebSocketHandler handler;
+    private final AtomicLong now = new AtomicLong();
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        dispatcher = new WebSocketDispatcher(registry, 2, 16, 100, 3, 200, 1024, 1000, 3000, 2, 0, 0);
+        handler = new WebSocketHandler("cuentas", dispatcher, null, now::get);
+    }
+
+    @AfterEach
+    void tearDown() {
+        dispatcher.shutdown();
+    }
+
+    private WebSocketSession session(String id) {
+        return session(id, "client-" + id);
+    }
+
+    private WebSocketSession session(String id, String guuid) {
+        var session = mock(WebSocketSession.class);
+        when(session.getId()).thenReturn(id);
+        when(session.isOpen()).thenReturn(true);
+        Map<String, Object> attributes = new HashMap<>();
+        if (guuid != null) {
+            attributes.put(WebSocketAuthInterceptor.GUUID_ATTRIBUTE, guuid);
+        }
+        when(session.getAttributes()).thenReturn(attributes);
+        return session;
+    }
+
+    @Test
+    void sendMessageDeliversToEverySession() throws Exception {
+        var first = session("1");
+        var second = session("2");
+        handler.afterConnectionEstablished(first);
+        handler.afterConnectionEstablished(second);
+
+        handler.sendMessage("{\"id\":1}");
+
+        verify(first, timeout(2000)).sendMessage(new TextMessage("{\"id\":1}"));
+        verify(second, timeout(2000)).sendMessage(new TextMessage("{\"id\":1}"));
+        assertEquals(2, handler.getSessionCount());
+    }
+
+    @Test
+    void burstIsCoalescedIntoOneFrame() throws Exception {
+        var session = session("1");
+        handler.afterConnectionEstablished(session);
+
+        handler.sendMessage("{\"id\":1}");
+        handler.sendMessage("{\"id\":2}");
+
+        verify(session, timeout(2000)).sendMessage(new TextMessage("[{\"id\":1},{\"id\":2}]"));
+        assertEquals(1.0, registry.get("websocket.notifications.coalesced").counter().count());
+    }
+
+    @Test
+    void overflowDropsOldestNotifications() throws Exception {
+        var session = session("1");
+        handler.afterConnectionEstablished(session);
+
+        for (int i = 1; i <= 5; i++) {
+            handler.sendMessage(String.valueOf(i));
+        }
+
+        verify(session, timeout(2000)).sendMessage(new TextMessage("[3,4,5]"));
+        assertEquals(2.0, registry.get("websocket.notifications.dropped").tag("reason", "overflow").counter().count());
+    }
+
+    @Test
+    void slowSessionDoesNotBlockOthers() throws Exception {
+        var release = new CountDownLatch(1);
+        var slow = session("slow");
+        var fast = session("fast");
+        doAnswer(invocation -> {
+            var payload = invocation.getArgument(0, TextMessage.class).getPayload();
+            if (payload.startsWith("{")) {
+                release.await(5, TimeUnit.SECONDS);
+            }
+            return null;
+        }).when(slow).sendMessage(any());
+        handler.afterConnectionEstablished(slow);
+        handler.afterConnectionEstablished(fast);
+
+        handler.sendMessage("{\"id\":1}");
+
+        verify(fast, timeout(2000)).sendMessage(new TextMessage("{\"id\":1}"));
+        release.countDown();
+    }
+
+    @Test
+    void failedSessionIsClosedAndRemoved() throws Exception {
+        var session = session("1");
+        handler.afterConnectionEstablished(session);
+        doThrow(new IOException("broken pipe")).when(session).sendMessage(new TextMessage("{\"id\":1}"));
+
+        handler.sendMessage("{\"id\":1}");
+
+        var status = ArgumentCaptor.forClass(CloseStatus.class);
+        verify(session, timeout(2000)).close(status.capture());
+        assertEquals(CloseStatus.SERVER_ERROR, status.getValue());
+        assertEquals(0, handler.getSessionCount());
+    }
+
+    @Test
+    void clientMessageOnlyReachesItsOwnSessions() throws Exception {
+        var owner = session("1", "owner");
+        var ownerSecondTab = session("2", "owner");
+        var other = session("3", "other");
+        handler.afterConnectionEstablished(owner);
+        handler.afterConnectionEstablished(ownerSecondTab);
+        handler.afterConnectionEstablished(other);
+
+        handler.sendMessage("owner", "{\"iban\":\"ES1\"}");
+        handler.sendMessage("other", "{\"iban\":\"ES2\"}");
+
+        verify(owner, timeout(2000)).sendMessage(new TextMessage("{\"iban\":\"ES1\"}"));
+        verify(ownerSecondTab, timeout(2000)).sendMessage(new TextMessage("{\"iban\":\"ES1\"}"));
+        verify(other, timeout(2000)).sendMessage(new TextMessage("{\"iban\":\"ES2\"}"));
+        verify(owner, never()).sendMessage(new TextMessage("{\"iban\":\"ES2\"}"));
+        verify(other, never()).sendMessage(new TextMessage("{\"iban\":\"ES1\"}"));
+    }
+
+    @Test
+    void messageForDisconnectedClientIsDiscarded() throws Exception {
+        var session = session("1", "owner");
+        handler.afterConnectionEstablished(session);
+
+        handler.sendMessage("nobody", "{\"id\":1}");
+
+        assertFalse(handler.isConnected("nobody"));
+        verify(session, after(300).never()).sendMessage(new TextMessage("{\"id\":1}"));
+    }
+
+    @Test
+    void unauthenticatedSessionIsClosed() throws Exception {
+        var session = session("1", null);
+
+        handler.afterConnectionEstablished(session);
+
+        verify(session).close(CloseStatus.POLICY_VIOLATION);
+        assertEquals(0, handler.getSessionCount());
+    }
+
+    @Test
+    void heartbeatPingsOnlyIdleSessions() throws Exception {
+        var idle = session("1");
+        var active = session("2");
+        handler.afterConnectionEstablished(idle);
+        handler.afterConnectionEstablished(active);
+
+        now.set(TimeUnit.MILLISECONDS.toNanos(1500));
+        handler.handleMessage(active, new TextMessage("hola"));
+        handler.heartbeat();
+
+        verify(idle, timeout(2000)).sendMessage(any(PingMessage.class));
+        verify(active, after(300).never()).sendMessage(any(PingMessage.class));
+    }
+
+    @Test
+    void pongKeepsSessionAlive() throws Exception {
+        var session = session("1");
+        handler.afterConnectionEstablished(session);
+
+        now.set(TimeUnit.MILLISECONDS.toNanos(2500));
+        handler.handleMessage(session, new PongMessage());
+        now.set(TimeUnit.MILLISECONDS.toNanos(4000));
+        handler.heartbeat();
+
+        verify(session, never()).close(any());
+        assertEquals(1, handler.getSessionCount());
+    }
+
+    @Test
+    void heartbeatEvictsSessionsPastIdleTimeout() throws Exception {
+        var session = session("1");
+        handler.afterConnectionEstablished(session);
+
+        now.set(TimeUnit.MILLISECONDS.toNanos(3000));
+        handler.heartbeat();
+
+        verify(session).close(CloseStatus.SESSION_NOT_RELIABLE);
+        assertEquals(0, handler.getSessionCount());
+        assertEquals(1.0, registry.get("websocket.sessions.evicted").counter().count());
+    }
+
+    @Test
+    void connectionsPerUserAreLimited() throws Exception {
+        var first = session("1", "owner");
+        var second = session("2", "owner");
+        var third = session("3", "owner");
+        handler.afterConnectionEstablished(first);
+        handler.afterConnectionEstablished(second);
+
+        handler.afterConnectionEstablished(third);
+
+        verify(third).close(any(CloseStatus.class));
+        assertEquals(2, handler.getSessionCount());
+        assertEquals(1.0, registry.get("websocket.sessions.rejected").counter().count());
+        assertEquals(2.0, registry.get("websocket.sessions").gauge().value());
+    }
+
+    @Test
+    void sendMessageGoesThroughClusterBus() throws Exception {
+        var bus = mock(WebSocketClusterBus.class);
+        var clustered = new WebSocketHandler("movements", dispatcher, bus, now::get);
+        var session = session("1", "owner");
+        clustered.afterConnectionEstablished(session);
+
+        clustered.sendMessage("owner", "{\"id\":1}");
+
+        verify(bus).register(clustered);
+        verify(bus).publish("movements", "owner", 0, "{\"id\":1}");
+        verify(session, after(300).never()).sendMessage(new TextMessage("{\"id\":1}"));
+
+        clustered.deliverLocal("owner", "{\"id\":1}");
+        verify(session, timeout(2000)).sendMessage(new TextMessage("{\"id\":1}"));
+    }
+
+    @Test
+    void reconnectWithSinceReplaysMissedNotifications() throws Exception {
+        var replaying = replayingHandler();
+        var first = session("1", "owner");
+        replaying.afterConnectionEstablished(first);
+        replaying.deliverLocal("owner", "{\"id\":1}");
+        var payload = ArgumentCaptor.forClass(TextMessage.class);
+        verify(first, timeout(2000).times(2)).sendMessage(payload.capture());
+        long seq = seqOf(payload.getValue().getPayload());
+        replaying.afterConnectionClosed(first, CloseStatus.GOING_AWAY);
+
+        replaying.deliverLocal("owner", "{\"id\":2}");
+        replaying.deliverLocal("other", "{\"id\":3}");
+        replaying.deliverLocal(null, "{\"id\":4}");
+        var second = session("2", "owner");
+        when(second.getUri()).thenReturn(URI.create("ws://localhost/ws/v1/cuentas?since=" + seq));
+        replaying.afterConnectionEstablished(second);
+
+        verify(second).sendMessage(new TextMessage(
+                "[{\"seq\":" + (seq + 1) + ",\"id\":2},{\"seq\":" + (seq + 3) + ",\"id\":4}]"));
+        assertEquals(2.0, registry.get("websocket.notifications.replayed").tag("entity", "replay").counter().count());
+    }
+
+    @Test
+    void reconnectWithUnknownSinceAsksForResync() throws Exception {
+        var replaying = replayingHandler();
+        replaying.deliverLocal("owner", "{\"id\":1}");
+        var session = session("1", "owner");
+        when(session.getUri()).thenReturn(URI.create("ws://localhost/ws/v1/cuentas?since=7"));
+
+        replaying.afterConnectionEstablished(session);
+
+        var payload = ArgumentCaptor.forClass(TextMessage.class);
+        verify(session, times(2)).sendMessage(payload.capture());
+        assertTrue(payload.getValue().getPayload().contains("\"type\":\"RESYNC\""));
+        assertEquals(1.0, registry.get("websocket.replay.resync").tag("entity", "replay").counter().count());
+    }
+
+    @Test
+    void clusteredSequenceComesFromBusAndIsReplayedOnAnyNode() throws Exception {
+        var bus = mock(WebSocketClusterBus.class);
+        when(bus.nextSequence("replay")).thenReturn(42L);
+        var replayDispatcher = new WebSocketDispatcher(registry, 2, 16, 10, 3, 200, 1024, 1000, 3000, 2, 16, 60_000);
+        var publisher = new WebSocketHandler("replay", replayDispatcher, bus, now::get);
+
+        publisher.sendMessage("owner", "{\"id\":1}");
+        verify(bus).publish("replay", "owner", 42, "{\"seq\":42,\"id\":1}");
+
+        // Otro nodo recibe la notificación ya numerada por el canal y la reenvía al reconectar
+        var otherNode = replayingHandler();
+        otherNode.deliverLocal("owner", 41, "{\"seq\":41,\"id\":0}");
+        otherNode.deliverLocal("owner", 42, "{\"seq\":42,\"id\":1}");
+        var session = session("1", "owner");
+        when(session.getUri()).thenReturn(URI.create("ws://localhost/ws/v1/cuentas?since=41"));
+
+        otherNode.afterConnectionEstablished(session);
+
+        verify(session).sendMessage(new TextMessage("{\"seq\":42,\"id\":1}"));
+    }
+
+    private WebSocketHandler replayingHandler() {
+        var replayDispatcher = new WebSocketDispatcher(registry, 2, 16, 10, 3, 200, 1024, 1000, 3000, 2, 16, 60_000);
+        return new WebSocketHandler("replay", replayDispatcher, null, now::get);
+    }
+
+    private static long seqOf(String payload) {
+        var matcher = Pattern.compile("\"seq\":(\\d+)").matcher(payload);
+        assertTrue(matcher.find(), payload);
+        return Long.parseLong(matcher.group(1));
+    }
+
+    @Test
+    void closedConnectionIsForgotten() throws Exception {
+        var session = session("1");
+        handler.afterConnectionEstablished(session);
+
+        handler.afterConnectionClosed(session, CloseStatus.NORMAL);
+
+        assertEquals(0, handler.getSessionCount());
+        assertFalse(handler.isConnected("client-1"));
+    }
+}
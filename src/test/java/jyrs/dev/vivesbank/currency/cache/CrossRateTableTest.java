@@ -0,0 +1,42 @@
+package jyrs.dev.vivesbank.currency.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CrossRateTableTest {
+
+    private final CrossRateTable table = CrossRateTable.of(Map.of("EUR", 1.0, "USD", 1.25, "GBP", 0.8));
+
+    @Test
+    void ordinalsFollowAlphabeticalOrder() {
+        assertEquals(0, table.ordinal("EUR"));
+        assertEquals(1, table.ordinal("GBP"));
+        assertEquals(2, table.ordinal("USD"));
+        assertEquals(CrossRateTable.UNKNOWN, table.ordinal("XXX"));
+        assertEquals("USD", table.code(2));
+    }
+
+    @Test
+    void crossRate() {
+        assertEquals(0.8 / 1.25, table.rate(table.ordinal("USD"), table.ordinal("GBP")), 1e-12);
+        assertEquals(1.0, table.rate(table.ordinal("USD"), table.ordinal("USD")), 1e-12);
+    }
+
+    @Test
+    void convertToSeveralTargets() {
+        double[] result = table.convert(100, table.ordinal("USD"), new int[]{table.ordinal("EUR"), table.ordinal("GBP")});
+
+        assertArrayEquals(new double[]{80.0, 64.0}, result, 1e-9);
+    }
+
+    @Test
+    void convertAllToOneTarget() {
+        double[] result = table.convertAll(new double[]{10, 125, 8},
+                new int[]{table.ordinal("EUR"), table.ordinal("USD"), table.ordinal("GBP")}, table.ordinal("EUR"));
+
+        assertArrayEquals(new double[]{10.0, 100.0, 10.0}, result, 1e-9);
+    }
+}
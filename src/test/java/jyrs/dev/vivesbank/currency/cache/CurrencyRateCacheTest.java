@@ -0,0 +1,161 @@
+package jyrs.dev.vivesbank.currency.cache;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import jyrs.dev.vivesbank.currency.exceptions.ApiCommunicationException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jyrs.dev.vivesbank.currency.rest.CurrencyApiClient;
+import jyrs.dev.vivesbank.currency.rest.RetrofitCurrency;
+import jyrs.dev.vivesbank.currency.storage.HistoricalRateStore;
+import okhttp3.OkHttpClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CurrencyRateCacheTest {
+
+    private static final String LATEST = """
+            {"amount":1.0,"base":"EUR","date":"2024-11-22","rates":{"USD":1.25,"GBP":0.85}}""";
+    private static final String HISTORICAL = """
+            {"amount":1.0,"base":"EUR","date":"2020-01-02","rates":{"USD":1.12}}""";
+
+    @TempDir
+    Path tempDir;
+
+    private HttpServer server;
+    private HistoricalRateStore historyStore;
+    private CurrencyApiClient apiClient;
+    private final AtomicReference<String> latestBody = new AtomicReference<>(LATEST);
+    private final AtomicInteger latestStatus = new AtomicInteger(200);
+    private final AtomicInteger historicalHits = new AtomicInteger();
+    private CurrencyRateCache cache;
+    private OkHttpClient httpClient;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/latest", exchange -> respond(exchange, latestStatus.get(), latestBody.get()));
+        server.createContext("/2020-01-02", exchange -> {
+            historicalHits.incrementAndGet();
+            respond(exchange, 200, HISTORICAL);
+        });
+        server.start();
+
+        var baseUrl = "http://localhost:" + server.getAddress().getPort() + "/";
+        httpClient = new OkHttpClient();
+        var api = RetrofitCurrency.getCurrencyApi(baseUrl, httpClient);
+        var reactiveApi = RetrofitCurrency.getReactiveCurrencyApi(baseUrl, httpClient);
+        historyStore = new HistoricalRateStore(tempDir.resolve("fx-rates.dat").toString());
+        apiClient = new CurrencyApiClient(new SimpleMeterRegistry(), 4, 100, 1000, 1, 5, 1000);
+        cache = new CurrencyRateCache(api, reactiveApi, apiClient, historyStore);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        server.stop(0);
+        httpClient.dispatcher().executorService().shutdown();
+        httpClient.connectionPool().evictAll();
+        apiClient.shutdown();
+        historyStore.close();
+    }
+
+    @Test
+    void latestLoadsFullTable() {
+        var snapshot = cache.latest();
+
+        assertEquals("2024-11-22", snapshot.date());
+        assertEquals(1.0, snapshot.rates().get("EUR"));
+        assertEquals(0.85 / 1.25, snapshot.rate("USD", "GBP"), 1e-9);
+        assertEquals("USD", snapshot.rebase("USD", "EUR,GBP").getBase());
+    }
+
+    @Test
+    void refreshReplacesSnapshot() {
+        cache.latest();
+        latestBody.set("""
+                {"amount":1.0,"base":"EUR","date":"2024-11-25","rates":{"USD":1.30}}""");
+
+        cache.refresh();
+
+        assertEquals("2024-11-25", cache.latest().date());
+        assertEquals(1.30, cache.latest().rates().get("USD"));
+    }
+
+    @Test
+    void refreshKeepsLastSnapshotWhenUpstreamFails() {
+        cache.refresh();
+        latestStatus.set(503);
+
+        cache.refresh();
+
+        assertEquals("2024-11-22", cache.latest().date());
+    }
+
+    @Test
+    void latestWithoutSnapshotFailsWhenUpstreamFails() {
+        latestStatus.set(503);
+
+        var exception = assertThrows(ApiCommunicationException.class, () -> cache.latest());
+        assertTrue(exception.getMessage().contains("503"));
+    }
+
+    @Test
+    void historicalIsFetchedOnce() {
+        var first = cache.historical("2020-01-02");
+        var second = cache.historical("2020-01-02");
+
+        assertEquals(1.12, first.rates().get("USD"));
+        assertEquals(first.rates(), second.rates());
+        assertEquals("2020-01-02", second.date());
+        assertEquals(1, historicalHits.get());
+    }
+
+    @Test
+    void latestAsyncServesSnapshotWithoutRefetching() {
+        var first = cache.latestAsync().block(Duration.ofSeconds(5));
+        latestBody.set("""
+                {"amount":1.0,"base":"EUR","date":"2024-11-25","rates":{"USD":1.30}}""");
+        var second = cache.latestAsync().block(Duration.ofSeconds(5));
+
+        assertEquals("2024-11-22", first.date());
+        assertSame(first, second);
+    }
+
+    @Test
+    void latestAsyncFailsWhenUpstreamFails() {
+        latestStatus.set(503);
+
+        var exception = assertThrows(ApiCommunicationException.class, () -> cache.latestAsync().block(Duration.ofSeconds(5)));
+        assertTrue(exception.getMessage().contains("503"));
+    }
+
+    @Test
+    void historicalAsyncIsStored() {
+        var first = cache.historicalAsync("2020-01-02").block(Duration.ofSeconds(5));
+        var second = cache.historical("2020-01-02");
+
+        assertEquals(1.12, first.rates().get("USD"));
+        assertEquals(first.rates(), second.rates());
+        assertEquals(1, historicalHits.get());
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (var out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
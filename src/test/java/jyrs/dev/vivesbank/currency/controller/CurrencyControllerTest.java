@@ -1,6 +1,10 @@
 package jyrs.dev.vivesbank.currency.controller;
 
 import jyrs.dev.vivesbank.VivesBankApplication;
+import jyrs.dev.vivesbank.currency.dto.BulkConversionRequest;
+import jyrs.dev.vivesbank.currency.dto.BulkConversionResponse;
+import jyrs.dev.vivesbank.currency.exceptions.CurrencyNotFoundException;
+import jyrs.dev.vivesbank.currency.exceptions.InvalidDateRangeException;
 import jyrs.dev.vivesbank.currency.rest.responses.CurrencyResponse;
 import jyrs.dev.vivesbank.currency.rest.responses.TimeSeriesResponse;
 import jyrs.dev.vivesbank.currency.rest.responses.getById.getCurrencyById;
@@ -13,11 +17,20 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
 import org.springframework.test.web.servlet.ResultMatcher;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import reactor.core.publisher.Mono;
+import java.util.List;
 import java.util.Map;
+import org.springframework.http.MediaType;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.times;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest
@@ -62,88 +75,115 @@ class CurrencyControllerTest {
     public void testGetCurrencyDetails() throws Exception {
         getCurrencyById mockResponse = new getCurrencyById("USD", 1.0, "2024-11-21");
 
-        Mockito.when(currencyService.getCurrencyDetails("USD")).thenReturn(mockResponse);
+        Mockito.when(currencyService.getCurrencyDetailsAsync("USD")).thenReturn(Mono.just(mockResponse));
 
-        mockMvc.perform(get("/currency/USD"))
+        performAsync(get("/currency/USD"))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.symbol").value("USD"))
                 .andExpect(jsonPath("$.rate").value(1.0))
                 .andExpect(jsonPath("$.date").value("2024-11-21"));
 
-        Mockito.verify(currencyService, times(1)).getCurrencyDetails("USD");
+        Mockito.verify(currencyService, times(1)).getCurrencyDetailsAsync("USD");
     }
 
     @Test
     public void testGetCurrencyDetailsException() throws Exception {
-        Mockito.when(currencyService.getCurrencyDetails("USD"))
-                .thenThrow(new RuntimeException("Simulated service error"));
+        Mockito.when(currencyService.getCurrencyDetailsAsync("USD"))
+                .thenReturn(Mono.error(new RuntimeException("Simulated service error")));
 
-        mockMvc.perform(get("/currency/USD"))
+        performAsync(get("/currency/USD"))
                 .andExpect(status().isInternalServerError())
                 .andExpect(jsonPath("$.error").value("Error al comunicarse con la API: Simulated service error"));
 
-        Mockito.verify(currencyService, times(1)).getCurrencyDetails("USD");
+        Mockito.verify(currencyService, times(1)).getCurrencyDetailsAsync("USD");
     }
 
     @Test
     public void testGetHistoricalCurrencyDetails() throws Exception {
         getCurrencyById mockResponse = new getCurrencyById("EUR", 0.85, "2022-12-30");
 
-        Mockito.when(currencyService.getHistoricalCurrencyDetails("2022-12-30", "EUR"))
-                .thenReturn(mockResponse);
+        Mockito.when(currencyService.getHistoricalCurrencyDetailsAsync("2022-12-30", "EUR"))
+                .thenReturn(Mono.just(mockResponse));
 
-        mockMvc.perform(get("/currency/history/2022-12-30").param("symbols", "EUR"))
+        performAsync(get("/currency/history/2022-12-30").param("symbols", "EUR"))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.symbol").value("EUR"))
                 .andExpect(jsonPath("$.rate").value(0.85))
                 .andExpect(jsonPath("$.date").value("2022-12-30"));
 
-        Mockito.verify(currencyService, times(1)).getHistoricalCurrencyDetails("2022-12-30", "EUR");
+        Mockito.verify(currencyService, times(1)).getHistoricalCurrencyDetailsAsync("2022-12-30", "EUR");
     }
 
     @Test
     public void testGetHistoricalCurrencyDetailsException() throws Exception {
-        Mockito.when(currencyService.getHistoricalCurrencyDetails("2022-01-01", "EUR"))
-                .thenThrow(new RuntimeException("Simulated service error"));
+        Mockito.when(currencyService.getHistoricalCurrencyDetailsAsync("2022-01-01", "EUR"))
+                .thenReturn(Mono.error(new RuntimeException("Simulated service error")));
 
-        mockMvc.perform(get("/currency/history/2022-01-01")
+        performAsync(get("/currency/history/2022-01-01")
                         .param("symbols", "EUR"))
                 .andExpect(status().isInternalServerError())
                 .andExpect(jsonPath("$.error").value("Error al comunicarse con la API: Simulated service error"));
 
-        Mockito.verify(currencyService, times(1)).getHistoricalCurrencyDetails("2022-01-01", "EUR");
+        Mockito.verify(currencyService, times(1)).getHistoricalCurrencyDetailsAsync("2022-01-01", "EUR");
+    }
+
+
+    @Test
+    public void testConvertBulk() throws Exception {
+        Mockito.when(currencyService.convertBulk(any(BulkConversionRequest.class)))
+                .thenReturn(new BulkConversionResponse("EUR", "2024-11-22", List.of(100.0, 10.0), 110.0));
+
+        mockMvc.perform(post("/currency/convert/bulk")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"target":"EUR","items":[{"currency":"USD","amount":125.0},{"currency":"GBP","amount":8.0}]}"""))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.amounts[0]").value(100.0))
+                .andExpect(jsonPath("$.total").value(110.0));
     }
 
+    @Test
+    public void testConvertBulkUnknownCurrency() throws Exception {
+        Mockito.when(currencyService.convertBulk(any(BulkConversionRequest.class)))
+                .thenThrow(new CurrencyNotFoundException("La divisa 'XXX' no existe en las tasas."));
+
+        mockMvc.perform(post("/currency/convert/bulk")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"target":"EUR","items":[{"currency":"XXX","amount":1.0}]}"""))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("La divisa 'XXX' no existe en las tasas."));
+    }
 
     @Test
     public void testConvertCurrency() throws Exception {
         Map<String, Double> mockResponse = Map.of("EUR", 85.0);
 
-        Mockito.when(currencyService.convertCurrency("USD", "EUR", 100.0)).thenReturn(mockResponse);
+        Mockito.when(currencyService.convertCurrencyAsync("USD", "EUR", 100.0)).thenReturn(Mono.just(mockResponse));
 
-        mockMvc.perform(get("/currency/convert")
+        performAsync(get("/currency/convert")
                         .param("base", "USD")
                         .param("symbols", "EUR")
                         .param("amount", "100"))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.EUR").value(85.0));
 
-        Mockito.verify(currencyService, times(1)).convertCurrency("USD", "EUR", 100.0);
+        Mockito.verify(currencyService, times(1)).convertCurrencyAsync("USD", "EUR", 100.0);
     }
 
     @Test
     public void testConvertCurrencyException() throws Exception {
-        Mockito.when(currencyService.convertCurrency("USD", "EUR", 100))
-                .thenThrow(new RuntimeException("Simulated service error"));
+        Mockito.when(currencyService.convertCurrencyAsync("USD", "EUR", 100))
+                .thenReturn(Mono.error(new RuntimeException("Simulated service error")));
 
-        mockMvc.perform(get("/currency/convert")
+        performAsync(get("/currency/convert")
                         .param("base", "USD")
                         .param("symbols", "EUR")
                         .param("amount", "100"))
                 .andExpect(status().isInternalServerError())
                 .andExpect(jsonPath("$.error").value("Error al comunicarse con la API: Simulated service error"));
 
-        Mockito.verify(currencyService, times(1)).convertCurrency("USD", "EUR", 100);
+        Mockito.verify(currencyService, times(1)).convertCurrencyAsync("USD", "EUR", 100);
     }
 
 
@@ -153,10 +193,10 @@ class CurrencyControllerTest {
         TimeSeriesResponse mockResponse = new TimeSeriesResponse("USD", "2022-01-01", "2022-01-05",
                 Map.of("2022-01-01", Map.of("EUR", 0.85), "2022-01-05", Map.of("EUR", 0.87)));
 
-        Mockito.when(currencyService.getTimeSeriesRates("2022-01-01", "2022-01-05", "USD", "EUR"))
-                .thenReturn(mockResponse);
+        Mockito.when(currencyService.getTimeSeriesRatesAsync("2022-01-01", "2022-01-05", "USD", "EUR"))
+                .thenReturn(Mono.just(mockResponse));
 
-        mockMvc.perform(get("/currency/timeseries")
+        performAsync(get("/currency/timeseries")
                         .param("start_date", "2022-01-01")
                         .param("end_date", "2022-01-05")
                         .param("base", "USD")
@@ -167,15 +207,15 @@ class CurrencyControllerTest {
                 .andExpect(jsonPath("$.rates.2022-01-05.EUR").value(0.87));
 
         Mockito.verify(currencyService, times(1))
-                .getTimeSeriesRates("2022-01-01", "2022-01-05", "USD", "EUR");
+                .getTimeSeriesRatesAsync("2022-01-01", "2022-01-05", "USD", "EUR");
     }
 
     @Test
     public void testGetTimeSeriesRatesException() throws Exception {
-        Mockito.when(currencyService.getTimeSeriesRates("2022-01-01", "2022-01-05", "USD", "EUR"))
-                .thenThrow(new RuntimeException("Simulated service error"));
+        Mockito.when(currencyService.getTimeSeriesRatesAsync("2022-01-01", "2022-01-05", "USD", "EUR"))
+                .thenReturn(Mono.error(new RuntimeException("Simulated service error")));
 
-        mockMvc.perform(get("/currency/timeseries")
+        performAsync(get("/currency/timeseries")
                         .param("start_date", "2022-01-01")
                         .param("end_date", "2022-01-05")
                         .param("base", "USD")
@@ -184,10 +224,24 @@ class CurrencyControllerTest {
                 .andExpect(jsonPath("$.error").value("Error al comunicarse con la API: Simulated service error"));
 
         Mockito.verify(currencyService, times(1))
-                .getTimeSeriesRates("2022-01-01", "2022-01-05", "USD", "EUR");
+                .getTimeSeriesRatesAsync("2022-01-01", "2022-01-05", "USD", "EUR");
     }
 
 
+    @Test
+    public void testGetTimeSeriesRatesInvalidRange() throws Exception {
+        Mockito.when(currencyService.getTimeSeriesRatesAsync("2022-02-01", "2022-01-01", "USD", "EUR"))
+                .thenReturn(Mono.error(new InvalidDateRangeException("La fecha de inicio 2022-02-01 es posterior a la de fin 2022-01-01")));
+
+        performAsync(get("/currency/timeseries")
+                        .param("start_date", "2022-02-01")
+                        .param("end_date", "2022-01-01")
+                        .param("base", "USD")
+                        .param("symbols", "EUR"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("La fecha de inicio 2022-02-01 es posterior a la de fin 2022-01-01"));
+    }
+
     @Test
     public void testGetLatestRatesOk() throws Exception {
         CurrencyResponse mockResponse = new CurrencyResponse();
@@ -195,9 +249,9 @@ class CurrencyControllerTest {
         mockResponse.setDate("2024-11-21");
         mockResponse.setRates(Map.of("EUR", 0.85));
 
-        Mockito.when(currencyService.getLatestRates("USD", "EUR")).thenReturn(mockResponse);
+        Mockito.when(currencyService.getLatestRatesAsync("USD", "EUR")).thenReturn(Mono.just(mockResponse));
 
-        mockMvc.perform(get("/currency/latest")
+        performAsync(get("/currency/latest")
                         .param("base", "USD")
                         .param("symbols", "EUR"))
                 .andExpect(status().isOk())
@@ -205,21 +259,21 @@ class CurrencyControllerTest {
                 .andExpect(jsonPath("$.date").value("2024-11-21"))
                 .andExpect(jsonPath("$.rates.EUR").value(0.85));
 
-        Mockito.verify(currencyService, times(1)).getLatestRates("USD", "EUR");
+        Mockito.verify(currencyService, times(1)).getLatestRatesAsync("USD", "EUR");
     }
 
     @Test
     public void testGetLatestRatesException() throws Exception {
-        Mockito.when(currencyService.getLatestRates("USD", "EUR"))
-                .thenThrow(new RuntimeException("Simulated service error"));
+        Mockito.when(currencyService.getLatestRatesAsync("USD", "EUR"))
+                .thenReturn(Mono.error(new RuntimeException("Simulated service error")));
 
-        mockMvc.perform(get("/currency/latest")
+        performAsync(get("/currency/latest")
                         .param("base", "USD")
                         .param("symbols", "EUR"))
                 .andExpect(status().isInternalServerError())
                 .andExpect(jsonPath("$.error").value("Error al comunicarse con la API: Simulated service error"));
 
-        Mockito.verify(currencyService, times(1)).getLatestRates("USD", "EUR");
+        Mockito.verify(currencyService, times(1)).getLatestRatesAsync("USD", "EUR");
     }
 
 
@@ -250,5 +304,10 @@ class CurrencyControllerTest {
         Mockito.verify(currencyService, times(1)).getAvailableCurrencies();
     }
 
-
-}
\ No newline at end of file
+    private ResultActions performAsync(MockHttpServletRequestBuilder request) throws Exception {
+        var result = mockMvc.perform(request)
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        return mockMvc.perform(asyncDispatch(result));
+    }
+}
@@ -0,0 +1,271 @@
+package jyrs.dev.vivesbank.currency.rest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jyrs.dev.vivesbank.currency.exceptions.ApiCommunicationException;
+import jyrs.dev.vivesbank.currency.rest.responses.CurrencyResponse;
+import okhttp3.OkHttpClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+import retrofit2.Response;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CurrencyApiClientTest {
+
+    private static final String LATEST = """
+            {"amount":1.0,"base":"EUR","date":"2024-11-22","rates":{"USD":1.25}}""";
+
+    private HttpServer server;
+    private CurrencyApiRest api;
+    private CurrencyApiReactiveRest reactiveApi;
+    private SimpleMeterRegistry registry;
+    private CurrencyApiClient client;
+    private final AtomicInteger hits = new AtomicInteger();
+    private volatile Handler handler = (exchange, hit) -> respond(exchange, 200, LATEST);
+    private OkHttpClient httpClient;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/latest", exchange -> handler.handle(exchange, hits.incrementAndGet()));
+        server.start();
+
+        var baseUrl = "http://localhost:" + server.getAddress().getPort() + "/";
+        httpClient = new OkHttpClient();
+        api = RetrofitCurrency.getCurrencyApi(baseUrl, httpClient);
+        reactiveApi = RetrofitCurrency.getReactiveCurrencyApi(baseUrl, httpClient);
+        registry = new SimpleMeterRegistry();
+        client = new CurrencyApiClient(registry, 2, 50, 200, 2, 3, 60_000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        client.shutdown();
+        httpClient.dispatcher().executorService().shutdown();
+        httpClient.connectionPool().evictAll();
+        server.stop(0);
+    }
+
+    @Test
+    void coalescesIdenticalConcurrentCalls() throws Exception {
+        var release = new CountDownLatch(1);
+        handler = (exchange, hit) -> {
+            await(release);
+            respond(exchange, 200, LATEST);
+        };
+
+        List<Future<Response<CurrencyResponse>>> results = new ArrayList<>();
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 10; i++) {
+                results.add(executor.submit(() -> client.execute("latest", () -> api.getLatestRates("EUR", null))));
+            }
+            Thread.sleep(100);
+            release.countDown();
+            for (var result : results) {
+                assertEquals(1.25, result.get(5, TimeUnit.SECONDS).body().getRates().get("USD"));
+            }
+        }
+
+        assertEquals(9, registry.get("currency.client.calls").tag("type", "coalesced").counter().count());
+        assertEquals(0.9, client.coalescingRatio(), 1e-9);
+        assertEquals(1, registry.get("currency.upstream.latency").tag("outcome", "success").timer().count());
+    }
+
+    @Test
+    void hedgesSlowRequest() throws IOException {
+        var slow = new CountDownLatch(1);
+        handler = (exchange, hit) -> {
+            if (hit == 1) {
+                await(slow);
+            }
+            respond(exchange, 200, LATEST);
+        };
+
+        long start = System.nanoTime();
+        var response = client.execute("latest", () -> api.getLatestRates("EUR", null));
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        slow.countDown();
+
+        assertTrue(response.isSuccessful());
+        assertEquals(2, hits.get());
+        assertTrue(elapsedMs < 3_000);
+    }
+
+    @Test
+    void retriesServerErrors() throws IOException {
+        handler = (exchange, hit) -> respond(exchange, hit == 1 ? 503 : 200, LATEST);
+
+        var response = client.execute("latest", () -> api.getLatestRates("EUR", null));
+
+        assertTrue(response.isSuccessful());
+        assertEquals(2, hits.get());
+    }
+
+    @Test
+    void clientErrorsAreNotRetried() throws IOException {
+        handler = (exchange, hit) -> respond(exchange, 404, "{}");
+
+        var response = client.execute("latest", () -> api.getLatestRates("EUR", null));
+
+        assertEquals(404, response.code());
+        assertEquals(1, hits.get());
+    }
+
+    @Test
+    void opensCircuitAfterRepeatedFailures() throws IOException {
+        handler = (exchange, hit) -> respond(exchange, 500, "{}");
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(500, client.execute("latest", () -> api.getLatestRates("EUR", null)).code());
+        }
+        int upstreamHits = hits.get();
+
+        assertEquals(CurrencyApiClient.State.OPEN, client.state());
+        assertThrows(ApiCommunicationException.class, () -> client.execute("latest", () -> api.getLatestRates("EUR", null)));
+        assertEquals(upstreamHits, hits.get());
+    }
+
+    @Test
+    void interruptedTrialReopensCircuit() throws Exception {
+        var breaker = new CurrencyApiClient(new SimpleMeterRegistry(), 1, 50, 200, 1, 1, 50);
+        try {
+            handler = (exchange, hit) -> respond(exchange, 500, "{}");
+            breaker.execute("latest", () -> api.getLatestRates("EUR", null));
+            assertEquals(CurrencyApiClient.State.OPEN, breaker.state());
+            Thread.sleep(60);
+
+            Thread.currentThread().interrupt();
+            try {
+                assertThrows(ApiCommunicationException.class, () -> breaker.execute("latest", () -> api.getLatestRates("EUR", null)));
+            } finally {
+                Thread.interrupted();
+            }
+            assertEquals(CurrencyApiClient.State.OPEN, breaker.state());
+
+            handler = (exchange, hit) -> respond(exchange, 200, LATEST);
+            Thread.sleep(60);
+            assertTrue(breaker.execute("latest", () -> api.getLatestRates("EUR", null)).isSuccessful());
+            assertEquals(CurrencyApiClient.State.CLOSED, breaker.state());
+        } finally {
+            breaker.shutdown();
+        }
+    }
+
+    @Test
+    void cancelledAsyncTrialReopensCircuit() throws Exception {
+        var breaker = new CurrencyApiClient(new SimpleMeterRegistry(), 1, 50, 200, 1, 1, 50);
+        var release = new CountDownLatch(1);
+        try {
+            handler = (exchange, hit) -> respond(exchange, 500, "{}");
+            breaker.execute("latest", () -> api.getLatestRates("EUR", null));
+            Thread.sleep(60);
+
+            handler = (exchange, hit) -> {
+                await(release);
+                respond(exchange, 200, LATEST);
+            };
+            Supplier<Mono<CurrencyResponse>> call = () -> reactiveApi.getLatestRates("EUR", null);
+            Mono<CurrencyResponse> guarded = ReflectionTestUtils.invokeMethod(breaker, "guardedAsync", call);
+            var trial = guarded.subscribe();
+            assertEquals(CurrencyApiClient.State.HALF_OPEN, breaker.state());
+            trial.dispose();
+
+            assertEquals(CurrencyApiClient.State.OPEN, breaker.state());
+        } finally {
+            release.countDown();
+            breaker.shutdown();
+        }
+    }
+
+    @Test
+    void bulkheadRejectsWhenFull() throws Exception {
+        var release = new CountDownLatch(1);
+        handler = (exchange, hit) -> {
+            await(release);
+            respond(exchange, 200, LATEST);
+        };
+
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            var first = executor.submit(() -> client.execute("a", () -> api.getLatestRates("EUR", null)));
+            var second = executor.submit(() -> client.execute("b", () -> api.getLatestRates("EUR", "USD")));
+            Thread.sleep(100);
+
+            assertThrows(ApiCommunicationException.class, () -> client.execute("c", () -> api.getLatestRates("EUR", "GBP")));
+
+            release.countDown();
+            assertTrue(first.get(5, TimeUnit.SECONDS).isSuccessful());
+            assertTrue(second.get(5, TimeUnit.SECONDS).isSuccessful());
+        }
+    }
+
+    @Test
+    void asyncCoalescesIdenticalConcurrentCalls() {
+        var release = new CountDownLatch(1);
+        handler = (exchange, hit) -> {
+            await(release);
+            respond(exchange, 200, LATEST);
+        };
+
+        var first = client.executeAsync("latest", () -> reactiveApi.getLatestRates("EUR", null));
+        var second = client.executeAsync("latest", () -> reactiveApi.getLatestRates("EUR", null));
+        var combined = first.zipWith(second).toFuture();
+        release.countDown();
+
+        var results = combined.join();
+        assertEquals(1.25, results.getT1().getRates().get("USD"));
+        assertSame(results.getT1(), results.getT2());
+        assertEquals(1, hits.get());
+    }
+
+    @Test
+    void asyncRetriesServerErrors() {
+        handler = (exchange, hit) -> respond(exchange, hit == 1 ? 503 : 200, LATEST);
+
+        var response = client.executeAsync("latest", () -> reactiveApi.getLatestRates("EUR", null))
+                .block(Duration.ofSeconds(5));
+
+        assertEquals(1.25, response.getRates().get("USD"));
+        assertEquals(2, hits.get());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (var out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Handler {
+        void handle(HttpExchange exchange, int hit) throws IOException;
+    }
+}
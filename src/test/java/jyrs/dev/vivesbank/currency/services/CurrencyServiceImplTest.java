@@ -1,27 +1,39 @@
 package jyrs.dev.vivesbank.currency.services;
 
+import jyrs.dev.vivesbank.currency.cache.CurrencyRateCache;
+import jyrs.dev.vivesbank.currency.dto.BulkConversionRequest;
+import jyrs.dev.vivesbank.currency.dto.BulkConversionResponse;
 import jyrs.dev.vivesbank.currency.exceptions.ApiCommunicationException;
 import jyrs.dev.vivesbank.currency.exceptions.CurrencyNotFoundException;
+import jyrs.dev.vivesbank.currency.exceptions.InvalidDateRangeException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jyrs.dev.vivesbank.currency.rest.CurrencyApiClient;
+import jyrs.dev.vivesbank.currency.rest.CurrencyApiReactiveRest;
 import jyrs.dev.vivesbank.currency.rest.CurrencyApiRest;
 import jyrs.dev.vivesbank.currency.rest.responses.CurrencyResponse;
 import jyrs.dev.vivesbank.currency.rest.responses.TimeSeriesResponse;
 import jyrs.dev.vivesbank.currency.rest.responses.getById.getCurrencyById;
+import jyrs.dev.vivesbank.currency.storage.HistoricalRateStore;
 import okhttp3.MediaType;
 import okhttp3.Request;
 import okhttp3.ResponseBody;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import retrofit2.Call;
 import retrofit2.Response;
 
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.Map;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 import org.junit.jupiter.api.BeforeEach;
 import org.mockito.*;
 import java.util.HashMap;
+import java.util.List;
 
 
 public class CurrencyServiceImplTest {
@@ -29,12 +41,29 @@ public class CurrencyServiceImplTest {
     @Mock
     private CurrencyApiRest currencyApiRest;
 
+    @Mock
+    private CurrencyApiReactiveRest currencyApiReactiveRest;
+
+    @TempDir
+    Path tempDir;
+
+    private HistoricalRateStore historyStore;
+    private CurrencyApiClient apiClient;
     private CurrencyServiceImpl currencyService;
 
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
-        currencyService = new CurrencyServiceImpl(currencyApiRest);
+        historyStore = new HistoricalRateStore(tempDir.resolve("fx-rates.dat").toString());
+        apiClient = new CurrencyApiClient(new SimpleMeterRegistry(), 4, 100, 1000, 2, 5, 1000);
+        currencyService = new CurrencyServiceImpl(currencyApiRest, apiClient,
+                new CurrencyRateCache(currencyApiRest, currencyApiReactiveRest, apiClient, historyStore), historyStore, 366);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        apiClient.shutdown();
+        historyStore.close();
     }
 
     @Test
@@ -67,20 +96,13 @@ public class CurrencyServiceImplTest {
     @Test
     void testGetCurrencyDetailsOk() throws Exception {
         String symbol = "USD";
-        CurrencyResponse mockCurrencyResponse = new CurrencyResponse();
-        mockCurrencyResponse.setRates(Map.of("USD", 1.0));
-
-        Call<CurrencyResponse> call = Mockito.mock(Call.class);
-        Request request = new Request.Builder().url("https://api.example.com/currency/" + symbol).build();
-        when(call.request()).thenReturn(request);
-        when(call.execute()).thenReturn(Response.success(mockCurrencyResponse));
-
-        when(currencyApiRest.getCurrencyById(symbol)).thenReturn(call);
+        mockLatest(Map.of("USD", 1.08));
 
         getCurrencyById result = currencyService.getCurrencyDetails(symbol);
 
         assertNotNull(result);
         assertEquals("USD", result.getSymbol());
+        assertEquals(1.08, result.getRate());
     }
 
     @Test
@@ -94,7 +116,7 @@ public class CurrencyServiceImplTest {
         Response<CurrencyResponse> response = Response.success(mockCurrencyResponse);
         when(call.execute()).thenReturn(response);
 
-        when(currencyApiRest.getHistoricalRates(date, symbol)).thenReturn(call);
+        when(currencyApiRest.getHistoricalRates(date, null)).thenReturn(call);
 
         CurrencyNotFoundException exception = assertThrows(CurrencyNotFoundException.class, () -> {
             currencyService.getHistoricalCurrencyDetails(date, symbol);  // Método que estás probando
@@ -109,11 +131,9 @@ public class CurrencyServiceImplTest {
         String symbol = "USD";
 
         Call<CurrencyResponse> call = Mockito.mock(Call.class);
-        Request request = new Request.Builder().url("https://api.example.com/currency/" + symbol).build();
-        when(call.request()).thenReturn(request);
         when(call.execute()).thenThrow(new IOException("Simulated network error"));
 
-        when(currencyApiRest.getCurrencyById(symbol)).thenReturn(call);
+        when(currencyApiRest.getLatestRates("EUR", null)).thenReturn(call);
 
         // Ejecutar y verificar el comportamiento
         ApiCommunicationException exception = assertThrows(ApiCommunicationException.class,
@@ -129,18 +149,16 @@ public class CurrencyServiceImplTest {
         String symbol = "USD";
 
         Call<CurrencyResponse> call = Mockito.mock(Call.class);
-        Request request = new Request.Builder().url("https://api.example.com/currency/" + symbol).build();
-        when(call.request()).thenReturn(request);
         when(call.execute()).thenReturn(Response.error(500, ResponseBody.create("Error interno", MediaType.get("application/json"))));
 
-        when(currencyApiRest.getCurrencyById(symbol)).thenReturn(call);
+        when(currencyApiRest.getLatestRates("EUR", null)).thenReturn(call);
 
         // Ejecutar y verificar el comportamiento
         ApiCommunicationException exception = assertThrows(ApiCommunicationException.class,
                 () -> currencyService.getCurrencyDetails(symbol)
         );
 
-        assertTrue(exception.getMessage().contains("Error al obtener la respuesta de la API."));
+        assertTrue(exception.getMessage().contains("Código de error: 500"));
     }
 
 
@@ -152,12 +170,14 @@ public class CurrencyServiceImplTest {
         mockCurrencyResponse.setRates(Map.of("USD", 1.0));
         Call<CurrencyResponse> mockCall = Mockito.mock(Call.class);
         when(mockCall.execute()).thenReturn(Response.success(mockCurrencyResponse));
-        when(currencyApiRest.getHistoricalRates(date, symbol)).thenReturn(mockCall);
+        when(currencyApiRest.getHistoricalRates(date, null)).thenReturn(mockCall);
 
         getCurrencyById result = currencyService.getHistoricalCurrencyDetails(date, symbol);
+        currencyService.getHistoricalCurrencyDetails(date, symbol);
 
         assertNotNull(result);
         assertEquals("USD", result.getSymbol());
+        verify(currencyApiRest, times(1)).getHistoricalRates(date, null);
     }
 
     @Test
@@ -180,11 +200,9 @@ public class CurrencyServiceImplTest {
         String symbol = "USD";
 
         Call<CurrencyResponse> call = Mockito.mock(Call.class);
-        Request request = new Request.Builder().url("https://api.example.com/historical/" + date + "?symbol=" + symbol).build();
-        when(call.request()).thenReturn(request);
         when(call.execute()).thenReturn(Response.success(null));
 
-        when(currencyApiRest.getHistoricalRates(date, symbol)).thenReturn(call);
+        when(currencyApiRest.getHistoricalRates(date, null)).thenReturn(call);
 
         ApiCommunicationException exception = assertThrows(ApiCommunicationException.class,
                 () -> currencyService.getHistoricalCurrencyDetails(date, symbol)
@@ -199,17 +217,12 @@ public class CurrencyServiceImplTest {
         String base = "USD";
         String symbols = "EUR";
         double amount = 100.0;
-        CurrencyResponse mockCurrencyResponse = new CurrencyResponse();
-        mockCurrencyResponse.setRates(Map.of("EUR", 0.85));
-
-        Call<CurrencyResponse> mockCall = Mockito.mock(Call.class);
-        when(mockCall.execute()).thenReturn(Response.success(mockCurrencyResponse));
-        when(currencyApiRest.getConversionRates(base, symbols)).thenReturn(mockCall);
+        mockLatest(Map.of("USD", 1.25));
 
         Map<String, Double> result = currencyService.convertCurrency(base, symbols, amount);
 
         assertNotNull(result);
-        assertTrue(result.containsKey("EUR"));
+        assertEquals(80.0, result.get("EUR"), 1e-9);
     }
 
     // Error de comunicación en la conversión de moneda
@@ -218,7 +231,7 @@ public class CurrencyServiceImplTest {
         String base = "USD";
         String symbols = "EUR";
         double amount = 100.0;
-        when(currencyApiRest.getConversionRates(base, symbols)).thenThrow(new RuntimeException("Error al obtener tasas de conversión"));
+        when(currencyApiRest.getLatestRates("EUR", null)).thenThrow(new ApiCommunicationException("Error al obtener tasas de conversión"));
 
         ApiCommunicationException exception = assertThrows(ApiCommunicationException.class, () -> {
             currencyService.convertCurrency(base, symbols, amount);
@@ -237,7 +250,7 @@ public class CurrencyServiceImplTest {
         Response<CurrencyResponse> errorResponse = Response.error(404, ResponseBody.create(MediaType.parse("application/json"), "{}"));
 
         Call<CurrencyResponse> mockCall = mock(Call.class);
-        when(currencyApiRest.getConversionRates(base, symbols)).thenReturn(mockCall);
+        when(currencyApiRest.getLatestRates("EUR", null)).thenReturn(mockCall);
         when(mockCall.execute()).thenReturn(errorResponse);
 
         ApiCommunicationException exception = assertThrows(ApiCommunicationException.class, () -> {
@@ -246,7 +259,48 @@ public class CurrencyServiceImplTest {
 
         assertEquals("Error al comunicarse con la API de conversión: Error al obtener las tasas de cambio. Código de error: 404", exception.getMessage());
 
-        verify(currencyApiRest).getConversionRates(base, symbols);
+        verify(currencyApiRest).getLatestRates("EUR", null);
+    }
+
+    @Test
+    void testConvertCurrencyUsesSnapshot() throws Exception {
+        mockLatest(Map.of("USD", 1.25, "GBP", 0.85));
+
+        currencyService.convertCurrency("USD", "EUR", 100.0);
+        Map<String, Double> result = currencyService.convertCurrency("GBP", "USD", 10.0);
+
+        assertEquals(10.0 * 1.25 / 0.85, result.get("USD"), 1e-9);
+        verify(currencyApiRest, times(1)).getLatestRates("EUR", null);
+    }
+
+
+    @Test
+    void testConvertBulkOk() throws Exception {
+        mockLatest(Map.of("USD", 1.25, "GBP", 0.8));
+        var request = new BulkConversionRequest("EUR", List.of(
+                new BulkConversionRequest.Item("USD", 125.0),
+                new BulkConversionRequest.Item("GBP", 8.0),
+                new BulkConversionRequest.Item("EUR", 5.0)));
+
+        BulkConversionResponse response = currencyService.convertBulk(request);
+
+        assertEquals("EUR", response.target());
+        assertEquals("2024-11-22", response.date());
+        assertEquals(100.0, response.amounts().get(0), 1e-9);
+        assertEquals(10.0, response.amounts().get(1), 1e-9);
+        assertEquals(5.0, response.amounts().get(2), 1e-9);
+        assertEquals(115.0, response.total(), 1e-9);
+    }
+
+    @Test
+    void testConvertBulkUnknownCurrency() throws Exception {
+        mockLatest(Map.of("USD", 1.25));
+        var request = new BulkConversionRequest("EUR", List.of(new BulkConversionRequest.Item("XXX", 1.0)));
+
+        CurrencyNotFoundException exception = assertThrows(CurrencyNotFoundException.class,
+                () -> currencyService.convertBulk(request));
+
+        assertEquals("La divisa 'XXX' no existe en las tasas.", exception.getMessage());
     }
 
 
@@ -257,16 +311,23 @@ public class CurrencyServiceImplTest {
         String base = "EUR";
         String symbols = "USD,GBP";
 
-        TimeSeriesResponse mockResponse = new TimeSeriesResponse();
+        TimeSeriesResponse mockResponse = new TimeSeriesResponse("EUR", startDate, endDate, Map.of(
+                "2022-01-03", Map.of("USD", 1.13, "GBP", 0.84),
+                "2022-01-04", Map.of("USD", 1.12, "GBP", 0.83)));
 
         Call<TimeSeriesResponse> mockCall = Mockito.mock(Call.class);
         when(mockCall.execute()).thenReturn(Response.success(mockResponse));
 
-        when(currencyApiRest.getTimeSeriesRates(startDate, endDate, base, symbols)).thenReturn(mockCall);
+        when(currencyApiRest.getTimeSeriesRates(startDate, endDate, "EUR", null)).thenReturn(mockCall);
 
         TimeSeriesResponse response = currencyService.getTimeSeriesRates(startDate, endDate, base, symbols);
+        TimeSeriesResponse cached = currencyService.getTimeSeriesRates("2022-01-02", "2022-01-10", "USD", "EUR");
 
         assertNotNull(response);
+        assertEquals(2, response.getRates().size());
+        assertEquals(1.13, response.getRates().get("2022-01-03").get("USD"), 1e-9);
+        assertEquals(1 / 1.12, cached.getRates().get("2022-01-04").get("EUR"), 1e-9);
+        verify(currencyApiRest, times(1)).getTimeSeriesRates(anyString(), anyString(), anyString(), any());
 
     }
 
@@ -280,7 +341,7 @@ public class CurrencyServiceImplTest {
         Response<TimeSeriesResponse> errorResponse = Response.error(500, ResponseBody.create(null, ""));
 
         Call<TimeSeriesResponse> mockCall = mock(Call.class);
-        when(currencyApiRest.getTimeSeriesRates(startDate, endDate, base, symbols)).thenReturn(mockCall);
+        when(currencyApiRest.getTimeSeriesRates(startDate, endDate, "EUR", null)).thenReturn(mockCall);
         when(mockCall.execute()).thenReturn(errorResponse);
 
         ApiCommunicationException exception = assertThrows(ApiCommunicationException.class, () -> {
@@ -289,7 +350,7 @@ public class CurrencyServiceImplTest {
 
         assertEquals("Error al comunicarse con la API de series temporales: Error al obtener las tasas de series temporales. Código de error: 500", exception.getMessage());
 
-        verify(currencyApiRest).getTimeSeriesRates(startDate, endDate, base, symbols);
+        verify(currencyApiRest, times(2)).getTimeSeriesRates(startDate, endDate, "EUR", null);
     }
 
 
@@ -303,11 +364,12 @@ public class CurrencyServiceImplTest {
         Call<TimeSeriesResponse> mockCall = Mockito.mock(Call.class);
         when(mockCall.execute()).thenReturn(Response.success(new TimeSeriesResponse()));
 
-        when(currencyApiRest.getTimeSeriesRates(startDate, endDate, base, symbols)).thenReturn(mockCall);
+        when(currencyApiRest.getTimeSeriesRates(startDate, endDate, "EUR", null)).thenReturn(mockCall);
 
         TimeSeriesResponse response = currencyService.getTimeSeriesRates(startDate, endDate, base, symbols);
 
         assertNotNull(response);
+        assertTrue(response.getRates().isEmpty());
     }
 
 
@@ -321,7 +383,7 @@ public class CurrencyServiceImplTest {
         Call<TimeSeriesResponse> mockCall = Mockito.mock(Call.class);
         when(mockCall.execute()).thenThrow(new IOException("Error de comunicación"));
 
-        when(currencyApiRest.getTimeSeriesRates(startDate, endDate, base, symbols)).thenReturn(mockCall);
+        when(currencyApiRest.getTimeSeriesRates(startDate, endDate, "EUR", null)).thenReturn(mockCall);
 
         try {
             currencyService.getTimeSeriesRates(startDate, endDate, base, symbols);
@@ -332,21 +394,45 @@ public class CurrencyServiceImplTest {
     }
 
 
+    @Test
+    void testGetTimeSeriesRatesClampsStartToFirstPublishedDay() throws Exception {
+        Call<TimeSeriesResponse> mockCall = Mockito.mock(Call.class);
+        when(mockCall.execute()).thenReturn(Response.success(new TimeSeriesResponse()));
+        when(currencyApiRest.getTimeSeriesRates("1999-01-04", "1999-01-31", "EUR", null)).thenReturn(mockCall);
+
+        TimeSeriesResponse response = currencyService.getTimeSeriesRates("0001-01-01", "1999-01-31", "EUR", "USD");
+
+        assertEquals("1999-01-04", response.getStartDate());
+        verify(currencyApiRest, times(1)).getTimeSeriesRates(anyString(), anyString(), anyString(), any());
+    }
+
+    @Test
+    void testGetTimeSeriesRatesRejectsInvalidRanges() {
+        assertThrows(InvalidDateRangeException.class,
+                () -> currencyService.getTimeSeriesRates("2022-02-01", "2022-01-01", "EUR", "USD"));
+        assertThrows(InvalidDateRangeException.class,
+                () -> currencyService.getTimeSeriesRates("2020-01-01", "2022-01-01", "EUR", "USD"));
+        assertThrows(InvalidDateRangeException.class,
+                () -> currencyService.getTimeSeriesRates("01/01/2022", "2022-01-01", "EUR", "USD"));
+        // El inicio se ajusta antes de comprobar el orden: un fin anterior al primer día publicado no es válido
+        assertThrows(InvalidDateRangeException.class,
+                () -> currencyService.getTimeSeriesRates("1990-01-01", "1998-12-31", "EUR", "USD"));
+
+        verifyNoInteractions(currencyApiRest);
+    }
+
     // Obtener tasas más recientes.
     @Test
     public void testGetLatestRatesOk() throws Exception {
         String base = "USD";
         String symbols = "EUR";
-        CurrencyResponse mockCurrencyResponse = new CurrencyResponse();
-        mockCurrencyResponse.setRates(Map.of("EUR", 0.85));
-        Call<CurrencyResponse> mockCall = Mockito.mock(Call.class);
-        when(mockCall.execute()).thenReturn(Response.success(mockCurrencyResponse));
-        when(currencyApiRest.getLatestRates(base, symbols)).thenReturn(mockCall);
+        mockLatest(Map.of("USD", 1.25));
 
         CurrencyResponse result = currencyService.getLatestRates(base, symbols);
 
         assertNotNull(result);
-        assertTrue(result.getRates().containsKey("EUR"));
+        assertEquals("USD", result.getBase());
+        assertEquals(0.8, result.getRates().get("EUR"), 1e-9);
     }
 
     // Test para error en la obtención de las tasas más recientes
@@ -354,7 +440,7 @@ public class CurrencyServiceImplTest {
     public void testGetLatestRatesApiCommunicationException() throws Exception {
         String base = "USD";
         String symbols = "EUR";
-        when(currencyApiRest.getLatestRates(base, symbols)).thenThrow(new RuntimeException("Error al obtener las tasas actuales"));
+        when(currencyApiRest.getLatestRates("EUR", null)).thenThrow(new ApiCommunicationException("Error al obtener las tasas actuales"));
 
         ApiCommunicationException exception = assertThrows(ApiCommunicationException.class, () -> {
             currencyService.getLatestRates(base, symbols);
@@ -390,4 +476,14 @@ public class CurrencyServiceImplTest {
 
         assertEquals("Error al comunicarse con la API de monedas soportadas: Error al obtener monedas disponibles", exception.getMessage());
     }
+
+    private void mockLatest(Map<String, Double> rates) throws IOException {
+        CurrencyResponse latest = new CurrencyResponse();
+        latest.setBase("EUR");
+        latest.setDate("2024-11-22");
+        latest.setRates(rates);
+        Call<CurrencyResponse> call = Mockito.mock(Call.class);
+        when(call.execute()).thenReturn(Response.success(latest));
+        when(currencyApiRest.getLatestRates("EUR", null)).thenReturn(call);
+    }
 }
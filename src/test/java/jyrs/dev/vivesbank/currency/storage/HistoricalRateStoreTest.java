@@ -0,0 +1,110 @@
+package jyrs.dev.vivesbank.currency.storage;
+
+import jyrs.dev.vivesbank.currency.cache.CurrencyRateCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HistoricalRateStoreTest {
+
+    private static final LocalDate FRIDAY = LocalDate.of(2024, 1, 5);
+    private static final LocalDate MONDAY = LocalDate.of(2024, 1, 8);
+
+    @TempDir
+    Path tempDir;
+
+    private HistoricalRateStore store;
+
+    @BeforeEach
+    void setUp() {
+        store = new HistoricalRateStore(tempDir.resolve("fx-rates.dat").toString());
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        store.close();
+    }
+
+    @Test
+    void appendAndRead() {
+        store.append(FRIDAY, MONDAY, Map.of(
+                FRIDAY, Map.of("USD", 1.09, "GBP", 0.86),
+                MONDAY, Map.of("USD", 1.10, "GBP", 0.87)));
+
+        var friday = store.snapshot(FRIDAY).orElseThrow();
+        assertEquals(1.09, friday.rates().get("USD"));
+        assertEquals(1.0, friday.rates().get("EUR"));
+        assertTrue(store.covers(FRIDAY.plusDays(1)));
+        assertTrue(store.snapshot(FRIDAY.plusDays(1)).isEmpty());
+    }
+
+    @Test
+    void effectiveFallsBackToLastPublication() {
+        store.append(FRIDAY, FRIDAY.plusDays(2), Map.of(FRIDAY, Map.of("USD", 1.09)));
+
+        assertEquals("2024-01-05", store.effective(FRIDAY.plusDays(2)).orElseThrow().date());
+        assertTrue(store.effective(MONDAY).isEmpty());
+    }
+
+    @Test
+    void gapsOnlyReturnsMissingDays() {
+        store.append(FRIDAY, FRIDAY.plusDays(2), Map.of(FRIDAY, Map.of("USD", 1.09)));
+
+        var gaps = store.gaps(FRIDAY.minusDays(2), MONDAY);
+
+        assertEquals(2, gaps.size());
+        assertArrayEquals(new LocalDate[]{FRIDAY.minusDays(2), FRIDAY.minusDays(1)}, gaps.get(0));
+        assertArrayEquals(new LocalDate[]{MONDAY, MONDAY}, gaps.get(1));
+    }
+
+    @Test
+    void appendIgnoresCoveredDays() {
+        store.append(FRIDAY, FRIDAY, Map.of(FRIDAY, Map.of("USD", 1.09)));
+        store.append(FRIDAY, FRIDAY, Map.of(FRIDAY, Map.of("USD", 2.0)));
+
+        assertEquals(1.09, store.snapshot(FRIDAY).orElseThrow().rates().get("USD"));
+    }
+
+    @Test
+    void appendIgnoresToday() {
+        var today = LocalDate.now(CurrencyRateCache.ZONE);
+        store.append(today, today, Map.of(today, Map.of("USD", 1.09)));
+
+        assertFalse(store.covers(today));
+    }
+
+    @Test
+    void appendIgnoresDaysBeforeFirstPublication() {
+        var first = CurrencyRateCache.FIRST_DAY;
+        store.append(first.minusDays(3), first, Map.of(first, Map.of("USD", 1.17)));
+
+        assertFalse(store.covers(first.minusDays(1)));
+        assertTrue(store.covers(first));
+    }
+
+    @Test
+    void reopenKeepsRecords() throws IOException {
+        store.append(FRIDAY, MONDAY, Map.of(
+                FRIDAY, Map.of("USD", 1.09),
+                MONDAY, Map.of("USD", 1.10)));
+        store.close();
+
+        store = new HistoricalRateStore(tempDir.resolve("fx-rates.dat").toString());
+
+        List<String> days = new ArrayList<>();
+        store.forEachDay(FRIDAY, MONDAY, (day, snapshot) -> days.add(day + "=" + snapshot.rates().get("USD")));
+        assertEquals(List.of("2024-01-05=1.09", "2024-01-08=1.1"), days);
+        assertTrue(store.covers(FRIDAY.plusDays(1)));
+        assertTrue(store.gaps(FRIDAY, MONDAY).isEmpty());
+    }
+}
@@ -0,0 +1,76 @@
+package jyrs.dev.vivesbank.movements.controller;
+
+import jyrs.dev.vivesbank.movements.exceptions.MovementPageInvalid;
+import jyrs.dev.vivesbank.movements.services.MovementsService;
+import jyrs.dev.vivesbank.users.models.User;
+import jyrs.dev.vivesbank.utils.pagination.CursorPageResponse;
+import jyrs.dev.vivesbank.utils.pagination.PaginationLinksUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class MovementsControllerPaginationTest {
+
+    @Mock
+    private MovementsService movementsService;
+
+    @Mock
+    private PaginationLinksUtils paginationLinksUtils;
+
+    private MovementsController controller;
+    private final User user = User.builder().guuid("client").build();
+
+    @BeforeEach
+    void setUp() {
+        controller = new MovementsController(movementsService, null, paginationLinksUtils, null, 100);
+    }
+
+    @Test
+    void cursorPageSizeIsClampedToMaximum() {
+        when(movementsService.getMovementsByCursor("client", null, 100)).thenReturn(CursorPageResponse.of(List.of(), 100, null));
+
+        controller.getMeMovementsByCursor(user, null, 10_000_000);
+
+        verify(movementsService).getMovementsByCursor("client", null, 100);
+    }
+
+    @Test
+    void cursorPageSizeBelowOneIsRejected() {
+        assertThrows(MovementPageInvalid.class, () -> controller.getMeMovementsByCursor(user, null, 0));
+        verifyNoInteractions(movementsService);
+    }
+
+    @Test
+    void pageSizeIsClampedToMaximum() {
+        when(movementsService.getAllMovementsById(eq("client"), any(Pageable.class))).thenReturn(Page.empty());
+        when(paginationLinksUtils.createLinkHeader(any(), any())).thenReturn("");
+
+        controller.getMeAllMovements(user, 0, 10_000_000, "date", "desc", new MockHttpServletRequest());
+
+        var pageable = ArgumentCaptor.forClass(Pageable.class);
+        verify(movementsService).getAllMovementsById(eq("client"), pageable.capture());
+        assertEquals(100, pageable.getValue().getPageSize());
+    }
+
+    @Test
+    void pageSizeBelowOneIsRejected() {
+        assertThrows(MovementPageInvalid.class,
+                () -> controller.getMeAllMovements(user, 0, -1, "date", "desc", new MockHttpServletRequest()));
+        verify(movementsService, never()).getAllMovementsById(anyString(), any());
+    }
+}
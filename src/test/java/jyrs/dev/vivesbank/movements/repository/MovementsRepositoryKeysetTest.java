@@ -0,0 +1,77 @@
+package jyrs.dev.vivesbank.movements.repository;
+
+import jyrs.dev.vivesbank.movements.models.Movement;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataMongoTest
+@Testcontainers(disabledWithoutDocker = true)
+class MovementsRepositoryKeysetTest {
+
+    @Container
+    private static final MongoDBContainer mongoDBContainer = new MongoDBContainer("mongo:6.0.6");
+
+    @DynamicPropertySource
+    static void mongoProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.data.mongodb.uri", mongoDBContainer::getReplicaSetUrl);
+    }
+
+    @Autowired
+    private MovementsRepository movementsRepository;
+
+    @BeforeEach
+    void setUp() {
+        movementsRepository.deleteAll();
+    }
+
+    @Test
+    void keysetWalksAllPagesWithEqualDates() {
+        var sameInstant = LocalDateTime.of(2024, 5, 1, 10, 0);
+        List<String> sameDate = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            sameDate.add(save("client", "other", sameInstant));
+        }
+        var received = save("other", "client", sameInstant.minusDays(1));
+        var oldest = save("client", "other", sameInstant.minusDays(2));
+        save("other", "another", sameInstant);
+
+        List<String> seen = new ArrayList<>();
+        var page = movementsRepository.findLatestByClient("client", Limit.of(3));
+        while (!page.isEmpty()) {
+            page.forEach(movement -> seen.add(movement.getId()));
+            var last = page.get(page.size() - 1);
+            page = movementsRepository.findByClientBefore("client", last.getDate(), new ObjectId(last.getId()), Limit.of(3));
+        }
+
+        // Con la misma fecha se ordenan por id descendente
+        List<String> expected = new ArrayList<>(sameDate.reversed());
+        expected.add(received);
+        expected.add(oldest);
+        assertThat(seen).isEqualTo(expected);
+    }
+
+    private String save(String sender, String recipient, LocalDateTime date) {
+        return movementsRepository.save(Movement.builder()
+                .SenderClient(sender)
+                .RecipientClient(recipient)
+                .typeMovement("TRANSFER")
+                .amount(1.0)
+                .date(date)
+                .build()).getId();
+    }
+}
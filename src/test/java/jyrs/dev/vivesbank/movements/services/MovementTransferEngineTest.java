@@ -0,0 +1,191 @@
+package jyrs.dev.vivesbank.movements.services;
+
+import jyrs.dev.vivesbank.movements.exceptions.MovementNotMoney;
+import jyrs.dev.vivesbank.movements.models.Movement;
+import jyrs.dev.vivesbank.movements.models.MovementOutbox;
+import jyrs.dev.vivesbank.movements.models.MovementOutboxBatch;
+import jyrs.dev.vivesbank.movements.repository.MovementOutboxRepository;
+import jyrs.dev.vivesbank.products.bankAccounts.exceptions.BankAccountNotFoundByIban;
+import jyrs.dev.vivesbank.products.bankAccounts.dto.AccountRef;
+import jyrs.dev.vivesbank.products.bankAccounts.repositories.BankAccountRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class MovementTransferEngineTest {
+
+    @Mock
+    private BankAccountRepository bankAccountRepository;
+
+    @Mock
+    private MovementOutboxRepository outboxRepository;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private MovementTransferEngine engine;
+
+    private AccountRef origin;
+    private AccountRef destination;
+    private Movement movement;
+
+    @BeforeEach
+    void setUp() {
+        engine = new MovementTransferEngine(bankAccountRepository, outboxRepository, eventPublisher, transactionManager, jdbcTemplate, 3);
+
+        origin = new AccountRef(1L, "ES0001", 10L, "sender");
+        destination = new AccountRef(2L, "ES0002", 20L, "recipient");
+        movement = Movement.builder()
+                .id("mov1")
+                .amount(50.0)
+                .typeMovement("TRANSFER")
+                .BankAccountOrigin("ES0001")
+                .BankAccountDestination("ES0002")
+                .date(LocalDateTime.now())
+                .build();
+
+        lenient().when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+    }
+
+    @Test
+    void transfer() {
+        when(bankAccountRepository.debit(1L, 50.0)).thenReturn(1);
+        when(bankAccountRepository.credit(2L, 50.0)).thenReturn(1);
+        when(outboxRepository.save(any(MovementOutbox.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        engine.transfer(origin, destination, movement);
+
+        InOrder inOrder = inOrder(bankAccountRepository);
+        inOrder.verify(bankAccountRepository).debit(1L, 50.0);
+        inOrder.verify(bankAccountRepository).credit(2L, 50.0);
+        verify(outboxRepository).save(argThat(outbox -> outbox.getMovementId().equals("mov1")));
+        verify(eventPublisher).publishEvent(any(MovementOutbox.class));
+        verify(transactionManager).commit(any());
+    }
+
+    @Test
+    void transferUpdatesRowsInIdOrder() {
+        origin = new AccountRef(5L, "ES0001", 10L, "sender");
+        when(bankAccountRepository.debit(5L, 50.0)).thenReturn(1);
+        when(bankAccountRepository.credit(2L, 50.0)).thenReturn(1);
+
+        engine.transfer(origin, destination, movement);
+
+        InOrder inOrder = inOrder(bankAccountRepository);
+        inOrder.verify(bankAccountRepository).credit(2L, 50.0);
+        inOrder.verify(bankAccountRepository).debit(5L, 50.0);
+    }
+
+    @Test
+    void transferNotMoney() {
+        when(bankAccountRepository.debit(1L, 50.0)).thenReturn(0);
+
+        assertThrows(MovementNotMoney.class, () -> engine.transfer(origin, destination, movement));
+
+        verify(bankAccountRepository, never()).credit(any(), any());
+        verify(outboxRepository, never()).save(any());
+        verify(transactionManager).rollback(any());
+    }
+
+    @Test
+    void transferRecipientNotFound() {
+        when(bankAccountRepository.debit(1L, 50.0)).thenReturn(1);
+        when(bankAccountRepository.credit(2L, 50.0)).thenReturn(0);
+
+        assertThrows(BankAccountNotFoundByIban.class, () -> engine.transfer(origin, destination, movement));
+
+        verify(outboxRepository, never()).save(any());
+        verify(transactionManager).rollback(any());
+    }
+
+    @Test
+    void transferRetriesOnLockConflict() {
+        when(bankAccountRepository.debit(1L, 50.0))
+                .thenThrow(new CannotAcquireLockException("deadlock"))
+                .thenReturn(1);
+        when(bankAccountRepository.credit(2L, 50.0)).thenReturn(1);
+
+        engine.transfer(origin, destination, movement);
+
+        verify(bankAccountRepository, times(2)).debit(1L, 50.0);
+        verify(transactionManager).commit(any());
+    }
+
+    @Test
+    void transferGivesUpAfterMaxAttempts() {
+        when(bankAccountRepository.debit(1L, 50.0)).thenThrow(new CannotAcquireLockException("deadlock"));
+
+        assertThrows(CannotAcquireLockException.class, () -> engine.transfer(origin, destination, movement));
+
+        verify(bankAccountRepository, times(3)).debit(1L, 50.0);
+    }
+
+    @Test
+    void transferAll() {
+        var second = Movement.builder().id("mov2").amount(20.0)
+                .BankAccountOrigin("ES0001").BankAccountDestination("ES0002").build();
+        when(jdbcTemplate.batchUpdate(anyString(), anyList(), anyInt(), any(ParameterizedPreparedStatementSetter.class)))
+                .thenReturn(new int[][]{{1, 1}});
+        when(outboxRepository.saveAll(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        engine.transferAll(Map.of("ES0001", origin, "ES0002", destination), List.of(movement, second));
+
+        verify(jdbcTemplate).batchUpdate(anyString(), argThat((List<Map.Entry<Long, Double>> deltas) ->
+                deltas.size() == 2
+                        && deltas.get(0).getKey() == 1L && deltas.get(0).getValue() == -70.0
+                        && deltas.get(1).getKey() == 2L && deltas.get(1).getValue() == 70.0), eq(2), any());
+        verify(eventPublisher).publishEvent(argThat((Object event) ->
+                event instanceof MovementOutboxBatch batch && batch.entries().size() == 2));
+    }
+
+    @Test
+    void transferAllNotMoney() {
+        when(jdbcTemplate.batchUpdate(anyString(), anyList(), anyInt(), any(ParameterizedPreparedStatementSetter.class)))
+                .thenReturn(new int[][]{{0, 1}});
+
+        assertThrows(MovementNotMoney.class, () ->
+                engine.transferAll(Map.of("ES0001", origin, "ES0002", destination), List.of(movement)));
+
+        verify(outboxRepository, never()).saveAll(anyList());
+        verify(transactionManager).rollback(any());
+    }
+
+    @Test
+    void transferAllRecipientNotFound() {
+        when(jdbcTemplate.batchUpdate(anyString(), anyList(), anyInt(), any(ParameterizedPreparedStatementSetter.class)))
+                .thenReturn(new int[][]{{1, 0}});
+
+        assertThrows(BankAccountNotFoundByIban.class, () ->
+                engine.transferAll(Map.of("ES0001", origin, "ES0002", destination), List.of(movement)));
+
+        verify(outboxRepository, never()).saveAll(anyList());
+        verify(transactionManager).rollback(any());
+    }
+}
@@ -0,0 +1,73 @@
+package jyrs.dev.vivesbank.movements.services;
+
+import jyrs.dev.vivesbank.movements.dto.MovementRequest;
+import jyrs.dev.vivesbank.movements.exceptions.MovementBatchInvalid;
+import jyrs.dev.vivesbank.movements.mappers.MovementMapper;
+import jyrs.dev.vivesbank.products.bankAccounts.dto.AccountRef;
+import jyrs.dev.vivesbank.products.bankAccounts.exceptions.BankAccountNotFoundByIban;
+import jyrs.dev.vivesbank.products.bankAccounts.services.AccountDirectory;
+import jyrs.dev.vivesbank.users.clients.dto.ClientRef;
+import jyrs.dev.vivesbank.users.clients.service.ClientResolver;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class MovementsBatchTest {
+
+    @Mock
+    private ClientResolver clientResolver;
+
+    @Mock
+    private AccountDirectory accountDirectory;
+
+    @Mock
+    private MovementTransferEngine transferEngine;
+
+    private MovementsServiceImpl service;
+
+    @BeforeEach
+    void setUp() {
+        service = new MovementsServiceImpl(null, null, clientResolver, null, null, accountDirectory,
+                new MovementMapper(), transferEngine, null, null, 5000);
+    }
+
+    @Test
+    void missingIbanIsAnInvalidBatch() {
+        when(clientResolver.resolve("sender")).thenReturn(new ClientRef(10L, "12345678Z", 1L, "sender"));
+        var requests = List.of(
+                MovementRequest.builder().bankAccountOrigin("ES0001").bankAccountDestination("ES0002").amount(10.0).build(),
+                MovementRequest.builder().bankAccountDestination("ES0002").amount(10.0).build());
+
+        assertThrows(MovementBatchInvalid.class, () -> service.createMovements("sender", requests));
+
+        verifyNoInteractions(accountDirectory, transferEngine);
+    }
+
+    @Test
+    void deletedAccountEvictsTheBatchAccounts() {
+        when(clientResolver.resolve("sender")).thenReturn(new ClientRef(10L, "12345678Z", 1L, "sender"));
+        when(accountDirectory.findAll(any())).thenReturn(Map.of(
+                "ES0001", new AccountRef(1L, "ES0001", 10L, "sender"),
+                "ES0002", new AccountRef(2L, "ES0002", 20L, "recipient")));
+        doThrow(new BankAccountNotFoundByIban("ES0002")).when(transferEngine).transferAll(anyMap(), anyList());
+        var requests = List.of(
+                MovementRequest.builder().bankAccountOrigin("ES0001").bankAccountDestination("ES0002").amount(10.0).build());
+
+        assertThrows(BankAccountNotFoundByIban.class, () -> service.createMovements("sender", requests));
+
+        verify(accountDirectory).evict("ES0001");
+        verify(accountDirectory).evict("ES0002");
+    }
+}
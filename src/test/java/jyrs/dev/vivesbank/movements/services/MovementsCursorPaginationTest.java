@@ -0,0 +1,110 @@
+package jyrs.dev.vivesbank.movements.services;
+
+import jyrs.dev.vivesbank.movements.dto.MovementResponse;
+import jyrs.dev.vivesbank.movements.exceptions.MovementCursorInvalid;
+import jyrs.dev.vivesbank.movements.exceptions.MovementPageInvalid;
+import jyrs.dev.vivesbank.movements.mappers.MovementMapper;
+import jyrs.dev.vivesbank.movements.models.Movement;
+import jyrs.dev.vivesbank.movements.repository.MovementsRepository;
+import jyrs.dev.vivesbank.users.clients.service.ClientResolver;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class MovementsCursorPaginationTest {
+
+    private static final Comparator<Movement> NEWEST_FIRST = Comparator.comparing(Movement::getDate)
+            .thenComparing(movement -> new ObjectId(movement.getId())).reversed();
+
+    @Mock
+    private MovementsRepository movementsRepository;
+
+    @Mock
+    private ClientResolver clientResolver;
+
+    private MovementsServiceImpl service;
+    private final List<Movement> stored = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        service = new MovementsServiceImpl(movementsRepository, null, clientResolver, null, null, null,
+                new MovementMapper(), null, null, null, 5000);
+    }
+
+    @Test
+    void walksAllPagesWithEqualDatesWithoutGapsOrRepeats() {
+        var sameInstant = LocalDateTime.of(2024, 5, 1, 10, 0);
+        for (int i = 0; i < 7; i++) {
+            store(i < 5 ? sameInstant : sameInstant.minusDays(i));
+        }
+        mockKeysetQueries();
+
+        List<String> seen = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            var page = service.getMovementsByCursor("client", cursor, 3);
+            page.content().stream().map(MovementResponse::getIdMovement).forEach(seen::add);
+            cursor = page.nextCursor();
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(stored.stream().sorted(NEWEST_FIRST).map(Movement::getId).toList(), seen);
+        assertEquals(3, pages);
+    }
+
+    @Test
+    void emptyHistoryHasNoNextCursor() {
+        mockKeysetQueries();
+
+        var page = service.getMovementsByCursor("client", null, 3);
+
+        assertTrue(page.content().isEmpty());
+        assertTrue(page.last());
+    }
+
+    @Test
+    void rejectsPageSizeBelowOne() {
+        assertThrows(MovementPageInvalid.class, () -> service.getMovementsByCursor("client", null, 0));
+        verifyNoInteractions(movementsRepository);
+    }
+
+    @Test
+    void rejectsMalformedCursor() {
+        assertThrows(MovementCursorInvalid.class, () -> service.getMovementsByCursor("client", "no-es-un-cursor", 3));
+    }
+
+    private void store(LocalDateTime date) {
+        stored.add(Movement.builder().id(new ObjectId().toHexString()).SenderClient("client").date(date).amount(1.0).build());
+    }
+
+    private void mockKeysetQueries() {
+        lenient().when(movementsRepository.findLatestByClient(eq("client"), any(Limit.class))).thenAnswer(inv ->
+                stored.stream().sorted(NEWEST_FIRST).limit(inv.<Limit>getArgument(1).max()).toList());
+        lenient().when(movementsRepository.findByClientBefore(eq("client"), any(), any(), any(Limit.class))).thenAnswer(inv -> {
+            LocalDateTime date = inv.getArgument(1);
+            ObjectId id = inv.getArgument(2);
+            return stored.stream()
+                    .filter(m -> m.getDate().isBefore(date)
+                            || m.getDate().isEqual(date) && new ObjectId(m.getId()).compareTo(id) < 0)
+                    .sorted(NEWEST_FIRST)
+                    .limit(inv.<Limit>getArgument(3).max())
+                    .toList();
+        });
+    }
+}
@@ -0,0 +1,124 @@
+package jyrs.dev.vivesbank.movements.services;
+
+import jyrs.dev.vivesbank.movements.exceptions.StatementJobNotFound;
+import jyrs.dev.vivesbank.movements.exceptions.StatementJobNotReady;
+import jyrs.dev.vivesbank.movements.exceptions.StatementJobRejected;
+import jyrs.dev.vivesbank.movements.models.StatementJob;
+import jyrs.dev.vivesbank.movements.storage.MovementPdfStatement;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StatementJobServiceTest {
+
+    @TempDir
+    Path directory;
+
+    private StatementJobService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new StatementJobService(1, 2, 0, directory.toString());
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void submitAndDownload() throws Exception {
+        var job = service.submit("user1", new MovementPdfStatement("a.pdf", out -> out.write(new byte[]{1, 2, 3})));
+
+        assertEquals(StatementJob.Status.PENDING, job.status());
+        var finished = awaitFinished(job.id(), "user1");
+        assertEquals(StatementJob.Status.DONE, finished.status());
+        var done = service.getFinishedJob(job.id(), "user1");
+        assertEquals(3, done.size());
+        assertArrayEquals(new byte[]{1, 2, 3}, Files.readAllBytes(done.file()));
+    }
+
+    @Test
+    void submitFailed() throws InterruptedException {
+        var job = service.submit("user1", new MovementPdfStatement("a.pdf", out -> {
+            throw new IOException("disco lleno");
+        }));
+
+        var finished = awaitFinished(job.id(), "user1");
+        assertEquals(StatementJob.Status.FAILED, finished.status());
+        assertEquals("disco lleno", finished.error());
+        assertThrows(StatementJobNotReady.class, () -> service.getFinishedJob(job.id(), "user1"));
+        assertFalse(Files.exists(directory.resolve(job.id() + ".pdf")));
+    }
+
+    @Test
+    void getJobOtherOwner() {
+        var job = service.submit("user1", new MovementPdfStatement("a.pdf", out -> { }));
+
+        assertThrows(StatementJobNotFound.class, () -> service.getJob(job.id(), "user2"));
+    }
+
+    @Test
+    void submitRejectedWhenQueueFull() throws InterruptedException {
+        var release = new CountDownLatch(1);
+        MovementPdfStatement blocking = new MovementPdfStatement("a.pdf", out -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        var first = service.submit("user1", blocking);
+        service.submit("user1", blocking);
+
+        assertThrows(StatementJobRejected.class, () -> service.submit("user1", blocking));
+
+        release.countDown();
+        awaitFinished(first.id(), "user1");
+    }
+
+    @Test
+    void evictExpired() throws InterruptedException {
+        var job = service.submit("user1", new MovementPdfStatement("a.pdf", out -> out.write(1)));
+        var file = awaitFinished(job.id(), "user1").file();
+        assertTrue(Files.exists(file));
+        Thread.sleep(5);
+
+        service.evictExpired();
+
+        assertThrows(StatementJobNotFound.class, () -> service.getJob(job.id(), "user1"));
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    void leftoverFilesAreDeletedOnStartup() throws IOException {
+        var leftover = Files.write(directory.resolve("antiguo.pdf"), new byte[]{1});
+
+        new StatementJobService(1, 2, 0, directory.toString()).shutdown();
+
+        assertFalse(Files.exists(leftover));
+    }
+
+    private StatementJob awaitFinished(String jobId, String owner) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline) {
+            var job = service.getJob(jobId, owner);
+            if (job.isFinished()) {
+                return job;
+            }
+            Thread.sleep(10);
+        }
+        fail("El extracto no ha terminado a tiempo");
+        return null;
+    }
+}
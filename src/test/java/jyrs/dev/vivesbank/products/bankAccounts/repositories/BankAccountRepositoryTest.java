@@ -4,7 +4,10 @@ import jyrs.dev.vivesbank.products.bankAccounts.models.BankAccount;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.List;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -28,5 +31,96 @@ class BankAccountRepositoryTest {
         assertEquals(iban, foundAccount.get().getIban());
     }
 
+    @Test
+    void testDebitWithEnoughBalance() {
+        BankAccount bankAccount = new BankAccount();
+        bankAccount.setIban("ES7620770024003102575766");
+        bankAccount.setBalance(100.0);
+        var saved = bankAccountRepository.save(bankAccount);
+
+        int updated = bankAccountRepository.debit(saved.getId(), 40.0);
+
+        assertEquals(1, updated);
+        assertEquals(60.0, bankAccountRepository.findById(saved.getId()).get().getBalance());
+    }
+
+    @Test
+    void testDebitWithoutEnoughBalance() {
+        BankAccount bankAccount = new BankAccount();
+        bankAccount.setIban("ES7620770024003102575766");
+        bankAccount.setBalance(10.0);
+        var saved = bankAccountRepository.save(bankAccount);
+
+        int updated = bankAccountRepository.debit(saved.getId(), 40.0);
+
+        assertEquals(0, updated);
+        assertEquals(10.0, bankAccountRepository.findById(saved.getId()).get().getBalance());
+    }
+
+    @Test
+    void testCredit() {
+        BankAccount bankAccount = new BankAccount();
+        bankAccount.setIban("ES7620770024003102575766");
+        bankAccount.setBalance(10.0);
+        var saved = bankAccountRepository.save(bankAccount);
+
+        int updated = bankAccountRepository.credit(saved.getId(), 40.0);
+
+        assertEquals(1, updated);
+        assertEquals(50.0, bankAccountRepository.findById(saved.getId()).get().getBalance());
+    }
+
+    @Test
+    void testCreditNeverLeavesNegativeBalance() {
+        BankAccount bankAccount = new BankAccount();
+        bankAccount.setIban("ES7620770024003102575766");
+        bankAccount.setBalance(10.0);
+        var saved = bankAccountRepository.save(bankAccount);
+
+        int updated = bankAccountRepository.credit(saved.getId(), -40.0);
+
+        assertEquals(0, updated);
+        assertEquals(10.0, bankAccountRepository.findById(saved.getId()).get().getBalance());
+    }
+
+    @Test
+    void testFindRefByIban() {
+        BankAccount bankAccount = new BankAccount();
+        bankAccount.setIban("ES7620770024003102575766");
+        var saved = bankAccountRepository.save(bankAccount);
+
+        var ref = bankAccountRepository.findRefByIban("ES7620770024003102575766");
+
+        assertTrue(ref.isPresent());
+        assertEquals(saved.getId(), ref.get().id());
+        assertNull(ref.get().clientId());
+        assertTrue(bankAccountRepository.findRefsByIbanIn(List.of("ES7620770024003102575766", "ES00")).contains(ref.get()));
+    }
 
+    @Test
+    void testSetBalance() {
+        BankAccount bankAccount = new BankAccount();
+        bankAccount.setIban("ES7620770024003102575766");
+        bankAccount.setBalance(10.0);
+        var saved = bankAccountRepository.save(bankAccount);
+
+        assertEquals(1, bankAccountRepository.setBalance(saved.getId(), 75.0));
+        assertEquals(75.0, bankAccountRepository.findById(saved.getId()).get().getBalance());
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void testSetBalanceWithoutTransaction() {
+        BankAccount bankAccount = new BankAccount();
+        bankAccount.setIban("ES9121000418450200051332");
+        bankAccount.setBalance(10.0);
+        var saved = bankAccountRepository.save(bankAccount);
+
+        try {
+            assertEquals(1, bankAccountRepository.setBalance(saved.getId(), 75.0));
+            assertEquals(75.0, bankAccountRepository.findById(saved.getId()).get().getBalance());
+        } finally {
+            bankAccountRepository.deleteById(saved.getId());
+        }
+    }
 }
@@ -0,0 +1,33 @@
+package jyrs.dev.vivesbank.products.bankAccounts.repositories;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+class IbanBlockRepositoryTest {
+
+    @Autowired
+    private IbanBlockRepository repository;
+
+    @Test
+    void createdSeriesIsAdvancedAtomically() {
+        assertEquals(0, repository.advance("test", 10));
+
+        assertEquals(1, repository.create("test", 1));
+        assertEquals(1, repository.advance("test", 10));
+
+        assertEquals(11L, repository.findById("test").orElseThrow().getNextValue());
+    }
+
+    @Test
+    void creatingExistingSeriesFailsInsteadOfOverwriting() {
+        repository.create("test", 1);
+        repository.advance("test", 10);
+
+        assertThrows(DataIntegrityViolationException.class, () -> repository.create("test", 1));
+    }
+}
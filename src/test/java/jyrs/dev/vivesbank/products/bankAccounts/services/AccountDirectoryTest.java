@@ -0,0 +1,78 @@
+package jyrs.dev.vivesbank.products.bankAccounts.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jyrs.dev.vivesbank.products.bankAccounts.dto.AccountRef;
+import jyrs.dev.vivesbank.products.bankAccounts.repositories.BankAccountRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AccountDirectoryTest {
+
+    @Mock
+    private BankAccountRepository bankAccountRepository;
+
+    private SimpleMeterRegistry registry;
+    private AccountDirectory directory;
+
+    private final AccountRef first = new AccountRef(1L, "ES01", 10L, "owner-1");
+    private final AccountRef second = new AccountRef(2L, "ES02", 20L, "owner-2");
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        directory = new AccountDirectory(bankAccountRepository, registry, 2);
+    }
+
+    @Test
+    void findLoadsOnceAndThenServesFromMemory() {
+        when(bankAccountRepository.findRefByIban("ES01")).thenReturn(Optional.of(first));
+
+        assertEquals(Optional.of(first), directory.find("ES01"));
+        assertEquals(Optional.of(first), directory.find("ES01"));
+
+        verify(bankAccountRepository, times(1)).findRefByIban("ES01");
+        assertEquals(1.0, registry.get("bankaccounts.directory.requests").tag("result", "hit").counter().count());
+    }
+
+    @Test
+    void unknownIbanIsNotCached() {
+        when(bankAccountRepository.findRefByIban("ES99")).thenReturn(Optional.empty());
+
+        assertTrue(directory.find("ES99").isEmpty());
+        assertTrue(directory.find("ES99").isEmpty());
+
+        verify(bankAccountRepository, times(2)).findRefByIban("ES99");
+        assertEquals(0, directory.size());
+    }
+
+    @Test
+    void findAllQueriesOnlyMissingIbans() {
+        directory.put(first);
+        when(bankAccountRepository.findRefsByIbanIn(List.of("ES02"))).thenReturn(List.of(second));
+
+        Map<String, AccountRef> found = directory.findAll(List.of("ES01", "ES02"));
+
+        assertEquals(Map.of("ES01", first, "ES02", second), found);
+        verify(bankAccountRepository, never()).findRefByIban(anyString());
+    }
+
+    @Test
+    void evictForcesReload() {
+        directory.put(first);
+        directory.evict("ES01");
+        when(bankAccountRepository.findRefByIban("ES01")).thenReturn(Optional.empty());
+
+        assertTrue(directory.find("ES01").isEmpty());
+    }
+}
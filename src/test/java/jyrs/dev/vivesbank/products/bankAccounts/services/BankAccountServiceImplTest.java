@@ -2,8 +2,10 @@ package jyrs.dev.vivesbank.products.bankAccounts.services;
 
 import jyrs.dev.vivesbank.config.websockets.WebSocketConfig;
 import jyrs.dev.vivesbank.config.websockets.WebSocketHandler;
+import jyrs.dev.vivesbank.products.bankAccounts.dto.AccountRef;
 import jyrs.dev.vivesbank.products.bankAccounts.dto.BankAccountRequest;
 import jyrs.dev.vivesbank.products.bankAccounts.dto.BankAccountResponse;
+import jyrs.dev.vivesbank.products.bankAccounts.dto.UpdateAccountRequest;
 import jyrs.dev.vivesbank.products.bankAccounts.exceptions.*;
 import jyrs.dev.vivesbank.products.bankAccounts.mappers.BankAccountMapper;
 import jyrs.dev.vivesbank.products.bankAccounts.models.BankAccount;
@@ -11,10 +13,13 @@ import jyrs.dev.vivesbank.products.bankAccounts.models.Type.AccountType;
 import jyrs.dev.vivesbank.products.bankAccounts.repositories.BankAccountRepository;
 import jyrs.dev.vivesbank.products.bankAccounts.storage.BankAccountStorage;
 import jyrs.dev.vivesbank.products.creditCards.models.CreditCard;
+import jyrs.dev.vivesbank.users.clients.cache.ClientCache;
+import jyrs.dev.vivesbank.users.clients.dto.ClientRef;
 import jyrs.dev.vivesbank.users.clients.exceptions.ClientNotFound;
 import jyrs.dev.vivesbank.users.clients.models.Address;
 import jyrs.dev.vivesbank.users.clients.models.Client;
 import jyrs.dev.vivesbank.users.clients.repository.ClientsRepository;
+import jyrs.dev.vivesbank.users.clients.service.ClientResolver;
 import jyrs.dev.vivesbank.users.models.Role;
 import jyrs.dev.vivesbank.users.models.User;
 import jyrs.dev.vivesbank.websockets.bankAccount.notifications.mapper.BankAccountNotificationMapper;
@@ -26,6 +31,7 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
@@ -63,6 +69,14 @@ class BankAccountServiceImplTest {
     private WebSocketHandler webSocketHandlerMock;
     @Mock
     private BankAccountStorage storage;
+    @Mock
+    private IbanAllocator ibanAllocator;
+    @Mock
+    private AccountDirectory accountDirectory;
+    @Mock
+    private ClientResolver clientResolver;
+    @Mock
+    private ClientCache clientCache;
 
     @Spy
     @InjectMocks
@@ -71,6 +85,7 @@ class BankAccountServiceImplTest {
     private BankAccount account;
     private CreditCard card;
     private BankAccountResponse bankAccountResponse;
+    private final ClientRef clienteRef = new ClientRef(123L, "12345678Z", 1L, "user-123");
     private BankAccountRequest bankAccountRequest;
     private Client cliente;
     private Address address;
@@ -295,100 +310,117 @@ class BankAccountServiceImplTest {
 //    }
 
     @Test
-    public void generateRandomDigits() {
-        String result = bankAccountService.generateRandomDigits(5);
-        assertEquals(5, result.length(), "La longitud debe ser 5");
-        assertTrue(result.matches("\\d{5}"), "El resultado debe contener 5 dígitos");
+    void onChangeSendsOnlyToAccountOwner() {
+        cliente.getUser().setGuuid("owner-guuid");
+        account.setClient(cliente);
+
+        bankAccountService.onChange(Notificacion.Tipo.UPDATE, account);
+
+        verify(webSocketHandlerMock).sendMessage(eq("owner-guuid"), anyString());
+        verify(webSocketHandlerMock, never()).sendMessage(anyString());
+    }
+
+    @Test
+    void onChangeSkipsAccountWithoutClient() {
+        account.setClient(null);
+
+        bankAccountService.onChange(Notificacion.Tipo.UPDATE, account);
+
+        verify(webSocketHandlerMock, never()).sendMessage(anyString(), anyString());
+        verify(webSocketHandlerMock, never()).sendMessage(anyString());
     }
 
     @Test
     public void testIbanExistsReturnTrue() {
         String iban = "ES12345678901234567890";
-        when(bankAccountRepository.findByIban(iban)).thenReturn(Optional.of(mock(BankAccount.class)));
+        when(bankAccountRepository.existsByIban(iban)).thenReturn(true);
 
         boolean result = bankAccountService.ibanExists(iban);
 
         assertTrue(result, "El método debería devolver true si el IBAN está presente");
-        verify(bankAccountRepository).findByIban(iban);
+        verify(bankAccountRepository, never()).findByIban(iban);
     }
 
     @Test
     public void testIbanExistsReturnFalse() {
         String iban = "ES09876543210987654321";
-        when(bankAccountRepository.findByIban(iban)).thenReturn(Optional.empty());
+        when(bankAccountRepository.existsByIban(iban)).thenReturn(false);
 
         boolean result = bankAccountService.ibanExists(iban);
 
         assertFalse(result, "El método debería devolver false si el IBAN no está presente");
-        verify(bankAccountRepository).findByIban(iban);
-    }
-
-    @Test
-    public void testCalculateControlDigitsOk() {
-        String ibanBase = "ES00BANCO12345678901234";
-        int expectedControlDigits = 47;
-
-        int result = bankAccountService.calculateControlDigits(ibanBase);
-
-        assertEquals(expectedControlDigits, result, "Los dígitos de control deberían ser correctos.");
     }
 
     @Test
-    public void testGenerateIban() {
-        String iban = bankAccountService.generateIban();
-
-        assertEquals(24, iban.length(), "El IBAN generado debe tener una longitud de 24 caracteres.");
+    public void testGenerateUniqueIbanOk() {
+        when(ibanAllocator.nextIban()).thenReturn("ES6601280001000000000001");
 
-        assertTrue(iban.startsWith("ES"), "El IBAN debe comenzar con el código de país 'ES'.");
+        String uniqueIban = bankAccountService.generateUniqueIban();
 
-        assertTrue(iban.substring(2).matches("\\d{22}"), "El IBAN debe contener 22 dígitos después del código del país.");
+        assertEquals("ES6601280001000000000001", uniqueIban);
+        verifyNoInteractions(bankAccountRepository);
     }
 
     @Test
-    public void testGenerateUniqueIbanOk() {
-        when(bankAccountRepository.findByIban(anyString())).thenReturn(Optional.empty());
+    public void testSaveBankAccountRetriesWhenIbanTaken() {
+        when(clientResolver.resolve("user-123")).thenReturn(clienteRef);
+        when(clientsRepository.getReferenceById(clienteRef.id())).thenReturn(cliente);
+        when(bankAccountMapper.toBankAccount(bankAccountRequest)).thenReturn(account);
+        when(ibanAllocator.nextIban()).thenReturn("ES-USADO", "ES-LIBRE");
+        when(bankAccountRepository.save(account))
+                .thenThrow(new DataIntegrityViolationException("iban"))
+                .thenReturn(account);
+        when(bankAccountRepository.existsByIban("ES-USADO")).thenReturn(true);
+        when(bankAccountMapper.toResponse(account)).thenReturn(bankAccountResponse);
 
-        String uniqueIban = bankAccountService.generateUniqueIban();
+        bankAccountService.saveBankAccount("user-123", bankAccountRequest);
 
-        assertNotNull(uniqueIban, "El IBAN generado no debe ser nulo.");
-        assertEquals(24, uniqueIban.length(), "El IBAN generado debe tener una longitud de 24 caracteres.");
-        assertTrue(uniqueIban.startsWith("ES"), "El IBAN debe comenzar con el código de país 'ES'.");
-        verify(bankAccountRepository, atLeastOnce()).findByIban(anyString());
+        assertEquals("ES-LIBRE", account.getIban());
+        verify(bankAccountRepository, times(2)).save(account);
     }
 
     @Test
-    public void testGenerateUniqueIbanMaxAttempts() {
-        when(bankAccountRepository.findByIban(anyString())).thenReturn(Optional.of(mock(BankAccount.class)));
+    public void testSaveBankAccountMaxAttempts() {
+        when(clientResolver.resolve("user-123")).thenReturn(clienteRef);
+        when(clientsRepository.getReferenceById(clienteRef.id())).thenReturn(cliente);
+        when(bankAccountMapper.toBankAccount(bankAccountRequest)).thenReturn(account);
+        when(ibanAllocator.nextIban()).thenReturn("ES-USADO");
+        when(bankAccountRepository.save(account)).thenThrow(new DataIntegrityViolationException("iban"));
+        when(bankAccountRepository.existsByIban("ES-USADO")).thenReturn(true);
 
-        Exception exception = assertThrows(BankAccountIbanException.class, () -> {
-            bankAccountService.generateUniqueIban();
-        });
+        Exception exception = assertThrows(BankAccountIbanException.class,
+                () -> bankAccountService.saveBankAccount("user-123", bankAccountRequest));
 
-        assertEquals("No se pudo generar un IBAN único después de 1000 intentos.", exception.getMessage());
-        verify(bankAccountRepository, times(1000)).findByIban(anyString());
+        assertEquals("No se pudo generar un IBAN único después de 5 intentos.", exception.getMessage());
+        verify(bankAccountRepository, times(5)).save(account);
     }
 
     @Test
     public void testSaveBankAccount() {
         String userId = "user-123";
 
-        when(clientsRepository.getByUser_Guuid(userId)).thenReturn(Optional.of(cliente));
+        when(clientResolver.resolve(userId)).thenReturn(clienteRef);
+        when(clientsRepository.getReferenceById(clienteRef.id())).thenReturn(cliente);
         when(bankAccountMapper.toBankAccount(bankAccountRequest)).thenReturn(account);
         when(bankAccountRepository.save(account)).thenReturn(account);
         when(bankAccountMapper.toResponse(account)).thenReturn(bankAccountResponse);
-        when(bankAccountRepository.findByIban(anyString())).thenReturn(Optional.empty());
+        when(ibanAllocator.nextIban()).thenReturn("ES6601280001000000000001");
 
         BankAccountResponse result = bankAccountService.saveBankAccount(userId, bankAccountRequest);
 
         assertNotNull(result, "La respuesta no debe ser nula");
         assertEquals(0.0, result.getBalance(), "El balance inicial debe ser 0.0");
 
-        verify(clientsRepository).getByUser_Guuid(userId);
+        verify(clientsRepository).getReferenceById(clienteRef.id());
+        verify(clientsRepository, never()).getByUser_Guuid(anyString());
         verify(bankAccountMapper).toBankAccount(bankAccountRequest);
         verify(bankAccountRepository).save(account);
         verify(bankAccountMapper).toResponse(account);
-        verify(bankAccountRepository).findByIban(anyString());
+        verify(bankAccountRepository, never()).findByIban(anyString());
         verify(bankAccountService).generateUniqueIban();
+        assertEquals("ES6601280001000000000001", account.getIban());
+        verify(accountDirectory).put(new AccountRef(account.getId(), account.getIban(), clienteRef.id(), clienteRef.guuid()));
+        verify(clientCache).evict(clienteRef.id(), clienteRef.dni());
 
         verify(bankAccountService, times(1)).onChange(eq(Notificacion.Tipo.CREATE), eq(account));
     }
@@ -405,9 +437,47 @@ class BankAccountServiceImplTest {
 
         verify(bankAccountRepository, times(1)).findById(accountId);
         verify(bankAccountRepository, times(1)).deleteById(accountId);
+        verify(accountDirectory).evict(account.getIban());
         verify(bankAccountService, times(1)).onChange(eq(Notificacion.Tipo.DELETE), eq(account));
     }
 
+    @Test
+    void updateAccountResponseWritesBalanceById() {
+        var iban = account.getIban();
+        when(clientResolver.resolve("user-123")).thenReturn(clienteRef);
+        when(accountDirectory.find(iban)).thenReturn(Optional.of(new AccountRef(1L, iban, 123L, "user-123")));
+        when(bankAccountRepository.setBalance(1L, 250.0)).thenReturn(1);
+
+        var result = bankAccountService.updateAccountResponse("user-123", new UpdateAccountRequest(250.0), iban);
+
+        assertEquals("250.0", result.getDinero());
+        verify(bankAccountRepository, never()).findByIban(iban);
+        verify(bankAccountRepository, never()).save(any());
+    }
+
+    @Test
+    void updateAccountResponseDeletedAccount() {
+        var iban = account.getIban();
+        when(clientResolver.resolve("user-123")).thenReturn(clienteRef);
+        when(accountDirectory.find(iban)).thenReturn(Optional.of(new AccountRef(1L, iban, 123L, "user-123")));
+        when(bankAccountRepository.setBalance(1L, 250.0)).thenReturn(0);
+
+        assertThrows(BankAccountNotFoundByIban.class,
+                () -> bankAccountService.updateAccountResponse("user-123", new UpdateAccountRequest(250.0), iban));
+        verify(accountDirectory).evict(iban);
+    }
+
+    @Test
+    void updateAccountResponseRejectsNegativeOrMissingBalance() {
+        var iban = account.getIban();
+
+        assertThrows(BankAccountBadRequest.class,
+                () -> bankAccountService.updateAccountResponse("user-123", new UpdateAccountRequest(-1.0), iban));
+        assertThrows(BankAccountBadRequest.class,
+                () -> bankAccountService.updateAccountResponse("user-123", new UpdateAccountRequest(null), iban));
+        verify(bankAccountRepository, never()).setBalance(anyLong(), any());
+    }
+
     @Test
     void testDeleteBankAccountWithCard() {
         account.setCreditCard(new CreditCard());
@@ -441,7 +511,7 @@ class BankAccountServiceImplTest {
         String idClient = "user-123";
         Long idAccount = 1L;
 
-        when(clientsRepository.getByUser_Guuid(idClient)).thenReturn(Optional.of(cliente));
+        when(clientResolver.resolve(idClient)).thenReturn(clienteRef);
         account.setClient(cliente);
         when(bankAccountRepository.findById(idAccount)).thenReturn(Optional.of(account));
 
@@ -451,9 +521,10 @@ class BankAccountServiceImplTest {
 
         bankAccountService.deleteMeBankAccount(idClient, idAccount);
 
-        verify(clientsRepository).getByUser_Guuid(idClient);
+        verify(clientResolver).resolve(idClient);
         verify(bankAccountRepository).findById(idAccount);
         verify(bankAccountRepository).deleteById(idAccount);
+        verify(clientCache).evict(clienteRef.id(), clienteRef.dni());
     }
 
     @Test
@@ -461,27 +532,42 @@ class BankAccountServiceImplTest {
         String idClient = "user-123";
         Long idAccount = 1L;
 
-        when(clientsRepository.getByUser_Guuid(idClient)).thenReturn(Optional.empty());
+        when(clientResolver.resolve(idClient)).thenThrow(new ClientNotFound(idClient));
 
         assertThrows(ClientNotFound.class,
                 () -> bankAccountService.deleteMeBankAccount(idClient, idAccount));
 
-        verify(clientsRepository).getByUser_Guuid(idClient);
+        verify(clientResolver).resolve(idClient);
         verifyNoInteractions(bankAccountRepository);
     }
 
+    @Test
+    void testDeleteMeBankAccountOtherClient() {
+        String idClient = "user-123";
+        Long idAccount = 1L;
+
+        when(clientResolver.resolve(idClient)).thenReturn(new ClientRef(999L, "87654321X", 2L, idClient));
+        account.setClient(cliente);
+        when(bankAccountRepository.findById(idAccount)).thenReturn(Optional.of(account));
+
+        assertThrows(BankAccountBadRequest.class,
+                () -> bankAccountService.deleteMeBankAccount(idClient, idAccount));
+
+        verify(bankAccountRepository, never()).deleteById(anyLong());
+    }
+
     @Test
     void testDeleteMeBankAccountBankAccountNotFound() {
         String idClient = "user-123";
         Long idAccount = 1L;
 
-        when(clientsRepository.getByUser_Guuid(idClient)).thenReturn(Optional.of(cliente));
+        when(clientResolver.resolve(idClient)).thenReturn(clienteRef);
         when(bankAccountRepository.findById(idAccount)).thenReturn(Optional.empty());
 
         assertThrows(BankAccountNotFound.class,
                 () -> bankAccountService.deleteMeBankAccount(idClient, idAccount));
 
-        verify(clientsRepository).getByUser_Guuid(idClient);
+        verify(clientResolver).resolve(idClient);
         verify(bankAccountRepository).findById(idAccount);
     }
 
@@ -490,14 +576,14 @@ class BankAccountServiceImplTest {
         String idClient = "user-123";
         Long idAccount = 1L;
 
-        when(clientsRepository.getByUser_Guuid(idClient)).thenReturn(Optional.of(cliente));
+        when(clientResolver.resolve(idClient)).thenReturn(clienteRef);
         account.setClient(null);
         when(bankAccountRepository.findById(idAccount)).thenReturn(Optional.of(account));
 
         assertThrows(BankAccountBadRequest.class,
                 () -> bankAccountService.deleteMeBankAccount(idClient, idAccount));
 
-        verify(clientsRepository).getByUser_Guuid(idClient);
+        verify(clientResolver).resolve(idClient);
         verify(bankAccountRepository).findById(idAccount);
     }
 
@@ -506,7 +592,7 @@ class BankAccountServiceImplTest {
         String idClient = "user-123";
         Long idAccount = 1L;
 
-        when(clientsRepository.getByUser_Guuid(idClient)).thenReturn(Optional.of(cliente));
+        when(clientResolver.resolve(idClient)).thenReturn(clienteRef);
         account.setClient(cliente);
         account.setCreditCard(new CreditCard());
         when(bankAccountRepository.findById(idAccount)).thenReturn(Optional.of(account));
@@ -514,7 +600,7 @@ class BankAccountServiceImplTest {
         assertThrows(BankAccountHaveCreditCard.class,
                 () -> bankAccountService.deleteMeBankAccount(idClient, idAccount));
 
-        verify(clientsRepository).getByUser_Guuid(idClient);
+        verify(clientResolver).resolve(idClient);
         verify(bankAccountRepository).findById(idAccount);
     }
 
@@ -0,0 +1,105 @@
+package jyrs.dev.vivesbank.products.bankAccounts.services;
+
+import jyrs.dev.vivesbank.products.bankAccounts.exceptions.BankAccountIbanException;
+import jyrs.dev.vivesbank.products.bankAccounts.models.IbanBlock;
+import jyrs.dev.vivesbank.products.bankAccounts.repositories.IbanBlockRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigInteger;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class IbanAllocatorTest {
+
+    @Mock
+    private IbanBlockRepository repository;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private IbanAllocator allocator;
+
+    @BeforeEach
+    void setUp() {
+        allocator = new IbanAllocator(repository, transactionManager, 3);
+    }
+
+    private static boolean validIban(String iban) {
+        String rearranged = iban.substring(4) + "1428" + iban.substring(2, 4);
+        return new BigInteger(rearranged).mod(BigInteger.valueOf(97)).intValue() == 1;
+    }
+
+    @Test
+    void formatProducesValidSpanishIban() {
+        for (long account : new long[]{1, 1092982642L, 9_999_999_999L, 123_456_789L}) {
+            String iban = IbanAllocator.format(account);
+
+            assertEquals(24, iban.length());
+            assertTrue(iban.matches("ES\\d{2}01280001" + "00\\d{10}"), iban);
+            assertTrue(validIban(iban), iban);
+        }
+        assertEquals("ES1401280001001092982642", IbanAllocator.format(1092982642L));
+    }
+
+    @Test
+    void firstLeaseCreatesSeries() {
+        when(repository.advance(IbanAllocator.SERIES, 3)).thenReturn(0, 1);
+        when(repository.findById(IbanAllocator.SERIES)).thenReturn(Optional.of(new IbanBlock(IbanAllocator.SERIES, 4L)));
+
+        assertEquals(IbanAllocator.format(1), allocator.nextIban());
+        assertEquals(IbanAllocator.format(2), allocator.nextIban());
+        assertEquals(IbanAllocator.format(3), allocator.nextIban());
+
+        var order = inOrder(repository);
+        order.verify(repository).advance(IbanAllocator.SERIES, 3);
+        order.verify(repository).create(IbanAllocator.SERIES, IbanAllocator.FIRST_ACCOUNT);
+        order.verify(repository).advance(IbanAllocator.SERIES, 3);
+        verify(repository, never()).saveAndFlush(any());
+    }
+
+    @Test
+    void concurrentSeriesCreationRetriesThroughAdvance() {
+        when(repository.advance(IbanAllocator.SERIES, 3)).thenReturn(0, 1);
+        when(repository.create(IbanAllocator.SERIES, IbanAllocator.FIRST_ACCOUNT))
+                .thenThrow(new DataIntegrityViolationException("duplicate key"));
+        when(repository.findById(IbanAllocator.SERIES)).thenReturn(Optional.of(new IbanBlock(IbanAllocator.SERIES, 7L)));
+
+        assertEquals(IbanAllocator.format(4), allocator.nextIban());
+
+        verify(repository, times(2)).advance(IbanAllocator.SERIES, 3);
+        verify(repository, times(1)).create(any(), anyLong());
+    }
+
+    @Test
+    void newBlockIsLeasedOnlyWhenExhausted() {
+        when(repository.advance(IbanAllocator.SERIES, 3)).thenReturn(1);
+        when(repository.findById(IbanAllocator.SERIES))
+                .thenReturn(Optional.of(new IbanBlock(IbanAllocator.SERIES, 13L)))
+                .thenReturn(Optional.of(new IbanBlock(IbanAllocator.SERIES, 19L)));
+
+        for (long account = 10; account <= 12; account++) {
+            assertEquals(IbanAllocator.format(account), allocator.nextIban());
+        }
+        assertEquals(IbanAllocator.format(16), allocator.nextIban());
+
+        verify(repository, times(2)).advance(IbanAllocator.SERIES, 3);
+    }
+
+    @Test
+    void exhaustedAccountNumbersFail() {
+        when(repository.advance(IbanAllocator.SERIES, 3)).thenReturn(1);
+        when(repository.findById(IbanAllocator.SERIES))
+                .thenReturn(Optional.of(new IbanBlock(IbanAllocator.SERIES, IbanAllocator.MAX_ACCOUNT + 3)));
+
+        assertThrows(BankAccountIbanException.class, () -> allocator.nextIban());
+    }
+}
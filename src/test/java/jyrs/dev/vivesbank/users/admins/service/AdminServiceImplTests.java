@@ -1,5 +1,6 @@
 package jyrs.dev.vivesbank.users.admins.service;
 
+import jyrs.dev.vivesbank.auth.users.cache.PrincipalCache;
 import jyrs.dev.vivesbank.users.admins.dto.AdminRequestDto;
 import jyrs.dev.vivesbank.users.admins.dto.AdminResponseDto;
 import jyrs.dev.vivesbank.users.admins.dto.AdminUpdateRequest;
@@ -63,6 +64,8 @@ public class AdminServiceImplTests {
     private AdminMappers adminMapper;
     @Mock
     private UsersRepository userRepository;
+    @Mock
+    private PrincipalCache principalCache;
     @InjectMocks
     private AdminServiceImpl adminService;
 
@@ -0,0 +1,254 @@
+package jyrs.dev.vivesbank.users.clients.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jyrs.dev.vivesbank.users.clients.models.Client;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.AdditionalMatchers.aryEq;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ClientCacheTest {
+
+    private RedisTemplate<String, Client> redisTemplate;
+    private ValueOperations<String, Client> valueOperations;
+    private StringRedisTemplate redis;
+    private ValueOperations<String, String> versions;
+    private SimpleMeterRegistry registry;
+    private ClientCache cache;
+    private final AtomicLong now = new AtomicLong(1_000);
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private final Client client = Client.builder().id(1L).dni("11111111A").nombre("Ana").build();
+    private final Supplier<Optional<Client>> loader = () -> {
+        loads.incrementAndGet();
+        return Optional.of(client);
+    };
+
+    @BeforeEach
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    void setUp() {
+        redisTemplate = mock(RedisTemplate.class);
+        valueOperations = mock(ValueOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        RedisSerializer<Client> serializer = mock(RedisSerializer.class);
+        when(serializer.serialize(any())).thenReturn(new byte[]{1});
+        when(redisTemplate.getValueSerializer()).thenReturn((RedisSerializer) serializer);
+        redis = mock(StringRedisTemplate.class);
+        versions = mock(ValueOperations.class);
+        when(redis.opsForValue()).thenReturn(versions);
+        registry = new SimpleMeterRegistry();
+        cache = new ClientCache(redisTemplate, redis, mock(RedisConnectionFactory.class), registry,
+                60, 600, 2, 5_000, now::get);
+    }
+
+    private double requests(String result, String level) {
+        return registry.get("clients.cache.requests").tag("result", result).tag("level", level).counter().count();
+    }
+
+    private DefaultMessage message(String body) {
+        return new DefaultMessage(ClientCache.CHANNEL.getBytes(StandardCharsets.UTF_8), body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void missLoadsFromDatabaseAndFillsBothLevels() {
+        var key = ClientCache.idKey(1L);
+
+        assertSame(client, cache.get(key, loader).get());
+        assertSame(client, cache.get(key, loader).get());
+
+        assertEquals(1, loads.get());
+        verify(valueOperations, times(1)).get(key);
+        verify(redisTemplate).execute(eq(ClientCache.SET_IF_VERSION), any(RedisSerializer.class), any(RedisSerializer.class), eq(List.of(key, ClientCache.versionKey(key))),
+                aryEq(new byte[0]), aryEq("600".getBytes(StandardCharsets.UTF_8)), any());
+        assertEquals(1.0, requests("miss", "database"));
+        assertEquals(1.0, requests("hit", "local"));
+    }
+
+    @Test
+    void redisHitSkipsDatabase() {
+        var key = ClientCache.dniKey("11111111A");
+        when(valueOperations.get(key)).thenReturn(client);
+
+        assertSame(client, cache.get(key, loader).get());
+
+        assertEquals(0, loads.get());
+        assertEquals(1.0, requests("hit", "redis"));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void missingClientIsNotCached() {
+        Supplier<Optional<Client>> empty = () -> {
+            loads.incrementAndGet();
+            return Optional.empty();
+        };
+
+        assertTrue(cache.get(ClientCache.idKey(9L), empty).isEmpty());
+        assertTrue(cache.get(ClientCache.idKey(9L), empty).isEmpty());
+
+        assertEquals(2, loads.get());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void localEntryExpires() {
+        var key = ClientCache.idKey(1L);
+        cache.get(key, loader);
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(61));
+        cache.get(key, loader);
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void redisDownFallsBackToDatabaseUntilRetry() {
+        when(valueOperations.get(anyString())).thenThrow(new RedisConnectionFailureException("sin conexión"));
+
+        assertSame(client, cache.get(ClientCache.idKey(1L), loader).get());
+        cache.get(ClientCache.dniKey("11111111A"), loader);
+        verify(valueOperations, times(1)).get(anyString());
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(5_001));
+        cache.invalidateAll();
+        cache.get(ClientCache.idKey(1L), loader);
+
+        verify(valueOperations, times(2)).get(anyString());
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    void evictRemovesBothKeysEverywhereAndNotifiesOtherNodes() {
+        cache.get(ClientCache.idKey(1L), loader);
+        cache.get(ClientCache.dniKey("11111111A"), loader);
+
+        cache.evict(client);
+
+        assertEquals(0, cache.size());
+        var keys = List.of(ClientCache.idKey(1L), ClientCache.dniKey("11111111A"));
+        verify(redis).execute(ClientCache.EVICT, keys, "600");
+        verify(redis).convertAndSend(ClientCache.CHANNEL,
+                ClientCache.encode((String) ReflectionTestUtils.getField(cache, "nodeId"), keys));
+        assertEquals(2.0, registry.get("clients.cache.evictions").tag("cause", "invalidation").counter().count());
+    }
+
+    @Test
+    void remoteInvalidationEvictsLocalEntry() {
+        var key = ClientCache.idKey(1L);
+        cache.get(key, loader);
+        var ownNode = (String) ReflectionTestUtils.getField(cache, "nodeId");
+
+        cache.onMessage(message(ClientCache.encode(ownNode, List.of(key))), null);
+        assertEquals(1, cache.size());
+
+        cache.onMessage(message(ClientCache.encode("otro-nodo", List.of(key))), null);
+        assertEquals(0, cache.size());
+        assertEquals(1.0, registry.get("clients.cache.evictions").tag("cause", "remote").counter().count());
+    }
+
+    @Test
+    void invalidationDuringLoadIsNotOverwritten() {
+        var key = ClientCache.idKey(1L);
+
+        var loaded = cache.get(key, () -> {
+            cache.evict(client);
+            return Optional.of(client);
+        });
+
+        assertTrue(loaded.isPresent());
+        assertEquals(0, cache.size());
+        verify(redisTemplate, never()).execute(any(RedisScript.class), any(RedisSerializer.class), any(RedisSerializer.class), anyList(), any(), any(), any());
+    }
+
+    @Test
+    void redisWriteIsConditionalOnVersionReadBeforeLoading() {
+        var key = ClientCache.idKey(1L);
+        when(versions.get(ClientCache.versionKey(key))).thenReturn("7");
+        Supplier<Optional<Client>> checkedLoader = () -> {
+            verify(versions).get(ClientCache.versionKey(key));
+            return loader.get();
+        };
+
+        cache.get(key, checkedLoader);
+
+        verify(redisTemplate).execute(eq(ClientCache.SET_IF_VERSION), any(RedisSerializer.class), any(RedisSerializer.class), anyList(),
+                aryEq("7".getBytes(StandardCharsets.UTF_8)), any(), any());
+    }
+
+    @Test
+    void unreadableVersionSkipsRedisWrite() {
+        when(versions.get(anyString())).thenThrow(new RedisConnectionFailureException("sin conexión"));
+
+        assertSame(client, cache.get(ClientCache.idKey(1L), loader).get());
+
+        verify(redisTemplate, never()).execute(any(RedisScript.class), any(RedisSerializer.class), any(RedisSerializer.class), anyList(), any(), any(), any());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void concurrentMissesShareOneLoad() throws Exception {
+        var key = ClientCache.idKey(1L);
+        var started = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        Supplier<Optional<Client>> slowLoader = () -> {
+            loads.incrementAndGet();
+            started.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return Optional.of(client);
+        };
+
+        var executor = Executors.newFixedThreadPool(2);
+        try {
+            var first = executor.submit(() -> cache.get(key, slowLoader));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            var second = executor.submit(() -> cache.get(key, slowLoader));
+            Thread.sleep(100);
+            release.countDown();
+
+            assertSame(client, first.get(5, TimeUnit.SECONDS).get());
+            assertSame(client, second.get(5, TimeUnit.SECONDS).get());
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void sizeIsBounded() {
+        cache.get(ClientCache.idKey(1L), loader);
+        now.incrementAndGet();
+        cache.get(ClientCache.idKey(2L), loader);
+        now.incrementAndGet();
+        cache.get(ClientCache.idKey(3L), loader);
+
+        assertEquals(2, cache.size());
+        assertEquals(2.0, registry.get("clients.cache.size").gauge().value());
+        assertEquals(1.0, registry.get("clients.cache.evictions").tag("cause", "size").counter().count());
+    }
+}
@@ -92,4 +92,23 @@ class ClientsRepositoryTest {
 
         assertThat(foundClient).isNotPresent();
     }
-}
\ No newline at end of file
+
+    @Test
+    void testFindRefByUserGuuid() {
+        repositoryUser.save(use);
+        repository.save(client);
+        var saved = repository.getByUser_Guuid("puZjCDm_xCg").get();
+
+        var ref = repository.findRefByUserGuuid("puZjCDm_xCg");
+
+        assertThat(ref).isPresent();
+        assertEquals(saved.getId(), ref.get().id());
+        assertEquals(saved.getDni(), ref.get().dni());
+        assertEquals(saved.getUser().getId(), ref.get().userId());
+    }
+
+    @Test
+    void testFindRefByUserGuuidNotFound() {
+        assertThat(repository.findRefByUserGuuid("31")).isNotPresent();
+    }
+}
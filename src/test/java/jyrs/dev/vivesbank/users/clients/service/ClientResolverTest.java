@@ -0,0 +1,83 @@
+package jyrs.dev.vivesbank.users.clients.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jyrs.dev.vivesbank.users.clients.dto.ClientRef;
+import jyrs.dev.vivesbank.users.clients.exceptions.ClientNotFound;
+import jyrs.dev.vivesbank.users.clients.repository.ClientsRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ClientResolverTest {
+
+    @Mock
+    private ClientsRepository clientsRepository;
+
+    private final AtomicLong now = new AtomicLong();
+    private SimpleMeterRegistry registry;
+    private ClientResolver resolver;
+
+    private final ClientRef first = new ClientRef(1L, "11111111A", 10L, "guuid-1");
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        resolver = new ClientResolver(clientsRepository, registry, 60, 2, now::get);
+    }
+
+    @Test
+    void resolveLoadsOnceAndThenServesFromMemory() {
+        when(clientsRepository.findRefByUserGuuid("guuid-1")).thenReturn(Optional.of(first));
+
+        assertEquals(first, resolver.resolve("guuid-1"));
+        assertEquals(first, resolver.resolve("guuid-1"));
+
+        verify(clientsRepository, times(1)).findRefByUserGuuid("guuid-1");
+        assertEquals(1.0, registry.get("clients.resolver.requests").tag("result", "hit").counter().count());
+        assertEquals(1.0, registry.get("clients.resolver.requests").tag("result", "miss").counter().count());
+    }
+
+    @Test
+    void resolveUnknownThrowsAndIsNotCached() {
+        when(clientsRepository.findRefByUserGuuid("nadie")).thenReturn(Optional.empty());
+
+        assertThrows(ClientNotFound.class, () -> resolver.resolve("nadie"));
+        assertThrows(ClientNotFound.class, () -> resolver.resolve("nadie"));
+
+        verify(clientsRepository, times(2)).findRefByUserGuuid("nadie");
+        assertEquals(0, resolver.size());
+    }
+
+    @Test
+    void findReloadsAfterTtl() {
+        when(clientsRepository.findRefByUserGuuid("guuid-1")).thenReturn(Optional.of(first));
+        resolver.find("guuid-1");
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(61));
+        resolver.find("guuid-1");
+
+        verify(clientsRepository, times(2)).findRefByUserGuuid("guuid-1");
+    }
+
+    @Test
+    void invalidationDuringLoadIsNotOverwritten() {
+        when(clientsRepository.findRefByUserGuuid("guuid-1")).thenAnswer(invocation -> {
+            resolver.invalidate("guuid-1");
+            return Optional.of(first);
+        });
+
+        assertEquals(first, resolver.resolve("guuid-1"));
+
+        assertEquals(0, resolver.size());
+    }
+}
@@ -1,5 +1,7 @@
 package jyrs.dev.vivesbank.users.clients.service;
 
+import jyrs.dev.vivesbank.auth.users.cache.PrincipalCache;
+import jyrs.dev.vivesbank.users.clients.cache.ClientCache;
 import jyrs.dev.vivesbank.users.clients.dto.AddressDto;
 import jyrs.dev.vivesbank.users.clients.dto.ClientRequestCreate;
 import jyrs.dev.vivesbank.users.clients.dto.ClientRequestUpdate;
@@ -21,10 +23,9 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.stubbing.Answer;
 import org.springframework.data.domain.*;
 import org.springframework.data.jpa.domain.Specification;
-import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.data.redis.core.ValueOperations;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.File;
@@ -32,7 +33,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -50,10 +51,12 @@ class ClientsServiceImplTest {
     @Mock
     private ClientStorage storage;
     @Mock
-    private RedisTemplate<String, Client> redisTemplate;
+    private ClientCache clientCache;
 
     @Mock
-    private ValueOperations<String, Client> valueOperations;
+    private PrincipalCache principalCache;
+    @Mock
+    private ClientResolver clientResolver;
 
     @InjectMocks
     private ClientsServiceImpl service;
@@ -148,6 +151,10 @@ class ClientsServiceImplTest {
                 .build();
     }
 
+    private static Answer<Optional<Client>> cargarDesdeBaseDeDatos() {
+        return invocation -> invocation.<Supplier<Optional<Client>>>getArgument(1).get();
+    }
+
     @Test
     void getAll() {
         Pageable pageable = PageRequest.of(0, 10, Sort.by("id").ascending());
@@ -271,7 +278,7 @@ class ClientsServiceImplTest {
     @Test
     void getById_whenClientInCache_returnsClientFromCache() {
         Long id = 1L;
-        String redisKey = "client:id:" + id;
+        String cacheKey = "client:id:" + id;
 
         Client cachedClient = new Client();
         cachedClient.setNombre("test");
@@ -285,8 +292,7 @@ class ClientsServiceImplTest {
         clientResponse.setDireccion(addressDto);
         clientResponse.setEmail(cliente.getEmail());
 
-        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
-        when(valueOperations.get(redisKey)).thenReturn(cachedClient);
+        when(clientCache.get(eq(cacheKey), any())).thenReturn(Optional.of(cachedClient));
         when(mapper.toResponse(cachedClient)).thenReturn(clientResponse);
 
         ClientResponse result = service.getById(id);
@@ -294,18 +300,16 @@ class ClientsServiceImplTest {
         assertNotNull(result);
         assertEquals(clientResponse.getNombre(), result.getNombre());
         assertEquals(clientResponse.getApellidos(), result.getApellidos());
-
-        verify(redisTemplate, times(1)).opsForValue();
-        verify(valueOperations, times(1)).get(redisKey);
+        verify(clientCache).get(eq(cacheKey), any());
         verify(mapper, times(1)).toResponse(cachedClient);
         verifyNoInteractions(repository);
     }
 
 
     @Test
-    void getById_whenClientNotInCache_callsRepositoryAndCachesClient() {
+    void getById_whenClientNotInCache_callsRepository() {
         Long id = 1L;
-        String redisKey = "client:id:" + id;
+        String cacheKey = "client:id:" + id;
 
 
         Client clientFromDb = new Client();
@@ -321,9 +325,8 @@ class ClientsServiceImplTest {
         clientResponse.setDireccion(addressDto);
         clientResponse.setEmail(cliente.getEmail());
 
-        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
-        when(valueOperations.get(redisKey)).thenReturn(null);
-        when(repository.findById(id)).thenReturn(Optional.of(clientFromDb));
+        when(clientCache.get(eq(cacheKey), any())).thenAnswer(cargarDesdeBaseDeDatos());
+        when(repository.findWithCuentasById(id)).thenReturn(Optional.of(clientFromDb));
         when(mapper.toResponse(clientFromDb)).thenReturn(clientResponse);
 
         ClientResponse result = service.getById(id);
@@ -331,11 +334,8 @@ class ClientsServiceImplTest {
         assertNotNull(result);
         assertEquals(clientResponse.getNombre(), result.getNombre());
         assertEquals(clientResponse.getApellidos(), result.getApellidos());
-
-        verify(redisTemplate, times(2)).opsForValue();
-        verify(valueOperations, times(1)).get(redisKey);
-        verify(repository, times(1)).findById(id);
-        verify(redisTemplate.opsForValue(), times(1)).set(redisKey, clientFromDb, 10, TimeUnit.MINUTES);
+        verify(clientCache).get(eq(cacheKey), any());
+        verify(repository, times(1)).findWithCuentasById(id);
         verify(mapper, times(1)).toResponse(clientFromDb);
     }
 
@@ -346,26 +346,23 @@ class ClientsServiceImplTest {
     @Test
     void getByIdNotFound() {
         Long id = 1L;
-        String redisKey = "client:id:" + id;
+        String cacheKey = "client:id:" + id;
 
-        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
-        when(valueOperations.get(redisKey)).thenReturn(null);
-        when(repository.findById(id)).thenReturn(Optional.empty());
+        when(clientCache.get(eq(cacheKey), any())).thenAnswer(cargarDesdeBaseDeDatos());
+        when(repository.findWithCuentasById(id)).thenReturn(Optional.empty());
 
         var exception = assertThrows(ClientNotFound.class, () -> service.getById(id));
 
         assertEquals("El cliente: 1 no encontrado", exception.getMessage());
-
-        verify(redisTemplate, times(1)).opsForValue();
-        verify(valueOperations, times(1)).get(redisKey);
-        verify(repository, times(1)).findById(id);
+        verify(clientCache).get(eq(cacheKey), any());
+        verify(repository, times(1)).findWithCuentasById(id);
         verify(mapper, times(0)).toResponse(any(Client.class));
     }
 
     @Test
     void getByDniCache() {
         String dni = "11111111A";
-        String redisKey = "client:dni:" + dni;
+        String cacheKey = "client:dni:" + dni;
 
         Client cliente = new Client();
         cliente.setDni(dni);
@@ -378,8 +375,7 @@ class ClientsServiceImplTest {
         clientResponse.setApellidos("test");
 
 
-        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
-        when(valueOperations.get(redisKey)).thenReturn(cliente);
+        when(clientCache.get(eq(cacheKey), any())).thenReturn(Optional.of(cliente));
         when(mapper.toResponse(cliente)).thenReturn(clientResponse);
 
         var res = service.getByDni(dni);
@@ -389,9 +385,7 @@ class ClientsServiceImplTest {
                 () -> assertEquals(clientResponse.getNombre(), res.getNombre()),
                 () -> assertEquals(clientResponse.getApellidos(), res.getApellidos())
         );
-
-        verify(redisTemplate, times(1)).opsForValue();
-        verify(valueOperations, times(1)).get(redisKey);
+        verify(clientCache).get(eq(cacheKey), any());
         verify(mapper, times(1)).toResponse(cliente);
     }
 
@@ -400,7 +394,7 @@ class ClientsServiceImplTest {
     @Test
     void getByDniDatabase() {
         String dni = "11111111A";
-        String redisKey = "client:dni:" + dni;
+        String cacheKey = "client:dni:" + dni;
 
         Client cliente = new Client();
         cliente.setDni(dni);
@@ -413,10 +407,9 @@ class ClientsServiceImplTest {
         clientResponse.setNombre("test");
         clientResponse.setApellidos("test");
 
-        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
-        when(valueOperations.get(redisKey)).thenReturn(null);
+        when(clientCache.get(eq(cacheKey), any())).thenAnswer(cargarDesdeBaseDeDatos());
 
-        when(repository.getByDni(dni)).thenReturn(Optional.of(cliente));
+        when(repository.findWithCuentasByDni(dni)).thenReturn(Optional.of(cliente));
 
         when(mapper.toResponse(cliente)).thenReturn(clientResponse);
         var res = service.getByDni(dni);
@@ -426,10 +419,8 @@ class ClientsServiceImplTest {
                 () -> assertEquals(clientResponse.getNombre(), res.getNombre()),
                 () -> assertEquals(clientResponse.getApellidos(), res.getApellidos())
         );
-
-        verify(redisTemplate, times(2)).opsForValue();
-        verify(valueOperations, times(1)).get(redisKey);
-        verify(repository, times(1)).getByDni(dni);
+        verify(clientCache).get(eq(cacheKey), any());
+        verify(repository, times(1)).findWithCuentasByDni(dni);
         verify(mapper, times(1)).toResponse(cliente);
     }
 
@@ -437,19 +428,16 @@ class ClientsServiceImplTest {
     @Test
     void getByDniNotFound() {
         String dni = "11111111A";
-        String redisKey = "client:dni:" + dni;
+        String cacheKey = "client:dni:" + dni;
 
 
-        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
-        when(valueOperations.get(redisKey)).thenReturn(null);
-        when(repository.getByDni(dni)).thenReturn(Optional.empty());
+        when(clientCache.get(eq(cacheKey), any())).thenAnswer(cargarDesdeBaseDeDatos());
+        when(repository.findWithCuentasByDni(dni)).thenReturn(Optional.empty());
         var exception = assertThrows(ClientNotFound.class, () -> service.getByDni(dni));
 
         assertEquals("El cliente: 11111111A no encontrado", exception.getMessage());
-
-        verify(redisTemplate, times(1)).opsForValue();
-        verify(valueOperations, times(1)).get(redisKey);
-        verify(repository, times(1)).getByDni(dni);
+        verify(clientCache).get(eq(cacheKey), any());
+        verify(repository, times(1)).findWithCuentasByDni(dni);
         verify(mapper, times(0)).toResponse(any(Client.class));
     }
 
@@ -532,15 +520,11 @@ class ClientsServiceImplTest {
     @Test
     void updateMe() {
         String id = "12345-abcde-67890";
-        String redisKey = "client:id:" + id;
-
         when(repository.getByUser_Guuid(id)).thenReturn(Optional.of(cliente));
         when(mapper.fromClientUpdate(clienteUpdate)).thenReturn(cliente);
         when(repository.save(cliente)).thenReturn(cliente);
         when(mapper.toResponse(cliente)).thenReturn(clientResponse);
 
-        when(redisTemplate.delete(redisKey)).thenReturn(true);
-
 
         var result = service.updateMe(id, clienteUpdate);
 
@@ -551,7 +535,8 @@ class ClientsServiceImplTest {
         );
 
         verify(repository, times(1)).getByUser_Guuid(id);
-        verify(redisTemplate,times(1)).delete(redisKey);
+        verify(clientCache).evict(cliente);
+        verify(clientResolver).invalidate(id);
         verify(repository, times(1)).save(cliente);
         verify(mapper, times(1)).fromClientUpdate(clienteUpdate);
         verify(mapper, times(1)).toResponse(cliente);
@@ -680,6 +665,7 @@ class ClientsServiceImplTest {
         verify(repository, times(1)).findById(id);
         verify(repository, times(1)).deleteById(id);
         verify(storageService, times(1)).delete(cliente.getFotoDni());
+        verify(clientCache).evict(cliente);
     }
 
     @Test
@@ -744,6 +730,7 @@ class ClientsServiceImplTest {
         verify(repository, times(1)).getByUser_Guuid(id);
         verify(repository, times(1)).deleteById(cliente.getId());
         verify(storageService, times(1)).delete(cliente.getFotoDni());
+        verify(clientResolver).invalidate(id);
     }
 
     @Test
@@ -775,6 +762,7 @@ class ClientsServiceImplTest {
 
         verify(repository, times(1)).getByUser_Guuid(id);
         verify(repository, times(1)).save(cliente);
+        verify(clientResolver).invalidate(id);
     }
 
     @Test
@@ -802,6 +790,7 @@ class ClientsServiceImplTest {
 
         verify(storage).importJson(file);
         verify(repository).saveAll(clients);
+        verify(clientResolver).invalidateAll();
     }
 
     @Test
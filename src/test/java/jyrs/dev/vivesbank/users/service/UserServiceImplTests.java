@@ -1,5 +1,6 @@
 package jyrs.dev.vivesbank.users.service;
 
+import jyrs.dev.vivesbank.auth.users.cache.PrincipalCache;
 import jyrs.dev.vivesbank.config.websockets.WebSocketConfig;
 import jyrs.dev.vivesbank.config.websockets.WebSocketHandler;
 import jyrs.dev.vivesbank.users.models.Role;
@@ -57,6 +58,8 @@ public class UserServiceImplTests {
     private UserMapper userMapper;
     @Mock
     private UserStorage storage;
+    @Mock
+    private PrincipalCache principalCache;
     @InjectMocks
     private UsersServiceImpl usersService;
     @BeforeEach